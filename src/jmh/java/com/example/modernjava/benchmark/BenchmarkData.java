@@ -0,0 +1,36 @@
+package com.example.modernjava.benchmark;
+
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.generator.SyntheticOrderGenerator;
+
+import java.util.List;
+
+/**
+ * Deterministic order data for the benchmarks
+ * <p>
+ * Products, customers and countries are shared by all orders, the way they would be after
+ * deserialization into a domain model with shared references, so that the benchmarks measure
+ * the aggregation rather than the generation of distinct objects.
+ */
+public final class BenchmarkData {
+    private static final long SEED = 42L;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Generate a list of orders with Zipf-skewed product popularity
+     *
+     * @param orderCount    the number of orders
+     * @param itemsPerOrder the number of items in each order
+     * @param products      the number of distinct products
+     * @param customers     the number of distinct customers
+     * @param countries     the number of distinct countries
+     * @return the generated orders, the same for the same parameters
+     */
+    public static List<Order> orders(int orderCount, int itemsPerOrder, int products, int customers, int countries) {
+        return SyntheticOrderGenerator.builder().seed(SEED).orderCount(orderCount)
+                .itemsPerOrder(itemsPerOrder, itemsPerOrder).products(products).customers(customers)
+                .countries(countries).build().stream().toList();
+    }
+}
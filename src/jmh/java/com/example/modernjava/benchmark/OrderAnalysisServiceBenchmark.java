@@ -0,0 +1,122 @@
+package com.example.modernjava.benchmark;
+
+import com.example.modernjava.analytics.Aggregate;
+import com.example.modernjava.analytics.AggregateResults;
+import com.example.modernjava.analytics.OrderAnalysisService;
+import com.example.modernjava.domain.Customer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Throughput of each {@link OrderAnalysisService} query, and of all queries answered in a single pass
+ * <p>
+ * The heap, forks and iterations are configured in the {@code jmh} block of the build. The default
+ * parameters are a small and a large dataset of one shape, which keeps a full run short. Larger datasets
+ * and other cardinalities are passed with JMH's {@code -p} option, for instance
+ * {@code -p orderCount=10000000 -p products=100,10000} to see how the map based queries scale with the
+ * number of groups; 10 million orders of 5 items take about 4 GB.
+ */
+@State(Scope.Benchmark)
+public class OrderAnalysisServiceBenchmark {
+
+    @Param({"1000", "1000000"})
+    int orderCount;
+
+    @Param({"5"})
+    int itemsPerOrder;
+
+    @Param({"100"})
+    int products;
+
+    @Param({"1000"})
+    int customers;
+
+    @Param({"20"})
+    int countries;
+
+    private OrderAnalysisService service;
+
+    @Setup
+    public void setUp() {
+        service = new OrderAnalysisService(
+                BenchmarkData.orders(orderCount, itemsPerOrder, products, customers, countries));
+    }
+
+    @Benchmark
+    public long totalOrders() {
+        return service.totalOrders();
+    }
+
+    @Benchmark
+    public long totalUnitsSold() {
+        return service.totalUnitsSold();
+    }
+
+    @Benchmark
+    public Map<String, Integer> totalUnitsSoldByProduct() {
+        return service.totalUnitsSoldByProduct();
+    }
+
+    @Benchmark
+    public Map<String, Map<String, Integer>> totalUnitsSoldByCustomerByProduct() {
+        return service.totalUnitsSoldByCustomerByProduct();
+    }
+
+    @Benchmark
+    public Map<String, Map<String, Integer>> totalUnitsSoldByCountryByProduct() {
+        return service.totalUnitsSoldByCountryByProduct();
+    }
+
+    @Benchmark
+    public BigDecimal totalRevenue() {
+        return service.totalRevenue();
+    }
+
+    @Benchmark
+    public Map<String, BigDecimal> totalRevenueByProduct() {
+        return service.totalRevenueByProduct();
+    }
+
+    @Benchmark
+    public Map<String, BigDecimal> totalRevenueByCustomer() {
+        return service.totalRevenueByCustomer();
+    }
+
+    @Benchmark
+    public Map<String, Map<String, BigDecimal>> totalRevenueByCustomerByProduct() {
+        return service.totalRevenueByCustomerByProduct();
+    }
+
+    @Benchmark
+    public Map<String, BigDecimal> totalRevenueByCountry() {
+        return service.totalRevenueByCountry();
+    }
+
+    @Benchmark
+    public Map<String, Map<String, BigDecimal>> totalRevenueByCountryByProduct() {
+        return service.totalRevenueByCountryByProduct();
+    }
+
+    @Benchmark
+    public List<String> distinctCountries() {
+        return service.distinctCountries();
+    }
+
+    @Benchmark
+    public List<Customer> distinctCustomers() {
+        return service.distinctCustomers();
+    }
+
+    @Benchmark
+    public AggregateResults analyzeAll() {
+        return service.analyze(EnumSet.allOf(Aggregate.class));
+    }
+}
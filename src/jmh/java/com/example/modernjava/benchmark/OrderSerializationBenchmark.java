@@ -0,0 +1,66 @@
+package com.example.modernjava.benchmark;
+
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.io.OrderObjectMappers;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Throughput of Jackson serialization and deserialization of order lists
+ * <p>
+ * Serialization writes to a discarding output stream, so it measures Jackson rather than the growth of
+ * a byte array. The default parameters are a small and a large dataset of one shape; other cardinalities
+ * are passed with JMH's {@code -p} option. Order counts stop at 1 million: the JSON of 10 million orders
+ * exceeds the 2 GB limit of the byte array deserialized from, and binding it creates distinct customer,
+ * address and product objects per order, which does not fit the heap configured in the build.
+ */
+@State(Scope.Benchmark)
+public class OrderSerializationBenchmark {
+
+    @Param({"1000", "1000000"})
+    int orderCount;
+
+    @Param({"5"})
+    int itemsPerOrder;
+
+    @Param({"100"})
+    int products;
+
+    @Param({"1000"})
+    int customers;
+
+    @Param({"20"})
+    int countries;
+
+    private final ObjectMapper mapper = OrderObjectMappers.create();
+    private JavaType orderListType;
+    private List<Order> orders;
+    private byte[] json;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        orderListType = mapper.getTypeFactory().constructCollectionType(List.class, Order.class);
+        orders = BenchmarkData.orders(orderCount, itemsPerOrder, products, customers, countries);
+        json = mapper.writeValueAsBytes(orders);
+    }
+
+    @Benchmark
+    public void serialize() throws IOException {
+        mapper.writeValue(OutputStream.nullOutputStream(), orders);
+    }
+
+    @Benchmark
+    public List<Order> deserialize() throws IOException {
+        return mapper.readValue(json, orderListType);
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.modernjava.analytics;
+
+/**
+ * The aggregates that can be requested from a single pass over a collection of orders.
+ * Each constant corresponds to one of the per-method queries of {@link OrderAnalysisService}
+ * and produces an identical result when computed by an {@link OrderAggregator}.
+ */
+public enum Aggregate {
+    TOTAL_ORDERS,
+    TOTAL_UNITS_SOLD,
+    UNITS_SOLD_BY_PRODUCT,
+    UNITS_SOLD_BY_CUSTOMER_BY_PRODUCT,
+    UNITS_SOLD_BY_COUNTRY_BY_PRODUCT,
+    TOTAL_REVENUE,
+    REVENUE_BY_PRODUCT,
+    REVENUE_BY_CUSTOMER,
+    REVENUE_BY_CUSTOMER_BY_PRODUCT,
+    REVENUE_BY_COUNTRY,
+    REVENUE_BY_COUNTRY_BY_PRODUCT,
+    DISTINCT_COUNTRIES,
+    DISTINCT_CUSTOMERS;
+
+    /**
+     * @return true if the aggregate is computed from the order items, rather than from the orders alone
+     */
+    public boolean needsItems() {
+        return switch (this) {
+            case TOTAL_ORDERS, DISTINCT_COUNTRIES, DISTINCT_CUSTOMERS -> false;
+            default -> true;
+        };
+    }
+}
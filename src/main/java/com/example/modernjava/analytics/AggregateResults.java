@@ -0,0 +1,223 @@
+package com.example.modernjava.analytics;
+
+import com.example.modernjava.domain.Customer;
+import lombok.NonNull;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The results of a single pass over a collection of orders, holding a value for
+ * each {@link Aggregate} that was requested.
+ * <p>
+ * Asking for an aggregate that was not requested is a programming error and
+ * results in an {@link IllegalStateException}.
+ * <p>
+ * The results also tell how many orders and order items were visited to compute them, which is 0 for
+ * results served from precomputed state. These counts describe the work done, not the results, and are
+ * not part of {@link #equals(Object)}.
+ */
+public final class AggregateResults {
+    private final Map<Aggregate, Object> values;
+    private final long ordersScanned;
+    private final long itemsScanned;
+
+    /**
+     * Results computed without visiting any order, e.g. from precomputed state
+     *
+     * @param values the value of each computed aggregate, which must be of the type returned
+     *               by the corresponding accessor
+     */
+    public AggregateResults(@NonNull Map<Aggregate, Object> values) {
+        this(values, 0, 0);
+    }
+
+    /**
+     * @param values        the value of each computed aggregate, which must be of the type returned
+     *                      by the corresponding accessor
+     * @param ordersScanned the number of orders visited to compute the values
+     * @param itemsScanned  the number of order items visited to compute the values
+     */
+    public AggregateResults(@NonNull Map<Aggregate, Object> values, long ordersScanned, long itemsScanned) {
+        this.values = values.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(new EnumMap<>(values));
+        this.ordersScanned = ordersScanned;
+        this.itemsScanned = itemsScanned;
+    }
+
+    /**
+     * @return the number of orders visited to compute these results
+     */
+    public long ordersScanned() {
+        return ordersScanned;
+    }
+
+    /**
+     * @return the number of order items visited to compute these results
+     */
+    public long itemsScanned() {
+        return itemsScanned;
+    }
+
+    /**
+     * @return the aggregates held by these results
+     */
+    public Set<Aggregate> aggregates() {
+        return values.keySet();
+    }
+
+    /**
+     * @param aggregate the aggregate to check for
+     * @return true if these results hold a value for the given aggregate
+     */
+    public boolean contains(@NonNull Aggregate aggregate) {
+        return values.containsKey(aggregate);
+    }
+
+    /**
+     * Restrict these results to a subset of their aggregates
+     *
+     * @param aggregates the aggregates to keep, all of which must be held by these results
+     * @return results holding only the given aggregates, with the scan counts of these results
+     */
+    public AggregateResults select(@NonNull Set<Aggregate> aggregates) {
+        Map<Aggregate, Object> selected = new EnumMap<>(Aggregate.class);
+        for (Aggregate aggregate : aggregates) {
+            selected.put(aggregate, value(aggregate));
+        }
+        return new AggregateResults(selected, ordersScanned, itemsScanned);
+    }
+
+    /**
+     * @return the value of {@link Aggregate#TOTAL_ORDERS}
+     */
+    public long totalOrders() {
+        return get(Aggregate.TOTAL_ORDERS, Long.class);
+    }
+
+    /**
+     * @return the value of {@link Aggregate#TOTAL_UNITS_SOLD}
+     */
+    public long totalUnitsSold() {
+        return get(Aggregate.TOTAL_UNITS_SOLD, Long.class);
+    }
+
+    /**
+     * @return the value of {@link Aggregate#UNITS_SOLD_BY_PRODUCT}
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Integer> totalUnitsSoldByProduct() {
+        return get(Aggregate.UNITS_SOLD_BY_PRODUCT, Map.class);
+    }
+
+    /**
+     * @return the value of {@link Aggregate#UNITS_SOLD_BY_CUSTOMER_BY_PRODUCT}
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Map<String, Integer>> totalUnitsSoldByCustomerByProduct() {
+        return get(Aggregate.UNITS_SOLD_BY_CUSTOMER_BY_PRODUCT, Map.class);
+    }
+
+    /**
+     * @return the value of {@link Aggregate#UNITS_SOLD_BY_COUNTRY_BY_PRODUCT}
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Map<String, Integer>> totalUnitsSoldByCountryByProduct() {
+        return get(Aggregate.UNITS_SOLD_BY_COUNTRY_BY_PRODUCT, Map.class);
+    }
+
+    /**
+     * @return the value of {@link Aggregate#TOTAL_REVENUE}
+     */
+    public BigDecimal totalRevenue() {
+        return get(Aggregate.TOTAL_REVENUE, BigDecimal.class);
+    }
+
+    /**
+     * @return the value of {@link Aggregate#REVENUE_BY_PRODUCT}
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, BigDecimal> totalRevenueByProduct() {
+        return get(Aggregate.REVENUE_BY_PRODUCT, Map.class);
+    }
+
+    /**
+     * @return the value of {@link Aggregate#REVENUE_BY_CUSTOMER}
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, BigDecimal> totalRevenueByCustomer() {
+        return get(Aggregate.REVENUE_BY_CUSTOMER, Map.class);
+    }
+
+    /**
+     * @return the value of {@link Aggregate#REVENUE_BY_CUSTOMER_BY_PRODUCT}
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Map<String, BigDecimal>> totalRevenueByCustomerByProduct() {
+        return get(Aggregate.REVENUE_BY_CUSTOMER_BY_PRODUCT, Map.class);
+    }
+
+    /**
+     * @return the value of {@link Aggregate#REVENUE_BY_COUNTRY}
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, BigDecimal> totalRevenueByCountry() {
+        return get(Aggregate.REVENUE_BY_COUNTRY, Map.class);
+    }
+
+    /**
+     * @return the value of {@link Aggregate#REVENUE_BY_COUNTRY_BY_PRODUCT}
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Map<String, BigDecimal>> totalRevenueByCountryByProduct() {
+        return get(Aggregate.REVENUE_BY_COUNTRY_BY_PRODUCT, Map.class);
+    }
+
+    /**
+     * @return the value of {@link Aggregate#DISTINCT_COUNTRIES}
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> distinctCountries() {
+        return get(Aggregate.DISTINCT_COUNTRIES, List.class);
+    }
+
+    /**
+     * @return the value of {@link Aggregate#DISTINCT_CUSTOMERS}
+     */
+    @SuppressWarnings("unchecked")
+    public List<Customer> distinctCustomers() {
+        return get(Aggregate.DISTINCT_CUSTOMERS, List.class);
+    }
+
+    /**
+     * @return the value of an aggregate as held, for decorators that pass values through
+     */
+    Object value(Aggregate aggregate) {
+        return get(aggregate, Object.class);
+    }
+
+    private <T> T get(Aggregate aggregate, Class<T> type) {
+        if (!values.containsKey(aggregate)) {
+            throw new IllegalStateException("Aggregate " + aggregate + " was not requested");
+        }
+        return type.cast(values.get(aggregate));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof AggregateResults other && values.equals(other.values));
+    }
+
+    @Override
+    public int hashCode() {
+        return values.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "AggregateResults" + values;
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.modernjava.analytics;
+
+import lombok.NonNull;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Order analytics decorator caching query results until the orders change
+ * <p>
+ * Results are cached per aggregate and per version of the order set, as reported by a version
+ * supplier (e.g. {@link IncrementalOrderAnalytics#version()}). A call to {@link #analyze(Set)}
+ * computes only the aggregates that are not cached, in a single pass of the underlying analytics.
+ * Other queries, such as parameterized ones, can be cached with {@link #query(Object, Supplier)}.
+ * <p>
+ * The cache holds at most a fixed number of entries and evicts the least recently used one when full.
+ * When the version increases, the entries of older versions are dropped on the next query, and
+ * {@link #invalidate()} drops all entries for order sources that cannot report a version. Versions are read
+ * without holding the cache lock, so a query may see a version older than one already cached; such a query
+ * is computed without using or filling the cache rather than rolling the cache back. Cached
+ * collections are returned as unmodifiable views, since they are shared between callers.
+ * <p>
+ * The cache is thread safe. Concurrent misses for the same query may each compute the result.
+ */
+public class CachingOrderAnalytics implements OrderAnalytics {
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    private final OrderAnalytics delegate;
+    private final LongSupplier version;
+    private final int maxEntries;
+    private final LinkedHashMap<Key, Object> entries;
+    private long cachedVersion = Long.MIN_VALUE;
+    // Incremented by every invalidation, so results computed before one are not cached after it
+    private long generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * Cache the results of analytics over orders that do not change, or that are invalidated explicitly
+     *
+     * @param delegate the analytics computing the results
+     */
+    public CachingOrderAnalytics(@NonNull OrderAnalytics delegate) {
+        this(delegate, () -> 0L, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param delegate   the analytics computing the results
+     * @param version    the version of the orders, which must increase whenever the orders change; it is
+     *                   first read by the first query
+     * @param maxEntries the maximum number of cached results
+     */
+    public CachingOrderAnalytics(@NonNull OrderAnalytics delegate, @NonNull LongSupplier version, int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Max entries must be positive: " + maxEntries);
+        }
+        this.delegate = delegate;
+        this.version = version;
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                if (size() > CachingOrderAnalytics.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * The counters of a cache
+     *
+     * @param hits          the number of results served from the cache
+     * @param misses        the number of results that had to be computed
+     * @param evictions     the number of results evicted to make room for others
+     * @param invalidations the number of results dropped because the orders changed
+     * @param size          the number of cached results
+     */
+    public record Stats(long hits, long misses, long evictions, long invalidations, int size) {
+        /**
+         * @return the fraction of results served from the cache, or 0 if nothing was queried
+         */
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+    }
+
+    private record Key(Object query, long version) {
+    }
+
+    @Override
+    public AggregateResults analyze(@NonNull Set<Aggregate> aggregates) {
+        long current = version.getAsLong();
+        Map<Aggregate, Object> values = new EnumMap<>(Aggregate.class);
+        Set<Aggregate> missing = EnumSet.noneOf(Aggregate.class);
+        long missGeneration;
+        synchronized (this) {
+            boolean cacheable = refresh(current);
+            missGeneration = generation;
+            for (Aggregate aggregate : aggregates) {
+                var key = new Key(aggregate, current);
+                if (cacheable && entries.containsKey(key)) {
+                    values.put(aggregate, entries.get(key));
+                    hits++;
+                } else {
+                    missing.add(aggregate);
+                    misses++;
+                }
+            }
+        }
+        long ordersScanned = 0;
+        long itemsScanned = 0;
+        if (!missing.isEmpty()) {
+            var computed = delegate.analyze(missing);
+            ordersScanned = computed.ordersScanned();
+            itemsScanned = computed.itemsScanned();
+            synchronized (this) {
+                for (Aggregate aggregate : missing) {
+                    var value = unmodifiable(computed.value(aggregate));
+                    values.put(aggregate, value);
+                    put(new Key(aggregate, current), missGeneration, value);
+                }
+            }
+        }
+        return new AggregateResults(values, ordersScanned, itemsScanned);
+    }
+
+    /**
+     * Get the cached result of a query, computing it on a miss
+     *
+     * @param query  the query, which must implement equals and hashCode, e.g. a record of the query parameters
+     * @param result computes the result of the query
+     * @param <T>    the type of the result
+     * @return the result, which must not be modified
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T query(@NonNull Object query, @NonNull Supplier<T> result) {
+        long current = version.getAsLong();
+        var key = new Key(query, current);
+        long missGeneration;
+        synchronized (this) {
+            if (refresh(current) && entries.containsKey(key)) {
+                hits++;
+                return (T) entries.get(key);
+            }
+            misses++;
+            missGeneration = generation;
+        }
+        T value = result.get();
+        synchronized (this) {
+            put(key, missGeneration, value);
+        }
+        return value;
+    }
+
+    /**
+     * Drop all cached results, including those of queries still being computed
+     */
+    public synchronized void invalidate() {
+        invalidations += entries.size();
+        entries.clear();
+        generation++;
+    }
+
+    /**
+     * @return a snapshot of the cache counters
+     */
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, invalidations, entries.size());
+    }
+
+    /**
+     * Move the cache forward to a version read by a query
+     *
+     * @return false if the version is older than the cached one, so the query must bypass the cache
+     */
+    private boolean refresh(long current) {
+        if (current > cachedVersion) {
+            invalidate();
+            cachedVersion = current;
+        }
+        return current == cachedVersion;
+    }
+
+    private void put(Key key, long missGeneration, Object value) {
+        // A result computed for a version that has since been superseded, or before an invalidation, may be stale
+        if (key.version() == cachedVersion && missGeneration == generation) {
+            entries.put(key, value);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object unmodifiable(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            map.forEach((k, v) -> copy.put(k, unmodifiable(v)));
+            return Collections.unmodifiableMap(copy);
+        }
+        if (value instanceof List<?> list) {
+            return Collections.unmodifiableList((List<Object>) list);
+        }
+        return value;
+    }
+}
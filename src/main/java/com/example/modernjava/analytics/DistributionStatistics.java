@@ -0,0 +1,134 @@
+package com.example.modernjava.analytics;
+
+import com.example.modernjava.analytics.sketch.QuantileSketch;
+import lombok.NonNull;
+
+import java.util.function.DoubleConsumer;
+
+/**
+ * Count, sum, minimum, maximum, mean, variance and approximate quantiles of a stream of values, in one pass
+ * <p>
+ * Like {@link java.util.DoubleSummaryStatistics}, with the mean and the sum of squared deviations updated
+ * by Welford's algorithm, which stays accurate where the naive sum of squares cancels catastrophically,
+ * and quantiles estimated by a {@link QuantileSketch}. Two instances are combined with Chan's parallel
+ * formula, so the statistics of a parallel stream equal those of a sequential one up to rounding.
+ * <p>
+ * Instances are not thread safe; {@link OrderStatistics} keeps one per statistic and per thread, and joins
+ * them with {@link #combine(DistributionStatistics)}.
+ */
+public final class DistributionStatistics implements DoubleConsumer {
+    private long count;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private double mean;
+    private double squaredDeviations;
+    private final QuantileSketch sketch = new QuantileSketch();
+
+    @Override
+    public void accept(double value) {
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        double delta = value - mean;
+        mean += delta / count;
+        squaredDeviations += delta * (value - mean);
+        sketch.add(value);
+    }
+
+    /**
+     * Merge the statistics of other values into these statistics
+     *
+     * @param other the statistics to merge
+     * @return these statistics
+     */
+    public DistributionStatistics combine(@NonNull DistributionStatistics other) {
+        if (other.count == 0) {
+            return this;
+        }
+        long combinedCount = count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / combinedCount;
+        squaredDeviations += other.squaredDeviations + delta * delta * ((double) count * other.count / combinedCount);
+        count = combinedCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        sketch.merge(other.sketch);
+        return this;
+    }
+
+    /**
+     * @return number of values
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * @return sum of the values, 0 if there are none
+     */
+    public double sum() {
+        return sum;
+    }
+
+    /**
+     * @return smallest value, positive infinity if there are none
+     */
+    public double min() {
+        return min;
+    }
+
+    /**
+     * @return largest value, negative infinity if there are none
+     */
+    public double max() {
+        return max;
+    }
+
+    /**
+     * @return arithmetic mean of the values, 0 if there are none
+     */
+    public double mean() {
+        return mean;
+    }
+
+    /**
+     * @return population variance of the values, 0 if there are fewer than two
+     */
+    public double variance() {
+        return count < 2 ? 0 : squaredDeviations / count;
+    }
+
+    /**
+     * @return sample (unbiased) variance of the values, 0 if there are fewer than two
+     */
+    public double sampleVariance() {
+        return count < 2 ? 0 : squaredDeviations / (count - 1);
+    }
+
+    /**
+     * @return population standard deviation of the values
+     */
+    public double standardDeviation() {
+        return Math.sqrt(variance());
+    }
+
+    /**
+     * Estimate a quantile of the values, within the relative accuracy of the {@link QuantileSketch}
+     *
+     * @param quantile the quantile, between 0 and 1 inclusive, e.g. 0.5 for the median
+     * @return the estimated value, NaN if there are no values
+     */
+    public double quantile(double quantile) {
+        return sketch.quantile(quantile);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DistributionStatistics{count=%d, sum=%f, min=%f, max=%f, mean=%f, stdDev=%f, "
+                        + "p50=%f, p99=%f}", count, sum, min, max, mean, standardDeviation(), quantile(0.5),
+                quantile(0.99));
+    }
+}
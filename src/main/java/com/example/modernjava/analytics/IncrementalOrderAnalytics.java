@@ -0,0 +1,457 @@
+package com.example.modernjava.analytics;
+
+import com.example.modernjava.domain.Address;
+import com.example.modernjava.domain.Customer;
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.OrderItem;
+import lombok.NonNull;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Order analytics that are kept current as orders are added and removed
+ * <p>
+ * Instead of rescanning every order, each {@link #addOrder(Order)} or {@link #removeOrder(Order)}
+ * updates the running totals, the per-product, per-customer/product and per-country/product units
+ * and revenue, and reference counts for the distinct customers and countries, in time proportional
+ * to the number of items in the order. Groups disappear when the last order or item contributing to
+ * them is removed, so the totals and grouped maps equal those of {@link OrderAnalysisService} over the
+ * orders currently held. The distinct lists hold the same values, but in order of first addition among
+ * the values still referenced, which after removals can differ from the encounter order of a fresh
+ * recomputation.
+ * <p>
+ * The orders held are counted by identity, so a batch is validated as a whole before anything is
+ * changed: adding an order that cannot be aggregated, or removing one that is not held as many times as
+ * the batch removes it, fails without modifying the aggregates. Should applying a validated batch fail
+ * anyway, the aggregates are rebuilt from the orders held before the batch. Counting by identity keeps
+ * removal validation to a hash of the reference, rather than of the whole customer, address and item
+ * graph, but it means an order is removed by passing the instance that was added, and that the order
+ * must not be modified while it is held, since its removal subtracts its current contents. The
+ * references are retained for as long as the orders are held; that is what makes the validation and
+ * the rebuild possible.
+ * <p>
+ * Writers are serialized by a lock. Each aggregate is published to readers as an immutable value that
+ * is copied on write: the first read of an aggregate after a write recomputes only the entries of the
+ * products, customers or countries that the write touched and reuses the others, nested maps included,
+ * so the lock is held for the work of the changed groups plus a shallow copy of the affected map rather
+ * than a rebuild of every aggregate, and only briefly for aggregates that have not changed. Once
+ * {@link #snapshot()} has been taken, reads do not take the lock at all until the next write. Readers
+ * always see a consistent state and never see a partially applied order or batch.
+ */
+public class IncrementalOrderAnalytics implements OrderAnalytics {
+    private static final Set<Aggregate> PRODUCT_AGGREGATES =
+            EnumSet.of(Aggregate.UNITS_SOLD_BY_PRODUCT, Aggregate.REVENUE_BY_PRODUCT);
+    private static final Set<Aggregate> CUSTOMER_AGGREGATES = EnumSet.of(Aggregate.UNITS_SOLD_BY_CUSTOMER_BY_PRODUCT,
+            Aggregate.REVENUE_BY_CUSTOMER, Aggregate.REVENUE_BY_CUSTOMER_BY_PRODUCT);
+    private static final Set<Aggregate> COUNTRY_AGGREGATES = EnumSet.of(Aggregate.UNITS_SOLD_BY_COUNTRY_BY_PRODUCT,
+            Aggregate.REVENUE_BY_COUNTRY, Aggregate.REVENUE_BY_COUNTRY_BY_PRODUCT);
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile AggregateResults snapshot;
+    private volatile long version;
+    private final Map<Order, Integer> held = new IdentityHashMap<>();
+    private final Map<Aggregate, Published> published = new EnumMap<>(Aggregate.class);
+
+    private long totalOrders;
+    private long totalUnitsSold;
+    private RevenueAccumulator totalRevenue = new RevenueAccumulator();
+    private final Map<String, ProductTally> byProduct = new HashMap<>();
+    private final Map<String, GroupTally> byCustomer = new HashMap<>();
+    private final Map<String, GroupTally> byCountry = new HashMap<>();
+    private final Map<String, Integer> countryReferences = new LinkedHashMap<>();
+    private final Map<Customer, Integer> customerReferences = new LinkedHashMap<>();
+
+    /**
+     * Add an order to the aggregates
+     *
+     * @param order the order to add
+     * @throws IllegalArgumentException if the order lacks a customer, billing address, items or product
+     *                                  prices needed by the aggregates
+     */
+    public void addOrder(@NonNull Order order) {
+        addOrders(List.of(order));
+    }
+
+    /**
+     * Add a batch of orders to the aggregates; readers see either none or all of the batch
+     *
+     * @param orders the orders to add
+     * @throws IllegalArgumentException if an order lacks a customer, billing address, items or product
+     *                                  prices needed by the aggregates, in which case none of the batch is added
+     */
+    public void addOrders(@NonNull Iterable<Order> orders) {
+        List<Order> batch = new ArrayList<>();
+        for (Order order : orders) {
+            batch.add(validate(order));
+        }
+        writeLock.lock();
+        try {
+            applyAll(batch, 1);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Remove an order that was previously added from the aggregates
+     *
+     * @param order the order to remove, the same instance as an order that was added
+     * @throws IllegalArgumentException if the order is not held
+     */
+    public void removeOrder(@NonNull Order order) {
+        removeOrders(List.of(order));
+    }
+
+    /**
+     * Remove a batch of orders that were previously added; readers see either none or all of the batch
+     *
+     * @param orders the orders to remove, each the same instance as an order that was added
+     * @throws IllegalArgumentException if an order is not held as many times as the batch removes it, in
+     *                                  which case none of the batch is removed
+     */
+    public void removeOrders(@NonNull Iterable<Order> orders) {
+        List<Order> batch = new ArrayList<>();
+        orders.forEach(batch::add);
+        writeLock.lock();
+        try {
+            Map<Order, Integer> removals = new IdentityHashMap<>();
+            for (Order order : batch) {
+                int removed = removals.merge(order, 1, Integer::sum);
+                if (removed > held.getOrDefault(order, 0)) {
+                    throw new IllegalArgumentException("Order was not added: " + order);
+                }
+            }
+            applyAll(batch, -1);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return number of changes applied so far, increasing with every successful add or remove call
+     */
+    public long version() {
+        return version;
+    }
+
+    private static Order validate(Order order) {
+        if (order == null || order.getCustomer() == null || order.getCustomer().getBillingAddress() == null
+                || order.getItems() == null) {
+            throw new IllegalArgumentException("Order lacks a customer, billing address or items: " + order);
+        }
+        for (OrderItem item : order.getItems()) {
+            if (item == null || item.getProduct() == null || item.getProduct().getPrice() == null) {
+                throw new IllegalArgumentException("Order item lacks a product or price: " + order);
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Apply a validated batch and publish it, or rebuild the aggregates of the orders held before the
+     * batch if applying it fails. Called with the write lock held.
+     */
+    private void applyAll(List<Order> batch, int sign) {
+        try {
+            batch.forEach(order -> apply(order, sign));
+        } catch (RuntimeException e) {
+            rebuild();
+            throw e;
+        }
+        batch.forEach(order -> reference(held, order, sign));
+        version++;
+        snapshot = null;
+    }
+
+    private void rebuild() {
+        totalOrders = 0;
+        totalUnitsSold = 0;
+        totalRevenue = new RevenueAccumulator();
+        byProduct.clear();
+        byCustomer.clear();
+        byCountry.clear();
+        countryReferences.clear();
+        customerReferences.clear();
+        published.clear();
+        held.forEach((order, count) -> {
+            for (int i = 0; i < count; i++) {
+                apply(order, 1);
+            }
+        });
+    }
+
+    /**
+     * Apply an order to every aggregate, with a sign of 1 to add it or -1 to remove it
+     */
+    private void apply(Order order, int sign) {
+        var customer = order.getCustomer();
+        var country = customer.getBillingAddress().getPostalCountry();
+        int customers = customerReferences.size();
+        int countries = countryReferences.size();
+        totalOrders += sign;
+        reference(customerReferences, customer, sign);
+        reference(countryReferences, order.getAltShippingAddress(), sign);
+        reference(countryReferences, customer.getBillingAddress(), sign);
+        reference(countryReferences, customer.getShippingAddress(), sign);
+        if (customers != customerReferences.size()) {
+            changed(Aggregate.DISTINCT_CUSTOMERS, null);
+        }
+        if (countries != countryReferences.size()) {
+            changed(Aggregate.DISTINCT_COUNTRIES, null);
+        }
+        changed(CUSTOMER_AGGREGATES, customer.getName());
+        changed(COUNTRY_AGGREGATES, country);
+        var customerTally = tally(byCustomer, customer.getName(), sign);
+        var countryTally = tally(byCountry, country, sign);
+        for (OrderItem item : order.getItems()) {
+            totalUnitsSold += (long) sign * item.getQuantity();
+            revenue(totalRevenue, item, sign);
+            var product = item.getProduct().getName();
+            changed(PRODUCT_AGGREGATES, product);
+            add(byProduct, product, item, sign);
+            add(customerTally.byProduct, product, item, sign);
+            add(countryTally.byProduct, product, item, sign);
+            revenue(customerTally.revenue, item, sign);
+            revenue(countryTally.revenue, item, sign);
+        }
+        release(byCustomer, customer.getName(), customerTally);
+        release(byCountry, country, countryTally);
+    }
+
+    /**
+     * Record that the entry of a key, or the whole value for a null key, of published aggregates changed
+     */
+    private void changed(Set<Aggregate> aggregates, String key) {
+        for (Aggregate aggregate : aggregates) {
+            changed(aggregate, key);
+        }
+    }
+
+    private void changed(Aggregate aggregate, String key) {
+        var current = published.get(aggregate);
+        if (current != null) {
+            if (key == null) {
+                published.remove(aggregate);
+            } else {
+                current.changed.add(key);
+            }
+        }
+    }
+
+    private static void revenue(RevenueAccumulator revenue, OrderItem item, int sign) {
+        if (sign > 0) {
+            revenue.add(item);
+        } else {
+            revenue.subtract(item);
+        }
+    }
+
+    private static <K> void reference(Map<K, Integer> references, K key, int sign) {
+        references.merge(key, sign, (count, delta) -> count + delta == 0 ? null : count + delta);
+    }
+
+    private static void reference(Map<String, Integer> references, Address address, int sign) {
+        if (address != null) {
+            reference(references, address.getPostalCountry(), sign);
+        }
+    }
+
+    private static GroupTally tally(Map<String, GroupTally> tallies, String key, int sign) {
+        var tally = tallies.computeIfAbsent(key, k -> new GroupTally());
+        tally.orders += sign;
+        return tally;
+    }
+
+    private static void release(Map<String, GroupTally> tallies, String key, GroupTally tally) {
+        if (tally.orders == 0) {
+            tallies.remove(key);
+        }
+    }
+
+    private static void add(Map<String, ProductTally> tallies, String product, OrderItem item, int sign) {
+        var tally = tallies.computeIfAbsent(product, k -> new ProductTally());
+        tally.items += sign;
+        tally.units += sign * item.getQuantity();
+        revenue(tally.revenue, item, sign);
+        if (tally.items == 0) {
+            tallies.remove(product);
+        }
+    }
+
+    @Override
+    public AggregateResults analyze(@NonNull Set<Aggregate> aggregates) {
+        var current = snapshot;
+        if (current != null) {
+            return current.select(aggregates);
+        }
+        writeLock.lock();
+        try {
+            return publish(aggregates);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public long totalOrders() {
+        return analyze(EnumSet.of(Aggregate.TOTAL_ORDERS)).totalOrders();
+    }
+
+    /**
+     * @return an immutable snapshot of all aggregates, shared by reads until the next write
+     */
+    public AggregateResults snapshot() {
+        var current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        writeLock.lock();
+        try {
+            if (snapshot == null) {
+                snapshot = publish(EnumSet.allOf(Aggregate.class));
+            }
+            return snapshot;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Bring the published values of some aggregates up to date. Called with the write lock held.
+     */
+    private AggregateResults publish(Set<Aggregate> aggregates) {
+        Map<Aggregate, Object> values = new EnumMap<>(Aggregate.class);
+        for (Aggregate aggregate : aggregates) {
+            values.put(aggregate, switch (aggregate) {
+                case TOTAL_ORDERS -> totalOrders;
+                case TOTAL_UNITS_SOLD -> totalUnitsSold;
+                case TOTAL_REVENUE -> totalRevenue.total();
+                default -> published(aggregate).value;
+            });
+        }
+        return new AggregateResults(values);
+    }
+
+    private Published published(Aggregate aggregate) {
+        var current = published.get(aggregate);
+        if (current == null) {
+            current = switch (aggregate) {
+                case DISTINCT_COUNTRIES -> new Published(countryReferences.keySet().stream().toList());
+                case DISTINCT_CUSTOMERS -> new Published(customerReferences.keySet().stream().toList());
+                default -> {
+                    Map<String, Object> entries = new HashMap<>();
+                    for (String key : keys(aggregate)) {
+                        entries.put(key, entry(aggregate, key));
+                    }
+                    yield new Published(entries);
+                }
+            };
+            published.put(aggregate, current);
+        } else if (!current.changed.isEmpty()) {
+            // Earlier values share the entries map, so the changed entries go into a copy
+            Map<String, Object> entries = new HashMap<>(current.entries);
+            for (String key : current.changed) {
+                var entry = entry(aggregate, key);
+                if (entry == null) {
+                    entries.remove(key);
+                } else {
+                    entries.put(key, entry);
+                }
+            }
+            current = new Published(entries);
+            published.put(aggregate, current);
+        }
+        return current;
+    }
+
+    private Set<String> keys(Aggregate aggregate) {
+        if (PRODUCT_AGGREGATES.contains(aggregate)) {
+            return byProduct.keySet();
+        }
+        return CUSTOMER_AGGREGATES.contains(aggregate) ? byCustomer.keySet() : byCountry.keySet();
+    }
+
+    /**
+     * @return the current value of the entry of a key of a keyed aggregate, or null if the key has none
+     */
+    private Object entry(Aggregate aggregate, String key) {
+        var product = PRODUCT_AGGREGATES.contains(aggregate) ? byProduct.get(key) : null;
+        var group = CUSTOMER_AGGREGATES.contains(aggregate) ? byCustomer.get(key)
+                : COUNTRY_AGGREGATES.contains(aggregate) ? byCountry.get(key) : null;
+        if (product == null && group == null) {
+            return null;
+        }
+        return switch (aggregate) {
+            case UNITS_SOLD_BY_PRODUCT -> product.units;
+            case REVENUE_BY_PRODUCT -> product.revenue.total();
+            case REVENUE_BY_CUSTOMER, REVENUE_BY_COUNTRY -> group.revenue.total();
+            case UNITS_SOLD_BY_CUSTOMER_BY_PRODUCT, UNITS_SOLD_BY_COUNTRY_BY_PRODUCT ->
+                    Collections.unmodifiableMap(units(group.byProduct));
+            case REVENUE_BY_CUSTOMER_BY_PRODUCT, REVENUE_BY_COUNTRY_BY_PRODUCT ->
+                    Collections.unmodifiableMap(revenue(group.byProduct));
+            default -> throw new IllegalArgumentException("Not a keyed aggregate: " + aggregate);
+        };
+    }
+
+    private static Map<String, Integer> units(Map<String, ProductTally> tallies) {
+        Map<String, Integer> units = new HashMap<>();
+        tallies.forEach((product, tally) -> units.put(product, tally.units));
+        return units;
+    }
+
+    private static Map<String, BigDecimal> revenue(Map<String, ProductTally> tallies) {
+        Map<String, BigDecimal> revenue = new HashMap<>();
+        tallies.forEach((product, tally) -> revenue.put(product, tally.revenue.total()));
+        return revenue;
+    }
+
+    /**
+     * The value of an aggregate last handed to readers, with the keys whose entries have changed since
+     */
+    private static final class Published {
+        final Object value;
+        final Map<String, Object> entries;
+        final Set<String> changed = new HashSet<>();
+
+        Published(List<?> value) {
+            this.value = value;
+            this.entries = null;
+        }
+
+        Published(Map<String, Object> entries) {
+            this.value = Collections.unmodifiableMap(entries);
+            this.entries = entries;
+        }
+    }
+
+    /**
+     * Running totals for a product, counting the items so the product can be dropped with its last item
+     */
+    private static class ProductTally {
+        int items;
+        int units;
+        final RevenueAccumulator revenue = new RevenueAccumulator();
+    }
+
+    /**
+     * Running totals for a customer or country, counting the orders so the group can be dropped
+     * with its last order
+     */
+    private static class GroupTally {
+        int orders;
+        final RevenueAccumulator revenue = new RevenueAccumulator();
+        final Map<String, ProductTally> byProduct = new HashMap<>();
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.modernjava.analytics;
+
+import com.example.modernjava.domain.Customer;
+import com.example.modernjava.metrics.AnalyticsMetrics;
+import lombok.NonNull;
+
+import java.math.BigDecimal;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Order analytics decorator recording the latency, rows scanned and allocation of every query
+ * in an {@link AnalyticsMetrics} registry, under the name of the query method
+ * <p>
+ * The rows scanned are those the delegate reports in its {@link AggregateResults}: the orders and
+ * order items its aggregator actually visited, which is 0 for backends answering from precomputed
+ * state or a cache. Every query is therefore answered through {@link OrderAnalytics#analyze(Set)},
+ * including the per-method ones, which the delegate may implement differently. Failed calls are timed
+ * but record no rows. The overhead is two {@link System#nanoTime()} calls, two allocation counter reads
+ * and a handful of counter updates per query, which is negligible next to a scan of the orders.
+ */
+public class InstrumentedOrderAnalytics implements OrderAnalytics {
+    private final OrderAnalytics delegate;
+    private final AnalyticsMetrics metrics;
+
+    /**
+     * @param delegate the analytics answering the queries
+     * @param metrics  the registry to record into
+     */
+    public InstrumentedOrderAnalytics(@NonNull OrderAnalytics delegate, @NonNull AnalyticsMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    private AggregateResults record(String query, Set<Aggregate> aggregates) {
+        long allocatedBefore = AnalyticsMetrics.allocatedBytes();
+        long start = System.nanoTime();
+        AggregateResults results = null;
+        try {
+            results = delegate.analyze(aggregates);
+            return results;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            long allocatedAfter = AnalyticsMetrics.allocatedBytes();
+            metrics.record(query, nanos, results == null ? 0 : results.ordersScanned(),
+                    results == null ? 0 : results.itemsScanned(),
+                    allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore);
+        }
+    }
+
+    private AggregateResults record(String query, Aggregate aggregate) {
+        return record(query, EnumSet.of(aggregate));
+    }
+
+    @Override
+    public AggregateResults analyze(@NonNull Set<Aggregate> aggregates) {
+        return record("analyze", aggregates);
+    }
+
+    @Override
+    public long totalOrders() {
+        return record("totalOrders", Aggregate.TOTAL_ORDERS).totalOrders();
+    }
+
+    @Override
+    public long totalUnitsSold() {
+        return record("totalUnitsSold", Aggregate.TOTAL_UNITS_SOLD).totalUnitsSold();
+    }
+
+    @Override
+    public Map<String, Integer> totalUnitsSoldByProduct() {
+        return record("totalUnitsSoldByProduct", Aggregate.UNITS_SOLD_BY_PRODUCT).totalUnitsSoldByProduct();
+    }
+
+    @Override
+    public Map<String, Map<String, Integer>> totalUnitsSoldByCustomerByProduct() {
+        return record("totalUnitsSoldByCustomerByProduct", Aggregate.UNITS_SOLD_BY_CUSTOMER_BY_PRODUCT)
+                .totalUnitsSoldByCustomerByProduct();
+    }
+
+    @Override
+    public Map<String, Map<String, Integer>> totalUnitsSoldByCountryByProduct() {
+        return record("totalUnitsSoldByCountryByProduct", Aggregate.UNITS_SOLD_BY_COUNTRY_BY_PRODUCT)
+                .totalUnitsSoldByCountryByProduct();
+    }
+
+    @Override
+    public BigDecimal totalRevenue() {
+        return record("totalRevenue", Aggregate.TOTAL_REVENUE).totalRevenue();
+    }
+
+    @Override
+    public Map<String, BigDecimal> totalRevenueByProduct() {
+        return record("totalRevenueByProduct", Aggregate.REVENUE_BY_PRODUCT).totalRevenueByProduct();
+    }
+
+    @Override
+    public Map<String, BigDecimal> totalRevenueByCustomer() {
+        return record("totalRevenueByCustomer", Aggregate.REVENUE_BY_CUSTOMER).totalRevenueByCustomer();
+    }
+
+    @Override
+    public Map<String, Map<String, BigDecimal>> totalRevenueByCustomerByProduct() {
+        return record("totalRevenueByCustomerByProduct", Aggregate.REVENUE_BY_CUSTOMER_BY_PRODUCT)
+                .totalRevenueByCustomerByProduct();
+    }
+
+    @Override
+    public Map<String, BigDecimal> totalRevenueByCountry() {
+        return record("totalRevenueByCountry", Aggregate.REVENUE_BY_COUNTRY).totalRevenueByCountry();
+    }
+
+    @Override
+    public Map<String, Map<String, BigDecimal>> totalRevenueByCountryByProduct() {
+        return record("totalRevenueByCountryByProduct", Aggregate.REVENUE_BY_COUNTRY_BY_PRODUCT)
+                .totalRevenueByCountryByProduct();
+    }
+
+    @Override
+    public List<String> distinctCountries() {
+        return record("distinctCountries", Aggregate.DISTINCT_COUNTRIES).distinctCountries();
+    }
+
+    @Override
+    public List<Customer> distinctCustomers() {
+        return record("distinctCustomers", Aggregate.DISTINCT_CUSTOMERS).distinctCustomers();
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.modernjava.analytics;
+
+import com.example.modernjava.domain.Address;
+import com.example.modernjava.domain.Customer;
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.OrderItem;
+import lombok.NonNull;
+
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collector;
+
+/**
+ * Mutable accumulator that computes any combination of {@link Aggregate}s in a single
+ * traversal of a collection of orders and their items.
+ * <p>
+ * Only the state needed for the requested aggregates is maintained, and the item level
+ * loop is skipped entirely when none of the requested aggregates need it. Aggregators can
+ * be combined, which makes them usable as the accumulation type of a {@link Collector}
+ * over a parallel stream. Results are identical to the corresponding per-method queries
+ * of {@link OrderAnalysisService}, including the encounter order of the distinct lists.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class OrderAggregator implements Consumer<Order> {
+    private final Set<Aggregate> aggregates;
+    private final boolean unitsSoldByProduct;
+    private final boolean unitsSoldByCustomerByProduct;
+    private final boolean unitsSoldByCountryByProduct;
+    private final boolean revenue;
+    private final boolean revenueByProduct;
+    private final boolean revenueByCustomer;
+    private final boolean revenueByCustomerByProduct;
+    private final boolean revenueByCountry;
+    private final boolean revenueByCountryByProduct;
+    private final boolean countries;
+    private final boolean customers;
+    private final boolean items;
+
+    private long totalOrders;
+    private long itemsScanned;
+    private long totalUnitsSold;
+    private final Map<String, Integer> unitsByProduct = new HashMap<>();
+    private final Map<String, Map<String, Integer>> unitsByCustomerByProduct = new HashMap<>();
+    private final Map<String, Map<String, Integer>> unitsByCountryByProduct = new HashMap<>();
+    private final RevenueAccumulator totalRevenue = new RevenueAccumulator();
+    private final Map<String, RevenueAccumulator> revenueByProductMap = new HashMap<>();
+    private final Map<String, RevenueAccumulator> revenueByCustomerMap = new HashMap<>();
+    private final Map<String, Map<String, RevenueAccumulator>> revenueByCustomerByProductMap = new HashMap<>();
+    private final Map<String, RevenueAccumulator> revenueByCountryMap = new HashMap<>();
+    private final Map<String, Map<String, RevenueAccumulator>> revenueByCountryByProductMap = new HashMap<>();
+    private final Set<String> distinctCountries = new LinkedHashSet<>();
+    private final Set<Customer> distinctCustomers = new LinkedHashSet<>();
+
+    public OrderAggregator(@NonNull Set<Aggregate> aggregates) {
+        this.aggregates = aggregates.isEmpty() ? EnumSet.noneOf(Aggregate.class) : EnumSet.copyOf(aggregates);
+        this.unitsSoldByProduct = this.aggregates.contains(Aggregate.UNITS_SOLD_BY_PRODUCT);
+        this.unitsSoldByCustomerByProduct = this.aggregates.contains(Aggregate.UNITS_SOLD_BY_CUSTOMER_BY_PRODUCT);
+        this.unitsSoldByCountryByProduct = this.aggregates.contains(Aggregate.UNITS_SOLD_BY_COUNTRY_BY_PRODUCT);
+        this.revenue = this.aggregates.contains(Aggregate.TOTAL_REVENUE);
+        this.revenueByProduct = this.aggregates.contains(Aggregate.REVENUE_BY_PRODUCT);
+        this.revenueByCustomer = this.aggregates.contains(Aggregate.REVENUE_BY_CUSTOMER);
+        this.revenueByCustomerByProduct = this.aggregates.contains(Aggregate.REVENUE_BY_CUSTOMER_BY_PRODUCT);
+        this.revenueByCountry = this.aggregates.contains(Aggregate.REVENUE_BY_COUNTRY);
+        this.revenueByCountryByProduct = this.aggregates.contains(Aggregate.REVENUE_BY_COUNTRY_BY_PRODUCT);
+        this.countries = this.aggregates.contains(Aggregate.DISTINCT_COUNTRIES);
+        this.customers = this.aggregates.contains(Aggregate.DISTINCT_CUSTOMERS);
+        this.items = this.aggregates.stream().anyMatch(Aggregate::needsItems);
+    }
+
+    /**
+     * Create a collector that computes the requested aggregates in a single pass over a stream of orders
+     *
+     * @param aggregates the aggregates to compute
+     * @return a collector producing the requested aggregates
+     */
+    public static Collector<Order, OrderAggregator, AggregateResults> toAggregates(@NonNull Set<Aggregate> aggregates) {
+        return Collector.of(() -> new OrderAggregator(aggregates), OrderAggregator::accept,
+                OrderAggregator::combine, OrderAggregator::results);
+    }
+
+    /**
+     * Fold a single order and its items into the aggregates
+     *
+     * @param order the order to add
+     */
+    @Override
+    public void accept(Order order) {
+        totalOrders++;
+        var customer = order.getCustomer();
+        if (countries) {
+            addCountry(order.getAltShippingAddress());
+            addCountry(customer.getBillingAddress());
+            addCountry(customer.getShippingAddress());
+        }
+        if (customers) {
+            distinctCustomers.add(customer);
+        }
+        if (!items) {
+            return;
+        }
+        itemsScanned += order.getItems().size();
+        String customerName = customer.getName();
+        String country = unitsSoldByCountryByProduct || revenueByCountry || revenueByCountryByProduct
+                ? customer.getBillingAddress().getPostalCountry() : null;
+        Map<String, Integer> customerUnits = unitsSoldByCustomerByProduct
+                ? unitsByCustomerByProduct.computeIfAbsent(customerName, k -> new HashMap<>()) : null;
+        Map<String, Integer> countryUnits = unitsSoldByCountryByProduct
+                ? unitsByCountryByProduct.computeIfAbsent(country, k -> new HashMap<>()) : null;
+        RevenueAccumulator customerRevenue = revenueByCustomer
+                ? revenueByCustomerMap.computeIfAbsent(customerName, k -> new RevenueAccumulator()) : null;
+        Map<String, RevenueAccumulator> customerProductRevenue = revenueByCustomerByProduct
+                ? revenueByCustomerByProductMap.computeIfAbsent(customerName, k -> new HashMap<>()) : null;
+        RevenueAccumulator countryRevenue = revenueByCountry
+                ? revenueByCountryMap.computeIfAbsent(country, k -> new RevenueAccumulator()) : null;
+        Map<String, RevenueAccumulator> countryProductRevenue = revenueByCountryByProduct
+                ? revenueByCountryByProductMap.computeIfAbsent(country, k -> new HashMap<>()) : null;
+        for (OrderItem item : order.getItems()) {
+            int quantity = item.getQuantity();
+            String product = item.getProduct().getName();
+            totalUnitsSold += quantity;
+            if (unitsSoldByProduct) {
+                unitsByProduct.merge(product, quantity, Integer::sum);
+            }
+            if (customerUnits != null) {
+                customerUnits.merge(product, quantity, Integer::sum);
+            }
+            if (countryUnits != null) {
+                countryUnits.merge(product, quantity, Integer::sum);
+            }
+            if (revenue) {
+                totalRevenue.add(item);
+            }
+            if (revenueByProduct) {
+                revenueByProductMap.computeIfAbsent(product, k -> new RevenueAccumulator()).add(item);
+            }
+            if (customerRevenue != null) {
+                customerRevenue.add(item);
+            }
+            if (customerProductRevenue != null) {
+                customerProductRevenue.computeIfAbsent(product, k -> new RevenueAccumulator()).add(item);
+            }
+            if (countryRevenue != null) {
+                countryRevenue.add(item);
+            }
+            if (countryProductRevenue != null) {
+                countryProductRevenue.computeIfAbsent(product, k -> new RevenueAccumulator()).add(item);
+            }
+        }
+    }
+
+    private void addCountry(Address address) {
+        if (address != null) {
+            distinctCountries.add(address.getPostalCountry());
+        }
+    }
+
+    /**
+     * Merge the state of another aggregator, holding the orders that follow the orders
+     * of this aggregator, into this aggregator
+     *
+     * @param other the aggregator to merge
+     * @return this aggregator
+     */
+    public OrderAggregator combine(@NonNull OrderAggregator other) {
+        totalOrders += other.totalOrders;
+        itemsScanned += other.itemsScanned;
+        totalUnitsSold += other.totalUnitsSold;
+        other.unitsByProduct.forEach((product, units) -> unitsByProduct.merge(product, units, Integer::sum));
+        mergeNestedUnits(unitsByCustomerByProduct, other.unitsByCustomerByProduct);
+        mergeNestedUnits(unitsByCountryByProduct, other.unitsByCountryByProduct);
+        totalRevenue.combine(other.totalRevenue);
+        mergeRevenue(revenueByProductMap, other.revenueByProductMap);
+        mergeRevenue(revenueByCustomerMap, other.revenueByCustomerMap);
+        other.revenueByCustomerByProductMap.forEach((key, revenues) ->
+                mergeRevenue(revenueByCustomerByProductMap.computeIfAbsent(key, k -> new HashMap<>()), revenues));
+        mergeRevenue(revenueByCountryMap, other.revenueByCountryMap);
+        other.revenueByCountryByProductMap.forEach((key, revenues) ->
+                mergeRevenue(revenueByCountryByProductMap.computeIfAbsent(key, k -> new HashMap<>()), revenues));
+        distinctCountries.addAll(other.distinctCountries);
+        distinctCustomers.addAll(other.distinctCustomers);
+        return this;
+    }
+
+    private static void mergeNestedUnits(Map<String, Map<String, Integer>> target,
+                                         Map<String, Map<String, Integer>> source) {
+        source.forEach((key, units) -> {
+            var targetUnits = target.computeIfAbsent(key, k -> new HashMap<>());
+            units.forEach((product, quantity) -> targetUnits.merge(product, quantity, Integer::sum));
+        });
+    }
+
+    private static void mergeRevenue(Map<String, RevenueAccumulator> target, Map<String, RevenueAccumulator> source) {
+        source.forEach((key, revenue) -> target.computeIfAbsent(key, k -> new RevenueAccumulator()).combine(revenue));
+    }
+
+    /**
+     * @return the requested aggregates computed from the orders seen so far
+     */
+    public AggregateResults results() {
+        Map<Aggregate, Object> values = new EnumMap<>(Aggregate.class);
+        for (Aggregate aggregate : aggregates) {
+            values.put(aggregate, switch (aggregate) {
+                case TOTAL_ORDERS -> totalOrders;
+                case TOTAL_UNITS_SOLD -> totalUnitsSold;
+                case UNITS_SOLD_BY_PRODUCT -> new HashMap<>(unitsByProduct);
+                case UNITS_SOLD_BY_CUSTOMER_BY_PRODUCT -> copyNestedUnits(unitsByCustomerByProduct);
+                case UNITS_SOLD_BY_COUNTRY_BY_PRODUCT -> copyNestedUnits(unitsByCountryByProduct);
+                case TOTAL_REVENUE -> totalRevenue.total();
+                case REVENUE_BY_PRODUCT -> totals(revenueByProductMap);
+                case REVENUE_BY_CUSTOMER -> totals(revenueByCustomerMap);
+                case REVENUE_BY_CUSTOMER_BY_PRODUCT -> nestedTotals(revenueByCustomerByProductMap);
+                case REVENUE_BY_COUNTRY -> totals(revenueByCountryMap);
+                case REVENUE_BY_COUNTRY_BY_PRODUCT -> nestedTotals(revenueByCountryByProductMap);
+                case DISTINCT_COUNTRIES -> distinctCountries.stream().toList();
+                case DISTINCT_CUSTOMERS -> distinctCustomers.stream().toList();
+            });
+        }
+        return new AggregateResults(values, totalOrders, itemsScanned);
+    }
+
+    private static Map<String, Map<String, Integer>> copyNestedUnits(Map<String, Map<String, Integer>> source) {
+        Map<String, Map<String, Integer>> copy = new HashMap<>();
+        source.forEach((key, units) -> copy.put(key, new HashMap<>(units)));
+        return copy;
+    }
+
+    private static Map<String, BigDecimal> totals(Map<String, RevenueAccumulator> source) {
+        Map<String, BigDecimal> totals = new HashMap<>();
+        source.forEach((key, revenue) -> totals.put(key, revenue.total()));
+        return totals;
+    }
+
+    private static Map<String, Map<String, BigDecimal>> nestedTotals(Map<String, Map<String, RevenueAccumulator>> source) {
+        Map<String, Map<String, BigDecimal>> totals = new HashMap<>();
+        source.forEach((key, revenues) -> totals.put(key, totals(revenues)));
+        return totals;
+    }
+}
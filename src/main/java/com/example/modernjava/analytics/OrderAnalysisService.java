@@ -1,5 +1,10 @@
 package com.example.modernjava.analytics;
 
+import com.example.modernjava.analytics.cube.Cube;
+import com.example.modernjava.analytics.cube.CubeAggregator;
+import com.example.modernjava.analytics.cube.CubeQuery;
+import com.example.modernjava.analytics.sketch.HyperLogLog;
+import com.example.modernjava.analytics.sketch.SpaceSaving;
 import com.example.modernjava.domain.Address;
 import com.example.modernjava.domain.Customer;
 import com.example.modernjava.domain.Order;
@@ -8,21 +13,46 @@ import com.example.modernjava.domain.Product;
 import lombok.NonNull;
 
 import java.math.BigDecimal;
-import java.util.HashMap;
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.*;
 
-public class OrderAnalysisService {
+public class OrderAnalysisService implements OrderAnalytics {
     private final List<Order> orders;
+    private volatile OrderIndex index;
 
     public OrderAnalysisService(@NonNull List<Order> orders) {
         this.orders = orders;
     }
 
+    /**
+     * Get the secondary indexes of the orders by customer, country and product, built on first use
+     * <p>
+     * Illustrates lazy initialization with double-checked locking on a volatile field. The filtered
+     * queries (e.g. {@link #totalUnitsSoldByProduct(String)}) use the index to touch only the matching
+     * orders or items, so the orders must not change once it is built.
+     *
+     * @return the index of the orders
+     */
+    public OrderIndex index() {
+        var current = index;
+        if (current == null) {
+            synchronized (this) {
+                current = index;
+                if (current == null) {
+                    index = current = OrderIndex.of(orders);
+                }
+            }
+        }
+        return current;
+    }
+
     /**
      * Get a list of distinct countries related to the orders by getting
      * postal country code from the various addresses associated with the orders
@@ -53,6 +83,35 @@ public class OrderAnalysisService {
         return orders.stream().map(Order::getCustomer).distinct().toList();
     }
 
+    /**
+     * Estimate the number of distinct countries related to the orders, in fixed memory
+     * <p>
+     * Illustrates collecting into a mergeable sketch rather than a set. The returned sketch can be
+     * merged with sketches of other partitions of the orders.
+     *
+     * @param precision the precision of the sketch (see {@link HyperLogLog})
+     * @return a sketch of the distinct country codes
+     */
+    public HyperLogLog estimateDistinctCountries(int precision) {
+        return orders.stream().flatMap(order -> Stream.of(order.getAltShippingAddress(),
+                        order.getCustomer().getBillingAddress(),
+                        order.getCustomer().getShippingAddress())).flatMap(Stream::ofNullable)
+                .collect(HyperLogLog.toHyperLogLog(precision, Address::getPostalCountry));
+    }
+
+    /**
+     * Estimate the number of distinct customers, customers represented by name, in fixed memory
+     * <p>
+     * Hashing the name avoids hashing each customer's addresses, which distinct() has to do through
+     * equals and hashCode. The returned sketch can be merged with sketches of other partitions of the orders.
+     *
+     * @param precision the precision of the sketch (see {@link HyperLogLog})
+     * @return a sketch of the distinct customer names
+     */
+    public HyperLogLog estimateDistinctCustomers(int precision) {
+        return orders.stream().collect(HyperLogLog.toHyperLogLog(precision, order -> order.getCustomer().getName()));
+    }
+
     /**
      * Get the total number of orders is the order collections used to
      * initialize this class
@@ -66,16 +125,17 @@ public class OrderAnalysisService {
     /**
      * Get the total number of units sold for all orders
      * <p>
-     * Illustrates flatMapToInt, mapToInt, reduce
+     * Illustrates flatMapToLong, mapToLong, reduce. Quantities are summed as longs, since the
+     * total over a large number of orders can exceed the range of an int.
      *
      * @return total number of units sold
      */
     public long totalUnitsSold() {
-        //return orders.stream().flatMapToInt(order -> order.getItems().stream().mapToInt(OrderItem::getQuantity)).sum();
+        //return orders.stream().flatMapToLong(order -> order.getItems().stream().mapToLong(OrderItem::getQuantity)).sum();
         return orders.stream()
-                        .flatMapToInt(order -> order.getItems().stream()
-                                .mapToInt(OrderItem::getQuantity))
-                .reduce(Integer::sum).orElse(0); // Could use Collectors.summingInt as alternative
+                        .flatMapToLong(order -> order.getItems().stream()
+                                .mapToLong(OrderItem::getQuantity))
+                .reduce(0L, Long::sum); // Could use Collectors.summingLong as alternative
     }
 
     /**
@@ -122,74 +182,358 @@ public class OrderAnalysisService {
                                 Collectors.summingInt(OrderItem::getQuantity)))));
     }
 
-    // TODO: Implement the following functions and their accompanying tests using streams
+    /**
+     * Compute any combination of aggregates in a single traversal of the orders and their items
+     * <p>
+     * Dashboards typically need several of the per-method queries at once, each of which
+     * streams over all orders. Requesting them together here scans the orders only once,
+     * with results identical to the corresponding per-method calls.
+     * <p>
+     * Illustrates the use of a custom Collector (see {@link OrderAggregator#toAggregates(Set)})
+     *
+     * @param aggregates the aggregates to compute
+     * @return the requested aggregates
+     */
+    @Override
+    public AggregateResults analyze(@NonNull Set<Aggregate> aggregates) {
+        return orders.stream().collect(OrderAggregator.toAggregates(aggregates));
+    }
 
-    // totalRevenue
     /**
      * Get the total revenue for all orders in the order collections used to
      * initialize this class
      * <p>
      * Revenue per order item == Quantity * Price * (1 - Discount)
+     * <p>
+     * Illustrates flatMap and collecting with a custom collector. The revenue is
+     * accumulated exactly using scaled long arithmetic (see {@link RevenueAccumulator}).
      *
      * @return total revenue for all orders
      */
     public BigDecimal totalRevenue() {
-        return BigDecimal.valueOf(orders.stream()
-                .flatMapToDouble(order -> order.getItems().stream()
-                        .mapToDouble(item -> BigDecimal.valueOf(item.getQuantity())
-                                .multiply(item.getProduct().getPrice())
-                                .multiply(BigDecimal.valueOf(1).subtract(item.getDiscount()))
-                                .doubleValue()))
-                .sum());
+        return orders.stream()
+                .flatMap(order -> order.getItems().stream())
+                .collect(RevenueAccumulator.summingRevenue());
     }
 
-    // totalRevenueByProduct
     /**
      * Get the total revenue for each product in the order collections used to
      * initialize this class
      * <p>
      * Revenue per order item == Quantity * Price * (1 - Discount)
      * product represented by name
+     * <p>
+     * Illustrates flatMap and groupingBy with a custom downstream collector
+     *
      * @return total revenue for each product
      */
-    public Map<String,BigDecimal> totalRevenueByProduct() {
+    public Map<String, BigDecimal> totalRevenueByProduct() {
+        return orders.stream()
+                .flatMap(order -> order.getItems().stream())
+                .collect(groupingBy(item -> item.getProduct().getName(), RevenueAccumulator.summingRevenue()));
+    }
+
+    /**
+     * Get the total revenue for each customer, customer represented by name
+     * <p>
+     * Illustrates groupingBy and flatMapping with a custom downstream collector
+     *
+     * @return total revenue for each customer
+     */
+    public Map<String, BigDecimal> totalRevenueByCustomer() {
+        return orders.stream().collect(groupingBy(order -> order.getCustomer().getName(),
+                flatMapping(order -> order.getItems().stream(), RevenueAccumulator.summingRevenue())));
+    }
 
-        /* trying to use the following structure to calculate revenue instead of quantity sum:
-        Map<String, Integer> result = orders.stream()
-            .flatMap(order -> order.getItems().stream())
-            .collect(groupingBy(item -> item.getProduct().getName(),
-                Collectors.reducing(0, OrderItem::getQuantity, Integer::sum)
-            ));
-         */
-        Map<Object,Object> result = orders.stream()
+    /**
+     * Get the total revenue for all orders, grouped by customer and product
+     * <p>
+     * Illustrates groupingBy, flatMapping and a nested groupingBy with a custom downstream collector
+     *
+     * @return total revenue, grouped by customer and product
+     */
+    public Map<String, Map<String, BigDecimal>> totalRevenueByCustomerByProduct() {
+        return orders.stream().collect(groupingBy(order -> order.getCustomer().getName(),
+                flatMapping(order -> order.getItems().stream(),
+                        groupingBy(item -> item.getProduct().getName(), RevenueAccumulator.summingRevenue()))));
+    }
+
+    /**
+     * Get the total revenue for each country, country represented by the postal
+     * country of the customer's billing address
+     * <p>
+     * Illustrates groupingBy and flatMapping with a custom downstream collector
+     *
+     * @return total revenue for each country
+     */
+    public Map<String, BigDecimal> totalRevenueByCountry() {
+        return orders.stream().collect(groupingBy(order -> order.getCustomer().getBillingAddress().getPostalCountry(),
+                flatMapping(order -> order.getItems().stream(), RevenueAccumulator.summingRevenue())));
+    }
+
+    /**
+     * Get the total revenue for all orders, grouped by country and product
+     * <p>
+     * Illustrates groupingBy, flatMapping and a nested groupingBy with a custom downstream collector
+     *
+     * @return total revenue, grouped by country and product
+     */
+    public Map<String, Map<String, BigDecimal>> totalRevenueByCountryByProduct() {
+        return orders.stream().collect(groupingBy(order -> order.getCustomer().getBillingAddress().getPostalCountry(),
+                flatMapping(order -> order.getItems().stream(),
+                        groupingBy(item -> item.getProduct().getName(), RevenueAccumulator.summingRevenue()))));
+    }
+
+    /**
+     * Get the total number of units sold in a country, grouped by product, country being the postal
+     * country of the customer's billing address
+     * <p>
+     * Illustrates a filtered query served from a posting list (see {@link #index()}); only the orders
+     * billed in the country are visited.
+     *
+     * @param country the postal country
+     * @return total number of units sold in the country, grouped by product
+     */
+    public Map<String, Integer> totalUnitsSoldByProduct(String country) {
+        return index().ordersOfCountry(country)
                 .flatMap(order -> order.getItems().stream())
-                .collect(groupingBy(item -> item.getProduct().getName(),
-                                Collectors.reducing(BigDecimal.ZERO, OrderItem::getProduct,
-                                        (item1, item2) -> {
-//                                            BigDecimal a = BigDecimal.valueOf(item1.getQuantity())
-//                                                .multiply(item1.getProduct().getPrice())
-//                                                .multiply(BigDecimal.valueOf(1).subtract(item1.getDiscount()));
-//                                            BigDecimal b = BigDecimal.valueOf(item2.getQuantity())
-//                                                    .multiply(item2.getProduct().getPrice())
-//                                                    .multiply(BigDecimal.valueOf(1).subtract(item2.getDiscount()));
-//                                            return a.multiply(b); // revenue accum for items 1 and 2
-                                            return item2;
-                                })
-                ));
-
-
-        System.out.println("result: >> " +result);
-        Map<String,BigDecimal> hm = new HashMap<>();
-        hm.put("sample", BigDecimal.valueOf(15.69));
-        return hm;
-    }
-
-
-
-    // totalRevenueByCustomer
-    // totalRevenueByCustomerByProduct
-    // totalRevenueByCountry
-    // totalRevenueByCountryByProduct
-    // BONUS: product stats (hint: see IntStream::summaryStatistics())
-    // BONUS: revenue stats
+                .collect(groupingBy(item -> item.getProduct().getName(), Collectors.summingInt(OrderItem::getQuantity)));
+    }
+
+    /**
+     * Get the total revenue in a country for each product, country being the postal country of the
+     * customer's billing address
+     * <p>
+     * Illustrates a filtered query served from a posting list (see {@link #index()})
+     *
+     * @param country the postal country
+     * @return total revenue in the country for each product
+     */
+    public Map<String, BigDecimal> totalRevenueByProduct(String country) {
+        return index().ordersOfCountry(country)
+                .flatMap(order -> order.getItems().stream())
+                .collect(groupingBy(item -> item.getProduct().getName(), RevenueAccumulator.summingRevenue()));
+    }
+
+    /**
+     * Get the total revenue of a customer, customer represented by name
+     * <p>
+     * Illustrates a filtered query served from a posting list (see {@link #index()})
+     *
+     * @param customerName the name of the customer
+     * @return total revenue of the customer, zero for an unknown customer
+     */
+    public BigDecimal totalRevenueForCustomer(String customerName) {
+        return index().ordersOfCustomer(customerName)
+                .flatMap(order -> order.getItems().stream())
+                .collect(RevenueAccumulator.summingRevenue());
+    }
+
+    /**
+     * Get the total number of units sold of a product, product represented by name
+     * <p>
+     * Illustrates a filtered query served from an item posting list (see {@link #index()}); only the
+     * matching order items are visited.
+     *
+     * @param productName the name of the product
+     * @return total number of units sold of the product
+     */
+    public long totalUnitsSoldForProduct(String productName) {
+        return index().itemsOfProduct(productName).mapToLong(OrderItem::getQuantity).sum();
+    }
+
+    /**
+     * Get the total number of units sold of a product, product represented by SKU
+     * <p>
+     * Illustrates a filtered query served from an item posting list (see {@link #index()})
+     *
+     * @param sku the SKU of the product
+     * @return total number of units sold of the product
+     */
+    public long totalUnitsSoldForSku(String sku) {
+        return index().itemsOfSku(sku).mapToLong(OrderItem::getQuantity).sum();
+    }
+
+    /**
+     * Get the total revenue of a product, product represented by name
+     * <p>
+     * Illustrates a filtered query served from an item posting list (see {@link #index()})
+     *
+     * @param productName the name of the product
+     * @return total revenue of the product
+     */
+    public BigDecimal totalRevenueForProduct(String productName) {
+        return index().itemsOfProduct(productName).collect(RevenueAccumulator.summingRevenue());
+    }
+
+    /**
+     * Get the total number of units sold of a product in a country
+     * <p>
+     * Illustrates combining two filters by intersecting their sorted posting lists (see {@link OrderIndex})
+     *
+     * @param productName the name of the product
+     * @param country     the postal country of the customer's billing address
+     * @return total number of units sold of the product in the country
+     */
+    public long totalUnitsSoldForProductInCountry(String productName, String country) {
+        return index().itemsOfProductInCountry(productName, country).mapToLong(OrderItem::getQuantity).sum();
+    }
+
+    /**
+     * Get the products with the most units sold, approximately, in memory bounded by a capacity
+     * rather than by the number of distinct products
+     * <p>
+     * Illustrates the use of a mutable reduction (collect with supplier, accumulator and combiner)
+     * into a Space-Saving sketch. Lines with a negative quantity (returns) are ignored.
+     *
+     * @param k        the maximum number of products
+     * @param capacity the number of products tracked, at least k; larger values give more accurate results
+     * @return at most k products in descending order of estimated units, each estimate being at least the
+     * true number of units and exceeding it by at most total units / capacity
+     */
+    public List<Map.Entry<String, Long>> approximateTopProductsByUnits(int k, int capacity) {
+        return unitEstimates(orders.stream().flatMap(order -> order.getItems().stream())
+                .collect(() -> new SpaceSaving<String>(capacity),
+                        (sketch, item) -> addUnits(sketch, item.getProduct().getName(), item),
+                        SpaceSaving::merge), k);
+    }
+
+    /**
+     * Get the products with the highest revenue, approximately, in memory bounded by a capacity
+     * rather than by the number of distinct products
+     * <p>
+     * Line revenue is counted in units of 10^-{@value RevenueAccumulator#SCALE}, rounded half up.
+     * Lines with a negative quantity (returns) or a revenue that is not positive (a negative price,
+     * or a discount above 1) are ignored, as the sketch only counts positive weights.
+     *
+     * @param k        the maximum number of products
+     * @param capacity the number of products tracked, at least k; larger values give more accurate results
+     * @return at most k products in descending order of estimated revenue, each estimate being at least the
+     * true revenue and exceeding it by at most total revenue / capacity
+     */
+    public List<Map.Entry<String, BigDecimal>> approximateTopProductsByRevenue(int k, int capacity) {
+        return revenueEstimates(orders.stream().flatMap(order -> order.getItems().stream())
+                .collect(() -> new SpaceSaving<String>(capacity),
+                        (sketch, item) -> addRevenue(sketch, item.getProduct().getName(), item),
+                        SpaceSaving::merge), k);
+    }
+
+    /**
+     * Get the customers with the highest revenue, approximately, in memory bounded by a capacity
+     * rather than by the number of distinct customers, customer represented by name
+     * <p>
+     * The lines ignored are those of {@link #approximateTopProductsByRevenue(int, int)}.
+     *
+     * @param k        the maximum number of customers
+     * @param capacity the number of customers tracked, at least k; larger values give more accurate results
+     * @return at most k customers in descending order of estimated revenue, each estimate being at least the
+     * true revenue and exceeding it by at most total revenue / capacity
+     */
+    public List<Map.Entry<String, BigDecimal>> approximateTopCustomersByRevenue(int k, int capacity) {
+        return revenueEstimates(orders.stream()
+                .collect(() -> new SpaceSaving<String>(capacity),
+                        (sketch, order) -> order.getItems().forEach(item ->
+                                addRevenue(sketch, order.getCustomer().getName(), item)),
+                        SpaceSaving::merge), k);
+    }
+
+    /**
+     * Get, for each country, the products with the most units sold, approximately, in memory bounded
+     * by a capacity per country rather than by the number of distinct products sold in each country
+     * <p>
+     * Illustrates a Space-Saving sketch as the downstream collector of groupingBy, built with Collector.of
+     * and finished with the top k estimates.
+     *
+     * @param k        the maximum number of products per country
+     * @param capacity the number of products tracked per country, at least k
+     * @return for each country, at most k products in descending order of estimated units, each estimate
+     * exceeding the true number of units by at most the country's total units / capacity
+     */
+    public Map<String, List<Map.Entry<String, Long>>> approximateTopProductsByUnitsByCountry(int k, int capacity) {
+        return orders.stream().collect(groupingBy(order -> order.getCustomer().getBillingAddress().getPostalCountry(),
+                flatMapping(order -> order.getItems().stream(),
+                        Collector.<OrderItem, SpaceSaving<String>, List<Map.Entry<String, Long>>>of(
+                                () -> new SpaceSaving<>(capacity),
+                                (sketch, item) -> addUnits(sketch, item.getProduct().getName(), item),
+                                SpaceSaving::merge,
+                                sketch -> unitEstimates(sketch, k)))));
+    }
+
+    /**
+     * Get, for each country, the products with the highest revenue, approximately, in memory bounded
+     * by a capacity per country rather than by the number of distinct products sold in each country
+     * <p>
+     * The lines ignored are those of {@link #approximateTopProductsByRevenue(int, int)}.
+     *
+     * @param k        the maximum number of products per country
+     * @param capacity the number of products tracked per country, at least k
+     * @return for each country, at most k products in descending order of estimated revenue, each estimate
+     * exceeding the true revenue by at most the country's total revenue / capacity
+     */
+    public Map<String, List<Map.Entry<String, BigDecimal>>> approximateTopProductsByRevenueByCountry(int k,
+                                                                                                   int capacity) {
+        return orders.stream().collect(groupingBy(order -> order.getCustomer().getBillingAddress().getPostalCountry(),
+                flatMapping(order -> order.getItems().stream(),
+                        Collector.<OrderItem, SpaceSaving<String>, List<Map.Entry<String, BigDecimal>>>of(
+                                () -> new SpaceSaving<>(capacity),
+                                (sketch, item) -> addRevenue(sketch, item.getProduct().getName(), item),
+                                SpaceSaving::merge,
+                                sketch -> revenueEstimates(sketch, k)))));
+    }
+
+    /**
+     * Get summary statistics of the units and revenue per line, the revenue per order, and the units
+     * and revenue per line of each product, product represented by name
+     * <p>
+     * Illustrates collecting into a mergeable accumulator: all statistics, including approximate
+     * percentiles, are computed in a single pass (see {@link OrderStatistics#toOrderStatistics()}),
+     * rather than with one IntStream::summaryStatistics pass per statistic.
+     *
+     * @return the statistics of the orders
+     */
+    public OrderStatistics statistics() {
+        return orders.stream().collect(OrderStatistics.toOrderStatistics());
+    }
+
+    /**
+     * Compute the measures of every group of a multi-dimensional query, with its subtotals
+     * <p>
+     * Illustrates replacing one hand-written grouping method per report shape with a declarative query:
+     * all grouping sets of a ROLLUP or CUBE are computed in a single pass over the orders (see
+     * {@link CubeAggregator#toCube(CubeQuery)}).
+     *
+     * @param query the dimensions and measures to compute
+     * @return the cube of the orders
+     */
+    public Cube cube(@NonNull CubeQuery query) {
+        return orders.stream().collect(CubeAggregator.toCube(query));
+    }
+
+    private static void addUnits(SpaceSaving<String> sketch, String key, OrderItem item) {
+        if (item.getQuantity() > 0) {
+            sketch.add(key, item.getQuantity());
+        }
+    }
+
+    private static void addRevenue(SpaceSaving<String> sketch, String key, OrderItem item) {
+        if (item.getQuantity() > 0) {
+            long revenue = RevenueAccumulator.scaledRevenue(item);
+            if (revenue > 0) {
+                sketch.add(key, revenue);
+            }
+        }
+    }
+
+    private static List<Map.Entry<String, Long>> unitEstimates(SpaceSaving<String> sketch, int k) {
+        return sketch.top(k).stream()
+                .<Map.Entry<String, Long>>map(estimate -> new SimpleImmutableEntry<>(estimate.key(), estimate.count()))
+                .toList();
+    }
+
+    private static List<Map.Entry<String, BigDecimal>> revenueEstimates(SpaceSaving<String> sketch, int k) {
+        return sketch.top(k).stream()
+                .<Map.Entry<String, BigDecimal>>map(estimate -> new SimpleImmutableEntry<>(estimate.key(),
+                        BigDecimal.valueOf(estimate.count(), RevenueAccumulator.SCALE)))
+                .toList();
+    }
 }
@@ -0,0 +1,166 @@
+package com.example.modernjava.analytics;
+
+import com.example.modernjava.domain.Customer;
+
+import java.math.BigDecimal;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The order analytics queries, independent of how the orders are stored or scanned.
+ * <p>
+ * Implementations only have to provide {@link #analyze(Set)}, which computes any combination of
+ * aggregates in a single pass. Each per-method query defaults to a single-aggregate pass, and
+ * implementations are free to override them with cheaper or more illustrative versions.
+ */
+public interface OrderAnalytics {
+
+    /**
+     * Compute any combination of aggregates in a single traversal of the orders and their items
+     *
+     * @param aggregates the aggregates to compute
+     * @return the requested aggregates
+     */
+    AggregateResults analyze(Set<Aggregate> aggregates);
+
+    /**
+     * @return total number of orders
+     */
+    default long totalOrders() {
+        return analyze(EnumSet.of(Aggregate.TOTAL_ORDERS)).totalOrders();
+    }
+
+    /**
+     * @return total number of units sold
+     */
+    default long totalUnitsSold() {
+        return analyze(EnumSet.of(Aggregate.TOTAL_UNITS_SOLD)).totalUnitsSold();
+    }
+
+    /**
+     * @return total number of units sold, grouped by product
+     */
+    default Map<String, Integer> totalUnitsSoldByProduct() {
+        return analyze(EnumSet.of(Aggregate.UNITS_SOLD_BY_PRODUCT)).totalUnitsSoldByProduct();
+    }
+
+    /**
+     * @return total number of units sold, grouped by customer and product
+     */
+    default Map<String, Map<String, Integer>> totalUnitsSoldByCustomerByProduct() {
+        return analyze(EnumSet.of(Aggregate.UNITS_SOLD_BY_CUSTOMER_BY_PRODUCT)).totalUnitsSoldByCustomerByProduct();
+    }
+
+    /**
+     * @return total number of units sold, grouped by country and product
+     */
+    default Map<String, Map<String, Integer>> totalUnitsSoldByCountryByProduct() {
+        return analyze(EnumSet.of(Aggregate.UNITS_SOLD_BY_COUNTRY_BY_PRODUCT)).totalUnitsSoldByCountryByProduct();
+    }
+
+    /**
+     * @return total revenue for all orders
+     */
+    default BigDecimal totalRevenue() {
+        return analyze(EnumSet.of(Aggregate.TOTAL_REVENUE)).totalRevenue();
+    }
+
+    /**
+     * @return total revenue for each product
+     */
+    default Map<String, BigDecimal> totalRevenueByProduct() {
+        return analyze(EnumSet.of(Aggregate.REVENUE_BY_PRODUCT)).totalRevenueByProduct();
+    }
+
+    /**
+     * @return total revenue for each customer
+     */
+    default Map<String, BigDecimal> totalRevenueByCustomer() {
+        return analyze(EnumSet.of(Aggregate.REVENUE_BY_CUSTOMER)).totalRevenueByCustomer();
+    }
+
+    /**
+     * @return total revenue, grouped by customer and product
+     */
+    default Map<String, Map<String, BigDecimal>> totalRevenueByCustomerByProduct() {
+        return analyze(EnumSet.of(Aggregate.REVENUE_BY_CUSTOMER_BY_PRODUCT)).totalRevenueByCustomerByProduct();
+    }
+
+    /**
+     * @return total revenue for each country
+     */
+    default Map<String, BigDecimal> totalRevenueByCountry() {
+        return analyze(EnumSet.of(Aggregate.REVENUE_BY_COUNTRY)).totalRevenueByCountry();
+    }
+
+    /**
+     * @return total revenue, grouped by country and product
+     */
+    default Map<String, Map<String, BigDecimal>> totalRevenueByCountryByProduct() {
+        return analyze(EnumSet.of(Aggregate.REVENUE_BY_COUNTRY_BY_PRODUCT)).totalRevenueByCountryByProduct();
+    }
+
+    /**
+     * @return a list of distinct country codes
+     */
+    default List<String> distinctCountries() {
+        return analyze(EnumSet.of(Aggregate.DISTINCT_COUNTRIES)).distinctCountries();
+    }
+
+    /**
+     * @return a list of distinct customers related to all orders
+     */
+    default List<Customer> distinctCustomers() {
+        return analyze(EnumSet.of(Aggregate.DISTINCT_CUSTOMERS)).distinctCustomers();
+    }
+
+    /**
+     * @param k the maximum number of products
+     * @return the k products with the most units sold, in descending order of units
+     */
+    default List<Map.Entry<String, Integer>> topProductsByUnits(int k) {
+        return TopK.top(totalUnitsSoldByProduct(), k);
+    }
+
+    /**
+     * @param k the maximum number of products
+     * @return the k products with the highest revenue, in descending order of revenue
+     */
+    default List<Map.Entry<String, BigDecimal>> topProductsByRevenue(int k) {
+        return TopK.top(totalRevenueByProduct(), k);
+    }
+
+    /**
+     * @param k the maximum number of customers
+     * @return the k customers with the highest revenue, in descending order of revenue
+     */
+    default List<Map.Entry<String, BigDecimal>> topCustomersByRevenue(int k) {
+        return TopK.top(totalRevenueByCustomer(), k);
+    }
+
+    /**
+     * @param k the maximum number of products per country
+     * @return for each country, the k products with the most units sold, in descending order of units
+     */
+    default Map<String, List<Map.Entry<String, Integer>>> topProductsByUnitsByCountry(int k) {
+        return topByGroup(totalUnitsSoldByCountryByProduct(), k);
+    }
+
+    /**
+     * @param k the maximum number of products per country
+     * @return for each country, the k products with the highest revenue, in descending order of revenue
+     */
+    default Map<String, List<Map.Entry<String, BigDecimal>>> topProductsByRevenueByCountry(int k) {
+        return topByGroup(totalRevenueByCountryByProduct(), k);
+    }
+
+    private static <V extends Comparable<? super V>> Map<String, List<Map.Entry<String, V>>> topByGroup(
+            Map<String, Map<String, V>> values, int k) {
+        Map<String, List<Map.Entry<String, V>>> top = new HashMap<>();
+        values.forEach((group, groupValues) -> top.put(group, TopK.top(groupValues, k)));
+        return top;
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.modernjava.analytics;
+
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.OrderItem;
+import lombok.NonNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Secondary indexes over a list of orders, by customer name, billing country, product SKU and product name
+ * <p>
+ * Each indexed value maps to a posting list: the sorted positions of the orders, or of the order items,
+ * with that value. Queries filtered on a value then only touch the matching orders or items rather than
+ * scanning every order, and filters on two values are combined by merging their sorted posting lists.
+ * Item positions are packed into a long as the order position (high int) and the position of the item
+ * within the order (low int), so they sort by order first.
+ * <p>
+ * The index is built in a single pass and refers to orders by position, so the list of orders must not
+ * change after the index is built.
+ */
+public final class OrderIndex {
+    private static final int[] NO_ORDERS = new int[0];
+    private static final long[] NO_ITEMS = new long[0];
+
+    private final List<Order> orders;
+    private final Map<String, int[]> ordersByCustomer;
+    private final Map<String, int[]> ordersByCountry;
+    private final Map<String, long[]> itemsBySku;
+    private final Map<String, long[]> itemsByProduct;
+
+    private OrderIndex(List<Order> orders, Map<String, int[]> ordersByCustomer, Map<String, int[]> ordersByCountry,
+                       Map<String, long[]> itemsBySku, Map<String, long[]> itemsByProduct) {
+        this.orders = orders;
+        this.ordersByCustomer = ordersByCustomer;
+        this.ordersByCountry = ordersByCountry;
+        this.itemsBySku = itemsBySku;
+        this.itemsByProduct = itemsByProduct;
+    }
+
+    /**
+     * Build the indexes of a list of orders
+     *
+     * @param orders the orders to index, which must not change afterwards
+     * @return the index
+     */
+    public static OrderIndex of(@NonNull List<Order> orders) {
+        Map<String, IntPostings> byCustomer = new HashMap<>();
+        Map<String, IntPostings> byCountry = new HashMap<>();
+        Map<String, LongPostings> bySku = new HashMap<>();
+        Map<String, LongPostings> byProduct = new HashMap<>();
+        int position = 0;
+        for (Order order : orders) {
+            var customer = order.getCustomer();
+            byCustomer.computeIfAbsent(customer.getName(), k -> new IntPostings()).add(position);
+            byCountry.computeIfAbsent(customer.getBillingAddress().getPostalCountry(), k -> new IntPostings())
+                    .add(position);
+            var items = order.getItems();
+            for (int item = 0; item < items.size(); item++) {
+                var product = items.get(item).getProduct();
+                long itemPosition = (long) position << 32 | item;
+                bySku.computeIfAbsent(product.getSku(), k -> new LongPostings()).add(itemPosition);
+                byProduct.computeIfAbsent(product.getName(), k -> new LongPostings()).add(itemPosition);
+            }
+            position++;
+        }
+        return new OrderIndex(orders, toArrays(byCustomer, IntPostings::toArray),
+                toArrays(byCountry, IntPostings::toArray), toArrays(bySku, LongPostings::toArray),
+                toArrays(byProduct, LongPostings::toArray));
+    }
+
+    private static <P, A> Map<String, A> toArrays(Map<String, P> postings, Function<P, A> toArray) {
+        Map<String, A> arrays = new HashMap<>(postings.size() * 4 / 3 + 1);
+        postings.forEach((key, posting) -> arrays.put(key, toArray.apply(posting)));
+        return arrays;
+    }
+
+    /**
+     * @return the names of the indexed customers
+     */
+    public Set<String> customers() {
+        return Collections.unmodifiableSet(ordersByCustomer.keySet());
+    }
+
+    /**
+     * @return the indexed billing countries
+     */
+    public Set<String> countries() {
+        return Collections.unmodifiableSet(ordersByCountry.keySet());
+    }
+
+    /**
+     * @param customerName the name of a customer
+     * @return the orders of the customer, in list order
+     */
+    public Stream<Order> ordersOfCustomer(String customerName) {
+        return orders(ordersByCustomer.getOrDefault(customerName, NO_ORDERS));
+    }
+
+    /**
+     * @param country a postal country
+     * @return the orders of customers billed in the country, in list order
+     */
+    public Stream<Order> ordersOfCountry(String country) {
+        return orders(ordersByCountry.getOrDefault(country, NO_ORDERS));
+    }
+
+    /**
+     * @param customerName the name of a customer
+     * @param country      a postal country
+     * @return the orders of the customer if billed in the country, in list order
+     */
+    public Stream<Order> ordersOfCustomerInCountry(String customerName, String country) {
+        return orders(intersect(ordersByCustomer.getOrDefault(customerName, NO_ORDERS),
+                ordersByCountry.getOrDefault(country, NO_ORDERS)));
+    }
+
+    /**
+     * @param sku a product SKU
+     * @return the order items of the product, in list order
+     */
+    public Stream<OrderItem> itemsOfSku(String sku) {
+        return items(itemsBySku.getOrDefault(sku, NO_ITEMS));
+    }
+
+    /**
+     * @param productName a product name
+     * @return the order items of products with the name, in list order
+     */
+    public Stream<OrderItem> itemsOfProduct(String productName) {
+        return items(itemsByProduct.getOrDefault(productName, NO_ITEMS));
+    }
+
+    /**
+     * @param productName a product name
+     * @param country     a postal country
+     * @return the order items of products with the name in orders of customers billed in the country
+     */
+    public Stream<OrderItem> itemsOfProductInCountry(String productName, String country) {
+        return items(intersect(itemsByProduct.getOrDefault(productName, NO_ITEMS),
+                ordersByCountry.getOrDefault(country, NO_ORDERS)));
+    }
+
+    private Stream<Order> orders(int[] positions) {
+        return IntStream.of(positions).mapToObj(orders::get);
+    }
+
+    private Stream<OrderItem> items(long[] positions) {
+        return Arrays.stream(positions).mapToObj(item -> orders.get((int) (item >>> 32)).getItems().get((int) item));
+    }
+
+    /**
+     * Intersect two sorted posting lists of orders by merging them
+     */
+    static int[] intersect(int[] first, int[] second) {
+        int[] result = new int[Math.min(first.length, second.length)];
+        int size = 0;
+        for (int i = 0, j = 0; i < first.length && j < second.length; ) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                result[size++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Keep the items of a sorted posting list of items whose order is in a sorted posting list of orders
+     */
+    static long[] intersect(long[] items, int[] orders) {
+        long[] result = new long[items.length];
+        int size = 0;
+        for (int i = 0, j = 0; i < items.length && j < orders.length; ) {
+            int order = (int) (items[i] >>> 32);
+            if (order < orders[j]) {
+                i++;
+            } else if (order > orders[j]) {
+                j++;
+            } else {
+                result[size++] = items[i++];
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static final class IntPostings {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    private static final class LongPostings {
+        private long[] values = new long[4];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.modernjava.analytics;
+
+import com.example.modernjava.domain.Order;
+import lombok.NonNull;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Long-lived service answering concurrent analytics queries over a shared, immutable snapshot of the orders
+ * <p>
+ * The current {@link Snapshot} (an immutable copy of the orders and the analytics built over it) is held in
+ * an atomic reference: {@link #load(Collection)} builds a new snapshot and swaps it in, and each query reads
+ * the reference once and runs entirely against that snapshot. Readers therefore never block, never see a
+ * partially loaded snapshot, and share one copy of the orders rather than building one per request.
+ * <p>
+ * Queries run asynchronously on virtual threads where the runtime provides them (JDK 21 and later), looked
+ * up reflectively since the code targets JDK 17, and otherwise on a pool of one thread per processor with a
+ * bounded queue, which fails queries with a {@link RejectedExecutionException} when overloaded rather than
+ * queueing without bound. Identical queries (equal keys) against the same snapshot that arrive while one is
+ * in flight are coalesced: they share its result instead of computing it again.
+ */
+public class OrderQueryService implements AutoCloseable {
+    public static final int DEFAULT_QUEUE_CAPACITY = 1_024;
+
+    private final Function<List<Order>, ? extends OrderAnalytics> analyticsFactory;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final ConcurrentHashMap<InFlightKey, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * An immutable set of orders and the analytics over them
+     *
+     * @param version   the number of the load that created the snapshot, starting from 0 for the initial orders
+     * @param orders    the orders
+     * @param analytics the analytics over the orders
+     */
+    public record Snapshot(long version, List<Order> orders, OrderAnalytics analytics) {
+    }
+
+    /**
+     * Query counts since the service was created
+     *
+     * @param executed  queries computed
+     * @param coalesced queries answered by a computation already in flight
+     */
+    public record Stats(long executed, long coalesced) {
+    }
+
+    private record InFlightKey(long version, Object query) {
+    }
+
+    /**
+     * Create a service answering queries with an {@link OrderAnalysisService} on the default executor
+     *
+     * @param orders the initial orders
+     */
+    public OrderQueryService(@NonNull Collection<Order> orders) {
+        this(orders, OrderAnalysisService::new, defaultExecutor(), true);
+    }
+
+    /**
+     * Create a service running queries on an executor owned by the caller
+     *
+     * @param orders           the initial orders
+     * @param analyticsFactory creates the analytics of each snapshot from its immutable list of orders
+     * @param executor         the executor to run queries on, which is not shut down by {@link #close()}
+     */
+    public OrderQueryService(@NonNull Collection<Order> orders,
+                             @NonNull Function<List<Order>, ? extends OrderAnalytics> analyticsFactory,
+                             @NonNull ExecutorService executor) {
+        this(orders, analyticsFactory, executor, false);
+    }
+
+    private OrderQueryService(Collection<Order> orders, Function<List<Order>, ? extends OrderAnalytics> analyticsFactory,
+                              ExecutorService executor, boolean ownsExecutor) {
+        this.analyticsFactory = analyticsFactory;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.snapshot.set(createSnapshot(0, orders));
+    }
+
+    /**
+     * Create the default executor: one virtual thread per query where available, otherwise a pool of one
+     * thread per processor with a queue of {@value #DEFAULT_QUEUE_CAPACITY} queries
+     *
+     * @return a new executor
+     */
+    public static ExecutorService defaultExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(DEFAULT_QUEUE_CAPACITY));
+        }
+    }
+
+    private Snapshot createSnapshot(long version, Collection<Order> orders) {
+        var copy = List.copyOf(orders);
+        return new Snapshot(version, copy, analyticsFactory.apply(copy));
+    }
+
+    /**
+     * Replace the orders; queries already running complete against the previous snapshot
+     * <p>
+     * The new snapshot is built by the calling thread before it is swapped in, so queries are never
+     * delayed by a load. Concurrent loads are applied in some order, each getting its own version.
+     *
+     * @param orders the new orders
+     * @return the new snapshot
+     */
+    public Snapshot load(@NonNull Collection<Order> orders) {
+        var copy = List.copyOf(orders);
+        var analytics = analyticsFactory.apply(copy);
+        return snapshot.updateAndGet(current -> new Snapshot(current.version() + 1, copy, analytics));
+    }
+
+    /**
+     * @return the current snapshot
+     */
+    public Snapshot snapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Run a query against the current snapshot, sharing the result of an identical query in flight
+     *
+     * @param key   identifies the query; queries with equal keys must compute equal results
+     * @param query the query
+     * @param <T>   the type of the result
+     * @return the result, completed exceptionally if the query fails or the executor rejects it
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> query(@NonNull Object key, @NonNull Function<? super OrderAnalytics, ? extends T> query) {
+        var current = snapshot.get();
+        var inFlightKey = new InFlightKey(current.version(), key);
+        var future = new CompletableFuture<Object>();
+        var existing = inFlight.putIfAbsent(inFlightKey, future);
+        if (existing != null) {
+            coalesced.increment();
+            return (CompletableFuture<T>) existing.copy();
+        }
+        executed.increment();
+        try {
+            executor.execute(() -> {
+                Object result;
+                try {
+                    result = query.apply(current.analytics());
+                } catch (Throwable e) {
+                    inFlight.remove(inFlightKey, future);
+                    future.completeExceptionally(e);
+                    return;
+                }
+                // No longer in flight before completing, so callers that see the result never coalesce with it
+                inFlight.remove(inFlightKey, future);
+                future.complete(result);
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(inFlightKey, future);
+            future.completeExceptionally(e);
+        }
+        // Callers get copies, so that one caller cancelling or completing its future cannot affect the others
+        return (CompletableFuture<T>) future.copy();
+    }
+
+    /**
+     * Compute aggregates against the current snapshot, coalescing identical requests in flight
+     *
+     * @param aggregates the aggregates to compute
+     * @return the results
+     */
+    public CompletableFuture<AggregateResults> analyze(@NonNull Set<Aggregate> aggregates) {
+        var key = aggregates.isEmpty() ? EnumSet.noneOf(Aggregate.class) : EnumSet.copyOf(aggregates);
+        return query(key, analytics -> analytics.analyze(key));
+    }
+
+    /**
+     * @return the query counts
+     */
+    public Stats stats() {
+        return new Stats(executed.sum(), coalesced.sum());
+    }
+
+    /**
+     * Shut down the executor if the service created it, letting queries in flight complete
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.modernjava.analytics;
+
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.OrderItem;
+import lombok.NonNull;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collector;
+
+/**
+ * Summary statistics of units and revenue, overall and per product, computed in a single pass over the orders
+ * <p>
+ * Covers the units per order line, the revenue per order line and the revenue per order, overall, and the
+ * units and revenue per line of each product (represented by name), each as {@link DistributionStatistics}.
+ * Line revenue is Quantity * Price * (1 - Discount) in double precision, which is ample for statistics;
+ * exact totals are available from {@link OrderAnalysisService#totalRevenue()}.
+ * <p>
+ * A parallel {@link #toOrderStatistics()} gives each thread its own instance and combines the partial
+ * results product by product, so instances are not thread safe and do not need to be.
+ */
+public final class OrderStatistics implements Consumer<Order> {
+    private final DistributionStatistics unitsPerLine = new DistributionStatistics();
+    private final DistributionStatistics revenuePerLine = new DistributionStatistics();
+    private final DistributionStatistics revenuePerOrder = new DistributionStatistics();
+    private final Map<String, DistributionStatistics> unitsPerLineByProduct = new HashMap<>();
+    private final Map<String, DistributionStatistics> revenuePerLineByProduct = new HashMap<>();
+
+    /**
+     * Create a collector that computes the statistics of a stream of orders in one pass
+     * <p>
+     * Illustrates the use of Collector.of with a mutable accumulator that can be combined
+     *
+     * @return a collector producing the statistics of the orders
+     */
+    public static Collector<Order, OrderStatistics, OrderStatistics> toOrderStatistics() {
+        return Collector.of(OrderStatistics::new, OrderStatistics::accept, OrderStatistics::combine,
+                Collector.Characteristics.IDENTITY_FINISH);
+    }
+
+    @Override
+    public void accept(Order order) {
+        double orderRevenue = 0;
+        for (OrderItem item : order.getItems()) {
+            double lineRevenue = revenue(item);
+            orderRevenue += lineRevenue;
+            unitsPerLine.accept(item.getQuantity());
+            revenuePerLine.accept(lineRevenue);
+            var product = item.getProduct().getName();
+            unitsPerLineByProduct.computeIfAbsent(product, k -> new DistributionStatistics()).accept(item.getQuantity());
+            revenuePerLineByProduct.computeIfAbsent(product, k -> new DistributionStatistics()).accept(lineRevenue);
+        }
+        revenuePerOrder.accept(orderRevenue);
+    }
+
+    private static double revenue(OrderItem item) {
+        BigDecimal discount = item.getDiscount();
+        return item.getQuantity() * item.getProduct().getPrice().doubleValue()
+                * (discount == null ? 1 : 1 - discount.doubleValue());
+    }
+
+    /**
+     * Merge the statistics of other orders into these statistics
+     *
+     * @param other the statistics to merge, which must not be used afterwards as they may share state
+     * @return these statistics
+     */
+    public OrderStatistics combine(@NonNull OrderStatistics other) {
+        unitsPerLine.combine(other.unitsPerLine);
+        revenuePerLine.combine(other.revenuePerLine);
+        revenuePerOrder.combine(other.revenuePerOrder);
+        other.unitsPerLineByProduct.forEach((product, statistics) ->
+                unitsPerLineByProduct.merge(product, statistics, DistributionStatistics::combine));
+        other.revenuePerLineByProduct.forEach((product, statistics) ->
+                revenuePerLineByProduct.merge(product, statistics, DistributionStatistics::combine));
+        return this;
+    }
+
+    /**
+     * @return statistics of the units per order line
+     */
+    public DistributionStatistics unitsPerLine() {
+        return unitsPerLine;
+    }
+
+    /**
+     * @return statistics of the revenue per order line
+     */
+    public DistributionStatistics revenuePerLine() {
+        return revenuePerLine;
+    }
+
+    /**
+     * @return statistics of the revenue per order
+     */
+    public DistributionStatistics revenuePerOrder() {
+        return revenuePerOrder;
+    }
+
+    /**
+     * @return statistics of the units per order line of each product
+     */
+    public Map<String, DistributionStatistics> unitsPerLineByProduct() {
+        return Collections.unmodifiableMap(unitsPerLineByProduct);
+    }
+
+    /**
+     * @return statistics of the revenue per order line of each product
+     */
+    public Map<String, DistributionStatistics> revenuePerLineByProduct() {
+        return Collections.unmodifiableMap(revenuePerLineByProduct);
+    }
+}
@@ -0,0 +1,272 @@
+package com.example.modernjava.analytics;
+
+import com.example.modernjava.analytics.cube.Cube;
+import com.example.modernjava.analytics.cube.CubeAggregator;
+import com.example.modernjava.analytics.cube.CubeQuery;
+import com.example.modernjava.analytics.sketch.HyperLogLog;
+import com.example.modernjava.domain.Address;
+import com.example.modernjava.domain.Customer;
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.OrderItem;
+import lombok.NonNull;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.flatMapping;
+import static java.util.stream.Collectors.groupingBy;
+
+/**
+ * Parallel counterpart of {@link OrderAnalysisService} that splits each query across a dedicated
+ * {@link ForkJoinPool}, so that batch reporting can use all cores without competing with other users
+ * of the common pool.
+ * <p>
+ * Queries use parallel streams with merge-friendly collectors: each worker groups its own split into
+ * a private map and the partial maps are merged, which avoids the per-group locking that concurrent
+ * collectors need when a handful of hot products receive most of the updates. Revenue is accumulated
+ * exactly (see {@link RevenueAccumulator}) and the distinct lists keep encounter order, so results are
+ * identical to sequential mode. Order collections smaller than the sequential threshold are analyzed
+ * sequentially, since splitting them costs more than it saves.
+ * <p>
+ * A service that creates its own pool shuts it down on {@link #close()}; a pool passed in by the
+ * caller is left running.
+ */
+public class ParallelOrderAnalysisService implements OrderAnalytics, AutoCloseable {
+    /**
+     * Default number of orders below which queries run sequentially
+     */
+    public static final int DEFAULT_SEQUENTIAL_THRESHOLD = 10_000;
+
+    private final List<Order> orders;
+    private final OrderAnalysisService sequential;
+    private final ForkJoinPool pool;
+    private final boolean ownsPool;
+    private final int sequentialThreshold;
+
+    /**
+     * Create a service with a dedicated pool using all available processors
+     *
+     * @param orders the orders to analyze
+     */
+    public ParallelOrderAnalysisService(@NonNull List<Order> orders) {
+        this(orders, Runtime.getRuntime().availableProcessors(), DEFAULT_SEQUENTIAL_THRESHOLD);
+    }
+
+    /**
+     * Create a service with a dedicated pool of the given parallelism
+     *
+     * @param orders              the orders to analyze
+     * @param parallelism         the parallelism of the dedicated pool
+     * @param sequentialThreshold the number of orders below which queries run sequentially
+     */
+    public ParallelOrderAnalysisService(@NonNull List<Order> orders, int parallelism, int sequentialThreshold) {
+        this(orders, new ForkJoinPool(parallelism), true, sequentialThreshold);
+    }
+
+    /**
+     * Create a service that runs its queries in a pool owned by the caller
+     *
+     * @param orders              the orders to analyze
+     * @param pool                the pool to run parallel queries in
+     * @param sequentialThreshold the number of orders below which queries run sequentially
+     */
+    public ParallelOrderAnalysisService(@NonNull List<Order> orders, @NonNull ForkJoinPool pool,
+                                        int sequentialThreshold) {
+        this(orders, pool, false, sequentialThreshold);
+    }
+
+    private ParallelOrderAnalysisService(List<Order> orders, ForkJoinPool pool, boolean ownsPool,
+                                         int sequentialThreshold) {
+        if (sequentialThreshold < 0) {
+            throw new IllegalArgumentException("Sequential threshold must not be negative: " + sequentialThreshold);
+        }
+        this.orders = orders;
+        this.sequential = new OrderAnalysisService(orders);
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+        this.sequentialThreshold = sequentialThreshold;
+    }
+
+    /**
+     * Run a query sequentially for small order collections, otherwise run its parallel version in
+     * the dedicated pool. Parallel streams started from a task of a ForkJoinPool execute in that pool.
+     */
+    private <T> T execute(Supplier<T> sequentialQuery, Supplier<T> parallelQuery) {
+        if (orders.size() < sequentialThreshold) {
+            return sequentialQuery.get();
+        }
+        return pool.submit(parallelQuery::get).join();
+    }
+
+    @Override
+    public AggregateResults analyze(@NonNull Set<Aggregate> aggregates) {
+        return execute(() -> sequential.analyze(aggregates),
+                () -> orders.parallelStream().collect(OrderAggregator.toAggregates(aggregates)));
+    }
+
+    @Override
+    public List<String> distinctCountries() {
+        return execute(sequential::distinctCountries,
+                () -> orders.parallelStream().flatMap(order -> Stream.of(order.getAltShippingAddress(),
+                                order.getCustomer().getBillingAddress(),
+                                order.getCustomer().getShippingAddress())).flatMap(Stream::ofNullable)
+                        .map(Address::getPostalCountry).distinct().toList());
+    }
+
+    @Override
+    public List<Customer> distinctCustomers() {
+        return execute(sequential::distinctCustomers,
+                () -> orders.parallelStream().map(Order::getCustomer).distinct().toList());
+    }
+
+    /**
+     * @param precision the precision of the sketch
+     * @return a sketch of the distinct country codes, merged from per-thread sketches
+     * @see OrderAnalysisService#estimateDistinctCountries(int)
+     */
+    public HyperLogLog estimateDistinctCountries(int precision) {
+        return execute(() -> sequential.estimateDistinctCountries(precision),
+                () -> orders.parallelStream().flatMap(order -> Stream.of(order.getAltShippingAddress(),
+                                order.getCustomer().getBillingAddress(),
+                                order.getCustomer().getShippingAddress())).flatMap(Stream::ofNullable)
+                        .collect(HyperLogLog.toHyperLogLog(precision, Address::getPostalCountry)));
+    }
+
+    /**
+     * @param precision the precision of the sketch
+     * @return a sketch of the distinct customer names, merged from per-thread sketches
+     * @see OrderAnalysisService#estimateDistinctCustomers(int)
+     */
+    public HyperLogLog estimateDistinctCustomers(int precision) {
+        return execute(() -> sequential.estimateDistinctCustomers(precision),
+                () -> orders.parallelStream()
+                        .collect(HyperLogLog.toHyperLogLog(precision, order -> order.getCustomer().getName())));
+    }
+
+    /**
+     * @return the statistics of the orders, combined from per-thread statistics
+     * @see OrderAnalysisService#statistics()
+     */
+    public OrderStatistics statistics() {
+        return execute(sequential::statistics,
+                () -> orders.parallelStream().collect(OrderStatistics.toOrderStatistics()));
+    }
+
+    /**
+     * @param query the dimensions and measures to compute
+     * @return the cube of the orders, combined from per-thread aggregators
+     * @see OrderAnalysisService#cube(CubeQuery)
+     */
+    public Cube cube(@NonNull CubeQuery query) {
+        return execute(() -> sequential.cube(query),
+                () -> orders.parallelStream().collect(CubeAggregator.toCube(query)));
+    }
+
+    @Override
+    public long totalOrders() {
+        return orders.size();
+    }
+
+    @Override
+    public long totalUnitsSold() {
+        return execute(sequential::totalUnitsSold,
+                () -> orders.parallelStream()
+                        .flatMapToLong(order -> order.getItems().stream().mapToLong(OrderItem::getQuantity))
+                        .sum());
+    }
+
+    @Override
+    public Map<String, Integer> totalUnitsSoldByProduct() {
+        return execute(sequential::totalUnitsSoldByProduct,
+                () -> orders.parallelStream()
+                        .flatMap(order -> order.getItems().stream())
+                        .collect(groupingBy(item -> item.getProduct().getName(),
+                                Collectors.summingInt(OrderItem::getQuantity))));
+    }
+
+    @Override
+    public Map<String, Map<String, Integer>> totalUnitsSoldByCustomerByProduct() {
+        return execute(sequential::totalUnitsSoldByCustomerByProduct,
+                () -> orders.parallelStream().collect(groupingBy(order -> order.getCustomer().getName(),
+                        flatMapping(order -> order.getItems().stream(),
+                                groupingBy(item -> item.getProduct().getName(),
+                                        Collectors.summingInt(OrderItem::getQuantity))))));
+    }
+
+    @Override
+    public Map<String, Map<String, Integer>> totalUnitsSoldByCountryByProduct() {
+        return execute(sequential::totalUnitsSoldByCountryByProduct,
+                () -> orders.parallelStream().collect(groupingBy(
+                        order -> order.getCustomer().getBillingAddress().getPostalCountry(),
+                        flatMapping(order -> order.getItems().stream(),
+                                groupingBy(item -> item.getProduct().getName(),
+                                        Collectors.summingInt(OrderItem::getQuantity))))));
+    }
+
+    @Override
+    public BigDecimal totalRevenue() {
+        return execute(sequential::totalRevenue,
+                () -> orders.parallelStream()
+                        .flatMap(order -> order.getItems().stream())
+                        .collect(RevenueAccumulator.summingRevenue()));
+    }
+
+    @Override
+    public Map<String, BigDecimal> totalRevenueByProduct() {
+        return execute(sequential::totalRevenueByProduct,
+                () -> orders.parallelStream()
+                        .flatMap(order -> order.getItems().stream())
+                        .collect(groupingBy(item -> item.getProduct().getName(),
+                                RevenueAccumulator.summingRevenue())));
+    }
+
+    @Override
+    public Map<String, BigDecimal> totalRevenueByCustomer() {
+        return execute(sequential::totalRevenueByCustomer,
+                () -> orders.parallelStream().collect(groupingBy(order -> order.getCustomer().getName(),
+                        flatMapping(order -> order.getItems().stream(), RevenueAccumulator.summingRevenue()))));
+    }
+
+    @Override
+    public Map<String, Map<String, BigDecimal>> totalRevenueByCustomerByProduct() {
+        return execute(sequential::totalRevenueByCustomerByProduct,
+                () -> orders.parallelStream().collect(groupingBy(order -> order.getCustomer().getName(),
+                        flatMapping(order -> order.getItems().stream(),
+                                groupingBy(item -> item.getProduct().getName(),
+                                        RevenueAccumulator.summingRevenue())))));
+    }
+
+    @Override
+    public Map<String, BigDecimal> totalRevenueByCountry() {
+        return execute(sequential::totalRevenueByCountry,
+                () -> orders.parallelStream().collect(groupingBy(
+                        order -> order.getCustomer().getBillingAddress().getPostalCountry(),
+                        flatMapping(order -> order.getItems().stream(), RevenueAccumulator.summingRevenue()))));
+    }
+
+    @Override
+    public Map<String, Map<String, BigDecimal>> totalRevenueByCountryByProduct() {
+        return execute(sequential::totalRevenueByCountryByProduct,
+                () -> orders.parallelStream().collect(groupingBy(
+                        order -> order.getCustomer().getBillingAddress().getPostalCountry(),
+                        flatMapping(order -> order.getItems().stream(),
+                                groupingBy(item -> item.getProduct().getName(),
+                                        RevenueAccumulator.summingRevenue())))));
+    }
+
+    /**
+     * Shut down the dedicated pool, if this service created it
+     */
+    @Override
+    public void close() {
+        if (ownsPool) {
+            pool.shutdown();
+        }
+    }
+}
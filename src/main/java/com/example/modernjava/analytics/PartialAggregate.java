@@ -0,0 +1,473 @@
+package com.example.modernjava.analytics;
+
+import com.example.modernjava.analytics.sketch.HyperLogLog;
+import com.example.modernjava.domain.Address;
+import com.example.modernjava.domain.Customer;
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.OrderItem;
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import lombok.NonNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.IntSummaryStatistics;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Serializable, mergeable aggregates of one partition of the orders
+ * <p>
+ * A partial holds every {@link Aggregate} of its partition, with units as longs and revenue as exact
+ * decimals so that merging cannot lose precision, together with HyperLogLog sketches of the distinct
+ * countries and customers (by name) and the count, minimum and maximum of the item quantities. Partials
+ * of disjoint partitions are merged by adding the totals and the map entries key by key, concatenating
+ * the distinct lists without duplicates and merging the sketches, so merging them yields the same
+ * results as analyzing all orders at once, the distinct lists being in the order of the partitions.
+ * <p>
+ * Jackson reads and writes the fields directly, so a partial can be shipped between processes as JSON,
+ * e.g. with an object mapper from {@code OrderObjectMappers.create()}, the sketches being Base64 encoded.
+ * {@link #write(DataOutput)} and {@link #read(DataInput)} store it in a more compact binary form.
+ */
+@JsonAutoDetect(fieldVisibility = Visibility.ANY, getterVisibility = Visibility.NONE,
+        isGetterVisibility = Visibility.NONE, setterVisibility = Visibility.NONE)
+public class PartialAggregate {
+    private static final EnumSet<Aggregate> ALL = EnumSet.allOf(Aggregate.class);
+
+    private long totalOrders;
+    private long totalUnitsSold;
+    private BigDecimal totalRevenue = BigDecimal.ZERO;
+    private Map<String, Long> unitsSoldByProduct = new HashMap<>();
+    private Map<String, Map<String, Long>> unitsSoldByCustomerByProduct = new HashMap<>();
+    private Map<String, Map<String, Long>> unitsSoldByCountryByProduct = new HashMap<>();
+    private Map<String, BigDecimal> revenueByProduct = new HashMap<>();
+    private Map<String, BigDecimal> revenueByCustomer = new HashMap<>();
+    private Map<String, Map<String, BigDecimal>> revenueByCustomerByProduct = new HashMap<>();
+    private Map<String, BigDecimal> revenueByCountry = new HashMap<>();
+    private Map<String, Map<String, BigDecimal>> revenueByCountryByProduct = new HashMap<>();
+    private List<String> distinctCountries = new ArrayList<>();
+    private List<Customer> distinctCustomers = new ArrayList<>();
+    private byte[] countrySketch = new HyperLogLog().toByteArray();
+    private byte[] customerSketch = new HyperLogLog().toByteArray();
+    private long itemCount;
+    private int minQuantity = Integer.MAX_VALUE;
+    private int maxQuantity = Integer.MIN_VALUE;
+
+    /**
+     * Create an empty partial, the identity of {@link #merge(PartialAggregate)}
+     */
+    public PartialAggregate() {
+    }
+
+    /**
+     * Aggregate a partition of the orders in a single pass
+     *
+     * @param orders the orders of the partition
+     * @return the partial aggregates of the partition
+     */
+    public static PartialAggregate of(@NonNull Iterable<Order> orders) {
+        var aggregator = new OrderAggregator(ALL);
+        var countries = new HyperLogLog();
+        var customers = new HyperLogLog();
+        var partial = new PartialAggregate();
+        for (Order order : orders) {
+            aggregator.accept(order);
+            customers.add(order.getCustomer().getName());
+            Stream.of(order.getAltShippingAddress(), order.getCustomer().getBillingAddress(),
+                            order.getCustomer().getShippingAddress()).flatMap(Stream::ofNullable)
+                    .map(Address::getPostalCountry).forEach(countries::add);
+            for (OrderItem item : order.getItems()) {
+                partial.itemCount++;
+                partial.minQuantity = Math.min(partial.minQuantity, item.getQuantity());
+                partial.maxQuantity = Math.max(partial.maxQuantity, item.getQuantity());
+            }
+        }
+        var results = aggregator.results();
+        partial.totalOrders = results.totalOrders();
+        partial.totalUnitsSold = results.totalUnitsSold();
+        partial.totalRevenue = results.totalRevenue();
+        results.totalUnitsSoldByProduct().forEach((key, units) -> partial.unitsSoldByProduct.put(key, (long) units));
+        results.totalUnitsSoldByCustomerByProduct().forEach((key, units) ->
+                partial.unitsSoldByCustomerByProduct.put(key, toLongs(units)));
+        results.totalUnitsSoldByCountryByProduct().forEach((key, units) ->
+                partial.unitsSoldByCountryByProduct.put(key, toLongs(units)));
+        partial.revenueByProduct.putAll(results.totalRevenueByProduct());
+        partial.revenueByCustomer.putAll(results.totalRevenueByCustomer());
+        results.totalRevenueByCustomerByProduct().forEach((key, revenue) ->
+                partial.revenueByCustomerByProduct.put(key, new HashMap<>(revenue)));
+        partial.revenueByCountry.putAll(results.totalRevenueByCountry());
+        results.totalRevenueByCountryByProduct().forEach((key, revenue) ->
+                partial.revenueByCountryByProduct.put(key, new HashMap<>(revenue)));
+        partial.distinctCountries.addAll(results.distinctCountries());
+        partial.distinctCustomers.addAll(results.distinctCustomers());
+        partial.countrySketch = countries.toByteArray();
+        partial.customerSketch = customers.toByteArray();
+        return partial;
+    }
+
+    private static Map<String, Long> toLongs(Map<String, Integer> units) {
+        Map<String, Long> longs = new HashMap<>(units.size() * 4 / 3 + 1);
+        units.forEach((key, value) -> longs.put(key, (long) value));
+        return longs;
+    }
+
+    /**
+     * Merge the aggregates of another partition, which follows this one, into this partial
+     *
+     * @param other the partial of a disjoint partition
+     * @return this partial
+     */
+    public PartialAggregate merge(@NonNull PartialAggregate other) {
+        totalOrders += other.totalOrders;
+        totalUnitsSold += other.totalUnitsSold;
+        totalRevenue = totalRevenue.add(other.totalRevenue);
+        mergeMap(unitsSoldByProduct, other.unitsSoldByProduct, Long::sum);
+        mergeNested(unitsSoldByCustomerByProduct, other.unitsSoldByCustomerByProduct, Long::sum);
+        mergeNested(unitsSoldByCountryByProduct, other.unitsSoldByCountryByProduct, Long::sum);
+        mergeMap(revenueByProduct, other.revenueByProduct, BigDecimal::add);
+        mergeMap(revenueByCustomer, other.revenueByCustomer, BigDecimal::add);
+        mergeNested(revenueByCustomerByProduct, other.revenueByCustomerByProduct, BigDecimal::add);
+        mergeMap(revenueByCountry, other.revenueByCountry, BigDecimal::add);
+        mergeNested(revenueByCountryByProduct, other.revenueByCountryByProduct, BigDecimal::add);
+        distinctCountries = union(distinctCountries, other.distinctCountries);
+        distinctCustomers = union(distinctCustomers, other.distinctCustomers);
+        countrySketch = countrySketch().merge(other.countrySketch()).toByteArray();
+        customerSketch = customerSketch().merge(other.customerSketch()).toByteArray();
+        itemCount += other.itemCount;
+        minQuantity = Math.min(minQuantity, other.minQuantity);
+        maxQuantity = Math.max(maxQuantity, other.maxQuantity);
+        return this;
+    }
+
+    private static <V> void mergeMap(Map<String, V> into, Map<String, V> from, BinaryOperator<V> add) {
+        from.forEach((key, value) -> into.merge(key, value, add));
+    }
+
+    private static <V> void mergeNested(Map<String, Map<String, V>> into, Map<String, Map<String, V>> from,
+                                        BinaryOperator<V> add) {
+        from.forEach((key, values) -> mergeMap(into.computeIfAbsent(key, k -> new HashMap<>()), values, add));
+    }
+
+    private static <T> List<T> union(List<T> first, List<T> second) {
+        var union = new LinkedHashSet<>(first);
+        union.addAll(second);
+        return new ArrayList<>(union);
+    }
+
+    /**
+     * @return the sketch of the distinct countries
+     */
+    public HyperLogLog countrySketch() {
+        return HyperLogLog.fromByteArray(countrySketch);
+    }
+
+    /**
+     * @return the sketch of the distinct customer names
+     */
+    public HyperLogLog customerSketch() {
+        return HyperLogLog.fromByteArray(customerSketch);
+    }
+
+    /**
+     * @return number of orders of the merged partitions
+     */
+    public long totalOrders() {
+        return totalOrders;
+    }
+
+    /**
+     * @return count, sum, minimum and maximum of the item quantities
+     */
+    public IntSummaryStatistics quantityStatistics() {
+        return itemCount == 0 ? new IntSummaryStatistics()
+                : new IntSummaryStatistics(itemCount, minQuantity, maxQuantity, totalUnitsSold);
+    }
+
+    /**
+     * Convert to the results of {@link OrderAnalytics#analyze(java.util.Set)}, equal to those of analyzing
+     * all merged orders at once
+     *
+     * @return results holding every aggregate
+     * @throws ArithmeticException if units sold of a group exceed the int range of the results
+     */
+    public AggregateResults toResults() {
+        Map<Aggregate, Object> values = new EnumMap<>(Aggregate.class);
+        values.put(Aggregate.TOTAL_ORDERS, totalOrders);
+        values.put(Aggregate.TOTAL_UNITS_SOLD, totalUnitsSold);
+        values.put(Aggregate.UNITS_SOLD_BY_PRODUCT, toInts(unitsSoldByProduct));
+        values.put(Aggregate.UNITS_SOLD_BY_CUSTOMER_BY_PRODUCT, toNestedInts(unitsSoldByCustomerByProduct));
+        values.put(Aggregate.UNITS_SOLD_BY_COUNTRY_BY_PRODUCT, toNestedInts(unitsSoldByCountryByProduct));
+        values.put(Aggregate.TOTAL_REVENUE, totalRevenue);
+        values.put(Aggregate.REVENUE_BY_PRODUCT, new HashMap<>(revenueByProduct));
+        values.put(Aggregate.REVENUE_BY_CUSTOMER, new HashMap<>(revenueByCustomer));
+        values.put(Aggregate.REVENUE_BY_CUSTOMER_BY_PRODUCT, copyNested(revenueByCustomerByProduct));
+        values.put(Aggregate.REVENUE_BY_COUNTRY, new HashMap<>(revenueByCountry));
+        values.put(Aggregate.REVENUE_BY_COUNTRY_BY_PRODUCT, copyNested(revenueByCountryByProduct));
+        values.put(Aggregate.DISTINCT_COUNTRIES, List.copyOf(distinctCountries));
+        values.put(Aggregate.DISTINCT_CUSTOMERS, List.copyOf(distinctCustomers));
+        return new AggregateResults(values);
+    }
+
+    /**
+     * Write the partial in a compact binary form, read back by {@link #read(DataInput)}
+     * <p>
+     * Every distinct string (product, customer and country names, and the fields of the distinct
+     * customers' addresses) is written once, in a string table that the maps and lists refer to by
+     * index. Units are written as longs, revenue as the scale and unscaled value of the exact decimal,
+     * and the sketches as their bytes.
+     *
+     * @param out the output to write to
+     * @throws IOException if the output cannot be written
+     */
+    public void write(@NonNull DataOutput out) throws IOException {
+        Map<String, Integer> strings = new HashMap<>();
+        List<String> table = new ArrayList<>();
+        collectStrings(strings, table);
+        out.writeInt(table.size());
+        for (String string : table) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        out.writeLong(totalOrders);
+        out.writeLong(totalUnitsSold);
+        writeDecimal(out, totalRevenue);
+        writeMap(out, strings, unitsSoldByProduct, DataOutput::writeLong);
+        writeNested(out, strings, unitsSoldByCustomerByProduct, DataOutput::writeLong);
+        writeNested(out, strings, unitsSoldByCountryByProduct, DataOutput::writeLong);
+        writeMap(out, strings, revenueByProduct, PartialAggregate::writeDecimal);
+        writeMap(out, strings, revenueByCustomer, PartialAggregate::writeDecimal);
+        writeNested(out, strings, revenueByCustomerByProduct, PartialAggregate::writeDecimal);
+        writeMap(out, strings, revenueByCountry, PartialAggregate::writeDecimal);
+        writeNested(out, strings, revenueByCountryByProduct, PartialAggregate::writeDecimal);
+        out.writeInt(distinctCountries.size());
+        for (String country : distinctCountries) {
+            out.writeInt(id(strings, country));
+        }
+        out.writeInt(distinctCustomers.size());
+        for (Customer customer : distinctCustomers) {
+            out.writeInt(id(strings, customer.getName()));
+            writeAddress(out, strings, customer.getBillingAddress());
+            writeAddress(out, strings, customer.getShippingAddress());
+        }
+        writeBytes(out, countrySketch);
+        writeBytes(out, customerSketch);
+        out.writeLong(itemCount);
+        out.writeInt(minQuantity);
+        out.writeInt(maxQuantity);
+    }
+
+    /**
+     * Read a partial written by {@link #write(DataOutput)}
+     *
+     * @param in the input to read from
+     * @return the partial
+     * @throws IOException if the input cannot be read or ends early
+     */
+    public static PartialAggregate read(@NonNull DataInput in) throws IOException {
+        String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        var partial = new PartialAggregate();
+        partial.totalOrders = in.readLong();
+        partial.totalUnitsSold = in.readLong();
+        partial.totalRevenue = readDecimal(in);
+        partial.unitsSoldByProduct = readMap(in, strings, DataInput::readLong);
+        partial.unitsSoldByCustomerByProduct = readNested(in, strings, DataInput::readLong);
+        partial.unitsSoldByCountryByProduct = readNested(in, strings, DataInput::readLong);
+        partial.revenueByProduct = readMap(in, strings, PartialAggregate::readDecimal);
+        partial.revenueByCustomer = readMap(in, strings, PartialAggregate::readDecimal);
+        partial.revenueByCustomerByProduct = readNested(in, strings, PartialAggregate::readDecimal);
+        partial.revenueByCountry = readMap(in, strings, PartialAggregate::readDecimal);
+        partial.revenueByCountryByProduct = readNested(in, strings, PartialAggregate::readDecimal);
+        for (int i = 0, count = in.readInt(); i < count; i++) {
+            partial.distinctCountries.add(string(strings, in.readInt()));
+        }
+        for (int i = 0, count = in.readInt(); i < count; i++) {
+            partial.distinctCustomers.add(new Customer(string(strings, in.readInt()), readAddress(in, strings),
+                    readAddress(in, strings)));
+        }
+        partial.countrySketch = readBytes(in);
+        partial.customerSketch = readBytes(in);
+        partial.itemCount = in.readLong();
+        partial.minQuantity = in.readInt();
+        partial.maxQuantity = in.readInt();
+        return partial;
+    }
+
+    @FunctionalInterface
+    private interface ValueWriter<V> {
+        void write(DataOutput out, V value) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface ValueReader<V> {
+        V read(DataInput in) throws IOException;
+    }
+
+    private void collectStrings(Map<String, Integer> strings, List<String> table) {
+        Consumer<String> add = string -> {
+            if (string != null && strings.putIfAbsent(string, table.size()) == null) {
+                table.add(string);
+            }
+        };
+        Stream.of(unitsSoldByProduct, revenueByProduct, revenueByCustomer, revenueByCountry)
+                .forEach(map -> map.keySet().forEach(add));
+        Stream.of(unitsSoldByCustomerByProduct, unitsSoldByCountryByProduct, revenueByCustomerByProduct,
+                revenueByCountryByProduct).forEach(map -> map.forEach((key, inner) -> {
+            add.accept(key);
+            inner.keySet().forEach(add);
+        }));
+        distinctCountries.forEach(add);
+        for (Customer customer : distinctCustomers) {
+            add.accept(customer.getName());
+            Stream.of(customer.getBillingAddress(), customer.getShippingAddress()).flatMap(Stream::ofNullable)
+                    .forEach(address -> {
+                        Stream.of(address.getPostalCountry(), address.getAdministrativeArea(), address.getLocality(),
+                                address.getDependantLocality(), address.getPostalCode(),
+                                address.getPrimaryPhoneNumber()).forEach(add);
+                        if (address.getAddressLines() != null) {
+                            address.getAddressLines().forEach(add);
+                        }
+                    });
+        }
+    }
+
+    private static int id(Map<String, Integer> strings, String string) {
+        return string == null ? -1 : strings.get(string);
+    }
+
+    private static String string(String[] strings, int id) {
+        return id == -1 ? null : strings[id];
+    }
+
+    private static <V> void writeMap(DataOutput out, Map<String, Integer> strings, Map<String, V> map,
+                                     ValueWriter<V> writer) throws IOException {
+        out.writeInt(map.size());
+        for (var entry : map.entrySet()) {
+            out.writeInt(id(strings, entry.getKey()));
+            writer.write(out, entry.getValue());
+        }
+    }
+
+    private static <V> void writeNested(DataOutput out, Map<String, Integer> strings, Map<String, Map<String, V>> map,
+                                        ValueWriter<V> writer) throws IOException {
+        out.writeInt(map.size());
+        for (var entry : map.entrySet()) {
+            out.writeInt(id(strings, entry.getKey()));
+            writeMap(out, strings, entry.getValue(), writer);
+        }
+    }
+
+    private static <V> Map<String, V> readMap(DataInput in, String[] strings, ValueReader<V> reader)
+            throws IOException {
+        int size = in.readInt();
+        Map<String, V> map = new HashMap<>(size * 4 / 3 + 1);
+        for (int i = 0; i < size; i++) {
+            map.put(string(strings, in.readInt()), reader.read(in));
+        }
+        return map;
+    }
+
+    private static <V> Map<String, Map<String, V>> readNested(DataInput in, String[] strings, ValueReader<V> reader)
+            throws IOException {
+        int size = in.readInt();
+        Map<String, Map<String, V>> map = new HashMap<>(size * 4 / 3 + 1);
+        for (int i = 0; i < size; i++) {
+            map.put(string(strings, in.readInt()), readMap(in, strings, reader));
+        }
+        return map;
+    }
+
+    private static void writeDecimal(DataOutput out, BigDecimal value) throws IOException {
+        out.writeInt(value.scale());
+        writeBytes(out, value.unscaledValue().toByteArray());
+    }
+
+    private static BigDecimal readDecimal(DataInput in) throws IOException {
+        int scale = in.readInt();
+        return new BigDecimal(new BigInteger(readBytes(in)), scale);
+    }
+
+    private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeAddress(DataOutput out, Map<String, Integer> strings, Address address)
+            throws IOException {
+        out.writeBoolean(address != null);
+        if (address == null) {
+            return;
+        }
+        out.writeInt(id(strings, address.getPostalCountry()));
+        var lines = address.getAddressLines();
+        out.writeInt(lines == null ? -1 : lines.size());
+        if (lines != null) {
+            for (String line : lines) {
+                out.writeInt(id(strings, line));
+            }
+        }
+        out.writeInt(id(strings, address.getAdministrativeArea()));
+        out.writeInt(id(strings, address.getLocality()));
+        out.writeInt(id(strings, address.getDependantLocality()));
+        out.writeInt(id(strings, address.getPostalCode()));
+        out.writeInt(id(strings, address.getPrimaryPhoneNumber()));
+    }
+
+    private static Address readAddress(DataInput in, String[] strings) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        String postalCountry = string(strings, in.readInt());
+        int lineCount = in.readInt();
+        List<String> lines = null;
+        if (lineCount >= 0) {
+            lines = new ArrayList<>(lineCount);
+            for (int i = 0; i < lineCount; i++) {
+                lines.add(string(strings, in.readInt()));
+            }
+        }
+        return new Address(postalCountry, lines, string(strings, in.readInt()), string(strings, in.readInt()),
+                string(strings, in.readInt()), string(strings, in.readInt()), string(strings, in.readInt()));
+    }
+
+    private static Map<String, Integer> toInts(Map<String, Long> units) {
+        Map<String, Integer> ints = new HashMap<>(units.size() * 4 / 3 + 1);
+        units.forEach((key, value) -> ints.put(key, Math.toIntExact(value)));
+        return ints;
+    }
+
+    private static Map<String, Map<String, Integer>> toNestedInts(Map<String, Map<String, Long>> units) {
+        Map<String, Map<String, Integer>> ints = new HashMap<>(units.size() * 4 / 3 + 1);
+        units.forEach((key, values) -> ints.put(key, toInts(values)));
+        return ints;
+    }
+
+    private static <V> Map<String, Map<String, V>> copyNested(Map<String, Map<String, V>> values) {
+        Map<String, Map<String, V>> copy = new HashMap<>(values.size() * 4 / 3 + 1);
+        values.forEach((key, inner) -> copy.put(key, new HashMap<>(inner)));
+        return copy;
+    }
+}
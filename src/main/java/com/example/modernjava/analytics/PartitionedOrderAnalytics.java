@@ -0,0 +1,120 @@
+package com.example.modernjava.analytics;
+
+import com.example.modernjava.analytics.sketch.HyperLogLog;
+import com.example.modernjava.domain.Order;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Order analytics over partitions of the orders, such as the slices held by different nodes, combined
+ * from their {@link PartialAggregate}s rather than from the orders themselves
+ * <p>
+ * Each partition is reduced to a partial where its orders live, in memory or in a file written by
+ * another process, and only the partials are merged here. Partials are computed and read in parallel
+ * and merged pairwise in a tree, in partition order, so the results equal those of analyzing the
+ * concatenation of the partitions with {@link OrderAnalysisService}.
+ * <p>
+ * The partials are merged once, on construction, so queries touch neither the partitions nor the partials.
+ */
+public class PartitionedOrderAnalytics implements OrderAnalytics {
+    private final PartialAggregate merged;
+    private final AggregateResults results;
+    private final int partitionCount;
+
+    /**
+     * @param partials the partials of the partitions, in partition order; they are not modified
+     */
+    public PartitionedOrderAnalytics(@NonNull List<PartialAggregate> partials) {
+        this.partitionCount = partials.size();
+        this.merged = partials.parallelStream()
+                .reduce(new PartialAggregate(), (merged, partial) -> new PartialAggregate().merge(merged).merge(partial),
+                        (first, second) -> new PartialAggregate().merge(first).merge(second));
+        this.results = merged.toResults();
+    }
+
+    /**
+     * Aggregate in-memory partitions of the orders, in parallel, standing in for the nodes holding them
+     *
+     * @param partitions the partitions, in order
+     * @return analytics over all partitions
+     */
+    public static PartitionedOrderAnalytics ofPartitions(@NonNull List<? extends Collection<Order>> partitions) {
+        return new PartitionedOrderAnalytics(partitions.parallelStream().map(PartialAggregate::of).toList());
+    }
+
+    /**
+     * Merge partials written as JSON files, e.g. by {@link #writePartial(ObjectMapper, Path, Collection)}
+     *
+     * @param objectMapper the object mapper to read the partials with
+     * @param files        the files of the partitions, in order
+     * @return analytics over all partitions
+     * @throws IOException if a file cannot be read
+     */
+    public static PartitionedOrderAnalytics ofFiles(@NonNull ObjectMapper objectMapper, @NonNull List<Path> files)
+            throws IOException {
+        try {
+            return new PartitionedOrderAnalytics(files.parallelStream().map(file -> {
+                try {
+                    return objectMapper.readValue(file.toFile(), PartialAggregate.class);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Aggregate a partition of the orders and write its partial as JSON, as a node would for the coordinator
+     *
+     * @param objectMapper the object mapper to write the partial with
+     * @param file         the file to write
+     * @param orders       the orders of the partition
+     * @throws IOException if the file cannot be written
+     */
+    public static void writePartial(@NonNull ObjectMapper objectMapper, @NonNull Path file,
+                                    @NonNull Collection<Order> orders) throws IOException {
+        objectMapper.writeValue(file.toFile(), PartialAggregate.of(orders));
+    }
+
+    /**
+     * @return the number of partitions merged
+     */
+    public int partitionCount() {
+        return partitionCount;
+    }
+
+    /**
+     * @return a copy of the merged partial of all partitions, e.g. to pass on to a higher level coordinator
+     */
+    public PartialAggregate merged() {
+        return new PartialAggregate().merge(merged);
+    }
+
+    @Override
+    public AggregateResults analyze(@NonNull Set<Aggregate> aggregates) {
+        return results.select(aggregates);
+    }
+
+    /**
+     * @return a sketch of the distinct countries of all partitions
+     */
+    public HyperLogLog estimateDistinctCountries() {
+        return merged.countrySketch();
+    }
+
+    /**
+     * @return a sketch of the distinct customer names of all partitions
+     */
+    public HyperLogLog estimateDistinctCustomers() {
+        return merged.customerSketch();
+    }
+}
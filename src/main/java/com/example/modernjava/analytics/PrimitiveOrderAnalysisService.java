@@ -0,0 +1,172 @@
+package com.example.modernjava.analytics;
+
+import com.example.modernjava.analytics.primitive.CompositeKeyLongMap;
+import com.example.modernjava.analytics.primitive.ObjectLongHashMap;
+import com.example.modernjava.domain.Customer;
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.OrderItem;
+import lombok.NonNull;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Order analytics that sums units sold into primitive open addressing maps instead of boxed maps
+ * <p>
+ * The units queries of {@link OrderAnalysisService} collect with groupingBy and summingInt, which boxes an
+ * Integer and allocates an int[] accumulator per group, and the nested queries build a whole inner map per
+ * customer or country. Here units are summed as longs into an {@link ObjectLongHashMap} per product, and
+ * the two-level groupings into a single flattened {@link CompositeKeyLongMap} keyed by (customer or
+ * country, product), so adding an item's units is a primitive update and allocates nothing once the group
+ * exists.
+ * <p>
+ * The primitive maps are available directly, without boxing ({@link #unitsSoldByProduct()},
+ * {@link #unitsSoldByCustomerByProduct()} and {@link #unitsSoldByCountryByProduct()}), and the
+ * Map-returning queries of {@link OrderAnalytics} convert them at the end, with results identical to those
+ * of {@link OrderAnalysisService}. The other aggregates are computed by an {@link OrderAggregator} in the
+ * same pass.
+ */
+public class PrimitiveOrderAnalysisService implements OrderAnalytics {
+    private static final Set<Aggregate> UNITS = EnumSet.of(Aggregate.UNITS_SOLD_BY_PRODUCT,
+            Aggregate.UNITS_SOLD_BY_CUSTOMER_BY_PRODUCT, Aggregate.UNITS_SOLD_BY_COUNTRY_BY_PRODUCT);
+
+    private final List<Order> orders;
+
+    public PrimitiveOrderAnalysisService(@NonNull List<Order> orders) {
+        this.orders = orders;
+    }
+
+    /**
+     * Compute any combination of aggregates in a single traversal of the orders and their items
+     *
+     * @param aggregates the aggregates to compute
+     * @return the requested aggregates
+     * @throws ArithmeticException if units sold of a group exceed the int range of the results
+     */
+    @Override
+    public AggregateResults analyze(@NonNull Set<Aggregate> aggregates) {
+        var others = aggregates.isEmpty() ? EnumSet.noneOf(Aggregate.class) : EnumSet.copyOf(aggregates);
+        others.removeAll(UNITS);
+        var aggregator = new OrderAggregator(others);
+        var units = new UnitsAccumulator(aggregates);
+        boolean items = aggregates.stream().anyMatch(Aggregate::needsItems);
+        long itemsScanned = 0;
+        for (Order order : orders) {
+            aggregator.accept(order);
+            units.accept(order);
+            if (items) {
+                itemsScanned += order.getItems().size();
+            }
+        }
+        var results = aggregator.results();
+        Map<Aggregate, Object> values = new EnumMap<>(Aggregate.class);
+        others.forEach(aggregate -> values.put(aggregate, results.value(aggregate)));
+        if (units.byProduct != null) {
+            values.put(Aggregate.UNITS_SOLD_BY_PRODUCT, toIntMap(units.byProduct));
+        }
+        if (units.byCustomerByProduct != null) {
+            values.put(Aggregate.UNITS_SOLD_BY_CUSTOMER_BY_PRODUCT, toNestedIntMap(units.byCustomerByProduct));
+        }
+        if (units.byCountryByProduct != null) {
+            values.put(Aggregate.UNITS_SOLD_BY_COUNTRY_BY_PRODUCT, toNestedIntMap(units.byCountryByProduct));
+        }
+        return new AggregateResults(values, orders.size(), itemsScanned);
+    }
+
+    /**
+     * Get the total number of units sold for all orders, grouped by product, without boxing
+     *
+     * @return total number of units sold, grouped by product name
+     */
+    public ObjectLongHashMap<String> unitsSoldByProduct() {
+        return accumulate(Aggregate.UNITS_SOLD_BY_PRODUCT).byProduct;
+    }
+
+    /**
+     * Get the total number of units sold for all orders, grouped by customer and product, without boxing
+     * <p>
+     * Every customer with an order is a first key, even if none of its orders has items.
+     *
+     * @return total number of units sold, grouped by customer name and product name
+     */
+    public CompositeKeyLongMap<String, String> unitsSoldByCustomerByProduct() {
+        return accumulate(Aggregate.UNITS_SOLD_BY_CUSTOMER_BY_PRODUCT).byCustomerByProduct;
+    }
+
+    /**
+     * Get the total number of units sold for all orders, grouped by country and product, without boxing
+     * <p>
+     * Every billing country with an order is a first key, even if none of its orders has items.
+     *
+     * @return total number of units sold, grouped by the postal country of the customer's billing
+     * address and product name
+     */
+    public CompositeKeyLongMap<String, String> unitsSoldByCountryByProduct() {
+        return accumulate(Aggregate.UNITS_SOLD_BY_COUNTRY_BY_PRODUCT).byCountryByProduct;
+    }
+
+    private UnitsAccumulator accumulate(Aggregate aggregate) {
+        var units = new UnitsAccumulator(EnumSet.of(aggregate));
+        orders.forEach(units);
+        return units;
+    }
+
+    private static Map<String, Integer> toIntMap(ObjectLongHashMap<String> units) {
+        Map<String, Integer> result = new HashMap<>(units.size() * 4 / 3 + 1);
+        units.forEach((key, value) -> result.put(key, Math.toIntExact(value)));
+        return result;
+    }
+
+    private static Map<String, Map<String, Integer>> toNestedIntMap(CompositeKeyLongMap<String, String> units) {
+        Map<String, Map<String, Integer>> result = new HashMap<>(units.firstKeys().size() * 4 / 3 + 1);
+        units.firstKeys().forEach(key -> result.put(key, new HashMap<>()));
+        units.forEach((key, product, value) -> result.get(key).put(product, Math.toIntExact(value)));
+        return result;
+    }
+
+    /**
+     * Sums the units of the requested units aggregates in one pass
+     */
+    private static final class UnitsAccumulator implements Consumer<Order> {
+        private final ObjectLongHashMap<String> byProduct;
+        private final CompositeKeyLongMap<String, String> byCustomerByProduct;
+        private final CompositeKeyLongMap<String, String> byCountryByProduct;
+
+        UnitsAccumulator(Set<Aggregate> aggregates) {
+            byProduct = aggregates.contains(Aggregate.UNITS_SOLD_BY_PRODUCT) ? new ObjectLongHashMap<>() : null;
+            byCustomerByProduct = aggregates.contains(Aggregate.UNITS_SOLD_BY_CUSTOMER_BY_PRODUCT)
+                    ? new CompositeKeyLongMap<>() : null;
+            byCountryByProduct = aggregates.contains(Aggregate.UNITS_SOLD_BY_COUNTRY_BY_PRODUCT)
+                    ? new CompositeKeyLongMap<>() : null;
+        }
+
+        @Override
+        public void accept(Order order) {
+            if (byProduct == null && byCustomerByProduct == null && byCountryByProduct == null) {
+                return;
+            }
+            Customer customer = order.getCustomer();
+            int customerId = byCustomerByProduct == null ? -1 : byCustomerByProduct.firstKeyId(customer.getName());
+            int countryId = byCountryByProduct == null ? -1
+                    : byCountryByProduct.firstKeyId(customer.getBillingAddress().getPostalCountry());
+            for (OrderItem item : order.getItems()) {
+                int quantity = item.getQuantity();
+                String product = item.getProduct().getName();
+                if (byProduct != null) {
+                    byProduct.addTo(product, quantity);
+                }
+                if (byCustomerByProduct != null) {
+                    byCustomerByProduct.addTo(customerId, byCustomerByProduct.secondKeyId(product), quantity);
+                }
+                if (byCountryByProduct != null) {
+                    byCountryByProduct.addTo(countryId, byCountryByProduct.secondKeyId(product), quantity);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.modernjava.analytics;
+
+import com.example.modernjava.domain.OrderItem;
+import lombok.NonNull;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.stream.Collector;
+
+/**
+ * Exact, allocation free accumulator for order item revenue
+ * <p>
+ * Revenue per order item == Quantity * Price * (1 - Discount)
+ * <p>
+ * Revenue is accumulated as a scaled long with {@link #SCALE} decimal places, which covers
+ * prices in cents combined with discounts in basis points. Prices and discounts whose unscaled
+ * values fit in 15 digits are converted to longs without creating intermediate BigDecimal or
+ * BigInteger instances, so the hot path does not allocate per line item. Line items that do not
+ * fit (more decimal places than {@link #SCALE}, or a product that overflows a long) fall back to
+ * exact BigDecimal arithmetic, and when the running long sum would overflow it is spilled into a
+ * BigDecimal as well, so the total is always exact.
+ * <p>
+ * Instances are not thread safe, but can be combined, which makes them usable as the
+ * accumulation type of a collector over a parallel stream (see {@link #summingRevenue()}).
+ */
+public final class RevenueAccumulator {
+    /**
+     * Number of decimal places of the scaled long revenue
+     */
+    public static final int SCALE = 6;
+
+    // Unscaled values below 10^15 (< 2^50) survive the round trip through a double exactly
+    private static final int MAX_FAST_PRECISION = 15;
+    private static final long[] LONG_POWERS_OF_TEN = {1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L};
+    private static final double[] DOUBLE_POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6};
+
+    private long scaledSum;
+    private BigDecimal spilled = BigDecimal.ZERO;
+
+    /**
+     * Create a collector that sums the revenue of a stream of order items
+     * <p>
+     * Illustrates the use of Collector.of to build a collector from a mutable accumulator
+     *
+     * @return a collector producing the exact total revenue of the order items
+     */
+    public static Collector<OrderItem, RevenueAccumulator, BigDecimal> summingRevenue() {
+        return Collector.of(RevenueAccumulator::new, RevenueAccumulator::add, RevenueAccumulator::combine,
+                RevenueAccumulator::total);
+    }
+
+    /**
+     * Add the revenue of an order item
+     *
+     * @param item the order item
+     */
+    public void add(@NonNull OrderItem item) {
+        add(item.getQuantity(), item.getProduct().getPrice(), item.getDiscount());
+    }
+
+    /**
+     * Remove the revenue of an order item that was previously added
+     *
+     * @param item the order item
+     */
+    public void subtract(@NonNull OrderItem item) {
+        add(-(long) item.getQuantity(), item.getProduct().getPrice(), item.getDiscount());
+    }
+
+    /**
+     * Add the revenue of a line, a null discount being treated as no discount
+     *
+     * @param quantity the number of units (may be negative to remove revenue)
+     * @param price    the unit price
+     * @param discount the discount as a fraction of the price, or null
+     */
+    public void add(long quantity, @NonNull BigDecimal price, BigDecimal discount) {
+        if (discount == null) {
+            discount = BigDecimal.ZERO;
+        }
+        if (isFastPath(price) && isFastPath(discount) && price.scale() + discount.scale() <= SCALE) {
+            long oneMinusDiscount = LONG_POWERS_OF_TEN[discount.scale()] - unscaled(discount);
+            try {
+                add(quantity, unscaled(price), price.scale(), oneMinusDiscount, discount.scale());
+                return;
+            } catch (ArithmeticException e) {
+                // Line revenue does not fit in a long, fall back to BigDecimal below
+            }
+        }
+        spilled = spilled.add(BigDecimal.valueOf(quantity).multiply(price)
+                .multiply(BigDecimal.ONE.subtract(discount)));
+    }
+
+    /**
+     * Add the revenue of a line given as unscaled values
+     *
+     * @param quantity                 the number of units
+     * @param unscaledPrice            the unscaled unit price
+     * @param priceScale               the scale of the unit price
+     * @param unscaledOneMinusDiscount the unscaled value of (1 - discount)
+     * @param discountScale            the scale of (1 - discount)
+     * @throws ArithmeticException if the line revenue does not fit in a long at {@link #SCALE},
+     *                             in which case the accumulator is left unchanged
+     */
+    public void add(long quantity, long unscaledPrice, int priceScale, long unscaledOneMinusDiscount,
+                    int discountScale) {
+        addScaled(scaled(quantity, unscaledPrice, priceScale, unscaledOneMinusDiscount, discountScale));
+    }
+
+    /**
+     * Get the revenue of an order item as a long scaled to {@link #SCALE} decimal places
+     * <p>
+     * Uses the same allocation free path as {@link #add(OrderItem)}; only items that do not fit it
+     * fall back to BigDecimal arithmetic, in which case revenue with more than {@link #SCALE} decimal
+     * places is rounded half up and revenue outside the range of a long is clamped to it.
+     *
+     * @param item the order item
+     * @return the scaled revenue of the item
+     */
+    public static long scaledRevenue(@NonNull OrderItem item) {
+        long quantity = item.getQuantity();
+        var price = item.getProduct().getPrice();
+        var discount = item.getDiscount() == null ? BigDecimal.ZERO : item.getDiscount();
+        if (isFastPath(price) && isFastPath(discount) && price.scale() + discount.scale() <= SCALE) {
+            long oneMinusDiscount = LONG_POWERS_OF_TEN[discount.scale()] - unscaled(discount);
+            try {
+                return scaled(quantity, unscaled(price), price.scale(), oneMinusDiscount, discount.scale());
+            } catch (ArithmeticException e) {
+                // Line revenue does not fit in a long, fall back to BigDecimal below
+            }
+        }
+        var revenue = BigDecimal.valueOf(quantity).multiply(price).multiply(BigDecimal.ONE.subtract(discount))
+                .setScale(SCALE, RoundingMode.HALF_UP).unscaledValue();
+        return revenue.bitLength() < Long.SIZE ? revenue.longValue()
+                : revenue.signum() > 0 ? Long.MAX_VALUE : Long.MIN_VALUE;
+    }
+
+    private static long scaled(long quantity, long unscaledPrice, int priceScale, long unscaledOneMinusDiscount,
+                               int discountScale) {
+        return Math.multiplyExact(Math.multiplyExact(Math.multiplyExact(quantity, unscaledPrice),
+                unscaledOneMinusDiscount), LONG_POWERS_OF_TEN[SCALE - priceScale - discountScale]);
+    }
+
+    /**
+     * Add a revenue value that is already scaled to {@link #SCALE} decimal places
+     *
+     * @param scaled the scaled revenue
+     */
+    public void addScaled(long scaled) {
+        long sum = scaledSum + scaled;
+        // Overflow iff both operands have the same sign and the sum has a different one
+        if (((scaledSum ^ sum) & (scaled ^ sum)) < 0) {
+            spilled = spilled.add(BigDecimal.valueOf(scaledSum, SCALE));
+            sum = scaled;
+        }
+        scaledSum = sum;
+    }
+
+    /**
+     * Merge the revenue of another accumulator into this accumulator
+     *
+     * @param other the accumulator to merge
+     * @return this accumulator
+     */
+    public RevenueAccumulator combine(@NonNull RevenueAccumulator other) {
+        addScaled(other.scaledSum);
+        if (other.spilled.signum() != 0) {
+            spilled = spilled.add(other.spilled);
+        }
+        return this;
+    }
+
+    /**
+     * @return the exact total revenue, with at least {@link #SCALE} decimal places
+     */
+    public BigDecimal total() {
+        return BigDecimal.valueOf(scaledSum, SCALE).add(spilled);
+    }
+
+    private static boolean isFastPath(BigDecimal value) {
+        return value.scale() >= 0 && value.scale() <= SCALE && value.precision() <= MAX_FAST_PRECISION;
+    }
+
+    /**
+     * Get the unscaled value of a BigDecimal without allocating. For compact values
+     * BigDecimal.doubleValue() divides the unscaled long by an exact power of ten, and multiplying
+     * back and rounding recovers the unscaled value exactly as long as it is below 2^50.
+     */
+    private static long unscaled(BigDecimal value) {
+        return Math.round(value.doubleValue() * DOUBLE_POWERS_OF_TEN[value.scale()]);
+    }
+
+    @Override
+    public String toString() {
+        return total().toPlainString();
+    }
+}
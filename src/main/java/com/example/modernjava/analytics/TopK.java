@@ -0,0 +1,84 @@
+package com.example.modernjava.analytics;
+
+import lombok.NonNull;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.stream.Collector;
+
+/**
+ * Selection of the k largest elements with a bounded heap
+ * <p>
+ * A min-heap holding at most k elements is kept while the elements are offered, the root being the
+ * smallest element still in the running, so selecting the top k of n elements takes O(n log k) time
+ * and O(k) space instead of sorting all n elements.
+ */
+public final class TopK {
+
+    private TopK() {
+    }
+
+    /**
+     * Create a collector that keeps the k largest elements of a stream
+     * <p>
+     * Illustrates the use of Collector.of with a bounded PriorityQueue as the mutable accumulator
+     *
+     * @param k          the maximum number of elements to keep
+     * @param comparator the order of the elements, larger elements being ranked first
+     * @param <T>        the type of the elements
+     * @return a collector producing at most k elements in descending order
+     */
+    public static <T> Collector<T, ?, List<T>> toTopK(int k, @NonNull Comparator<? super T> comparator) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative: " + k);
+        }
+        return Collector.<T, PriorityQueue<T>, List<T>>of(() -> new PriorityQueue<>(Math.min(k, 1024) + 1, comparator),
+                (heap, element) -> offer(heap, element, k, comparator),
+                (left, right) -> {
+                    right.forEach(element -> offer(left, element, k, comparator));
+                    return left;
+                },
+                heap -> {
+                    List<T> top = new ArrayList<>(heap);
+                    top.sort(comparator.reversed());
+                    return top;
+                });
+    }
+
+    /**
+     * Get the k entries of a map with the largest values
+     *
+     * @param values the values to rank
+     * @param k      the maximum number of entries
+     * @param <K>    the type of the keys
+     * @param <V>    the type of the values
+     * @return at most k entries in descending order of value, ties in ascending order of key with null last
+     */
+    public static <K extends Comparable<? super K>, V extends Comparable<? super V>> List<Map.Entry<K, V>> top(
+            @NonNull Map<K, V> values, int k) {
+        return values.entrySet().stream()
+                .<Map.Entry<K, V>>map(entry -> new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()))
+                .collect(toTopK(k, byValue()));
+    }
+
+    /**
+     * @return the ranking order of map entries: by value, then by key with smaller keys ranked higher
+     */
+    static <K extends Comparable<? super K>, V extends Comparable<? super V>> Comparator<Map.Entry<K, V>> byValue() {
+        return Map.Entry.<K, V>comparingByValue()
+                .thenComparing(Map.Entry.comparingByKey(Comparator.nullsLast(Comparator.<K>naturalOrder()).reversed()));
+    }
+
+    private static <T> void offer(PriorityQueue<T> heap, T element, int k, Comparator<? super T> comparator) {
+        if (heap.size() < k) {
+            heap.add(element);
+        } else if (k > 0 && comparator.compare(element, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(element);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.modernjava.analytics.cube;
+
+import lombok.NonNull;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The result of a {@link CubeQuery}: one row per group of each grouping set
+ * <p>
+ * Rows are ordered by grouping set, in the order of the query, and within a grouping set by the first
+ * appearance of the group in the orders. A row's values are those of the dimensions of its grouping set;
+ * dimensions outside the grouping set are rolled up, so a null value in a row is a genuinely missing
+ * attribute, never a subtotal marker, unlike in SQL.
+ *
+ * @param query the query
+ * @param rows  the rows
+ */
+public record Cube(CubeQuery query, List<Row> rows) {
+
+    /**
+     * The measures of one group
+     * <p>
+     * Measures that were not requested are 0.
+     *
+     * @param groupingSet the dimensions of the group
+     * @param values      the values of the dimensions, in the order of the grouping set
+     * @param units       number of units sold
+     * @param revenue     exact revenue
+     * @param orders      number of orders contributing to the group
+     */
+    public record Row(List<Dimension> groupingSet, List<String> values, long units, BigDecimal revenue, long orders) {
+
+        /**
+         * @param dimension a dimension of the grouping set
+         * @return the value of the dimension for the group
+         * @throws IllegalArgumentException if the row's grouping set does not include the dimension
+         */
+        public String value(@NonNull Dimension dimension) {
+            int index = groupingSet.indexOf(dimension);
+            if (index < 0) {
+                throw new IllegalArgumentException(dimension + " is rolled up in grouping set " + groupingSet);
+            }
+            return values.get(index);
+        }
+    }
+
+    public Cube {
+        rows = List.copyOf(rows);
+    }
+
+    /**
+     * @param groupingSet a grouping set of the query
+     * @return the rows of the grouping set
+     */
+    public List<Row> rows(@NonNull List<Dimension> groupingSet) {
+        return rows.stream().filter(row -> row.groupingSet().equals(groupingSet)).toList();
+    }
+
+    /**
+     * Find the row of a group
+     *
+     * @param groupingSet a grouping set of the query
+     * @param values      the values of its dimensions, in order
+     * @return the row of the group, empty if no order belongs to the group
+     */
+    public Optional<Row> row(@NonNull List<Dimension> groupingSet, String... values) {
+        var key = Arrays.asList(values);
+        return rows.stream().filter(row -> row.groupingSet().equals(groupingSet) && row.values().equals(key))
+                .findFirst();
+    }
+
+    /**
+     * @return the row of the grand total, empty if the query has no empty grouping set or there are no orders
+     */
+    public Optional<Row> grandTotal() {
+        return row(List.of());
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.modernjava.analytics.cube;
+
+import com.example.modernjava.analytics.RevenueAccumulator;
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.OrderItem;
+import lombok.NonNull;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collector;
+
+/**
+ * Mutable accumulator that computes a {@link CubeQuery} in a single traversal of the orders and their items
+ * <p>
+ * Every order (and, for grouping sets with item level dimensions, every item) is added to its group in
+ * each grouping set at once, so the subtotals of a ROLLUP or CUBE cost one more hash lookup per item and
+ * grouping set rather than one more scan of the orders. The order level dimension values are computed
+ * once per order. An order counts once towards a group however many of its items belong to it; orders
+ * without items belong to no group of a grouping set with item level dimensions.
+ * <p>
+ * Aggregators can be combined, which makes them usable as the accumulation type of a collector over a
+ * parallel stream (see {@link #toCube(CubeQuery)}). Instances are not thread safe.
+ */
+public final class CubeAggregator implements Consumer<Order> {
+    private final CubeQuery query;
+    private final Dimension[][] groupingSets;
+    private final boolean[] itemLevel;
+    private final Dimension[] orderDimensions;
+    private final List<Map<List<String>, Cell>> cells;
+    private final boolean revenue;
+    private final boolean items;
+
+    // State of the current order
+    private long orderNumber;
+    private final String[] orderValues = new String[Dimension.values().length];
+    private final Cell[] orderCells;
+
+    public CubeAggregator(@NonNull CubeQuery query) {
+        this.query = query;
+        int count = query.groupingSets().size();
+        this.groupingSets = new Dimension[count][];
+        this.itemLevel = new boolean[count];
+        this.cells = new ArrayList<>(count);
+        Set<Dimension> orderLevel = EnumSet.noneOf(Dimension.class);
+        for (int set = 0; set < count; set++) {
+            groupingSets[set] = query.groupingSets().get(set).toArray(Dimension[]::new);
+            for (Dimension dimension : groupingSets[set]) {
+                if (dimension.isItemLevel()) {
+                    itemLevel[set] = true;
+                } else {
+                    orderLevel.add(dimension);
+                }
+            }
+            cells.add(new LinkedHashMap<>());
+        }
+        this.orderDimensions = orderLevel.toArray(Dimension[]::new);
+        this.orderCells = new Cell[count];
+        this.revenue = query.measures().contains(Measure.REVENUE);
+        this.items = query.needsItems();
+    }
+
+    /**
+     * Create a collector that computes a cube query in a single pass over a stream of orders
+     *
+     * @param query the query
+     * @return a collector producing the cube
+     */
+    public static Collector<Order, CubeAggregator, Cube> toCube(@NonNull CubeQuery query) {
+        return Collector.of(() -> new CubeAggregator(query), CubeAggregator::accept, CubeAggregator::combine,
+                CubeAggregator::results);
+    }
+
+    /**
+     * Add an order and its items to their groups in every grouping set
+     *
+     * @param order the order to add
+     */
+    @Override
+    public void accept(Order order) {
+        orderNumber++;
+        for (Dimension dimension : orderDimensions) {
+            orderValues[dimension.ordinal()] = dimension.valueOf(order, null);
+        }
+        for (int set = 0; set < groupingSets.length; set++) {
+            if (!itemLevel[set]) {
+                orderCells[set] = cell(set, order, null);
+            }
+        }
+        if (items && order.getItems() != null) {
+            for (OrderItem item : order.getItems()) {
+                for (int set = 0; set < groupingSets.length; set++) {
+                    var cell = itemLevel[set] ? cell(set, order, item) : orderCells[set];
+                    cell.units += item.getQuantity();
+                    if (revenue) {
+                        cell.revenue.add(item);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the group of the order or item in a grouping set, counting the order towards it
+     */
+    private Cell cell(int set, Order order, OrderItem item) {
+        var dimensions = groupingSets[set];
+        String[] values = new String[dimensions.length];
+        for (int i = 0; i < dimensions.length; i++) {
+            values[i] = dimensions[i].isItemLevel() ? dimensions[i].valueOf(order, item)
+                    : orderValues[dimensions[i].ordinal()];
+        }
+        var cell = cells.get(set).computeIfAbsent(Arrays.asList(values), k -> new Cell());
+        if (cell.lastOrder != orderNumber) {
+            cell.lastOrder = orderNumber;
+            cell.orders++;
+        }
+        return cell;
+    }
+
+    /**
+     * Merge the groups of another aggregator, holding the orders that follow the orders
+     * of this aggregator, into this aggregator
+     *
+     * @param other the aggregator to merge, for the same query
+     * @return this aggregator
+     */
+    public CubeAggregator combine(@NonNull CubeAggregator other) {
+        if (!other.query.equals(query)) {
+            throw new IllegalArgumentException("Cannot combine aggregators of different queries");
+        }
+        for (int set = 0; set < groupingSets.length; set++) {
+            var target = cells.get(set);
+            other.cells.get(set).forEach((key, cell) -> target.merge(key, cell, Cell::combine));
+        }
+        return this;
+    }
+
+    /**
+     * @return the cube of the orders seen so far
+     */
+    public Cube results() {
+        boolean units = query.measures().contains(Measure.UNITS);
+        boolean orders = query.measures().contains(Measure.ORDER_COUNT);
+        List<Cube.Row> rows = new ArrayList<>();
+        for (int set = 0; set < groupingSets.length; set++) {
+            var groupingSet = query.groupingSets().get(set);
+            cells.get(set).forEach((key, cell) -> rows.add(new Cube.Row(groupingSet,
+                    Collections.unmodifiableList(new ArrayList<>(key)), units ? cell.units : 0,
+                    revenue ? cell.revenue.total() : BigDecimal.ZERO, orders ? cell.orders : 0)));
+        }
+        return new Cube(query, rows);
+    }
+
+    /**
+     * The running measures of one group
+     */
+    private static final class Cell {
+        private long units;
+        private final RevenueAccumulator revenue = new RevenueAccumulator();
+        private long orders;
+        private long lastOrder;
+
+        Cell combine(Cell other) {
+            units += other.units;
+            revenue.combine(other.revenue);
+            orders += other.orders;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.modernjava.analytics.cube;
+
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A declarative multi-dimensional query over orders: the measures to compute for every group of each
+ * grouping set, as in SQL's GROUP BY GROUPING SETS
+ * <p>
+ * {@link #rollup(Set, Dimension...)} and {@link #cube(Set, Dimension...)} build the grouping sets of
+ * ROLLUP and CUBE, so a single query returns the groups together with their subtotals and grand total,
+ * all computed in one pass over the orders (see {@link CubeAggregator}). For example
+ * {@code CubeQuery.rollup(EnumSet.of(Measure.REVENUE), Dimension.BILLING_COUNTRY, Dimension.PRODUCT)}
+ * gives the revenue by country and product, by country, and overall.
+ *
+ * @param groupingSets the grouping sets, each a list of distinct dimensions, the empty list standing
+ *                     for the grand total
+ * @param measures     the measures to compute
+ */
+public record CubeQuery(List<List<Dimension>> groupingSets, Set<Measure> measures) {
+
+    public CubeQuery(@NonNull List<List<Dimension>> groupingSets, @NonNull Set<Measure> measures) {
+        if (groupingSets.isEmpty()) {
+            throw new IllegalArgumentException("A cube query needs at least one grouping set");
+        }
+        var distinct = new HashSet<Set<Dimension>>();
+        for (List<Dimension> groupingSet : groupingSets) {
+            var dimensions = groupingSet.isEmpty() ? EnumSet.noneOf(Dimension.class) : EnumSet.copyOf(groupingSet);
+            if (dimensions.size() != groupingSet.size()) {
+                throw new IllegalArgumentException("Grouping set has duplicate dimensions: " + groupingSet);
+            }
+            if (!distinct.add(dimensions)) {
+                throw new IllegalArgumentException("Duplicate grouping set: " + groupingSet);
+            }
+        }
+        this.groupingSets = groupingSets.stream().map(List::copyOf).toList();
+        this.measures = Collections.unmodifiableSet(measures.isEmpty() ? EnumSet.noneOf(Measure.class)
+                : EnumSet.copyOf(measures));
+    }
+
+    /**
+     * Query a single grouping, as GROUP BY
+     *
+     * @param measures   the measures to compute
+     * @param dimensions the dimensions to group by, none for the grand total only
+     * @return the query
+     */
+    public static CubeQuery groupBy(@NonNull Set<Measure> measures, @NonNull Dimension... dimensions) {
+        return new CubeQuery(List.of(List.of(dimensions)), measures);
+    }
+
+    /**
+     * Query the groupings of ROLLUP: every prefix of the dimensions, from all of them down to none
+     *
+     * @param measures   the measures to compute
+     * @param dimensions the dimensions, from the outermost to the innermost
+     * @return the query
+     */
+    public static CubeQuery rollup(@NonNull Set<Measure> measures, @NonNull Dimension... dimensions) {
+        List<List<Dimension>> groupingSets = new ArrayList<>();
+        for (int length = dimensions.length; length >= 0; length--) {
+            groupingSets.add(List.of(Arrays.copyOf(dimensions, length)));
+        }
+        return new CubeQuery(groupingSets, measures);
+    }
+
+    /**
+     * Query the groupings of CUBE: every subset of the dimensions, from all of them down to none,
+     * each keeping the order of the dimensions
+     *
+     * @param measures   the measures to compute
+     * @param dimensions the dimensions
+     * @return the query
+     */
+    public static CubeQuery cube(@NonNull Set<Measure> measures, @NonNull Dimension... dimensions) {
+        if (dimensions.length > Dimension.values().length) {
+            throw new IllegalArgumentException("Duplicate dimensions: " + Arrays.toString(dimensions));
+        }
+        List<List<Dimension>> groupingSets = new ArrayList<>();
+        // Subsets by decreasing size, and in the order of their bit masks within a size
+        for (int size = dimensions.length; size >= 0; size--) {
+            for (int mask = (1 << dimensions.length) - 1; mask >= 0; mask--) {
+                if (Integer.bitCount(mask) == size) {
+                    List<Dimension> groupingSet = new ArrayList<>(size);
+                    for (int i = 0; i < dimensions.length; i++) {
+                        if ((mask & 1 << dimensions.length - 1 - i) != 0) {
+                            groupingSet.add(dimensions[i]);
+                        }
+                    }
+                    groupingSets.add(groupingSet);
+                }
+            }
+        }
+        return new CubeQuery(groupingSets, measures);
+    }
+
+    /**
+     * @return true if computing the query needs the order items
+     */
+    boolean needsItems() {
+        return measures.contains(Measure.UNITS) || measures.contains(Measure.REVENUE)
+                || groupingSets.stream().flatMap(List::stream).anyMatch(Dimension::isItemLevel);
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.modernjava.analytics.cube;
+
+import com.example.modernjava.domain.Address;
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.OrderItem;
+
+/**
+ * The attributes orders can be grouped by in a {@link CubeQuery}
+ * <p>
+ * Order level dimensions are attributes of the order's customer: the customer name, and the postal
+ * country, administrative area and locality of the billing address, or the postal country of the address
+ * the order ships to (the order's alternate shipping address if it has one, otherwise the customer's
+ * shipping address). Item level dimensions are attributes of the product of an order item.
+ */
+public enum Dimension {
+    CUSTOMER,
+    BILLING_COUNTRY,
+    SHIPPING_COUNTRY,
+    ADMINISTRATIVE_AREA,
+    LOCALITY,
+    PRODUCT,
+    SKU;
+
+    /**
+     * @return true if the dimension is an attribute of the order items, rather than of the orders alone
+     */
+    public boolean isItemLevel() {
+        return switch (this) {
+            case PRODUCT, SKU -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Get the value of the dimension for an order or one of its items
+     *
+     * @param order the order
+     * @param item  an item of the order, only used by item level dimensions
+     * @return the value, null if the attribute or the address holding it is missing
+     */
+    public String valueOf(Order order, OrderItem item) {
+        var customer = order.getCustomer();
+        return switch (this) {
+            case CUSTOMER -> customer.getName();
+            case BILLING_COUNTRY -> customer.getBillingAddress() == null ? null
+                    : customer.getBillingAddress().getPostalCountry();
+            case SHIPPING_COUNTRY -> {
+                Address shipping = order.getAltShippingAddress() != null ? order.getAltShippingAddress()
+                        : customer.getShippingAddress();
+                yield shipping == null ? null : shipping.getPostalCountry();
+            }
+            case ADMINISTRATIVE_AREA -> customer.getBillingAddress() == null ? null
+                    : customer.getBillingAddress().getAdministrativeArea();
+            case LOCALITY -> customer.getBillingAddress() == null ? null
+                    : customer.getBillingAddress().getLocality();
+            case PRODUCT -> item.getProduct().getName();
+            case SKU -> item.getProduct().getSku();
+        };
+    }
+}
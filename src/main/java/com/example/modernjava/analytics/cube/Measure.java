@@ -0,0 +1,19 @@
+package com.example.modernjava.analytics.cube;
+
+/**
+ * The values a {@link CubeQuery} can compute for each group
+ */
+public enum Measure {
+    /**
+     * Number of units sold, the sum of the item quantities
+     */
+    UNITS,
+    /**
+     * Revenue, the exact sum of Quantity * Price * (1 - Discount) over the items
+     */
+    REVENUE,
+    /**
+     * Number of orders contributing to the group, each order counted once however many of its items do
+     */
+    ORDER_COUNT
+}
@@ -0,0 +1,188 @@
+package com.example.modernjava.analytics.primitive;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Flattened map from pairs of keys to primitive long values, for two-level groupings
+ * <p>
+ * Instead of an outer map holding an inner map per first key, as groupingBy with a nested groupingBy
+ * builds, each key is interned as a dense int id (in order of first appearance) and the pair of ids,
+ * packed into one long, keys a single {@link LongLongHashMap}. Adding to a group therefore costs one
+ * primitive hash lookup however many first keys there are, and no inner map is created per first key.
+ * Callers that add many values for the same key can intern it once with {@link #firstKeyId(Object)}
+ * or {@link #secondKeyId(Object)} and add by id.
+ * <p>
+ * A first key can be registered without any second key ({@link #firstKeyId(Object)}), so that groups
+ * without values still appear in {@link #firstKeys()}, as an order without items still creates a
+ * group for its customer. Keys may be null. Instances are not thread safe.
+ *
+ * @param <K1> the type of the first (outer) keys
+ * @param <K2> the type of the second (inner) keys
+ */
+public final class CompositeKeyLongMap<K1, K2> {
+    private final ObjectLongHashMap<K1> firstIds = new ObjectLongHashMap<>();
+    private final List<K1> firstKeys = new ArrayList<>();
+    private final ObjectLongHashMap<K2> secondIds = new ObjectLongHashMap<>();
+    private final List<K2> secondKeys = new ArrayList<>();
+    private final LongLongHashMap values = new LongLongHashMap();
+
+    /**
+     * Receives the entries of a {@link CompositeKeyLongMap}
+     *
+     * @param <K1> the type of the first keys
+     * @param <K2> the type of the second keys
+     */
+    @FunctionalInterface
+    public interface EntryConsumer<K1, K2> {
+        void accept(K1 first, K2 second, long value);
+    }
+
+    /**
+     * Get the id of a first key, registering the key if it is new
+     *
+     * @param first the first key, may be null
+     * @return the dense id of the key
+     */
+    public int firstKeyId(K1 first) {
+        int id = (int) firstIds.getOrPut(first, firstKeys.size());
+        if (id == firstKeys.size()) {
+            firstKeys.add(first);
+        }
+        return id;
+    }
+
+    /**
+     * Get the id of a second key, registering the key if it is new
+     *
+     * @param second the second key, may be null
+     * @return the dense id of the key
+     */
+    public int secondKeyId(K2 second) {
+        int id = (int) secondIds.getOrPut(second, secondKeys.size());
+        if (id == secondKeys.size()) {
+            secondKeys.add(second);
+        }
+        return id;
+    }
+
+    /**
+     * Add to the value of a pair of keys, an absent pair being added with a value of 0 first
+     *
+     * @param first  the first key
+     * @param second the second key
+     * @param delta  the amount to add
+     * @return the new value of the pair
+     */
+    public long addTo(K1 first, K2 second, long delta) {
+        return addTo(firstKeyId(first), secondKeyId(second), delta);
+    }
+
+    /**
+     * Add to the value of a pair of keys given by id
+     *
+     * @param firstId  the id of the first key, from {@link #firstKeyId(Object)}
+     * @param secondId the id of the second key, from {@link #secondKeyId(Object)}
+     * @param delta    the amount to add
+     * @return the new value of the pair
+     */
+    public long addTo(int firstId, int secondId, long delta) {
+        Objects.checkIndex(firstId, firstKeys.size());
+        Objects.checkIndex(secondId, secondKeys.size());
+        return values.addTo(pack(firstId, secondId), delta);
+    }
+
+    private static long pack(int firstId, int secondId) {
+        return (long) firstId << 32 | secondId & 0xFFFF_FFFFL;
+    }
+
+    /**
+     * @param first  the first key
+     * @param second the second key
+     * @return the value of the pair, 0 if it is absent
+     */
+    public long get(Object first, Object second) {
+        long firstId = firstIds.getOrDefault(first, -1);
+        long secondId = secondIds.getOrDefault(second, -1);
+        return firstId < 0 || secondId < 0 ? 0 : values.get(pack((int) firstId, (int) secondId));
+    }
+
+    /**
+     * @param first  the first key
+     * @param second the second key
+     * @return true if a value was added for the pair
+     */
+    public boolean containsKey(Object first, Object second) {
+        long firstId = firstIds.getOrDefault(first, -1);
+        long secondId = secondIds.getOrDefault(second, -1);
+        return firstId >= 0 && secondId >= 0 && values.containsKey(pack((int) firstId, (int) secondId));
+    }
+
+    /**
+     * @param first the first key
+     * @return true if the first key was registered, with or without values
+     */
+    public boolean containsFirstKey(Object first) {
+        return firstIds.containsKey(first);
+    }
+
+    /**
+     * @return the first keys, in order of registration
+     */
+    public List<K1> firstKeys() {
+        return Collections.unmodifiableList(firstKeys);
+    }
+
+    /**
+     * @return number of pairs of keys with a value
+     */
+    public int size() {
+        return values.size();
+    }
+
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    /**
+     * Pass each pair of keys and its value to an action, in no particular order
+     *
+     * @param action the action
+     */
+    public void forEach(EntryConsumer<? super K1, ? super K2> action) {
+        values.forEach((key, value) ->
+                action.accept(firstKeys.get((int) (key >>> 32)), secondKeys.get((int) key), value));
+    }
+
+    /**
+     * Pass each second key of a first key and its value to an action, in no particular order
+     * <p>
+     * This visits every pair of the map, so it suits occasional lookups rather than iterating
+     * over all first keys; use {@link #forEach(EntryConsumer)} for that.
+     *
+     * @param first  the first key
+     * @param action the action
+     */
+    public void forEach(Object first, ObjLongConsumer<? super K2> action) {
+        long firstId = firstIds.getOrDefault(first, -1);
+        if (firstId < 0) {
+            return;
+        }
+        values.forEach((key, value) -> {
+            if (key >>> 32 == firstId) {
+                action.accept(secondKeys.get((int) key), value);
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        var builder = new StringBuilder("{");
+        forEach((first, second, value) -> builder.append(builder.length() > 1 ? ", " : "")
+                .append('(').append(first).append(", ").append(second).append(")=").append(value));
+        return builder.append('}').toString();
+    }
+}
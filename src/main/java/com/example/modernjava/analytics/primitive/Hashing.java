@@ -0,0 +1,48 @@
+package com.example.modernjava.analytics.primitive;
+
+/**
+ * Hash mixing and table sizing shared by the open addressing maps
+ * <p>
+ * Tables have a power of two capacity and are probed linearly, so hash codes are mixed (Fibonacci
+ * hashing followed by folding the high bits down) to spread clustered codes such as those of short
+ * strings or consecutive ids over the low bits that select the slot.
+ */
+final class Hashing {
+    static final int MAX_CAPACITY = 1 << 30;
+
+    private Hashing() {
+    }
+
+    static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * @param expectedSize the number of keys expected
+     * @return the smallest power of two capacity that holds the keys below the maximum load factor
+     */
+    static int capacity(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size must not be negative: " + expectedSize);
+        }
+        long minimum = Math.max(4, (long) expectedSize * 4 / 3 + 1);
+        if (minimum > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Expected size too large: " + expectedSize);
+        }
+        return Integer.highestOneBit((int) minimum - 1) << 1;
+    }
+
+    /**
+     * @param capacity the capacity of a table
+     * @return the number of keys above which the table grows, a load factor of 3/4
+     */
+    static int threshold(int capacity) {
+        return capacity - (capacity >>> 2);
+    }
+}
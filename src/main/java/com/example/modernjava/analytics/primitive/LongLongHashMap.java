@@ -0,0 +1,185 @@
+package com.example.modernjava.analytics.primitive;
+
+/**
+ * Hash map from primitive long keys to primitive long values, with open addressing
+ * <p>
+ * The int and long counterpart of {@link ObjectLongHashMap}: keys and values live in two parallel
+ * long arrays probed linearly, with 0 marking an empty slot and the key 0 held apart from the table,
+ * so no object is allocated per key. Int keys, and pairs of int ids packed into one long, make
+ * composite keys cost no more than single ones (see {@link CompositeKeyLongMap}). Absent keys read
+ * as 0. Keys cannot be removed.
+ * <p>
+ * Instances are not thread safe.
+ */
+public final class LongLongHashMap {
+    private long[] keys;
+    private long[] values;
+    private int size;
+    private int threshold;
+    private boolean hasZeroKey;
+    private long zeroValue;
+
+    /**
+     * Receives the entries of a {@link LongLongHashMap}
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, long value);
+    }
+
+    public LongLongHashMap() {
+        this(0);
+    }
+
+    /**
+     * @param expectedSize the number of keys expected, so the map does not grow until they are added
+     */
+    public LongLongHashMap(int expectedSize) {
+        int capacity = Hashing.capacity(expectedSize);
+        keys = new long[capacity];
+        values = new long[capacity];
+        threshold = Hashing.threshold(capacity);
+    }
+
+    /**
+     * Add to the value of a key, an absent key being added with a value of 0 first
+     *
+     * @param key   the key
+     * @param delta the amount to add
+     * @return the new value of the key
+     */
+    public long addTo(long key, long delta) {
+        if (key == 0) {
+            hasZeroKey = true;
+            return zeroValue += delta;
+        }
+        int slot = slot(key);
+        if (keys[slot] != 0) {
+            return values[slot] += delta;
+        }
+        insert(slot, key, delta);
+        return delta;
+    }
+
+    /**
+     * Associate a value with a key, replacing any previous value
+     *
+     * @param key   the key
+     * @param value the value
+     */
+    public void put(long key, long value) {
+        if (key == 0) {
+            hasZeroKey = true;
+            zeroValue = value;
+            return;
+        }
+        int slot = slot(key);
+        if (keys[slot] != 0) {
+            values[slot] = value;
+        } else {
+            insert(slot, key, value);
+        }
+    }
+
+    /**
+     * @param key the key
+     * @return the value of the key, 0 if it is absent
+     */
+    public long get(long key) {
+        return getOrDefault(key, 0);
+    }
+
+    /**
+     * @param key          the key
+     * @param defaultValue the value to return if the key is absent
+     * @return the value of the key, the default value if it is absent
+     */
+    public long getOrDefault(long key, long defaultValue) {
+        if (key == 0) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        int slot = slot(key);
+        return keys[slot] != 0 ? values[slot] : defaultValue;
+    }
+
+    /**
+     * @param key the key
+     * @return true if the map holds the key
+     */
+    public boolean containsKey(long key) {
+        return key == 0 ? hasZeroKey : keys[slot(key)] != 0;
+    }
+
+    /**
+     * @return number of keys
+     */
+    public int size() {
+        return hasZeroKey ? size + 1 : size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Pass each key and its value to an action, in no particular order
+     *
+     * @param action the action
+     */
+    public void forEach(EntryConsumer action) {
+        if (hasZeroKey) {
+            action.accept(0, zeroValue);
+        }
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != 0) {
+                action.accept(keys[slot], values[slot]);
+            }
+        }
+    }
+
+    /**
+     * @return the slot holding the key, or the empty slot where it would be inserted
+     */
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        int slot = Hashing.mix(key) & mask;
+        long candidate;
+        while ((candidate = keys[slot]) != 0 && candidate != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void insert(int slot, long key, long value) {
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > threshold) {
+            grow();
+        }
+    }
+
+    private void grow() {
+        if (keys.length == Hashing.MAX_CAPACITY) {
+            throw new IllegalStateException("Map cannot grow beyond " + size + " keys");
+        }
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new long[oldKeys.length * 2];
+        threshold = Hashing.threshold(keys.length);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        var builder = new StringBuilder("{");
+        forEach((key, value) -> builder.append(builder.length() > 1 ? ", " : "").append(key).append('=').append(value));
+        return builder.append('}').toString();
+    }
+}
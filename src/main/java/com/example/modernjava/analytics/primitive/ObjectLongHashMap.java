@@ -0,0 +1,207 @@
+package com.example.modernjava.analytics.primitive;
+
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Hash map from object keys to primitive long values, with open addressing
+ * <p>
+ * Keys and values live in two parallel arrays probed linearly, so adding to a group is a hash, an
+ * equals and an array update: no entry object, boxed value or accumulator is allocated per group,
+ * and no allocation at all happens once the key is present. A null key is allowed and held apart
+ * from the table. Absent keys read as 0, which makes {@link #addTo(Object, long)} the natural way
+ * to count and sum. Keys cannot be removed.
+ * <p>
+ * Instances are not thread safe.
+ *
+ * @param <K> the type of the keys
+ */
+public final class ObjectLongHashMap<K> {
+    private Object[] keys;
+    private long[] values;
+    private int size;
+    private int threshold;
+    private boolean hasNullKey;
+    private long nullValue;
+
+    public ObjectLongHashMap() {
+        this(0);
+    }
+
+    /**
+     * @param expectedSize the number of keys expected, so the map does not grow until they are added
+     */
+    public ObjectLongHashMap(int expectedSize) {
+        int capacity = Hashing.capacity(expectedSize);
+        keys = new Object[capacity];
+        values = new long[capacity];
+        threshold = Hashing.threshold(capacity);
+    }
+
+    /**
+     * Add to the value of a key, an absent key being added with a value of 0 first
+     *
+     * @param key   the key, may be null
+     * @param delta the amount to add
+     * @return the new value of the key
+     */
+    public long addTo(K key, long delta) {
+        if (key == null) {
+            hasNullKey = true;
+            return nullValue += delta;
+        }
+        int slot = slot(key);
+        if (keys[slot] != null) {
+            return values[slot] += delta;
+        }
+        insert(slot, key, delta);
+        return delta;
+    }
+
+    /**
+     * Associate a value with a key, replacing any previous value
+     *
+     * @param key   the key, may be null
+     * @param value the value
+     */
+    public void put(K key, long value) {
+        if (key == null) {
+            hasNullKey = true;
+            nullValue = value;
+            return;
+        }
+        int slot = slot(key);
+        if (keys[slot] != null) {
+            values[slot] = value;
+        } else {
+            insert(slot, key, value);
+        }
+    }
+
+    /**
+     * Get the value of a key, associating a value with the key first if it is absent
+     * <p>
+     * Useful to intern keys as dense ids: {@code ids.getOrPut(key, ids.size())}
+     *
+     * @param key   the key, may be null
+     * @param value the value to associate with the key if it is absent
+     * @return the value of the key
+     */
+    public long getOrPut(K key, long value) {
+        if (key == null) {
+            if (!hasNullKey) {
+                hasNullKey = true;
+                nullValue = value;
+            }
+            return nullValue;
+        }
+        int slot = slot(key);
+        if (keys[slot] != null) {
+            return values[slot];
+        }
+        insert(slot, key, value);
+        return value;
+    }
+
+    /**
+     * @param key the key, may be null
+     * @return the value of the key, 0 if it is absent
+     */
+    public long get(Object key) {
+        return getOrDefault(key, 0);
+    }
+
+    /**
+     * @param key          the key, may be null
+     * @param defaultValue the value to return if the key is absent
+     * @return the value of the key, the default value if it is absent
+     */
+    public long getOrDefault(Object key, long defaultValue) {
+        if (key == null) {
+            return hasNullKey ? nullValue : defaultValue;
+        }
+        int slot = slot(key);
+        return keys[slot] != null ? values[slot] : defaultValue;
+    }
+
+    /**
+     * @param key the key, may be null
+     * @return true if the map holds the key
+     */
+    public boolean containsKey(Object key) {
+        return key == null ? hasNullKey : keys[slot(key)] != null;
+    }
+
+    /**
+     * @return number of keys
+     */
+    public int size() {
+        return hasNullKey ? size + 1 : size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Pass each key and its value to an action, in no particular order
+     *
+     * @param action the action
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(ObjLongConsumer<? super K> action) {
+        if (hasNullKey) {
+            action.accept(null, nullValue);
+        }
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != null) {
+                action.accept((K) keys[slot], values[slot]);
+            }
+        }
+    }
+
+    /**
+     * @return the slot holding the key, or the empty slot where it would be inserted
+     */
+    private int slot(Object key) {
+        int mask = keys.length - 1;
+        int slot = Hashing.mix(key.hashCode()) & mask;
+        Object candidate;
+        while ((candidate = keys[slot]) != null && !candidate.equals(key)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void insert(int slot, Object key, long value) {
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > threshold) {
+            grow();
+        }
+    }
+
+    private void grow() {
+        if (keys.length == Hashing.MAX_CAPACITY) {
+            throw new IllegalStateException("Map cannot grow beyond " + size + " keys");
+        }
+        Object[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new Object[oldKeys.length * 2];
+        values = new long[oldKeys.length * 2];
+        threshold = Hashing.threshold(keys.length);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        var builder = new StringBuilder("{");
+        forEach((key, value) -> builder.append(builder.length() > 1 ? ", " : "").append(key).append('=').append(value));
+        return builder.append('}').toString();
+    }
+}
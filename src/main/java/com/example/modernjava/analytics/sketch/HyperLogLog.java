@@ -0,0 +1,214 @@
+package com.example.modernjava.analytics.sketch;
+
+import lombok.NonNull;
+
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.stream.Collector;
+
+/**
+ * HyperLogLog estimate of the number of distinct values of a stream
+ * <p>
+ * Each value is hashed to 64 bits; the first {@code precision} bits select one of 2^precision
+ * registers, which keeps the largest number of leading zeros (plus one) seen in the remaining bits.
+ * The harmonic mean of the registers estimates the cardinality with a relative standard error of
+ * about 1.04 / sqrt(2^precision), e.g. 0.8% at the default precision of 14, using one byte per
+ * register (16 KiB) however many values are added. Small cardinalities are estimated by linear
+ * counting of the empty registers.
+ * <p>
+ * Sketches of the same precision are merged by taking the register-wise maximum, which gives the
+ * same result as a single sketch over all the values, so sketches can be built per partition,
+ * thread or file and combined afterwards. {@link #toByteArray()} and {@link #fromByteArray(byte[])}
+ * allow them to be stored. Instances are not thread safe.
+ */
+public final class HyperLogLog {
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 18;
+    public static final int DEFAULT_PRECISION = 14;
+
+    private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+    private static final long NULL_HASH = 0x5BD1E9955BD1E995L;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * @param precision the number of hash bits selecting a register, from {@value #MIN_PRECISION}
+     *                  to {@value #MAX_PRECISION}
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be between " + MIN_PRECISION + " and "
+                    + MAX_PRECISION + ": " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Create a collector that estimates the number of distinct keys of a stream
+     *
+     * @param precision the precision of the sketch
+     * @param key       the function extracting the key counted, which may return null
+     * @param <T>       the type of the stream elements
+     * @return a collector producing a sketch of the distinct keys
+     */
+    public static <T> Collector<T, HyperLogLog, HyperLogLog> toHyperLogLog(
+            int precision, @NonNull Function<? super T, ? extends CharSequence> key) {
+        return Collector.of(() -> new HyperLogLog(precision), (sketch, element) -> sketch.add(key.apply(element)),
+                HyperLogLog::merge, Collector.Characteristics.UNORDERED, Collector.Characteristics.IDENTITY_FINISH);
+    }
+
+    /**
+     * Hash a character sequence to 64 bits, with FNV-1a over the characters followed by the
+     * MurmurHash3 finalizer to spread the bits
+     *
+     * @param value the value to hash, or null
+     * @return the hash
+     */
+    public static long hash(CharSequence value) {
+        if (value == null) {
+            return NULL_HASH;
+        }
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    /**
+     * @param value the value to add, null being counted as a value of its own
+     */
+    public void add(CharSequence value) {
+        addHash(hash(value));
+    }
+
+    /**
+     * @param hash a well distributed 64 bit hash of the value to add
+     */
+    public void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // The sentinel bit limits the rank to 64 - precision + 1
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    /**
+     * Merge another sketch into this sketch
+     *
+     * @param other the sketch to merge, of the same precision
+     * @return this sketch
+     */
+    public HyperLogLog merge(@NonNull HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge precision " + other.precision + " into " + precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return the estimated number of distinct values added
+     */
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += Double.longBitsToDouble((1023L - register) << 52); // 2^-register
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * @return the number of hash bits selecting a register
+     */
+    public int precision() {
+        return precision;
+    }
+
+    /**
+     * @return the relative standard error of the estimate
+     */
+    public double relativeStandardError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+    /**
+     * @return the sketch as bytes: the precision followed by the registers
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[registers.length + 1];
+        bytes[0] = (byte) precision;
+        System.arraycopy(registers, 0, bytes, 1, registers.length);
+        return bytes;
+    }
+
+    /**
+     * @param bytes a sketch written by {@link #toByteArray()}
+     * @return the sketch
+     */
+    public static HyperLogLog fromByteArray(@NonNull byte[] bytes) {
+        if (bytes.length == 0) {
+            throw new IllegalArgumentException("Empty sketch");
+        }
+        var sketch = new HyperLogLog(bytes[0]);
+        if (bytes.length != sketch.registers.length + 1) {
+            throw new IllegalArgumentException("Expected " + (sketch.registers.length + 1) + " bytes for precision "
+                    + bytes[0] + ": " + bytes.length);
+        }
+        System.arraycopy(bytes, 1, sketch.registers, 0, sketch.registers.length);
+        return sketch;
+    }
+
+    private static double alpha(int m) {
+        return switch (m) {
+            case 16 -> 0.673;
+            case 32 -> 0.697;
+            case 64 -> 0.709;
+            default -> 0.7213 / (1 + 1.079 / m);
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof HyperLogLog other && precision == other.precision
+                && Arrays.equals(registers, other.registers);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * precision + Arrays.hashCode(registers);
+    }
+
+    @Override
+    public String toString() {
+        return "HyperLogLog{precision=" + precision + ", estimate=" + estimate() + '}';
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.modernjava.analytics.sketch;
+
+import lombok.NonNull;
+
+/**
+ * Mergeable quantile sketch with relative error guarantees, after DDSketch
+ * <p>
+ * Values are counted in logarithmic bins: a positive value x falls into bin ceil(log_gamma(x)) with
+ * gamma = (1 + a) / (1 - a), and is estimated by a point within the bin that is within a relative error
+ * a of every value of the bin. Negative values are binned by magnitude in a separate store, and zeros
+ * (values closer to zero than the smallest tracked magnitude) are counted apart. Any quantile is therefore
+ * estimated within a relative error a of the true value of that rank, e.g. within 1% for the default
+ * accuracy, whatever the distribution.
+ * <p>
+ * Bins are dense arrays covering the range of bins seen, so memory is proportional to the logarithm of the
+ * ratio between the largest and smallest magnitudes (about 1.2 kB per store per decade at 1% accuracy)
+ * rather than to the number of values. Sketches with the same accuracy merge by adding bin counts, so merging
+ * is exact and order independent: concurrent producers each fill a sketch of their own, which is not thread
+ * safe, and {@link #merge(QuantileSketch)} them afterwards with the same result as a single sketch.
+ */
+public final class QuantileSketch {
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+    private static final double MIN_MAGNITUDE = 1e-9;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+    private final Bins positive = new Bins();
+    private final Bins negative = new Bins();
+    private long zeroCount;
+    private long count;
+
+    /**
+     * Create a sketch with a relative accuracy of {@value #DEFAULT_RELATIVE_ACCURACY}
+     */
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    /**
+     * @param relativeAccuracy the relative error of quantile estimates, between 0 and 1 exclusive
+     */
+    public QuantileSketch(double relativeAccuracy) {
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+            throw new IllegalArgumentException("Relative accuracy must be between 0 and 1: " + relativeAccuracy);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    /**
+     * Add a value to the sketch
+     *
+     * @param value the value, which must be finite
+     */
+    public void add(double value) {
+        if (!Double.isFinite(value)) {
+            throw new IllegalArgumentException("Value must be finite: " + value);
+        }
+        if (value > MIN_MAGNITUDE) {
+            positive.increment(index(value), 1);
+        } else if (value < -MIN_MAGNITUDE) {
+            negative.increment(index(-value), 1);
+        } else {
+            zeroCount++;
+        }
+        count++;
+    }
+
+    /**
+     * Merge another sketch into this sketch
+     *
+     * @param other the sketch to merge, with the same relative accuracy
+     * @return this sketch
+     */
+    public QuantileSketch merge(@NonNull QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Cannot merge sketches of relative accuracy " + relativeAccuracy
+                    + " and " + other.relativeAccuracy);
+        }
+        positive.merge(other.positive);
+        negative.merge(other.negative);
+        zeroCount += other.zeroCount;
+        count += other.count;
+        return this;
+    }
+
+    /**
+     * Estimate the value of a quantile
+     *
+     * @param quantile the quantile, between 0 and 1 inclusive, e.g. 0.99 for the 99th percentile
+     * @return the estimated value, within the relative accuracy of the value of that rank, or NaN if the
+     * sketch is empty
+     */
+    public double quantile(double quantile) {
+        if (!(quantile >= 0 && quantile <= 1)) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1: " + quantile);
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) (quantile * (count - 1));
+        if (rank < negative.total) {
+            return -value(negative.indexOfRank(negative.total - 1 - rank));
+        }
+        rank -= negative.total;
+        if (rank < zeroCount) {
+            return 0;
+        }
+        return value(positive.indexOfRank(rank - zeroCount));
+    }
+
+    /**
+     * @return number of values added
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * @return the relative accuracy of quantile estimates
+     */
+    public double relativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    private int index(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / logGamma);
+    }
+
+    private double value(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    @Override
+    public String toString() {
+        return "QuantileSketch{count=" + count + ", relativeAccuracy=" + relativeAccuracy + "}";
+    }
+
+    /**
+     * Dense counts of a contiguous range of bin indexes, growing in both directions
+     */
+    private static final class Bins {
+        private long[] counts = new long[0];
+        private int offset;
+        private long total;
+
+        void increment(int index, long increment) {
+            if (counts.length == 0) {
+                counts = new long[64];
+                offset = index - 32;
+            } else if (index < offset || index >= offset + counts.length) {
+                int low = Math.min(offset, index);
+                int high = Math.max(offset + counts.length, index + 1);
+                int length = Math.max(high - low, counts.length * 2);
+                int newOffset = index < offset ? high - length : low;
+                long[] grown = new long[length];
+                System.arraycopy(counts, 0, grown, offset - newOffset, counts.length);
+                counts = grown;
+                offset = newOffset;
+            }
+            counts[index - offset] += increment;
+            total += increment;
+        }
+
+        void merge(Bins other) {
+            for (int i = 0; i < other.counts.length; i++) {
+                if (other.counts[i] != 0) {
+                    increment(other.offset + i, other.counts[i]);
+                }
+            }
+        }
+
+        /**
+         * @return the index of the bin holding the value of a rank, ranks counted from the lowest bin
+         */
+        int indexOfRank(long rank) {
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen > rank) {
+                    return offset + i;
+                }
+            }
+            throw new IllegalStateException("Rank " + rank + " out of range " + total);
+        }
+    }
+}
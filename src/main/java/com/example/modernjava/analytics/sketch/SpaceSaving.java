@@ -0,0 +1,176 @@
+package com.example.modernjava.analytics.sketch;
+
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Space-Saving summary of the heaviest keys of a weighted stream
+ * <p>
+ * At most {@code capacity} counters are kept. A key that is already counted has its counter
+ * incremented; a new key either takes a free counter or replaces the key with the smallest count,
+ * inheriting that count as its possible overestimation (error). Any key whose true total exceeds
+ * {@code totalWeight / capacity} is guaranteed to be counted, and every reported count overestimates
+ * the true total by at most its error, which is itself at most {@code totalWeight / capacity}.
+ * <p>
+ * Memory is O(capacity) regardless of the number of distinct keys. Instances are not thread safe,
+ * but can be merged, which makes them usable as the accumulation type of a collector over a parallel
+ * stream.
+ *
+ * @param <K> the type of the keys
+ */
+public class SpaceSaving<K> {
+    private final int capacity;
+    private final Map<K, Counter<K>> counters = new HashMap<>();
+    private final TreeSet<Counter<K>> byCount = new TreeSet<>(
+            Comparator.<Counter<K>>comparingLong(counter -> counter.count).thenComparingLong(counter -> counter.sequence));
+    private long sequence;
+    private long totalWeight;
+
+    /**
+     * @param capacity the maximum number of keys counted
+     */
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * A key with its estimated total
+     *
+     * @param key   the key
+     * @param count the estimated total, never less than the true total
+     * @param error the maximum overestimation of the count
+     * @param <K>   the type of the key
+     */
+    public record Estimate<K>(K key, long count, long error) {
+        /**
+         * @return the total the key is guaranteed to have reached
+         */
+        public long guaranteedCount() {
+            return count - error;
+        }
+    }
+
+    /**
+     * @param key the key to count once
+     */
+    public void add(K key) {
+        add(key, 1);
+    }
+
+    /**
+     * @param key    the key to count
+     * @param weight the weight to add, which must not be negative
+     */
+    public void add(K key, long weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must not be negative: " + weight);
+        }
+        totalWeight += weight;
+        var counter = counters.get(key);
+        if (counter != null) {
+            byCount.remove(counter);
+            counter.count += weight;
+        } else if (counters.size() < capacity) {
+            counter = new Counter<>(key, weight, 0);
+            counters.put(key, counter);
+        } else {
+            var smallest = byCount.pollFirst();
+            counters.remove(smallest.key);
+            counter = new Counter<>(key, smallest.count + weight, smallest.count);
+            counters.put(key, counter);
+        }
+        counter.sequence = sequence++;
+        byCount.add(counter);
+    }
+
+    /**
+     * Merge the counts of another summary into this summary
+     * <p>
+     * A key counted by only one of the summaries may have been seen by the other up to that summary's
+     * smallest count, which is added to both its count and its error. The {@code capacity} largest
+     * merged counts are kept.
+     *
+     * @param other the summary to merge
+     * @return this summary
+     */
+    public SpaceSaving<K> merge(@NonNull SpaceSaving<K> other) {
+        long thisMinimum = minimum();
+        long otherMinimum = other.minimum();
+        List<Counter<K>> merged = new ArrayList<>(counters.size() + other.counters.size());
+        for (var counter : counters.values()) {
+            var otherCounter = other.counters.get(counter.key);
+            merged.add(otherCounter == null
+                    ? new Counter<>(counter.key, counter.count + otherMinimum, counter.error + otherMinimum)
+                    : new Counter<>(counter.key, counter.count + otherCounter.count, counter.error + otherCounter.error));
+        }
+        for (var counter : other.counters.values()) {
+            if (!counters.containsKey(counter.key)) {
+                merged.add(new Counter<>(counter.key, counter.count + thisMinimum, counter.error + thisMinimum));
+            }
+        }
+        merged.sort(Comparator.<Counter<K>>comparingLong(counter -> counter.count).reversed());
+        counters.clear();
+        byCount.clear();
+        for (var counter : merged.subList(0, Math.min(capacity, merged.size()))) {
+            counter.sequence = sequence++;
+            counters.put(counter.key, counter);
+            byCount.add(counter);
+        }
+        totalWeight += other.totalWeight;
+        return this;
+    }
+
+    /**
+     * Get the keys with the largest estimated totals
+     *
+     * @param k the maximum number of keys
+     * @return at most k estimates in descending order of count
+     */
+    public List<Estimate<K>> top(int k) {
+        return byCount.descendingSet().stream().limit(k)
+                .map(counter -> new Estimate<>(counter.key, counter.count, counter.error)).toList();
+    }
+
+    /**
+     * @return the total weight added to this summary
+     */
+    public long totalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * @return the maximum number of keys counted
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the smallest count, which bounds the total of any key not counted, or 0 if not full
+     */
+    private long minimum() {
+        return counters.size() < capacity ? 0 : byCount.first().count;
+    }
+
+    private static final class Counter<K> {
+        final K key;
+        long count;
+        long error;
+        long sequence;
+
+        Counter(K key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
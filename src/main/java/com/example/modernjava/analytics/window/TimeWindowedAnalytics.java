@@ -0,0 +1,309 @@
+package com.example.modernjava.analytics.window;
+
+import com.example.modernjava.analytics.RevenueAccumulator;
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.OrderItem;
+import lombok.NonNull;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Units and revenue by product, customer and country over time windows, from pre-aggregated time buckets
+ * <p>
+ * Time is divided into buckets of a fixed width, and every order is added to the bucket containing its
+ * order time: the order count, units and revenue of the bucket, and the units and revenue of each product,
+ * customer and (billing) country in it. A window query merges the buckets that make up the window, so it
+ * costs O(buckets in the window * groups per bucket) however many orders were added, and answers are
+ * exact to the bucket: windows are widened to bucket boundaries.
+ * <p>
+ * Buckets older than the retention before the newest order seen are evicted, which bounds memory for
+ * an unbounded stream of orders. Orders that arrive after their bucket was evicted are late: they are
+ * dropped and counted (see {@link #lateOrders()}). Orders may otherwise arrive in any order.
+ * <p>
+ * Writers hold the write lock of a read-write lock, and queries, which may run concurrently, the read
+ * lock.
+ */
+public class TimeWindowedAnalytics {
+    private final long bucketNanos;
+    private final long retentionBuckets;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<Long, Bucket> buckets = new TreeMap<>();
+    private long newestBucket = Long.MIN_VALUE;
+    private long lateOrders;
+
+    /**
+     * @param bucketWidth the width of a time bucket, the granularity of window queries
+     * @param retention   how far back from the newest order buckets are kept, at least one bucket width
+     */
+    public TimeWindowedAnalytics(@NonNull Duration bucketWidth, @NonNull Duration retention) {
+        if (bucketWidth.isNegative() || bucketWidth.isZero()) {
+            throw new IllegalArgumentException("Bucket width must be positive: " + bucketWidth);
+        }
+        if (retention.compareTo(bucketWidth) < 0) {
+            throw new IllegalArgumentException("Retention " + retention + " is shorter than a bucket " + bucketWidth);
+        }
+        this.bucketNanos = bucketWidth.toNanos();
+        this.retentionBuckets = retention.toNanos() / bucketNanos;
+    }
+
+    /**
+     * Units and revenue of a group (or of all orders) within a window
+     */
+    public record Totals(long units, BigDecimal revenue) {
+    }
+
+    /**
+     * Aggregates of the orders placed within a window
+     *
+     * @param from       start of the window, inclusive, on a bucket boundary
+     * @param to         end of the window, exclusive, on a bucket boundary
+     * @param orders     number of orders
+     * @param total      units and revenue of all orders
+     * @param byProduct  units and revenue by product name
+     * @param byCustomer units and revenue by customer name
+     * @param byCountry  units and revenue by billing country
+     */
+    public record Window(Instant from, Instant to, long orders, Totals total, Map<String, Totals> byProduct,
+                         Map<String, Totals> byCustomer, Map<String, Totals> byCountry) {
+        public long unitsSold() {
+            return total.units();
+        }
+
+        public BigDecimal revenue() {
+            return total.revenue();
+        }
+    }
+
+    /**
+     * Add an order to the bucket of its order time
+     *
+     * @param order the order to add, with an order time
+     * @return false if the order was late and dropped, true otherwise
+     * @throws IllegalArgumentException if the order has no order time
+     */
+    public boolean addOrder(@NonNull Order order) {
+        if (order.getOrderedAt() == null) {
+            throw new IllegalArgumentException("Order has no order time: " + order);
+        }
+        long index = bucketIndex(order.getOrderedAt());
+        lock.writeLock().lock();
+        try {
+            if (newestBucket != Long.MIN_VALUE && index <= newestBucket - retentionBuckets) {
+                lateOrders++;
+                return false;
+            }
+            buckets.computeIfAbsent(index, i -> new Bucket()).add(order);
+            if (index > newestBucket) {
+                newestBucket = index;
+                buckets.headMap(newestBucket - retentionBuckets, true).clear();
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add orders to the buckets of their order times
+     *
+     * @param orders the orders to add, each with an order time
+     */
+    public void addOrders(@NonNull Iterable<Order> orders) {
+        orders.forEach(this::addOrder);
+    }
+
+    /**
+     * @return number of orders dropped because their bucket had already been evicted
+     */
+    public long lateOrders() {
+        lock.readLock().lock();
+        try {
+            return lateOrders;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of buckets currently held
+     */
+    public int bucketCount() {
+        lock.readLock().lock();
+        try {
+            return buckets.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Aggregate the orders placed in a window, widened to bucket boundaries
+     *
+     * @param from start of the window, inclusive
+     * @param to   end of the window, exclusive
+     * @return the aggregates of the buckets overlapping the window
+     */
+    public Window window(@NonNull Instant from, @NonNull Instant to) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("Window ends before it starts: " + from + ".." + to);
+        }
+        long first = bucketIndex(from);
+        long end = Math.max(first, ceilBucketIndex(to));
+        lock.readLock().lock();
+        try {
+            var window = new Bucket();
+            buckets.subMap(first, end).values().forEach(window::merge);
+            return window.toWindow(bucketStart(first), bucketStart(end));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Aggregate the orders of a sliding window ending now, e.g. the units sold by product in the last hour
+     *
+     * @param length the length of the window
+     * @param now    the end of the window, exclusive
+     * @return the aggregates of the buckets overlapping the window
+     */
+    public Window last(@NonNull Duration length, @NonNull Instant now) {
+        return window(now.minus(length), now);
+    }
+
+    /**
+     * Aggregate the orders of consecutive, non-overlapping windows of a fixed size
+     *
+     * @param size the size of each window, a multiple of the bucket width
+     * @param from start of the first window, inclusive, widened to a bucket boundary
+     * @param to   end of the last window, exclusive; the last window may extend past it
+     * @return the windows in order of time, including empty ones
+     */
+    public List<Window> tumbling(@NonNull Duration size, @NonNull Instant from, @NonNull Instant to) {
+        long sizeNanos = size.toNanos();
+        if (sizeNanos <= 0 || sizeNanos % bucketNanos != 0) {
+            throw new IllegalArgumentException("Window size " + size + " is not a multiple of the bucket width");
+        }
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("Windows end before they start: " + from + ".." + to);
+        }
+        long bucketsPerWindow = sizeNanos / bucketNanos;
+        long first = bucketIndex(from);
+        int count = Math.toIntExact(ceilDiv(ceilBucketIndex(to) - first, bucketsPerWindow));
+        lock.readLock().lock();
+        try {
+            List<Bucket> merged = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                merged.add(new Bucket());
+            }
+            long end = first + count * bucketsPerWindow;
+            buckets.subMap(first, end).forEach((index, bucket) ->
+                    merged.get((int) ((index - first) / bucketsPerWindow)).merge(bucket));
+            List<Window> windows = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long start = first + i * bucketsPerWindow;
+                windows.add(merged.get(i).toWindow(bucketStart(start), bucketStart(start + bucketsPerWindow)));
+            }
+            return windows;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long bucketIndex(Instant time) {
+        return Math.floorDiv(nanos(time), bucketNanos);
+    }
+
+    private long ceilBucketIndex(Instant time) {
+        return ceilDiv(nanos(time), bucketNanos);
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return -Math.floorDiv(-x, y);
+    }
+
+    private Instant bucketStart(long index) {
+        return Instant.ofEpochSecond(0, index * bucketNanos);
+    }
+
+    /**
+     * Nanoseconds since the epoch, which covers the years 1677 to 2262
+     */
+    private static long nanos(Instant time) {
+        return Math.addExact(Math.multiplyExact(time.getEpochSecond(), 1_000_000_000L), time.getNano());
+    }
+
+    /**
+     * Pre-aggregated orders of one bucket, or of a window while merging buckets
+     */
+    private static final class Bucket {
+        private long orders;
+        private final Tally total = new Tally();
+        private final Map<String, Tally> byProduct = new HashMap<>();
+        private final Map<String, Tally> byCustomer = new HashMap<>();
+        private final Map<String, Tally> byCountry = new HashMap<>();
+
+        void add(Order order) {
+            orders++;
+            var customer = byCustomer.computeIfAbsent(order.getCustomer().getName(), k -> new Tally());
+            var country = byCountry.computeIfAbsent(order.getCustomer().getBillingAddress().getPostalCountry(),
+                    k -> new Tally());
+            for (OrderItem item : order.getItems()) {
+                total.add(item);
+                customer.add(item);
+                country.add(item);
+                byProduct.computeIfAbsent(item.getProduct().getName(), k -> new Tally()).add(item);
+            }
+        }
+
+        void merge(Bucket other) {
+            orders += other.orders;
+            total.merge(other.total);
+            merge(byProduct, other.byProduct);
+            merge(byCustomer, other.byCustomer);
+            merge(byCountry, other.byCountry);
+        }
+
+        private static void merge(Map<String, Tally> into, Map<String, Tally> from) {
+            from.forEach((key, tally) -> into.computeIfAbsent(key, k -> new Tally()).merge(tally));
+        }
+
+        Window toWindow(Instant from, Instant to) {
+            return new Window(from, to, orders, total.totals(), totals(byProduct), totals(byCustomer),
+                    totals(byCountry));
+        }
+
+        private static Map<String, Totals> totals(Map<String, Tally> tallies) {
+            Map<String, Totals> totals = new HashMap<>(tallies.size() * 4 / 3 + 1);
+            tallies.forEach((key, tally) -> totals.put(key, tally.totals()));
+            return totals;
+        }
+    }
+
+    private static final class Tally {
+        private long units;
+        private final RevenueAccumulator revenue = new RevenueAccumulator();
+
+        void add(OrderItem item) {
+            units += item.getQuantity();
+            revenue.add(item);
+        }
+
+        void merge(Tally other) {
+            units += other.units;
+            revenue.combine(other.revenue);
+        }
+
+        Totals totals() {
+            return new Totals(units, revenue.total());
+        }
+    }
+}
@@ -5,6 +5,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.Instant;
 import java.util.List;
 
 /**
@@ -18,4 +19,5 @@ public class Order {
     Customer customer;
     Address altShippingAddress;
     List<OrderItem> items;
+    Instant orderedAt;
 }
@@ -0,0 +1,310 @@
+package com.example.modernjava.generator;
+
+import com.example.modernjava.domain.Address;
+import com.example.modernjava.domain.Customer;
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.OrderItem;
+import com.example.modernjava.domain.Product;
+import lombok.NonNull;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Seeded, deterministic generator of synthetic orders at production scale
+ * <p>
+ * Customers, countries and products are created up front and shared by every order. Each order is
+ * then derived from the seed and its own index alone, so orders can be produced lazily, in any order
+ * and in parallel, and the same configuration always yields the same orders without any of them being
+ * held in memory. Product popularity follows a Zipf distribution, the number of items per order is
+ * uniform within a range, and an order can optionally be shipped to an alternative address. When a start
+ * time is configured, orders are placed at a fixed interval from it, in index order.
+ * <p>
+ * The generator is an {@link Iterable}, so it can be written straight to a file, e.g. with
+ * {@code OrderJsonWriter.write(path, generator)} or {@code OrderBinaryWriter.write(path, generator)}.
+ */
+public final class SyntheticOrderGenerator implements Iterable<Order> {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final List<BigDecimal> DISCOUNTS = IntStream.of(0, 1, 2, 5, 10)
+            .mapToObj(percent -> BigDecimal.valueOf(percent, 2)).toList();
+
+    private final long seed;
+    private final long orderCount;
+    private final int minItemsPerOrder;
+    private final int maxItemsPerOrder;
+    private final int maxQuantity;
+    private final double altShippingAddressProbability;
+    private final Instant startTime;
+    private final Duration orderInterval;
+    private final List<Product> products;
+    private final List<Customer> customers;
+    private final double[] productCdf;
+
+    private SyntheticOrderGenerator(Builder builder) {
+        this.seed = builder.seed;
+        this.orderCount = builder.orderCount;
+        this.minItemsPerOrder = builder.minItemsPerOrder;
+        this.maxItemsPerOrder = builder.maxItemsPerOrder;
+        this.maxQuantity = builder.maxQuantity;
+        this.altShippingAddressProbability = builder.altShippingAddressProbability;
+        this.startTime = builder.startTime;
+        this.orderInterval = builder.orderInterval;
+        var random = new SplittableRandom(builder.seed);
+        this.products = IntStream.range(0, builder.products).mapToObj(i -> Product.builder()
+                .sku(String.format("SKU%09d", i)).name("Product " + i).description("Product description " + i)
+                .price(BigDecimal.valueOf(100 + random.nextInt(99_900), 2)).build()).toList();
+        var countries = IntStream.range(0, builder.countries).mapToObj(SyntheticOrderGenerator::countryCode).toList();
+        this.customers = IntStream.range(0, builder.customers).mapToObj(i -> {
+            // Every country has at least one customer while there are more customers than countries
+            var country = countries.get(i < countries.size() ? i : random.nextInt(countries.size()));
+            var billingAddress = address(country, i, "Billing");
+            var shippingAddress = random.nextInt(4) == 0 ? address(country, i, "Shipping") : billingAddress;
+            return Customer.builder().name("Customer " + i).billingAddress(billingAddress)
+                    .shippingAddress(shippingAddress).build();
+        }).toList();
+        this.productCdf = zipfCdf(builder.products, builder.zipfExponent);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the number of orders generated
+     */
+    public long orderCount() {
+        return orderCount;
+    }
+
+    /**
+     * @return the products that orders are generated from, in order of decreasing popularity
+     */
+    public List<Product> products() {
+        return products;
+    }
+
+    /**
+     * @return the customers that orders are generated for
+     */
+    public List<Customer> customers() {
+        return customers;
+    }
+
+    /**
+     * Generate a single order
+     *
+     * @param index the index of the order, from 0 to {@link #orderCount()} - 1
+     * @return the order, the same for the same index and configuration
+     */
+    public Order order(long index) {
+        if (index < 0 || index >= orderCount) {
+            throw new IndexOutOfBoundsException("Order index " + index + " out of range 0.." + orderCount);
+        }
+        var random = new SplittableRandom(mix(seed + (index + 1) * GOLDEN_GAMMA));
+        var customer = customers.get(random.nextInt(customers.size()));
+        int itemCount = random.nextInt(minItemsPerOrder, maxItemsPerOrder + 1);
+        List<OrderItem> items = new ArrayList<>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            items.add(OrderItem.builder().product(products.get(nextProduct(random)))
+                    .quantity(random.nextInt(1, maxQuantity + 1))
+                    .discount(DISCOUNTS.get(random.nextInt(DISCOUNTS.size()))).build());
+        }
+        Address altShippingAddress = null;
+        if (random.nextDouble() < altShippingAddressProbability) {
+            altShippingAddress = customers.get(random.nextInt(customers.size())).getShippingAddress();
+        }
+        var orderedAt = startTime == null ? null : startTime.plus(orderInterval.multipliedBy(index));
+        return Order.builder().customer(customer).altShippingAddress(altShippingAddress).items(items)
+                .orderedAt(orderedAt).build();
+    }
+
+    /**
+     * @return a lazy stream of all orders, which may be made parallel
+     */
+    public Stream<Order> stream() {
+        return LongStream.range(0, orderCount).mapToObj(this::order);
+    }
+
+    @Override
+    public Iterator<Order> iterator() {
+        return stream().iterator();
+    }
+
+    private int nextProduct(SplittableRandom random) {
+        int index = Arrays.binarySearch(productCdf, random.nextDouble());
+        return Math.min(index >= 0 ? index : -index - 1, productCdf.length - 1);
+    }
+
+    /**
+     * Cumulative distribution of a Zipf distribution, where the product of rank k has weight 1 / k^s
+     */
+    private static double[] zipfCdf(int n, double exponent) {
+        double[] cdf = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1.0 / Math.pow(k + 1, exponent);
+            cdf[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cdf[k] /= sum;
+        }
+        return cdf;
+    }
+
+    /**
+     * Stafford variant 13 of the MurmurHash3 finalizer, decorrelating the seeds of neighbouring orders
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static String countryCode(int index) {
+        // Two letter codes while they last (AA..ZZ), then numbered codes
+        return index < 26 * 26
+                ? String.valueOf((char) ('A' + index / 26)) + (char) ('A' + index % 26)
+                : "C" + index;
+    }
+
+    private static Address address(String country, int customer, String kind) {
+        return Address.builder().postalCountry(country).addressLines(List.of(customer + " " + kind + " Street"))
+                .locality("City " + customer % 1000).postalCode(String.format("%05d", customer % 100_000)).build();
+    }
+
+    /**
+     * Configuration of a {@link SyntheticOrderGenerator}
+     */
+    public static final class Builder {
+        private long seed;
+        private long orderCount = 1_000;
+        private int customers = 1_000;
+        private int countries = 50;
+        private int products = 1_000;
+        private double zipfExponent = 1.0;
+        private int minItemsPerOrder = 1;
+        private int maxItemsPerOrder = 10;
+        private int maxQuantity = 10;
+        private double altShippingAddressProbability;
+        private Instant startTime;
+        private Duration orderInterval = Duration.ZERO;
+
+        private Builder() {
+        }
+
+        /**
+         * @param seed the seed from which all orders are derived, 0 by default
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * @param orderCount the number of orders, 1,000 by default
+         */
+        public Builder orderCount(long orderCount) {
+            this.orderCount = orderCount;
+            return this;
+        }
+
+        /**
+         * @param customers the number of distinct customers, 1,000 by default
+         */
+        public Builder customers(int customers) {
+            this.customers = customers;
+            return this;
+        }
+
+        /**
+         * @param countries the number of distinct billing countries, 50 by default
+         */
+        public Builder countries(int countries) {
+            this.countries = countries;
+            return this;
+        }
+
+        /**
+         * @param products the number of distinct products, 1,000 by default
+         */
+        public Builder products(int products) {
+            this.products = products;
+            return this;
+        }
+
+        /**
+         * @param zipfExponent the skew of product popularity, 1.0 by default; 0 makes all products equally popular
+         */
+        public Builder zipfExponent(double zipfExponent) {
+            this.zipfExponent = zipfExponent;
+            return this;
+        }
+
+        /**
+         * @param minItemsPerOrder the minimum number of items per order, 1 by default
+         * @param maxItemsPerOrder the maximum number of items per order, 10 by default
+         */
+        public Builder itemsPerOrder(int minItemsPerOrder, int maxItemsPerOrder) {
+            this.minItemsPerOrder = minItemsPerOrder;
+            this.maxItemsPerOrder = maxItemsPerOrder;
+            return this;
+        }
+
+        /**
+         * @param maxQuantity the maximum quantity of an item, 10 by default
+         */
+        public Builder maxQuantity(int maxQuantity) {
+            this.maxQuantity = maxQuantity;
+            return this;
+        }
+
+        /**
+         * @param altShippingAddressProbability the probability of an order having an alternative shipping address,
+         *                                      0 by default
+         */
+        public Builder altShippingAddressProbability(double altShippingAddressProbability) {
+            this.altShippingAddressProbability = altShippingAddressProbability;
+            return this;
+        }
+
+        /**
+         * @param startTime     the time of the first order, none by default, in which case orders have no time
+         * @param orderInterval the time between consecutive orders
+         */
+        public Builder orderedAt(@NonNull Instant startTime, @NonNull Duration orderInterval) {
+            this.startTime = startTime;
+            this.orderInterval = orderInterval;
+            return this;
+        }
+
+        public SyntheticOrderGenerator build() {
+            require(orderCount >= 0, "Order count must not be negative: " + orderCount);
+            require(customers > 0, "Customers must be positive: " + customers);
+            require(countries > 0, "Countries must be positive: " + countries);
+            require(products > 0, "Products must be positive: " + products);
+            require(zipfExponent >= 0, "Zipf exponent must not be negative: " + zipfExponent);
+            require(minItemsPerOrder >= 0 && maxItemsPerOrder >= minItemsPerOrder,
+                    "Invalid items per order: " + minItemsPerOrder + ".." + maxItemsPerOrder);
+            require(maxQuantity > 0, "Max quantity must be positive: " + maxQuantity);
+            require(altShippingAddressProbability >= 0 && altShippingAddressProbability <= 1,
+                    "Alt shipping address probability must be between 0 and 1: " + altShippingAddressProbability);
+            require(!orderInterval.isNegative(), "Order interval must not be negative: " + orderInterval);
+            return new SyntheticOrderGenerator(this);
+        }
+
+        private static void require(boolean condition, String message) {
+            if (!condition) {
+                throw new IllegalArgumentException(message);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.modernjava.io;
+
+import com.example.modernjava.domain.Address;
+import com.example.modernjava.domain.Customer;
+import com.example.modernjava.domain.OrderItem;
+import com.example.modernjava.domain.Product;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerModifier;
+import com.fasterxml.jackson.databind.deser.std.DelegatingDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.util.function.UnaryOperator;
+
+/**
+ * Jackson module interning products, customers, addresses and discounts as they are deserialized
+ * <p>
+ * Each value is interned as soon as it has been read, so the duplicate copies become garbage
+ * immediately instead of being held until the whole file has been loaded:
+ * <pre>
+ * var interner = new OrderInterner();
+ * var reader = new OrderJsonReader(OrderObjectMappers.create().registerModule(new InterningModule(interner)));
+ * </pre>
+ * Jackson modules are {@link java.io.Serializable}, but this one holds an interner and is not meant to be
+ * serialized.
+ */
+@SuppressWarnings("serial")
+public class InterningModule extends SimpleModule {
+
+    public InterningModule(@NonNull OrderInterner interner) {
+        super(InterningModule.class.getSimpleName());
+        setDeserializerModifier(new BeanDeserializerModifier() {
+            @Override
+            public JsonDeserializer<?> modifyDeserializer(DeserializationConfig config, BeanDescription beanDesc,
+                                                          JsonDeserializer<?> deserializer) {
+                Class<?> type = beanDesc.getBeanClass();
+                if (type == Product.class) {
+                    return new InterningDeserializer(deserializer, value -> interner.intern((Product) value));
+                } else if (type == Address.class) {
+                    return new InterningDeserializer(deserializer, value -> interner.intern((Address) value));
+                } else if (type == Customer.class) {
+                    // The addresses of the customer have already been interned
+                    return new InterningDeserializer(deserializer, value -> interner.internShallow((Customer) value));
+                } else if (type == OrderItem.class) {
+                    // The product has already been interned, only the discount is left
+                    return new InterningDeserializer(deserializer, value -> {
+                        var item = (OrderItem) value;
+                        item.setDiscount(interner.intern(item.getDiscount()));
+                        return item;
+                    });
+                }
+                return deserializer;
+            }
+        });
+    }
+
+    /**
+     * Deserializes with the bean deserializer and interns the result
+     */
+    @SuppressWarnings("serial")
+    private static final class InterningDeserializer extends DelegatingDeserializer {
+        private final UnaryOperator<Object> intern;
+
+        InterningDeserializer(JsonDeserializer<?> delegate, UnaryOperator<Object> intern) {
+            super(delegate);
+            this.intern = intern;
+        }
+
+        @Override
+        protected JsonDeserializer<?> newDelegatingInstance(JsonDeserializer<?> newDelegatee) {
+            return new InterningDeserializer(newDelegatee, intern);
+        }
+
+        @Override
+        public Object deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            return intern.apply(super.deserialize(p, ctxt));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.modernjava.io;
+
+import com.example.modernjava.analytics.Aggregate;
+import com.example.modernjava.analytics.AggregateResults;
+import com.example.modernjava.analytics.OrderAnalytics;
+import com.example.modernjava.store.DictionaryAggregator;
+import lombok.NonNull;
+
+import java.util.Set;
+
+import static com.example.modernjava.io.OrderBinaryFormat.ITEM_RECORD_BYTES;
+
+/**
+ * Order analytics computed directly over the memory mapped records of a binary order file
+ * <p>
+ * Scans read the ids and quantities of each record from the mapped blocks and group by dictionary
+ * ids (see {@link DictionaryAggregator}); no Order or OrderItem objects are created, so a scan does
+ * not copy the file onto the heap. Results are identical to those of
+ * {@link com.example.modernjava.analytics.OrderAnalysisService} over the orders in the file.
+ */
+public class MappedOrderAnalysisService implements OrderAnalytics {
+    private final OrderBinaryReader reader;
+
+    public MappedOrderAnalysisService(@NonNull OrderBinaryReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public AggregateResults analyze(@NonNull Set<Aggregate> aggregates) {
+        var aggregator = new DictionaryAggregator(reader.dictionaries(), aggregates);
+        boolean items = aggregator.needsItems();
+        int orderRecordBytes = reader.orderRecordBytes();
+        for (int blockIndex = 0; blockIndex < reader.blockCount(); blockIndex++) {
+            var block = reader.block(blockIndex);
+            for (int position = 0, limit = block.limit(); position < limit; ) {
+                aggregator.order(block.getInt(position), block.getInt(position + Integer.BYTES));
+                int itemCount = block.getInt(position + 2 * Integer.BYTES);
+                position += orderRecordBytes;
+                if (itemCount > 0) {
+                    if (items) {
+                        for (int item = 0; item < itemCount; item++, position += ITEM_RECORD_BYTES) {
+                            aggregator.item(block.getInt(position), block.getInt(position + Integer.BYTES),
+                                    block.getInt(position + 2 * Integer.BYTES));
+                        }
+                    } else {
+                        position += itemCount * ITEM_RECORD_BYTES;
+                    }
+                }
+            }
+        }
+        return aggregator.results();
+    }
+
+    @Override
+    public long totalOrders() {
+        return reader.orderCount();
+    }
+}
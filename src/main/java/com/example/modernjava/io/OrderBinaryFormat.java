@@ -0,0 +1,44 @@
+package com.example.modernjava.io;
+
+/**
+ * Constants of the binary order file format written by {@link OrderBinaryWriter} and read by
+ * {@link OrderBinaryReader}
+ * <p>
+ * All values are big endian. A file consists of
+ * <ul>
+ *     <li>a header: magic (int), format version (int)</li>
+ *     <li>blocks of fixed width order records; each order is its customer id, alternate shipping
+ *     address id and item count (ints, an item count of -1 standing for a null item list), then
+ *     (since version 2) the time it was placed as epoch seconds (long) and nanoseconds (int, -1 standing
+ *     for no time), followed by the product id, quantity and discount id (ints) of each of its items</li>
+ *     <li>a footer: order count and item count (longs), the block index (count, then offset and length
+ *     as longs and order count as int per block), followed by the string, discount, address, customer and
+ *     product tables that the ids refer to</li>
+ *     <li>a trailer: offset of the footer (long), magic (int)</li>
+ * </ul>
+ * Repeated values such as product names, SKUs and countries are stored once in the string table, and ids
+ * of -1 stand for null. Because the tables follow the records, files can be written in a single streaming
+ * pass, and because blocks never exceed {@link #MAX_BLOCK_BYTES} each of them can be memory mapped.
+ */
+public final class OrderBinaryFormat {
+    public static final int MAGIC = 0x4F524442; // "ORDB"
+    public static final int VERSION = 2;
+    public static final int HEADER_BYTES = 8;
+    public static final int TRAILER_BYTES = 12;
+    public static final int ORDER_RECORD_BYTES = 24;
+    public static final int ORDER_RECORD_BYTES_V1 = 12;
+    public static final int ITEM_RECORD_BYTES = 12;
+    public static final int DEFAULT_ORDERS_PER_BLOCK = 65_536;
+    public static final long MAX_BLOCK_BYTES = 1L << 30;
+
+    private OrderBinaryFormat() {
+    }
+
+    /**
+     * @param version a supported format version
+     * @return the size of an order record, excluding its items, in that version
+     */
+    public static int orderRecordBytes(int version) {
+        return version == 1 ? ORDER_RECORD_BYTES_V1 : ORDER_RECORD_BYTES;
+    }
+}
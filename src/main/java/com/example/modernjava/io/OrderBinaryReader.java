@@ -0,0 +1,404 @@
+package com.example.modernjava.io;
+
+import com.example.modernjava.domain.Address;
+import com.example.modernjava.domain.Customer;
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.OrderItem;
+import com.example.modernjava.domain.Product;
+import com.example.modernjava.store.OrderDictionaries;
+import lombok.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.example.modernjava.io.OrderBinaryFormat.*;
+
+/**
+ * Reads a binary order file (see {@link OrderBinaryFormat}) by memory mapping it
+ * <p>
+ * Opening a file only parses the footer: the tables of distinct customers, addresses, products and
+ * discounts are decoded onto the heap and the blocks of order records are mapped with
+ * {@link FileChannel#map}, so startup cost does not depend on the number of orders. Records are read
+ * straight from the mapped blocks, either to rebuild {@link Order}s (sharing one instance per distinct
+ * customer, address, product and discount) or, without creating any objects, by
+ * {@link MappedOrderAnalysisService}.
+ * <p>
+ * Mapped blocks stay valid after the reader is closed and are released when they are garbage collected.
+ */
+public class OrderBinaryReader implements Closeable {
+    private final FileChannel channel;
+    private final int version;
+    private final int orderRecordBytes;
+    private final long orderCount;
+    private final long itemCount;
+    private final ByteBuffer[] blocks;
+    private final int[] blockOrders;
+    private final long[] firstOrders;
+    private final OrderDictionaries dictionaries = new OrderDictionaries();
+
+    private OrderBinaryReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long size = channel.size();
+        if (size < HEADER_BYTES + TRAILER_BYTES) {
+            throw new IOException("Not an order file, too short: " + size + " bytes");
+        }
+        var header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+        var trailer = channel.map(FileChannel.MapMode.READ_ONLY, size - TRAILER_BYTES, TRAILER_BYTES);
+        if (header.getInt(0) != MAGIC || trailer.getInt(Long.BYTES) != MAGIC) {
+            throw new IOException("Not an order file, or the file is incomplete");
+        }
+        this.version = header.getInt(Integer.BYTES);
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported order file version " + version + ", expected 1 to " + VERSION);
+        }
+        this.orderRecordBytes = OrderBinaryFormat.orderRecordBytes(version);
+        long footerOffset = trailer.getLong(0);
+        long footerLength = size - TRAILER_BYTES - footerOffset;
+        if (footerOffset < HEADER_BYTES || footerLength < 0 || footerLength > Integer.MAX_VALUE) {
+            throw new IOException("Corrupt order file footer offset " + footerOffset);
+        }
+        var footer = channel.map(FileChannel.MapMode.READ_ONLY, footerOffset, footerLength);
+        this.orderCount = footer.getLong();
+        this.itemCount = footer.getLong();
+        int blockCount = footer.getInt();
+        this.blocks = new ByteBuffer[blockCount];
+        this.blockOrders = new int[blockCount];
+        this.firstOrders = new long[blockCount + 1];
+        for (int block = 0; block < blockCount; block++) {
+            long offset = footer.getLong();
+            long length = footer.getLong();
+            blockOrders[block] = footer.getInt();
+            blocks[block] = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            firstOrders[block + 1] = firstOrders[block] + blockOrders[block];
+        }
+        readTables(footer);
+    }
+
+    /**
+     * Open and map a binary order file
+     *
+     * @param path the file to read
+     * @return a reader for the file, which should be closed
+     * @throws IOException if the file cannot be read or is not a complete order file
+     */
+    public static OrderBinaryReader open(@NonNull Path path) throws IOException {
+        var channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new OrderBinaryReader(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void readTables(ByteBuffer footer) {
+        String[] strings = new String[footer.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[footer.getInt()];
+            footer.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        int discounts = footer.getInt();
+        for (int i = 0; i < discounts; i++) {
+            dictionaries.encodeDiscount(getDecimal(footer));
+        }
+        // Encoding in id order reproduces the ids used by the writer, addresses first
+        // so that customers find their addresses already encoded
+        int addresses = footer.getInt();
+        for (int i = 0; i < addresses; i++) {
+            var country = string(strings, footer.getInt());
+            int lineCount = footer.getInt();
+            List<String> lines = null;
+            if (lineCount >= 0) {
+                lines = new ArrayList<>(lineCount);
+                for (int line = 0; line < lineCount; line++) {
+                    lines.add(string(strings, footer.getInt()));
+                }
+            }
+            dictionaries.encodeAddress(Address.builder()
+                    .postalCountry(country)
+                    .addressLines(lines)
+                    .administrativeArea(string(strings, footer.getInt()))
+                    .locality(string(strings, footer.getInt()))
+                    .dependantLocality(string(strings, footer.getInt()))
+                    .postalCode(string(strings, footer.getInt()))
+                    .primaryPhoneNumber(string(strings, footer.getInt()))
+                    .build());
+        }
+        int customers = footer.getInt();
+        for (int i = 0; i < customers; i++) {
+            dictionaries.encodeCustomer(Customer.builder()
+                    .name(string(strings, footer.getInt()))
+                    .billingAddress(dictionaries.addresses().decode(footer.getInt()))
+                    .shippingAddress(dictionaries.addresses().decode(footer.getInt()))
+                    .build());
+        }
+        int products = footer.getInt();
+        for (int i = 0; i < products; i++) {
+            dictionaries.encodeProduct(Product.builder()
+                    .sku(string(strings, footer.getInt()))
+                    .name(string(strings, footer.getInt()))
+                    .description(string(strings, footer.getInt()))
+                    .price(footer.getInt() == 0 ? null : getDecimal(footer))
+                    .build());
+        }
+    }
+
+    private static String string(String[] strings, int id) {
+        return id < 0 ? null : strings[id];
+    }
+
+    private static BigDecimal getDecimal(ByteBuffer buffer) {
+        int scale = buffer.getInt();
+        byte[] unscaled = new byte[buffer.getInt()];
+        buffer.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    /**
+     * @return the format version of the file
+     */
+    public int version() {
+        return version;
+    }
+
+    /**
+     * @return number of orders in the file
+     */
+    public long orderCount() {
+        return orderCount;
+    }
+
+    /**
+     * @return number of order items in the file
+     */
+    public long itemCount() {
+        return itemCount;
+    }
+
+    /**
+     * @return the dictionaries that the ids of the order records refer to
+     */
+    public OrderDictionaries dictionaries() {
+        return dictionaries;
+    }
+
+    /**
+     * @return the size of the order records, excluding their items, which depends on the version
+     */
+    int orderRecordBytes() {
+        return orderRecordBytes;
+    }
+
+    /**
+     * @param block    a mapped block
+     * @param position the position of an order record in the block
+     * @return the time the order was placed, or null
+     */
+    Instant orderedAt(ByteBuffer block, int position) {
+        if (orderRecordBytes == ORDER_RECORD_BYTES_V1) {
+            return null;
+        }
+        int nanos = block.getInt(position + 3 * Integer.BYTES + Long.BYTES);
+        return nanos < 0 ? null : Instant.ofEpochSecond(block.getLong(position + 3 * Integer.BYTES), nanos);
+    }
+
+    /**
+     * @return number of blocks of order records
+     */
+    int blockCount() {
+        return blocks.length;
+    }
+
+    /**
+     * @param block the index of a block
+     * @return the mapped order records of the block
+     */
+    ByteBuffer block(int block) {
+        return blocks[block];
+    }
+
+    /**
+     * @param block the index of a block
+     * @return number of orders in the block
+     */
+    int blockOrders(int block) {
+        return blockOrders[block];
+    }
+
+    /**
+     * @return a lazily populated stream of the orders rebuilt from the mapped records, in file order
+     */
+    public Stream<Order> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Stream a range of the orders, skipping the blocks before it without reading them
+     *
+     * @param offset the index of the first order of the range
+     * @param limit  the maximum number of orders of the range
+     * @return a lazily populated stream of the orders of the range, in file order
+     */
+    public Stream<Order> stream(long offset, long limit) {
+        return StreamSupport.stream(spliterator(offset, limit), false);
+    }
+
+    /**
+     * Get a spliterator over the orders rebuilt from the mapped records
+     * <p>
+     * The spliterator knows its exact size and splits at block boundaries, halving the remaining blocks,
+     * so a parallel stream decodes separate blocks on separate threads without any coordination.
+     *
+     * @return a splittable spliterator over the orders, in file order
+     */
+    public Spliterator<Order> spliterator() {
+        return spliterator(0, orderCount);
+    }
+
+    /**
+     * Get a spliterator over a range of the orders, like {@link #spliterator()}
+     *
+     * @param offset the index of the first order of the range
+     * @param limit  the maximum number of orders of the range
+     * @return a splittable spliterator over the orders of the range, in file order
+     */
+    public Spliterator<Order> spliterator(long offset, long limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Offset and limit must not be negative: " + offset + ", " + limit);
+        }
+        long start = Math.min(offset, orderCount);
+        long end = start + Math.min(limit, orderCount - start);
+        // The block holding the first order of the range, whose preceding records are skipped
+        int block = Arrays.binarySearch(firstOrders, start);
+        block = block >= 0 ? block : -block - 2;
+        int position = 0;
+        for (long order = firstOrders[block]; order < start; order++) {
+            position = nextRecord(blocks[block], position);
+        }
+        return new OrderSpliterator(block, position, start, end);
+    }
+
+    /**
+     * @param block    a mapped block
+     * @param position the position of an order record in the block
+     * @return the position of the next order record in the block
+     */
+    private int nextRecord(ByteBuffer block, int position) {
+        int itemCount = block.getInt(position + 2 * Integer.BYTES);
+        return position + orderRecordBytes + Math.max(itemCount, 0) * ITEM_RECORD_BYTES;
+    }
+
+    private Order decode(ByteBuffer block, int position) {
+        int customerId = block.getInt(position);
+        int altShippingAddressId = block.getInt(position + Integer.BYTES);
+        int itemCount = block.getInt(position + 2 * Integer.BYTES);
+        Instant orderedAt = orderedAt(block, position);
+        position += orderRecordBytes;
+        List<OrderItem> items = null;
+        if (itemCount >= 0) {
+            items = new ArrayList<>(itemCount);
+            for (int item = 0; item < itemCount; item++, position += ITEM_RECORD_BYTES) {
+                items.add(OrderItem.builder()
+                        .product(dictionaries.products().decode(block.getInt(position)))
+                        .quantity(block.getInt(position + Integer.BYTES))
+                        .discount(dictionaries.discounts().decode(block.getInt(position + 2 * Integer.BYTES)))
+                        .build());
+            }
+        }
+        return Order.builder()
+                .customer(dictionaries.customers().decode(customerId))
+                .altShippingAddress(dictionaries.addresses().decode(altShippingAddressId))
+                .items(items)
+                .orderedAt(orderedAt)
+                .build();
+    }
+
+    /**
+     * Spliterator that rebuilds the orders of a range of the mapped blocks, one record per advance
+     */
+    private final class OrderSpliterator implements Spliterator<Order> {
+        private int block;
+        private int position;
+        private long index;
+        private final long end;
+
+        /**
+         * @param block    the block of the first order
+         * @param position the position of the first order in its block
+         * @param index    the index of the first order in the file
+         * @param end      the index after the last order
+         */
+        OrderSpliterator(int block, int position, long index, long end) {
+            this.block = block;
+            this.position = position;
+            this.index = index;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Order> action) {
+            if (index >= end) {
+                return false;
+            }
+            if (position >= blocks[block].limit()) {
+                block++;
+                position = 0;
+            }
+            var order = decode(blocks[block], position);
+            position = nextRecord(blocks[block], position);
+            index++;
+            action.accept(order);
+            return true;
+        }
+
+        @Override
+        public Spliterator<Order> trySplit() {
+            // Blocks from this one up to, excluding, the block holding the end of the range
+            int endBlock = block;
+            while (endBlock < blocks.length && firstOrders[endBlock] < end) {
+                endBlock++;
+            }
+            if (endBlock - block < 2) {
+                return null;
+            }
+            int middle = block + (endBlock - block) / 2;
+            var prefix = new OrderSpliterator(block, position, index, firstOrders[middle]);
+            block = middle;
+            position = 0;
+            index = firstOrders[middle];
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE | Spliterator.SIZED
+                    | Spliterator.SUBSIZED;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.modernjava.io;
+
+import com.example.modernjava.domain.Address;
+import com.example.modernjava.domain.Customer;
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.OrderItem;
+import com.example.modernjava.domain.Product;
+import com.example.modernjava.store.Dictionary;
+import com.example.modernjava.store.OrderDictionaries;
+import lombok.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.modernjava.io.OrderBinaryFormat.*;
+
+/**
+ * Writes orders to a binary order file (see {@link OrderBinaryFormat}) in a single streaming pass
+ * <p>
+ * Customers, addresses, products and discounts are dictionary encoded as the orders are written, so
+ * only the distinct values are held in memory. The tables and block index are written when the
+ * writer is closed; a file is incomplete until then.
+ */
+public class OrderBinaryWriter implements Closeable {
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+    private final OrderDictionaries dictionaries = new OrderDictionaries();
+    private final int ordersPerBlock;
+    private final List<Block> blocks = new ArrayList<>();
+    private long flushedBytes;
+    private long blockStart = HEADER_BYTES;
+    private int blockOrders;
+    private long orderCount;
+    private long itemCount;
+    private boolean closed;
+
+    public OrderBinaryWriter(@NonNull Path path) throws IOException {
+        this(path, DEFAULT_ORDERS_PER_BLOCK);
+    }
+
+    /**
+     * @param path           the file to write, replacing any existing file
+     * @param ordersPerBlock the maximum number of orders per block
+     * @throws IOException if the file cannot be created
+     */
+    public OrderBinaryWriter(@NonNull Path path, int ordersPerBlock) throws IOException {
+        if (ordersPerBlock <= 0) {
+            throw new IllegalArgumentException("Orders per block must be positive: " + ordersPerBlock);
+        }
+        this.ordersPerBlock = ordersPerBlock;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        putInt(MAGIC);
+        putInt(VERSION);
+    }
+
+    /**
+     * Write orders to a binary order file
+     *
+     * @param path   the file to write
+     * @param orders the orders to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(@NonNull Path path, @NonNull Iterable<Order> orders) throws IOException {
+        try (var writer = new OrderBinaryWriter(path)) {
+            writer.writeAll(orders);
+        }
+    }
+
+    /**
+     * @param order the order to append
+     * @throws IOException if the order cannot be written
+     */
+    public void write(@NonNull Order order) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Writer is closed");
+        }
+        List<OrderItem> items = order.getItems();
+        long recordBytes = ORDER_RECORD_BYTES + (items == null ? 0L : (long) items.size() * ITEM_RECORD_BYTES);
+        if (blockOrders == ordersPerBlock || (blockOrders > 0 && position() - blockStart + recordBytes > MAX_BLOCK_BYTES)) {
+            endBlock();
+        }
+        putInt(dictionaries.encodeCustomer(order.getCustomer()));
+        putInt(dictionaries.encodeAddress(order.getAltShippingAddress()));
+        putInt(items == null ? -1 : items.size());
+        Instant orderedAt = order.getOrderedAt();
+        putLong(orderedAt == null ? 0 : orderedAt.getEpochSecond());
+        putInt(orderedAt == null ? -1 : orderedAt.getNano());
+        if (items != null) {
+            for (OrderItem item : items) {
+                putInt(dictionaries.encodeProduct(item.getProduct()));
+                putInt(item.getQuantity());
+                putInt(dictionaries.encodeDiscount(item.getDiscount()));
+            }
+            itemCount += items.size();
+        }
+        blockOrders++;
+        orderCount++;
+    }
+
+    /**
+     * @param orders the orders to append
+     * @throws IOException if the orders cannot be written
+     */
+    public void writeAll(@NonNull Iterable<Order> orders) throws IOException {
+        for (Order order : orders) {
+            write(order);
+        }
+    }
+
+    private void endBlock() {
+        long end = position();
+        blocks.add(new Block(blockStart, end - blockStart, blockOrders));
+        blockStart = end;
+        blockOrders = 0;
+    }
+
+    /**
+     * Write the footer and trailer and close the file
+     *
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (blockOrders > 0) {
+                endBlock();
+            }
+            long footerOffset = position();
+            writeFooter();
+            putLong(footerOffset);
+            putInt(MAGIC);
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeFooter() throws IOException {
+        putLong(orderCount);
+        putLong(itemCount);
+        putInt(blocks.size());
+        for (Block block : blocks) {
+            putLong(block.offset());
+            putLong(block.length());
+            putInt(block.orders());
+        }
+        // Assign string ids before writing the tables that refer to them
+        var strings = new Dictionary<String>();
+        for (Address address : dictionaries.addresses().values()) {
+            strings.encode(address.getPostalCountry());
+            if (address.getAddressLines() != null) {
+                address.getAddressLines().forEach(strings::encode);
+            }
+            strings.encode(address.getAdministrativeArea());
+            strings.encode(address.getLocality());
+            strings.encode(address.getDependantLocality());
+            strings.encode(address.getPostalCode());
+            strings.encode(address.getPrimaryPhoneNumber());
+        }
+        dictionaries.customers().values().forEach(customer -> strings.encode(customer.getName()));
+        for (Product product : dictionaries.products().values()) {
+            strings.encode(product.getSku());
+            strings.encode(product.getName());
+            strings.encode(product.getDescription());
+        }
+
+        putInt(strings.size());
+        for (String string : strings.values()) {
+            putBytes(string.getBytes(StandardCharsets.UTF_8));
+        }
+        putInt(dictionaries.discounts().size());
+        for (BigDecimal discount : dictionaries.discounts().values()) {
+            putDecimal(discount);
+        }
+        putInt(dictionaries.addresses().size());
+        for (Address address : dictionaries.addresses().values()) {
+            putInt(strings.idOf(address.getPostalCountry()));
+            if (address.getAddressLines() == null) {
+                putInt(-1);
+            } else {
+                putInt(address.getAddressLines().size());
+                for (String line : address.getAddressLines()) {
+                    putInt(strings.idOf(line));
+                }
+            }
+            putInt(strings.idOf(address.getAdministrativeArea()));
+            putInt(strings.idOf(address.getLocality()));
+            putInt(strings.idOf(address.getDependantLocality()));
+            putInt(strings.idOf(address.getPostalCode()));
+            putInt(strings.idOf(address.getPrimaryPhoneNumber()));
+        }
+        putInt(dictionaries.customers().size());
+        for (Customer customer : dictionaries.customers().values()) {
+            putInt(strings.idOf(customer.getName()));
+            putInt(dictionaries.addresses().idOf(customer.getBillingAddress()));
+            putInt(dictionaries.addresses().idOf(customer.getShippingAddress()));
+        }
+        putInt(dictionaries.products().size());
+        for (Product product : dictionaries.products().values()) {
+            putInt(strings.idOf(product.getSku()));
+            putInt(strings.idOf(product.getName()));
+            putInt(strings.idOf(product.getDescription()));
+            putNullableDecimal(product.getPrice());
+        }
+    }
+
+    private long position() {
+        return flushedBytes + buffer.position();
+    }
+
+    private void putInt(int value) throws IOException {
+        ensureRemaining(Integer.BYTES);
+        buffer.putInt(value);
+    }
+
+    private void putLong(long value) throws IOException {
+        ensureRemaining(Long.BYTES);
+        buffer.putLong(value);
+    }
+
+    private void putBytes(byte[] bytes) throws IOException {
+        putInt(bytes.length);
+        for (int offset = 0; offset < bytes.length; ) {
+            ensureRemaining(1);
+            int length = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    private void putDecimal(BigDecimal value) throws IOException {
+        putInt(value.scale());
+        putBytes(value.unscaledValue().toByteArray());
+    }
+
+    private void putNullableDecimal(BigDecimal value) throws IOException {
+        putInt(value == null ? 0 : 1);
+        if (value != null) {
+            putDecimal(value);
+        }
+    }
+
+    private void ensureRemaining(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            flushedBytes += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private record Block(long offset, long length, int orders) {
+    }
+}
@@ -0,0 +1,431 @@
+package com.example.modernjava.io;
+
+import com.example.modernjava.analytics.Aggregate;
+import com.example.modernjava.analytics.AggregateResults;
+import com.example.modernjava.analytics.OrderAggregator;
+import com.example.modernjava.domain.Order;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Staged pipeline computing aggregates from a JSON order file, with the stages running concurrently
+ * <p>
+ * Instead of parsing a whole file into a list of orders and then analyzing the list, the work is split into
+ * four {@link Stage}s, each on its own thread, handing batches of orders to the next stage through bounded
+ * queues:
+ * <ol>
+ * <li>{@link Stage#READ} tokenizes the file and copies the tokens of each order into a {@link TokenBuffer},</li>
+ * <li>{@link Stage#PARSE} binds the buffered tokens to orders,</li>
+ * <li>{@link Stage#INTERN} canonicalizes the customers, addresses, products and discounts of the orders with an
+ * {@link OrderInterner},</li>
+ * <li>{@link Stage#AGGREGATE} feeds the orders to an {@link OrderAggregator}.</li>
+ * </ol>
+ * Reading, parsing and aggregation thus overlap, and only the batches in flight are held in memory. The queues
+ * apply backpressure: a stage that gets ahead blocks when the queue to the next stage is full, rather than
+ * buffering the file. Batching amortizes the hand-off between threads over many orders. Both a top level array
+ * of orders and a sequence of root level orders (JSON Lines) are supported, as with {@link OrderJsonReader}, and
+ * the results are identical to those of analyzing the parsed orders.
+ * <p>
+ * Each run reports the throughput of each stage and the depth of its input queue ({@link StageStats}), which
+ * shows where the bottleneck is: the stage before a queue that is usually full, or after a queue that is usually
+ * empty. If any stage fails, the others are interrupted and the failure is thrown by the run.
+ */
+public class OrderIngestionPipeline {
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    private static final List<?> END = Collections.unmodifiableList(new ArrayList<>());
+
+    private final ObjectMapper objectMapper;
+    private final ObjectReader orderReader;
+    private final int batchSize;
+    private final int queueCapacity;
+
+    /**
+     * A stage of the pipeline
+     */
+    public enum Stage {
+        READ, PARSE, INTERN, AGGREGATE
+    }
+
+    /**
+     * The work done by a stage during a run
+     *
+     * @param stage          the stage
+     * @param batches        the number of batches processed
+     * @param items          the number of orders processed
+     * @param busyNanos      the time spent processing, excluding the time blocked on the queues
+     * @param blockedNanos   the time blocked waiting for input or for room in the output queue
+     * @param meanQueueDepth the mean number of batches waiting in the input queue of the stage when it took a
+     *                       batch, 0 for the first stage, which has no input queue
+     * @param maxQueueDepth  the maximum number of batches waiting in the input queue of the stage
+     */
+    public record StageStats(Stage stage, long batches, long items, long busyNanos, long blockedNanos,
+                             double meanQueueDepth, int maxQueueDepth) {
+        /**
+         * @return the orders processed per second of busy time, i.e. the throughput the stage would reach if
+         * it never waited for the others
+         */
+        public double itemsPerSecond() {
+            return busyNanos == 0 ? 0 : items * 1e9 / busyNanos;
+        }
+
+        /**
+         * @return the fraction of its time the stage was busy, 1 for the bottleneck of a balanced pipeline
+         */
+        public double utilization() {
+            long total = busyNanos + blockedNanos;
+            return total == 0 ? 0 : (double) busyNanos / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s: %d orders in %d batches, %.0f orders/s busy, %.0f%% busy,"
+                            + " queue depth mean %.1f max %d", stage, items, batches, itemsPerSecond(),
+                    utilization() * 100, meanQueueDepth, maxQueueDepth);
+        }
+    }
+
+    /**
+     * The outcome of a run
+     *
+     * @param results       the aggregates computed
+     * @param orders        the number of orders read
+     * @param elapsed       the time from the start of the run until the aggregates were complete
+     * @param stages        the statistics of each stage, in pipeline order
+     * @param internerStats the deduplication achieved by the intern stage
+     */
+    public record Result(AggregateResults results, long orders, Duration elapsed, List<StageStats> stages,
+                         OrderInterner.Stats internerStats) {
+        /**
+         * @param stage the stage
+         * @return the statistics of the stage
+         */
+        public StageStats stage(Stage stage) {
+            return stages.get(stage.ordinal());
+        }
+
+        /**
+         * @return the orders processed per second by the whole pipeline
+         */
+        public double ordersPerSecond() {
+            long nanos = elapsed.toNanos();
+            return nanos == 0 ? 0 : orders * 1e9 / nanos;
+        }
+    }
+
+    private OrderIngestionPipeline(Builder builder) {
+        this.objectMapper = builder.objectMapper;
+        this.orderReader = objectMapper.readerFor(Order.class);
+        this.batchSize = builder.batchSize;
+        this.queueCapacity = builder.queueCapacity;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Compute aggregates over the orders of a JSON file
+     *
+     * @param path       the file to read
+     * @param aggregates the aggregates to compute
+     * @return the aggregates and the statistics of the run
+     * @throws IOException          if the file cannot be read or parsed
+     * @throws InterruptedException if the calling thread is interrupted, in which case the stages are interrupted too
+     */
+    public Result run(@NonNull Path path, @NonNull Set<Aggregate> aggregates) throws IOException, InterruptedException {
+        return run(Files.newInputStream(path), aggregates);
+    }
+
+    /**
+     * Compute aggregates over the orders of a JSON input stream. The input stream is closed when the run ends.
+     *
+     * @param inputStream the input to read
+     * @param aggregates  the aggregates to compute
+     * @return the aggregates and the statistics of the run
+     * @throws IOException          if the input cannot be read or parsed
+     * @throws InterruptedException if the calling thread is interrupted, in which case the stages are interrupted too
+     */
+    public Result run(@NonNull InputStream inputStream, @NonNull Set<Aggregate> aggregates)
+            throws IOException, InterruptedException {
+        JsonParser parser;
+        try {
+            parser = objectMapper.getFactory().createParser(inputStream);
+        } catch (IOException e) {
+            inputStream.close();
+            throw e;
+        }
+        return new Run(parser, aggregates).execute();
+    }
+
+    /**
+     * The queues, stage counters and threads of one run
+     */
+    private final class Run {
+        private final JsonParser parser;
+        private final OrderAggregator aggregator;
+        private final OrderInterner interner = new OrderInterner();
+        private final BlockingQueue<List<TokenBuffer>> tokens = new ArrayBlockingQueue<>(queueCapacity);
+        private final BlockingQueue<List<Order>> parsed = new ArrayBlockingQueue<>(queueCapacity);
+        private final BlockingQueue<List<Order>> interned = new ArrayBlockingQueue<>(queueCapacity);
+        private final Map<Stage, StageCounters> counters = new EnumMap<>(Stage.class);
+        private final List<Thread> threads = new ArrayList<>();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Run(JsonParser parser, Set<Aggregate> aggregates) {
+            this.parser = parser;
+            this.aggregator = new OrderAggregator(aggregates);
+            for (Stage stage : Stage.values()) {
+                counters.put(stage, new StageCounters());
+            }
+        }
+
+        Result execute() throws IOException, InterruptedException {
+            long start = System.nanoTime();
+            add(Stage.READ, this::read);
+            add(Stage.PARSE, () -> transform(counters.get(Stage.PARSE), tokens, parsed, this::parse));
+            add(Stage.INTERN, () -> transform(counters.get(Stage.INTERN), parsed, interned, interner::intern));
+            add(Stage.AGGREGATE, this::aggregate);
+            threads.forEach(Thread::start);
+            try {
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+            } catch (InterruptedException e) {
+                threads.forEach(Thread::interrupt);
+                throw e;
+            }
+            var elapsed = Duration.ofNanos(System.nanoTime() - start);
+            var thrown = failure.get();
+            if (thrown instanceof IOException exception) {
+                throw exception;
+            } else if (thrown instanceof UncheckedIOException exception) {
+                throw exception.getCause();
+            } else if (thrown instanceof RuntimeException exception) {
+                throw exception;
+            } else if (thrown instanceof Error error) {
+                throw error;
+            } else if (thrown != null) {
+                throw new IOException(thrown);
+            }
+            List<StageStats> stages = new ArrayList<>();
+            counters.forEach((stage, stageCounters) -> stages.add(stageCounters.toStats(stage)));
+            return new Result(aggregator.results(), counters.get(Stage.READ).items, elapsed, List.copyOf(stages),
+                    interner.stats());
+        }
+
+        private void add(Stage stage, StageTask task) {
+            var thread = new Thread(() -> {
+                var stageCounters = counters.get(stage);
+                long start = System.nanoTime();
+                try {
+                    task.run();
+                } catch (InterruptedException e) {
+                    // Interrupted because another stage failed or the run was interrupted
+                } catch (Throwable e) {
+                    if (failure.compareAndSet(null, e)) {
+                        threads.forEach(Thread::interrupt);
+                    }
+                } finally {
+                    stageCounters.busyNanos = System.nanoTime() - start - stageCounters.blockedNanos;
+                }
+            }, "order-ingestion-" + stage.name().toLowerCase(Locale.ROOT));
+            thread.setDaemon(true);
+            threads.add(thread);
+        }
+
+        private void read() throws IOException, InterruptedException {
+            var stageCounters = counters.get(Stage.READ);
+            try (parser) {
+                var first = parser.nextToken();
+                boolean array = first == JsonToken.START_ARRAY;
+                if (first != null && !array && first != JsonToken.START_OBJECT) {
+                    throw new IOException("Expected an array of orders or a sequence of orders but found " + first
+                            + " at " + parser.getCurrentLocation());
+                }
+                var token = array ? parser.nextToken() : first;
+                List<TokenBuffer> batch = new ArrayList<>(batchSize);
+                while (token != null && !(array && token == JsonToken.END_ARRAY)) {
+                    if (token != JsonToken.VALUE_NULL) {
+                        var buffer = new TokenBuffer(parser);
+                        // Keep decimals as written, as binding from the file does, rather than as doubles
+                        buffer.forceUseOfBigDecimal(true);
+                        buffer.copyCurrentStructure(parser);
+                        batch.add(buffer);
+                        if (batch.size() == batchSize) {
+                            stageCounters.count(batch);
+                            stageCounters.put(tokens, batch);
+                            batch = new ArrayList<>(batchSize);
+                        }
+                    }
+                    token = parser.nextToken();
+                }
+                if (!batch.isEmpty()) {
+                    stageCounters.count(batch);
+                    stageCounters.put(tokens, batch);
+                }
+                stageCounters.end(tokens);
+            }
+        }
+
+        private Order parse(TokenBuffer buffer) {
+            try (var tokenParser = buffer.asParser()) {
+                return orderReader.readValue(tokenParser);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private <I, O> void transform(StageCounters stageCounters, BlockingQueue<List<I>> input,
+                                      BlockingQueue<List<O>> output, Function<I, O> function)
+                throws InterruptedException {
+            List<I> batch;
+            while ((batch = stageCounters.take(input)) != END) {
+                List<O> results = new ArrayList<>(batch.size());
+                for (I item : batch) {
+                    results.add(function.apply(item));
+                }
+                stageCounters.put(output, results);
+            }
+            stageCounters.end(output);
+        }
+
+        private void aggregate() throws InterruptedException {
+            var stageCounters = counters.get(Stage.AGGREGATE);
+            List<Order> batch;
+            while ((batch = stageCounters.take(interned)) != END) {
+                batch.forEach(aggregator);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface StageTask {
+        void run() throws IOException, InterruptedException;
+    }
+
+    /**
+     * Counters of a stage, only updated by the thread of the stage and read once it has terminated
+     */
+    private static final class StageCounters {
+        private long batches;
+        private long items;
+        private long busyNanos;
+        private long blockedNanos;
+        private long depthSamples;
+        private long depthSum;
+        private int maxDepth;
+
+        <T> List<T> take(BlockingQueue<List<T>> queue) throws InterruptedException {
+            int depth = queue.size();
+            depthSamples++;
+            depthSum += depth;
+            maxDepth = Math.max(maxDepth, depth);
+            long start = System.nanoTime();
+            var batch = queue.take();
+            blockedNanos += System.nanoTime() - start;
+            if (batch != END) {
+                count(batch);
+            }
+            return batch;
+        }
+
+        void count(List<?> batch) {
+            batches++;
+            items += batch.size();
+        }
+
+        <T> void put(BlockingQueue<List<T>> queue, List<T> batch) throws InterruptedException {
+            long start = System.nanoTime();
+            queue.put(batch);
+            blockedNanos += System.nanoTime() - start;
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> void end(BlockingQueue<List<T>> queue) throws InterruptedException {
+            long start = System.nanoTime();
+            queue.put((List<T>) END);
+            blockedNanos += System.nanoTime() - start;
+        }
+
+        StageStats toStats(Stage stage) {
+            return new StageStats(stage, batches, items, busyNanos, blockedNanos,
+                    depthSamples == 0 ? 0 : (double) depthSum / depthSamples, maxDepth);
+        }
+    }
+
+    /**
+     * Configuration of an {@link OrderIngestionPipeline}
+     */
+    public static final class Builder {
+        private ObjectMapper objectMapper;
+        private int batchSize = DEFAULT_BATCH_SIZE;
+        private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+        private Builder() {
+        }
+
+        /**
+         * @param objectMapper the object mapper binding the orders, {@link OrderObjectMappers#create()} by default
+         */
+        public Builder objectMapper(@NonNull ObjectMapper objectMapper) {
+            this.objectMapper = objectMapper;
+            return this;
+        }
+
+        /**
+         * @param batchSize the number of orders handed from one stage to the next at a time, 256 by default
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * @param queueCapacity the number of batches each queue between two stages holds before the stage
+         *                      feeding it blocks, 16 by default
+         */
+        public Builder queueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        public OrderIngestionPipeline build() {
+            require(batchSize > 0, "Batch size must be positive: " + batchSize);
+            require(queueCapacity > 0, "Queue capacity must be positive: " + queueCapacity);
+            if (objectMapper == null) {
+                objectMapper = OrderObjectMappers.create();
+            }
+            return new OrderIngestionPipeline(this);
+        }
+
+        private static void require(boolean condition, String message) {
+            if (!condition) {
+                throw new IllegalArgumentException(message);
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.modernjava.io;
+
+import com.example.modernjava.domain.Address;
+import com.example.modernjava.domain.Customer;
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.OrderItem;
+import com.example.modernjava.domain.Product;
+import lombok.NonNull;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Canonicalizes the shared parts of orders, so that equal products, customers, addresses and
+ * discounts loaded from separate copies become a single instance
+ * <p>
+ * Products are interned by SKU, as long as the product is equal to the one already interned for the
+ * SKU (a product whose fields differ is kept as is, and products without a SKU are interned by value).
+ * Customers, addresses and discounts are interned by value. Interning reduces the heap to one
+ * instance per distinct value, and lets the hash based grouping of the analytics find equal keys by
+ * identity instead of comparing deep object graphs.
+ * <p>
+ * Orders and order items are canonicalized in place. Interned instances are shared and must not be
+ * modified. The interner is thread safe; use {@link InterningModule} to intern while deserializing.
+ */
+public class OrderInterner {
+    private final Map<String, Product> productsBySku = new ConcurrentHashMap<>();
+    private final Map<Product, Product> productsByValue = new ConcurrentHashMap<>();
+    private final Map<Customer, Customer> customers = new ConcurrentHashMap<>();
+    private final Map<Address, Address> addresses = new ConcurrentHashMap<>();
+    private final Map<BigDecimal, BigDecimal> discounts = new ConcurrentHashMap<>();
+    private final LongAdder productReferences = new LongAdder();
+    private final LongAdder customerReferences = new LongAdder();
+    private final LongAdder addressReferences = new LongAdder();
+    private final LongAdder discountReferences = new LongAdder();
+
+    /**
+     * The deduplication achieved by an interner
+     *
+     * @param productReferences  the number of products interned
+     * @param distinctProducts   the number of distinct product instances kept
+     * @param customerReferences the number of customers interned
+     * @param distinctCustomers  the number of distinct customer instances kept
+     * @param addressReferences  the number of addresses interned
+     * @param distinctAddresses  the number of distinct address instances kept
+     * @param discountReferences the number of discounts interned
+     * @param distinctDiscounts  the number of distinct discount instances kept
+     */
+    public record Stats(long productReferences, int distinctProducts, long customerReferences, int distinctCustomers,
+                       long addressReferences, int distinctAddresses, long discountReferences, int distinctDiscounts) {
+        /**
+         * @return the number of references per distinct instance over all types, 1 meaning no duplicates
+         * were found
+         */
+        public double dedupeRatio() {
+            long distinct = distinctProducts + distinctCustomers + distinctAddresses + distinctDiscounts;
+            long references = productReferences + customerReferences + addressReferences + discountReferences;
+            return distinct == 0 ? 1 : (double) references / distinct;
+        }
+    }
+
+    /**
+     * Canonicalize the customer, addresses, products and discounts of an order in place
+     *
+     * @param order the order
+     * @return the order
+     */
+    public Order intern(@NonNull Order order) {
+        order.setCustomer(intern(order.getCustomer()));
+        order.setAltShippingAddress(intern(order.getAltShippingAddress()));
+        if (order.getItems() != null) {
+            order.getItems().forEach(this::intern);
+        }
+        return order;
+    }
+
+    /**
+     * Canonicalize the product and discount of an order item in place
+     *
+     * @param item the order item
+     * @return the order item
+     */
+    public OrderItem intern(@NonNull OrderItem item) {
+        item.setProduct(intern(item.getProduct()));
+        item.setDiscount(intern(item.getDiscount()));
+        return item;
+    }
+
+    /**
+     * @param product the product, or null
+     * @return the interned product equal to the given product
+     */
+    public Product intern(Product product) {
+        if (product == null) {
+            return null;
+        }
+        productReferences.increment();
+        if (product.getSku() != null) {
+            var interned = productsBySku.putIfAbsent(product.getSku(), product);
+            if (interned == null || interned.equals(product)) {
+                return interned == null ? product : interned;
+            }
+            // A different product with the same SKU falls back to interning by value
+        }
+        return productsByValue.computeIfAbsent(product, p -> p);
+    }
+
+    /**
+     * Intern a customer, interning its addresses first
+     *
+     * @param customer the customer, or null
+     * @return the interned customer equal to the given customer
+     */
+    public Customer intern(Customer customer) {
+        if (customer == null) {
+            return null;
+        }
+        customer.setBillingAddress(intern(customer.getBillingAddress()));
+        customer.setShippingAddress(intern(customer.getShippingAddress()));
+        return internShallow(customer);
+    }
+
+    /**
+     * Intern a customer whose addresses are already interned
+     */
+    Customer internShallow(Customer customer) {
+        if (customer == null) {
+            return null;
+        }
+        customerReferences.increment();
+        return customers.computeIfAbsent(customer, c -> c);
+    }
+
+    /**
+     * @param address the address, or null
+     * @return the interned address equal to the given address
+     */
+    public Address intern(Address address) {
+        if (address == null) {
+            return null;
+        }
+        addressReferences.increment();
+        return addresses.computeIfAbsent(address, a -> a);
+    }
+
+    /**
+     * @param discount the discount, or null
+     * @return the interned discount equal (including scale) to the given discount
+     */
+    public BigDecimal intern(BigDecimal discount) {
+        if (discount == null) {
+            return null;
+        }
+        discountReferences.increment();
+        return discounts.computeIfAbsent(discount, d -> d);
+    }
+
+    /**
+     * @return the deduplication achieved so far
+     */
+    public Stats stats() {
+        return new Stats(productReferences.sum(), productsBySku.size() + productsByValue.size(),
+                customerReferences.sum(), customers.size(), addressReferences.sum(), addresses.size(),
+                discountReferences.sum(), discounts.size());
+    }
+}
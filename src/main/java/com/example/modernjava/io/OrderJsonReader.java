@@ -0,0 +1,193 @@
+package com.example.modernjava.io;
+
+import com.example.modernjava.analytics.Aggregate;
+import com.example.modernjava.analytics.AggregateResults;
+import com.example.modernjava.analytics.OrderAggregator;
+import com.example.modernjava.domain.Order;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Streaming reader for JSON order files
+ * <p>
+ * Rather than binding a whole file to a {@code List<Order>}, the reader walks the file with a Jackson
+ * {@link JsonParser} and binds one order at a time, so only the order being processed is held in memory.
+ * Both a top level array of orders (the shape written by {@code objectMapper.writeValue(file, orders)})
+ * and a sequence of root level orders (JSON Lines) are supported. Null entries are skipped.
+ * <p>
+ * The returned streams hold the file open and must be closed, ideally using try-with-resources.
+ * I/O and parse errors while streaming are thrown as {@link UncheckedIOException}.
+ */
+public class OrderJsonReader {
+    private final ObjectMapper objectMapper;
+    private final ObjectReader orderReader;
+
+    public OrderJsonReader() {
+        this(OrderObjectMappers.create());
+    }
+
+    public OrderJsonReader(@NonNull ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.orderReader = objectMapper.readerFor(Order.class);
+    }
+
+    /**
+     * Stream the orders of a JSON file
+     *
+     * @param path the file to read
+     * @return a lazily populated stream of orders, which must be closed
+     * @throws IOException if the file cannot be opened
+     */
+    public Stream<Order> stream(@NonNull Path path) throws IOException {
+        return stream(Files.newInputStream(path));
+    }
+
+    /**
+     * Stream the orders of a JSON file after the first ones, which are skipped over without being bound
+     *
+     * @param path   the file to read
+     * @param offset the number of orders to skip
+     * @return a lazily populated stream of the orders after the skipped ones, which must be closed
+     * @throws IOException if the file cannot be opened
+     */
+    public Stream<Order> stream(@NonNull Path path, long offset) throws IOException {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset must not be negative: " + offset);
+        }
+        return stream(parser(Files.newInputStream(path)), offset);
+    }
+
+    /**
+     * Stream the orders of a JSON input stream. The input stream is closed when the returned stream is closed.
+     *
+     * @param inputStream the input to read
+     * @return a lazily populated stream of orders, which must be closed
+     * @throws IOException if the input cannot be parsed
+     */
+    public Stream<Order> stream(@NonNull InputStream inputStream) throws IOException {
+        return stream(parser(inputStream));
+    }
+
+    private JsonParser parser(InputStream inputStream) throws IOException {
+        try {
+            return objectMapper.getFactory().createParser(inputStream);
+        } catch (IOException e) {
+            inputStream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Stream the orders of a JSON parser, positioned before either a top level array of orders
+     * or a sequence of root level orders. The parser is closed when the returned stream is closed.
+     *
+     * @param parser the parser to read from
+     * @return a lazily populated stream of orders, which must be closed
+     * @throws IOException if the input cannot be parsed
+     */
+    public Stream<Order> stream(@NonNull JsonParser parser) throws IOException {
+        return stream(parser, 0);
+    }
+
+    private Stream<Order> stream(JsonParser parser, long offset) throws IOException {
+        try {
+            var spliterator = new OrderSpliterator(parser, orderReader, offset);
+            return StreamSupport.stream(spliterator, false).onClose(() -> {
+                try {
+                    parser.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            parser.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Compute aggregates over the orders of a JSON file in a single streaming pass, without
+     * materializing the orders in memory
+     *
+     * @param path       the file to read
+     * @param aggregates the aggregates to compute
+     * @return the requested aggregates
+     * @throws IOException if the file cannot be read or parsed
+     */
+    public AggregateResults analyze(@NonNull Path path, @NonNull Set<Aggregate> aggregates) throws IOException {
+        try (var orders = stream(path)) {
+            return orders.collect(OrderAggregator.toAggregates(aggregates));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Spliterator that binds one order per advance
+     */
+    private static final class OrderSpliterator extends Spliterators.AbstractSpliterator<Order> {
+        private final JsonParser parser;
+        private final ObjectReader orderReader;
+        private final boolean array;
+        private boolean done;
+        private JsonToken pending;
+        private long skip;
+
+        OrderSpliterator(JsonParser parser, ObjectReader orderReader, long skip) throws IOException {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.parser = parser;
+            this.orderReader = orderReader;
+            this.skip = skip;
+            var first = parser.nextToken();
+            this.array = first == JsonToken.START_ARRAY;
+            this.done = first == null;
+            this.pending = array ? null : first;
+            if (!done && !array && first != JsonToken.START_OBJECT) {
+                throw new IOException("Expected an array of orders or a sequence of orders but found " + first
+                        + " at " + parser.getCurrentLocation());
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Order> action) {
+            if (done) {
+                return false;
+            }
+            try {
+                var token = pending != null ? pending : parser.nextToken();
+                pending = null;
+                while (token == JsonToken.VALUE_NULL || (skip > 0 && token == JsonToken.START_OBJECT)) {
+                    if (token == JsonToken.START_OBJECT) {
+                        parser.skipChildren();
+                        skip--;
+                    }
+                    token = parser.nextToken();
+                }
+                if (token == null || (array && token == JsonToken.END_ARRAY)) {
+                    done = true;
+                    return false;
+                }
+                action.accept(orderReader.readValue(parser));
+                return true;
+            } catch (IOException e) {
+                done = true;
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.modernjava.io;
+
+import com.example.modernjava.domain.Order;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Streaming writer for JSON order files
+ * <p>
+ * Orders are written one at a time into a top level JSON array with a Jackson {@link JsonGenerator},
+ * so arbitrarily many orders can be written without collecting them into a list first. The file has
+ * the same shape as {@code objectMapper.writeValue(file, orders)} and can be read back with
+ * {@link OrderJsonReader}. The array is closed when the writer is closed; a file is incomplete until then.
+ */
+public class OrderJsonWriter implements Closeable {
+    private final JsonGenerator generator;
+    private final ObjectWriter orderWriter;
+
+    public OrderJsonWriter(@NonNull Path path) throws IOException {
+        this(OrderObjectMappers.create(), Files.newOutputStream(path));
+    }
+
+    /**
+     * @param objectMapper the mapper used to serialize orders
+     * @param outputStream the stream to write to, which is closed with the writer
+     * @throws IOException if the start of the array cannot be written
+     */
+    public OrderJsonWriter(@NonNull ObjectMapper objectMapper, @NonNull OutputStream outputStream) throws IOException {
+        this.generator = objectMapper.getFactory().createGenerator(outputStream, JsonEncoding.UTF8);
+        // Flushing after every order would defeat the generator's buffering
+        this.orderWriter = objectMapper.writerFor(Order.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        generator.writeStartArray();
+    }
+
+    /**
+     * Write orders to a JSON order file
+     *
+     * @param path   the file to write
+     * @param orders the orders to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(@NonNull Path path, @NonNull Iterable<Order> orders) throws IOException {
+        try (var writer = new OrderJsonWriter(path)) {
+            writer.writeAll(orders);
+        }
+    }
+
+    /**
+     * @param order the order to append
+     * @throws IOException if the order cannot be written
+     */
+    public void write(@NonNull Order order) throws IOException {
+        if (generator.isClosed()) {
+            throw new IllegalStateException("Writer is closed");
+        }
+        orderWriter.writeValue(generator, order);
+    }
+
+    /**
+     * @param orders the orders to append
+     * @throws IOException if the orders cannot be written
+     */
+    public void writeAll(@NonNull Iterable<Order> orders) throws IOException {
+        for (Order order : orders) {
+            write(order);
+        }
+    }
+
+    /**
+     * End the array and close the file
+     *
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (generator.isClosed()) {
+            return;
+        }
+        try {
+            generator.writeEndArray();
+        } finally {
+            generator.close();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.modernjava.io;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+/**
+ * Factory of object mappers configured for the order domain model
+ */
+public final class OrderObjectMappers {
+
+    private OrderObjectMappers() {
+    }
+
+    /**
+     * Create an object mapper that reads and writes order times ({@link java.time.Instant}) as ISO-8601 strings,
+     * e.g. {@code "2022-11-01T09:30:00Z"}
+     *
+     * @return a new object mapper
+     */
+    public static ObjectMapper create() {
+        return new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+}
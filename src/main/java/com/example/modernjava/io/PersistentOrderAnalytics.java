@@ -0,0 +1,404 @@
+package com.example.modernjava.io;
+
+import com.example.modernjava.analytics.Aggregate;
+import com.example.modernjava.analytics.AggregateResults;
+import com.example.modernjava.analytics.OrderAnalytics;
+import com.example.modernjava.analytics.PartialAggregate;
+import com.example.modernjava.analytics.sketch.HyperLogLog;
+import lombok.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Order analytics over an append-only JSON Lines order file, restored at startup from a snapshot of the
+ * aggregates persisted on disk
+ * <p>
+ * The snapshot holds the {@link PartialAggregate} of the orders seen, in its compact binary form, with the
+ * length of the prefix of the order file those orders were read from and the CRC32C of that prefix.
+ * {@link #open(Path, Path)} reads the snapshot, checks that the order file still starts with the same bytes
+ * by checksumming the prefix, which costs a sequential read of the bytes rather than binding every order,
+ * and then only parses the orders appended since and merges them in. If the snapshot is missing, cannot be
+ * read, fails its own checksum or does not match the order file, the aggregates are rebuilt from the whole
+ * file, and {@link #recovery()} tells which happened. {@link #refresh()} applies orders appended while the
+ * analytics are open. Only complete lines are read, so an order being appended is picked up once its line
+ * is terminated.
+ * <p>
+ * A snapshot file consists of a magic number and format version (ints), the length and CRC32C of the order
+ * file prefix (longs), the number of orders (long), the length of the aggregates (int), the aggregates, and
+ * the CRC32C of everything before it (long). {@link #save()} replaces the file atomically, so a crash while
+ * saving leaves the previous snapshot intact.
+ * <p>
+ * Writers are serialized by a lock; reads are served from immutable results built on the first read after
+ * a write.
+ */
+public class PersistentOrderAnalytics implements OrderAnalytics {
+    public static final int MAGIC = 0x4F414753; // "OAGS"
+    public static final int VERSION = 2;
+
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final Path snapshotFile;
+    private final Path orderFile;
+    private final OrderJsonReader reader = new OrderJsonReader();
+    private final Recovery recovery;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private PartialAggregate aggregate = new PartialAggregate();
+    private CRC32C sourceChecksum = new CRC32C();
+    private long sourceLength;
+    private volatile AggregateResults results;
+
+    /**
+     * How the aggregates were obtained at startup
+     */
+    public enum Outcome {
+        /**
+         * Restored from the snapshot, then brought up to date with the orders appended since
+         */
+        RESTORED,
+        /**
+         * Rebuilt because there was no snapshot
+         */
+        REBUILT_NO_SNAPSHOT,
+        /**
+         * Rebuilt because the snapshot was corrupt, of an unknown format, or could not be restored
+         */
+        REBUILT_UNREADABLE,
+        /**
+         * Rebuilt because the order file no longer starts with the bytes the snapshot was taken from
+         */
+        REBUILT_MISMATCH
+    }
+
+    /**
+     * @param outcome        how the aggregates were obtained
+     * @param snapshotOrders number of orders covered by the snapshot used, 0 if rebuilt
+     * @param appliedOrders  number of orders parsed and aggregated at startup
+     */
+    public record Recovery(Outcome outcome, long snapshotOrders, long appliedOrders) {
+    }
+
+    private record Snapshot(long sourceLength, long sourceChecksum, long orderCount, PartialAggregate aggregate) {
+    }
+
+    private PersistentOrderAnalytics(Path snapshotFile, Path orderFile) throws IOException {
+        this.snapshotFile = snapshotFile;
+        this.orderFile = orderFile;
+        Snapshot snapshot = null;
+        Outcome outcome;
+        try {
+            snapshot = read(snapshotFile);
+            outcome = restore(snapshot) ? Outcome.RESTORED : Outcome.REBUILT_MISMATCH;
+        } catch (NoSuchFileException e) {
+            outcome = Outcome.REBUILT_NO_SNAPSHOT;
+        } catch (IOException | RuntimeException e) {
+            // A corrupt snapshot, or one that passed its checksum but could not be applied
+            outcome = Outcome.REBUILT_UNREADABLE;
+        }
+        if (outcome != Outcome.RESTORED) {
+            aggregate = new PartialAggregate();
+            sourceChecksum = new CRC32C();
+            sourceLength = 0;
+        }
+        long applied = consume();
+        this.recovery = outcome == Outcome.RESTORED
+                ? new Recovery(outcome, snapshot.orderCount(), applied)
+                : new Recovery(outcome, 0, applied);
+    }
+
+    /**
+     * Restore the aggregates of the orders of a JSON Lines file from a snapshot, or rebuild them if the
+     * snapshot cannot be used
+     *
+     * @param snapshotFile the snapshot file, which need not exist
+     * @param orderFile    the order file, one order per line, only ever appended to
+     * @return analytics over the complete lines of the order file
+     * @throws IOException if the order file cannot be read or parsed
+     */
+    public static PersistentOrderAnalytics open(@NonNull Path snapshotFile, @NonNull Path orderFile) throws IOException {
+        return new PersistentOrderAnalytics(snapshotFile, orderFile);
+    }
+
+    private static Snapshot read(Path file) throws IOException {
+        var crc = new CRC32C();
+        try (var in = new DataInputStream(new CheckedInputStream(Files.newInputStream(file), crc))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an aggregate snapshot: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported aggregate snapshot version " + version + ": " + file);
+            }
+            long sourceLength = in.readLong();
+            long sourceChecksum = in.readLong();
+            long orderCount = in.readLong();
+            int payloadLength = in.readInt();
+            if (sourceLength < 0 || orderCount < 0 || payloadLength < 0) {
+                throw new IOException("Aggregate snapshot is corrupt: " + file);
+            }
+            byte[] payload = in.readNBytes(payloadLength);
+            long expected = crc.getValue();
+            if (payload.length != payloadLength || in.readLong() != expected) {
+                throw new IOException("Aggregate snapshot is corrupt: " + file);
+            }
+            var aggregate = PartialAggregate.read(new DataInputStream(new ByteArrayInputStream(payload)));
+            if (aggregate.totalOrders() != orderCount) {
+                throw new IOException("Aggregate snapshot is corrupt: " + file);
+            }
+            return new Snapshot(sourceLength, sourceChecksum, orderCount, aggregate);
+        }
+    }
+
+    /**
+     * @return true if the order file starts with the bytes the snapshot was taken from, in which case the
+     * aggregates and the source checksum are those of the snapshot
+     */
+    private boolean restore(Snapshot snapshot) throws IOException {
+        try (var channel = FileChannel.open(orderFile, StandardOpenOption.READ)) {
+            if (channel.size() < snapshot.sourceLength()) {
+                return false;
+            }
+            var crc = new CRC32C();
+            if (!update(crc, channel, 0, snapshot.sourceLength())) {
+                return false;
+            }
+            if (crc.getValue() != snapshot.sourceChecksum()) {
+                return false;
+            }
+            aggregate = snapshot.aggregate();
+            sourceChecksum = crc;
+            sourceLength = snapshot.sourceLength();
+            return true;
+        }
+    }
+
+    /**
+     * Parse and aggregate the complete lines of the order file after those already aggregated, extending
+     * the source checksum over them. Called by the constructor or with the write lock held.
+     *
+     * @return number of orders aggregated
+     */
+    private long consume() throws IOException {
+        try (var channel = FileChannel.open(orderFile, StandardOpenOption.READ)) {
+            long end = lastLineEnd(channel, sourceLength);
+            if (end == sourceLength) {
+                return 0;
+            }
+            PartialAggregate added;
+            try (var orders = reader.stream(new RangeInputStream(channel, sourceLength, end))) {
+                added = PartialAggregate.of(orders::iterator);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            // Only extend the checksum once the lines parsed, so a failed read leaves the state untouched
+            if (!update(sourceChecksum, channel, sourceLength, end)) {
+                throw new IOException("Order file shrank while being read: " + orderFile);
+            }
+            aggregate.merge(added);
+            sourceLength = end;
+            return added.totalOrders();
+        }
+    }
+
+    /**
+     * Update a checksum with a range of a file
+     *
+     * @return false if the file ends before the range does
+     */
+    private static boolean update(CRC32C crc, FileChannel channel, long from, long to) throws IOException {
+        var buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        for (long position = from; position < to; ) {
+            buffer.clear().limit((int) Math.min(BUFFER_BYTES, to - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return false;
+            }
+            position += read;
+            crc.update(buffer.flip());
+        }
+        return true;
+    }
+
+    /**
+     * @return the position after the last line feed of the file at or after a position, or the position
+     * itself if no complete line follows it
+     */
+    private static long lastLineEnd(FileChannel channel, long from) throws IOException {
+        var buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        for (long end = channel.size(); end > from; ) {
+            long start = Math.max(from, end - BUFFER_BYTES);
+            buffer.clear().limit((int) (end - start));
+            while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) >= 0) {
+                // Read the whole chunk
+            }
+            for (int i = buffer.position() - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return from;
+    }
+
+    /**
+     * Apply the orders appended to the order file since the analytics were opened or last refreshed
+     *
+     * @return number of orders applied
+     * @throws IOException if the order file cannot be read or parsed, in which case nothing is applied
+     */
+    public long refresh() throws IOException {
+        writeLock.lock();
+        try {
+            long applied = consume();
+            if (applied > 0) {
+                results = null;
+            }
+            return applied;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Write a snapshot of the current aggregates, atomically replacing the previous snapshot
+     *
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void save() throws IOException {
+        var payload = new ByteArrayOutputStream();
+        long length;
+        long checksum;
+        long orderCount;
+        writeLock.lock();
+        try {
+            aggregate.write(new DataOutputStream(payload));
+            length = sourceLength;
+            checksum = sourceChecksum.getValue();
+            orderCount = aggregate.totalOrders();
+        } finally {
+            writeLock.unlock();
+        }
+        var directory = snapshotFile.toAbsolutePath().getParent();
+        var temporary = Files.createTempFile(directory, snapshotFile.getFileName().toString(), ".tmp");
+        try {
+            var crc = new CRC32C();
+            try (var out = new DataOutputStream(new CheckedOutputStream(Files.newOutputStream(temporary), crc))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(length);
+                out.writeLong(checksum);
+                out.writeLong(orderCount);
+                out.writeInt(payload.size());
+                payload.writeTo(out);
+                out.writeLong(crc.getValue());
+            }
+            try {
+                Files.move(temporary, snapshotFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * @return how the aggregates were obtained at startup
+     */
+    public Recovery recovery() {
+        return recovery;
+    }
+
+    @Override
+    public AggregateResults analyze(@NonNull Set<Aggregate> aggregates) {
+        var current = results;
+        if (current == null) {
+            writeLock.lock();
+            try {
+                if (results == null) {
+                    results = aggregate.toResults();
+                }
+                current = results;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        return current.select(aggregates);
+    }
+
+    /**
+     * @return a sketch of the distinct countries of all orders
+     */
+    public HyperLogLog estimateDistinctCountries() {
+        writeLock.lock();
+        try {
+            return aggregate.countrySketch();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return a sketch of the distinct customer names of all orders
+     */
+    public HyperLogLog estimateDistinctCustomers() {
+        writeLock.lock();
+        try {
+            return aggregate.customerSketch();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Input stream over a range of a file channel, read with positional reads
+     */
+    private static final class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+
+        RangeInputStream(FileChannel channel, long position, long end) {
+            this.channel = channel;
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.modernjava.metrics;
+
+import lombok.NonNull;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process registry of query metrics: call counts, latency histograms, rows scanned and
+ * bytes allocated
+ * <p>
+ * Recording is lock free and allocation free: counters are {@link LongAdder}s, and latencies go into
+ * a log-linear histogram with four buckets per power of two (a relative error below 25%), from which
+ * percentiles are read. Allocated bytes are measured for the calling thread where the JVM supports it
+ * (see {@link #allocatedBytes()}); work done by other threads, such as parallel stream workers, is not
+ * included.
+ */
+public class AnalyticsMetrics {
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private static final com.sun.management.ThreadMXBean THREADS = threadMXBean();
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    /**
+     * The metrics of a query
+     *
+     * @param query          the name of the query
+     * @param count          the number of calls
+     * @param totalNanos     the total time spent in the query
+     * @param maxNanos       the longest call
+     * @param p50Nanos       the median call time, as the upper bound of its histogram bucket
+     * @param p99Nanos       the 99th percentile call time, as the upper bound of its histogram bucket
+     * @param ordersScanned  the total number of orders scanned
+     * @param itemsScanned   the total number of order items scanned
+     * @param allocatedBytes the total bytes allocated by the calling threads, 0 if not supported
+     */
+    public record QueryStats(String query, long count, long totalNanos, long maxNanos, long p50Nanos, long p99Nanos,
+                             long ordersScanned, long itemsScanned, long allocatedBytes) {
+        /**
+         * @return the mean call time, or 0 if the query was not called
+         */
+        public long meanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+    }
+
+    /**
+     * Record a call of a query
+     *
+     * @param query          the name of the query
+     * @param nanos          the duration of the call
+     * @param ordersScanned  the number of orders scanned
+     * @param itemsScanned   the number of order items scanned
+     * @param allocatedBytes the bytes allocated by the call, or a negative value if unknown
+     */
+    public void record(@NonNull String query, long nanos, long ordersScanned, long itemsScanned, long allocatedBytes) {
+        timers.computeIfAbsent(query, name -> new Timer()).record(nanos, ordersScanned, itemsScanned, allocatedBytes);
+    }
+
+    /**
+     * @param query the name of the query
+     * @return the metrics of the query, all zero if it has not been recorded
+     */
+    public QueryStats stats(@NonNull String query) {
+        var timer = timers.get(query);
+        return timer == null ? new QueryStats(query, 0, 0, 0, 0, 0, 0, 0, 0) : timer.stats(query);
+    }
+
+    /**
+     * @return the metrics of every recorded query, by name
+     */
+    public Map<String, QueryStats> snapshot() {
+        Map<String, QueryStats> snapshot = new TreeMap<>();
+        timers.forEach((query, timer) -> snapshot.put(query, timer.stats(query)));
+        return snapshot;
+    }
+
+    /**
+     * Drop all recorded metrics
+     */
+    public void reset() {
+        timers.clear();
+    }
+
+    /**
+     * @return the bytes allocated so far by the current thread, or -1 if the JVM cannot measure it
+     */
+    public static long allocatedBytes() {
+        return THREADS != null && THREADS.isThreadAllocatedMemoryEnabled()
+                ? THREADS.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        try {
+            return ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                    && threads.isThreadAllocatedMemorySupported() ? threads : null;
+        } catch (LinkageError e) {
+            // The com.sun.management extension is not available on this JVM
+            return null;
+        }
+    }
+
+    /**
+     * @return the histogram bucket of a value: the value itself below {@link #SUB_BUCKETS}, otherwise
+     * {@link #SUB_BUCKETS} buckets for each power of two
+     */
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) Math.max(value, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the largest value of a histogram bucket
+     */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        long lower = (long) (SUB_BUCKETS + (bucket - SUB_BUCKETS) % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    private static final class Timer {
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        final LongAdder ordersScanned = new LongAdder();
+        final LongAdder itemsScanned = new LongAdder();
+        final LongAdder allocatedBytes = new LongAdder();
+        final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        void record(long nanos, long orders, long items, long allocated) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            ordersScanned.add(orders);
+            itemsScanned.add(items);
+            if (allocated > 0) {
+                allocatedBytes.add(allocated);
+            }
+            histogram.incrementAndGet(bucket(nanos));
+        }
+
+        QueryStats stats(String query) {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = histogram.get(i);
+                total += counts[i];
+            }
+            long max = maxNanos.get();
+            return new QueryStats(query, count.sum(), totalNanos.sum(), max,
+                    Math.min(percentile(counts, total, 0.5), max), Math.min(percentile(counts, total, 0.99), max),
+                    ordersScanned.sum(), itemsScanned.sum(), allocatedBytes.sum());
+        }
+
+        private static long percentile(long[] counts, long total, double percentile) {
+            long rank = (long) Math.ceil(total * percentile);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return upperBound(i);
+                }
+            }
+            return 0;
+        }
+    }
+}
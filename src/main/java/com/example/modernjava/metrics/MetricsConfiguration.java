@@ -0,0 +1,17 @@
+package com.example.modernjava.metrics;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Exposes the analytics metrics registry as a Spring bean, so that instrumented analytics and
+ * anything reporting on them (e.g. an endpoint or a scheduled log) share one registry
+ */
+@Configuration(proxyBeanMethods = false)
+public class MetricsConfiguration {
+
+    @Bean
+    public AnalyticsMetrics analyticsMetrics() {
+        return new AnalyticsMetrics();
+    }
+}
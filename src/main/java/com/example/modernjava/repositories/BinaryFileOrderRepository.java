@@ -0,0 +1,61 @@
+package com.example.modernjava.repositories;
+
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.io.OrderBinaryFormat;
+import com.example.modernjava.io.OrderBinaryReader;
+import lombok.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * Repository of the orders of a binary order file (see {@link OrderBinaryFormat}), memory mapped by an
+ * {@link OrderBinaryReader}
+ * <p>
+ * Orders are rebuilt from the mapped records as they are streamed, so the heap holds only the tables of
+ * distinct customers, addresses, products and discounts, however many orders the file has. The order count
+ * is read from the footer, ranges and pages skip straight to the block holding their first order, and
+ * parallel streams split at block boundaries with exact sizes, each thread decoding its own blocks.
+ * <p>
+ * The repository should be closed when it is no longer used; streams already obtained remain valid.
+ */
+public class BinaryFileOrderRepository implements OrderRepository, Closeable {
+    private final OrderBinaryReader reader;
+
+    private BinaryFileOrderRepository(OrderBinaryReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Open a repository over a binary order file
+     *
+     * @param path the file to read
+     * @return a repository over the file, which should be closed
+     * @throws IOException if the file cannot be read or is not a complete order file
+     */
+    public static BinaryFileOrderRepository open(@NonNull Path path) throws IOException {
+        return new BinaryFileOrderRepository(OrderBinaryReader.open(path));
+    }
+
+    @Override
+    public Stream<Order> findAll() {
+        return reader.stream();
+    }
+
+    @Override
+    public Stream<Order> findRange(long offset, long limit) {
+        return reader.stream(offset, limit);
+    }
+
+    @Override
+    public long count() {
+        return reader.orderCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
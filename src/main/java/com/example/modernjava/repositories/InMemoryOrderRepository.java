@@ -0,0 +1,40 @@
+package com.example.modernjava.repositories;
+
+import com.example.modernjava.domain.Order;
+import lombok.NonNull;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Repository of orders held in an immutable list
+ * <p>
+ * The orders are copied once, unless the given list is already an immutable list, in which case it is
+ * shared. Streams split evenly by index, so parallel analysis of the orders scales with the processors.
+ */
+public class InMemoryOrderRepository implements OrderRepository {
+    private final List<Order> orders;
+
+    public InMemoryOrderRepository(@NonNull List<Order> orders) {
+        this.orders = List.copyOf(orders);
+    }
+
+    @Override
+    public Stream<Order> findAll() {
+        return orders.stream();
+    }
+
+    @Override
+    public Stream<Order> findRange(long offset, long limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Offset and limit must not be negative: " + offset + ", " + limit);
+        }
+        int from = (int) Math.min(offset, orders.size());
+        return orders.subList(from, from + (int) Math.min(limit, orders.size() - from)).stream();
+    }
+
+    @Override
+    public long count() {
+        return orders.size();
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.modernjava.repositories;
+
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.io.OrderJsonReader;
+import com.example.modernjava.io.OrderObjectMappers;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+/**
+ * Repository of the orders of a JSON file, read with an {@link OrderJsonReader} each time the orders are
+ * requested
+ * <p>
+ * Only the order being processed is held in memory, so files larger than the heap can be analyzed. The file
+ * can only be read sequentially: ranges and pages skip over the tokens of the orders before them without
+ * binding them, and so does counting the orders. The count is remembered until the modification time or the
+ * size of the file changes, so paging through an unchanged file counts it once. Parallel streams over the file split off batches of
+ * orders that have been bound sequentially, which suits analyses that cost more than binding.
+ */
+public class JsonFileOrderRepository implements OrderRepository {
+    private final Path path;
+    private final ObjectMapper objectMapper;
+    private final OrderJsonReader reader;
+    private volatile FileCount fileCount;
+
+    /**
+     * Number of orders of the file as it was when last modified at the given time with the given size
+     */
+    private record FileCount(FileTime modified, long size, long count) {
+    }
+
+    public JsonFileOrderRepository(@NonNull Path path) {
+        this(path, OrderObjectMappers.create());
+    }
+
+    public JsonFileOrderRepository(@NonNull Path path, @NonNull ObjectMapper objectMapper) {
+        this.path = path;
+        this.objectMapper = objectMapper;
+        this.reader = new OrderJsonReader(objectMapper);
+    }
+
+    @Override
+    public Stream<Order> findAll() {
+        try {
+            return reader.stream(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Stream<Order> findRange(long offset, long limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Offset and limit must not be negative: " + offset + ", " + limit);
+        }
+        try {
+            return reader.stream(path, offset).limit(limit);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public long count() {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        var cached = fileCount;
+        if (cached != null && cached.modified().equals(attributes.lastModifiedTime())
+                && cached.size() == attributes.size()) {
+            return cached.count();
+        }
+        // Keyed by the attributes read before counting, so a change while counting is seen on the next call
+        long count = countOrders();
+        fileCount = new FileCount(attributes.lastModifiedTime(), attributes.size(), count);
+        return count;
+    }
+
+    private long countOrders() {
+        try (var parser = objectMapper.getFactory().createParser(path.toFile())) {
+            var token = parser.nextToken();
+            boolean array = token == JsonToken.START_ARRAY;
+            if (token != null && !array && token != JsonToken.START_OBJECT) {
+                throw new IOException("Expected an array of orders or a sequence of orders but found " + token
+                        + " at " + parser.getCurrentLocation());
+            }
+            if (array) {
+                token = parser.nextToken();
+            }
+            long count = 0;
+            while (token != null && token != JsonToken.END_ARRAY) {
+                if (token != JsonToken.VALUE_NULL) {
+                    parser.skipChildren();
+                    count++;
+                }
+                token = parser.nextToken();
+            }
+            return count;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
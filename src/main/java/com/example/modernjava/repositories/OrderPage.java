@@ -0,0 +1,30 @@
+package com.example.modernjava.repositories;
+
+import com.example.modernjava.domain.Order;
+
+import java.util.List;
+
+/**
+ * A page of orders, as returned by {@link OrderRepository#findPage(int, int)}
+ *
+ * @param content       the orders of the page
+ * @param number        the number of the page, starting from 0
+ * @param size          the number of orders per page, which only the last page may have fewer of
+ * @param totalElements the number of orders in the repository
+ */
+public record OrderPage(List<Order> content, int number, int size, long totalElements) {
+
+    /**
+     * @return the number of pages of orders in the repository
+     */
+    public long totalPages() {
+        return (totalElements + size - 1) / size;
+    }
+
+    /**
+     * @return true if there is a page after this one
+     */
+    public boolean hasNext() {
+        return number + 1L < totalPages();
+    }
+}
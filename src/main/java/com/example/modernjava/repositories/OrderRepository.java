@@ -0,0 +1,61 @@
+package com.example.modernjava.repositories;
+
+import com.example.modernjava.domain.Order;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Source of orders, read lazily as streams rather than handed out as a collection
+ * <p>
+ * Callers consume the orders as they are produced, so an implementation backed by a file or a database need
+ * not hold all the orders in memory, and callers that need a list build it once themselves. The streams of
+ * {@link #findAll()} and {@link #findRange(long, long)} are sequential; call {@code parallel()} on them to
+ * analyze the orders in parallel, which splits the work as finely as the spliterator of the implementation
+ * allows. Streams may hold resources such as open files and should be closed, ideally using
+ * try-with-resources. Errors reading the underlying storage are thrown as {@link java.io.UncheckedIOException}.
+ */
+public interface OrderRepository {
+
+    /**
+     * @return a lazily populated stream of all the orders, in repository order
+     */
+    Stream<Order> findAll();
+
+    /**
+     * Get a range of the orders, e.g. to process the orders in chunks
+     *
+     * @param offset the index of the first order of the range
+     * @param limit  the maximum number of orders of the range
+     * @return a lazily populated stream of the orders of the range, empty if the offset is past the last order
+     */
+    default Stream<Order> findRange(long offset, long limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Offset and limit must not be negative: " + offset + ", " + limit);
+        }
+        return findAll().skip(offset).limit(limit);
+    }
+
+    /**
+     * Get a page of the orders
+     *
+     * @param number the number of the page, starting from 0
+     * @param size   the number of orders per page
+     * @return the page, with no orders if it is past the last page
+     */
+    default OrderPage findPage(int number, int size) {
+        if (number < 0 || size <= 0) {
+            throw new IllegalArgumentException("Invalid page " + number + " of size " + size);
+        }
+        List<Order> content;
+        try (var orders = findRange((long) number * size, size)) {
+            content = orders.toList();
+        }
+        return new OrderPage(content, number, size, count());
+    }
+
+    /**
+     * @return the number of orders
+     */
+    long count();
+}
@@ -0,0 +1,43 @@
+package com.example.modernjava.store;
+
+import com.example.modernjava.analytics.Aggregate;
+import com.example.modernjava.analytics.AggregateResults;
+import com.example.modernjava.analytics.OrderAnalytics;
+import lombok.NonNull;
+
+import java.util.Set;
+
+/**
+ * Order analytics over an {@link OrderColumnStore}
+ * <p>
+ * Every query is a sequential scan of the int columns of the store, grouping by dictionary ids
+ * (see {@link DictionaryAggregator}), with results identical to those of
+ * {@link com.example.modernjava.analytics.OrderAnalysisService} over the same orders.
+ */
+public class ColumnarOrderAnalysisService implements OrderAnalytics {
+    private final OrderColumnStore store;
+
+    public ColumnarOrderAnalysisService(@NonNull OrderColumnStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public AggregateResults analyze(@NonNull Set<Aggregate> aggregates) {
+        var aggregator = new DictionaryAggregator(store.dictionaries(), aggregates);
+        boolean items = aggregator.needsItems();
+        for (int order = 0, orders = store.orderCount(); order < orders; order++) {
+            aggregator.order(store.customerId(order), store.altShippingAddressId(order));
+            if (items) {
+                for (int item = store.itemStart(order), end = store.itemEnd(order); item < end; item++) {
+                    aggregator.item(store.productId(item), store.quantity(item), store.discountId(item));
+                }
+            }
+        }
+        return aggregator.results();
+    }
+
+    @Override
+    public long totalOrders() {
+        return store.orderCount();
+    }
+}
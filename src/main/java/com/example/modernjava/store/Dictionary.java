@@ -0,0 +1,76 @@
+package com.example.modernjava.store;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary encoding of values to dense int ids, in order of first appearance
+ * <p>
+ * Values are compared using equals/hashCode, so equal values share an id no matter
+ * how many times they are encoded. Null is never stored and is always encoded as {@link #NULL_ID}.
+ *
+ * @param <T> the type of the encoded values
+ */
+public final class Dictionary<T> {
+    /**
+     * The id used for null values
+     */
+    public static final int NULL_ID = -1;
+
+    private final Map<T, Integer> ids = new HashMap<>();
+    private final List<T> values = new ArrayList<>();
+
+    /**
+     * Get the id of a value, assigning the next id if the value was not seen before
+     *
+     * @param value the value to encode, may be null
+     * @return the id of the value
+     */
+    public int encode(T value) {
+        if (value == null) {
+            return NULL_ID;
+        }
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = values.size();
+            ids.put(value, id);
+            values.add(value);
+        }
+        return id;
+    }
+
+    /**
+     * Get the id of a value without assigning a new one
+     *
+     * @param value the value to look up
+     * @return the id of the value, or {@link #NULL_ID} if the value is null or not in the dictionary
+     */
+    public int idOf(T value) {
+        return value == null ? NULL_ID : ids.getOrDefault(value, NULL_ID);
+    }
+
+    /**
+     * @param id the id to decode
+     * @return the value with the given id, or null for {@link #NULL_ID}
+     */
+    public T decode(int id) {
+        return id == NULL_ID ? null : values.get(id);
+    }
+
+    /**
+     * @return number of distinct values in the dictionary
+     */
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * @return the values of the dictionary, indexed by id
+     */
+    public List<T> values() {
+        return Collections.unmodifiableList(values);
+    }
+}
@@ -0,0 +1,354 @@
+package com.example.modernjava.store;
+
+import com.example.modernjava.analytics.Aggregate;
+import com.example.modernjava.analytics.AggregateResults;
+import com.example.modernjava.analytics.RevenueAccumulator;
+import com.example.modernjava.analytics.primitive.LongLongHashMap;
+import com.example.modernjava.domain.Product;
+import lombok.NonNull;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static com.example.modernjava.store.Dictionary.NULL_ID;
+
+/**
+ * Computes {@link Aggregate}s from dictionary encoded orders
+ * <p>
+ * This is the dictionary id counterpart of {@link com.example.modernjava.analytics.OrderAggregator}:
+ * scans call {@link #order(int, int)} for every order followed by {@link #item(int, int, int)} (or
+ * {@link #scaledItem(int, int, long)} when the scan already has the line revenue) for each of its
+ * items, and the aggregator groups by dense ids into arrays indexed by customer name, country or
+ * product name id. The two-level groupings are sparse: each (customer or country, product) pair that
+ * occurs is keyed by the two ids packed into a long in a {@link LongLongHashMap}, so their memory grows
+ * with the pairs present rather than with customers times products. Strings are only decoded once, when
+ * the results are built, and the results are identical to those of
+ * {@link com.example.modernjava.analytics.OrderAnalysisService}.
+ * <p>
+ * The dictionaries must not grow while an aggregator is in use. Instances are not thread safe.
+ */
+public final class DictionaryAggregator {
+    private final OrderDictionaries dictionaries;
+    private final Set<Aggregate> aggregates;
+    private final BigDecimal[] prices;
+    private final BigDecimal[] discounts;
+
+    private long totalOrders;
+    private long itemsScanned;
+    private long totalUnitsSold;
+    private final int[] unitsByProduct;
+    private final boolean[] productSeen;
+    private final boolean[] customerGroups;
+    private final boolean[] countryGroups;
+    private final LongLongHashMap unitsByCustomerByProduct;
+    private final LongLongHashMap unitsByCountryByProduct;
+    private final RevenueAccumulator totalRevenue = new RevenueAccumulator();
+    private final RevenueAccumulator[] revenueByProduct;
+    private final RevenueAccumulator[] revenueByCustomer;
+    private final PairRevenue revenueByCustomerByProduct;
+    private final RevenueAccumulator[] revenueByCountry;
+    private final PairRevenue revenueByCountryByProduct;
+    private final boolean[] countrySeen;
+    private boolean nullCountrySeen;
+    private final List<String> distinctCountries = new ArrayList<>();
+    private final boolean[] customerSeen;
+    private final IntArray distinctCustomerIds = new IntArray();
+    private final boolean revenue;
+    private final boolean items;
+
+    // State of the current order
+    private int customerNameId;
+    private int countryId;
+
+    public DictionaryAggregator(@NonNull OrderDictionaries dictionaries, @NonNull Set<Aggregate> aggregates) {
+        this.dictionaries = dictionaries;
+        this.aggregates = aggregates.isEmpty() ? EnumSet.noneOf(Aggregate.class) : EnumSet.copyOf(aggregates);
+        this.prices = dictionaries.products().values().stream().map(Product::getPrice).toArray(BigDecimal[]::new);
+        this.discounts = dictionaries.discounts().values().toArray(BigDecimal[]::new);
+        int products = dictionaries.productNames().size();
+        int customers = dictionaries.customerNames().size();
+        int countries = dictionaries.countries().size();
+        this.unitsByProduct = requested(Aggregate.UNITS_SOLD_BY_PRODUCT) ? new int[products] : null;
+        this.productSeen = requested(Aggregate.UNITS_SOLD_BY_PRODUCT) ? new boolean[products] : null;
+        this.unitsByCustomerByProduct = requested(Aggregate.UNITS_SOLD_BY_CUSTOMER_BY_PRODUCT) ? new LongLongHashMap() : null;
+        this.unitsByCountryByProduct = requested(Aggregate.UNITS_SOLD_BY_COUNTRY_BY_PRODUCT) ? new LongLongHashMap() : null;
+        this.revenueByProduct = requested(Aggregate.REVENUE_BY_PRODUCT) ? new RevenueAccumulator[products] : null;
+        this.revenueByCustomer = requested(Aggregate.REVENUE_BY_CUSTOMER) ? new RevenueAccumulator[customers] : null;
+        this.revenueByCustomerByProduct = requested(Aggregate.REVENUE_BY_CUSTOMER_BY_PRODUCT) ? new PairRevenue() : null;
+        this.revenueByCountry = requested(Aggregate.REVENUE_BY_COUNTRY) ? new RevenueAccumulator[countries] : null;
+        this.revenueByCountryByProduct = requested(Aggregate.REVENUE_BY_COUNTRY_BY_PRODUCT) ? new PairRevenue() : null;
+        this.customerGroups = unitsByCustomerByProduct != null || revenueByCustomerByProduct != null
+                ? new boolean[customers] : null;
+        this.countryGroups = unitsByCountryByProduct != null || revenueByCountryByProduct != null
+                ? new boolean[countries] : null;
+        this.countrySeen = requested(Aggregate.DISTINCT_COUNTRIES) ? new boolean[countries] : null;
+        this.customerSeen = requested(Aggregate.DISTINCT_CUSTOMERS) ? new boolean[dictionaries.customers().size()] : null;
+        this.revenue = requested(Aggregate.TOTAL_REVENUE);
+        this.items = this.aggregates.stream().anyMatch(Aggregate::needsItems);
+    }
+
+    private boolean requested(Aggregate aggregate) {
+        return aggregates.contains(aggregate);
+    }
+
+    /**
+     * @return true if any of the requested aggregates needs the order items, so scans
+     * that only need order level aggregates can skip calling {@link #item(int, int, int)}
+     */
+    public boolean needsItems() {
+        return items;
+    }
+
+    /**
+     * Start a new order; the items that follow belong to this order
+     *
+     * @param customerId           the customer id of the order
+     * @param altShippingAddressId the address id of the order's alternate shipping address
+     */
+    public void order(int customerId, int altShippingAddressId) {
+        totalOrders++;
+        if (countrySeen != null) {
+            addCountry(altShippingAddressId);
+            addCountry(dictionaries.customerBillingAddressId(customerId));
+            addCountry(dictionaries.customerShippingAddressId(customerId));
+        }
+        if (customerSeen != null && !customerSeen[customerId]) {
+            customerSeen[customerId] = true;
+            distinctCustomerIds.add(customerId);
+        }
+        if (!items) {
+            return;
+        }
+        customerNameId = dictionaries.customerNameId(customerId);
+        countryId = dictionaries.customerBillingCountryId(customerId);
+        // Grouping by the order's customer or country creates a group even when the order has no items
+        if (customerGroups != null) {
+            customerGroups[customerNameId] = true;
+        }
+        if (countryGroups != null) {
+            countryGroups[countryId] = true;
+        }
+        if (revenueByCustomer != null && revenueByCustomer[customerNameId] == null) {
+            revenueByCustomer[customerNameId] = new RevenueAccumulator();
+        }
+        if (revenueByCountry != null && revenueByCountry[countryId] == null) {
+            revenueByCountry[countryId] = new RevenueAccumulator();
+        }
+    }
+
+    private void addCountry(int addressId) {
+        if (addressId == NULL_ID) {
+            return;
+        }
+        int id = dictionaries.addressCountryId(addressId);
+        if (id == NULL_ID) {
+            if (!nullCountrySeen) {
+                nullCountrySeen = true;
+                distinctCountries.add(null);
+            }
+        } else if (!countrySeen[id]) {
+            countrySeen[id] = true;
+            distinctCountries.add(dictionaries.countries().decode(id));
+        }
+    }
+
+    /**
+     * Add an item of the current order
+     *
+     * @param productId  the product id of the item
+     * @param quantity   the quantity of the item
+     * @param discountId the discount id of the item
+     */
+    public void item(int productId, int quantity, int discountId) {
+        itemsScanned++;
+        int productNameId = dictionaries.productNameId(productId);
+        addUnits(productNameId, quantity);
+        BigDecimal price = prices[productId];
+        BigDecimal discount = discountId == NULL_ID ? null : discounts[discountId];
+        if (revenue) {
+            totalRevenue.add(quantity, price, discount);
+        }
+        if (revenueByProduct != null) {
+            accumulator(revenueByProduct, productNameId).add(quantity, price, discount);
+        }
+        if (revenueByCustomer != null) {
+            revenueByCustomer[customerNameId].add(quantity, price, discount);
+        }
+        if (revenueByCustomerByProduct != null) {
+            revenueByCustomerByProduct.accumulator(customerNameId, productNameId).add(quantity, price, discount);
+        }
+        if (revenueByCountry != null) {
+            revenueByCountry[countryId].add(quantity, price, discount);
+        }
+        if (revenueByCountryByProduct != null) {
+            revenueByCountryByProduct.accumulator(countryId, productNameId).add(quantity, price, discount);
+        }
+    }
+
+    /**
+     * Add an item of the current order whose revenue has already been computed, so each group
+     * adds a long instead of multiplying the price and discount again
+     *
+     * @param productId     the product id of the item
+     * @param quantity      the quantity of the item
+     * @param scaledRevenue the revenue of the item in units of 10^-{@value RevenueAccumulator#SCALE}
+     */
+    public void scaledItem(int productId, int quantity, long scaledRevenue) {
+        itemsScanned++;
+        int productNameId = dictionaries.productNameId(productId);
+        addUnits(productNameId, quantity);
+        if (revenue) {
+            totalRevenue.addScaled(scaledRevenue);
+        }
+        if (revenueByProduct != null) {
+            accumulator(revenueByProduct, productNameId).addScaled(scaledRevenue);
+        }
+        if (revenueByCustomer != null) {
+            revenueByCustomer[customerNameId].addScaled(scaledRevenue);
+        }
+        if (revenueByCustomerByProduct != null) {
+            revenueByCustomerByProduct.accumulator(customerNameId, productNameId).addScaled(scaledRevenue);
+        }
+        if (revenueByCountry != null) {
+            revenueByCountry[countryId].addScaled(scaledRevenue);
+        }
+        if (revenueByCountryByProduct != null) {
+            revenueByCountryByProduct.accumulator(countryId, productNameId).addScaled(scaledRevenue);
+        }
+    }
+
+    private void addUnits(int productNameId, int quantity) {
+        totalUnitsSold += quantity;
+        if (unitsByProduct != null) {
+            unitsByProduct[productNameId] += quantity;
+            productSeen[productNameId] = true;
+        }
+        if (unitsByCustomerByProduct != null) {
+            unitsByCustomerByProduct.addTo(pack(customerNameId, productNameId), quantity);
+        }
+        if (unitsByCountryByProduct != null) {
+            unitsByCountryByProduct.addTo(pack(countryId, productNameId), quantity);
+        }
+    }
+
+    private static long pack(int groupId, int productNameId) {
+        return (long) groupId << 32 | productNameId & 0xFFFF_FFFFL;
+    }
+
+    private static RevenueAccumulator accumulator(RevenueAccumulator[] accumulators, int id) {
+        if (accumulators[id] == null) {
+            accumulators[id] = new RevenueAccumulator();
+        }
+        return accumulators[id];
+    }
+
+    /**
+     * @return the requested aggregates computed from the orders seen so far
+     */
+    public AggregateResults results() {
+        Map<Aggregate, Object> values = new EnumMap<>(Aggregate.class);
+        var productNames = dictionaries.productNames();
+        var customerNames = dictionaries.customerNames();
+        var countries = dictionaries.countries();
+        for (Aggregate aggregate : aggregates) {
+            values.put(aggregate, switch (aggregate) {
+                case TOTAL_ORDERS -> totalOrders;
+                case TOTAL_UNITS_SOLD -> totalUnitsSold;
+                case UNITS_SOLD_BY_PRODUCT -> units(unitsByProduct, productSeen, productNames);
+                case UNITS_SOLD_BY_CUSTOMER_BY_PRODUCT ->
+                        nestedUnits(unitsByCustomerByProduct, customerGroups, customerNames, productNames);
+                case UNITS_SOLD_BY_COUNTRY_BY_PRODUCT ->
+                        nestedUnits(unitsByCountryByProduct, countryGroups, countries, productNames);
+                case TOTAL_REVENUE -> totalRevenue.total();
+                case REVENUE_BY_PRODUCT -> revenueTotals(revenueByProduct, productNames);
+                case REVENUE_BY_CUSTOMER -> revenueTotals(revenueByCustomer, customerNames);
+                case REVENUE_BY_CUSTOMER_BY_PRODUCT ->
+                        nestedRevenue(revenueByCustomerByProduct, customerGroups, customerNames, productNames);
+                case REVENUE_BY_COUNTRY -> revenueTotals(revenueByCountry, countries);
+                case REVENUE_BY_COUNTRY_BY_PRODUCT ->
+                        nestedRevenue(revenueByCountryByProduct, countryGroups, countries, productNames);
+                case DISTINCT_COUNTRIES -> distinctCountries.stream().toList();
+                case DISTINCT_CUSTOMERS -> IntStream.range(0, distinctCustomerIds.size())
+                        .mapToObj(i -> dictionaries.customers().decode(distinctCustomerIds.get(i))).toList();
+            });
+        }
+        return new AggregateResults(values, totalOrders, itemsScanned);
+    }
+
+    private static Map<String, Integer> units(int[] units, boolean[] seen, Dictionary<String> keys) {
+        Map<String, Integer> result = new HashMap<>();
+        for (int id = 0; id < units.length; id++) {
+            if (seen[id]) {
+                result.put(keys.decode(id), units[id]);
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, Map<String, Integer>> nestedUnits(LongLongHashMap units, boolean[] groups,
+                                                                 Dictionary<String> keys, Dictionary<String> products) {
+        Map<String, Map<String, Integer>> result = groups(groups, keys);
+        units.forEach((pair, value) -> result.get(keys.decode((int) (pair >>> 32)))
+                .put(products.decode((int) pair), (int) value));
+        return result;
+    }
+
+    /**
+     * @return an empty inner map per group with an order, as grouping by the order's group creates it
+     * even when the order has no items
+     */
+    private static <V> Map<String, Map<String, V>> groups(boolean[] groups, Dictionary<String> keys) {
+        Map<String, Map<String, V>> result = new HashMap<>();
+        for (int id = 0; id < groups.length; id++) {
+            if (groups[id]) {
+                result.put(keys.decode(id), new HashMap<>());
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, BigDecimal> revenueTotals(RevenueAccumulator[] revenue, Dictionary<String> keys) {
+        Map<String, BigDecimal> result = new HashMap<>();
+        for (int id = 0; id < revenue.length; id++) {
+            if (revenue[id] != null) {
+                result.put(keys.decode(id), revenue[id].total());
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, Map<String, BigDecimal>> nestedRevenue(PairRevenue revenue, boolean[] groups,
+                                                                      Dictionary<String> keys,
+                                                                      Dictionary<String> products) {
+        Map<String, Map<String, BigDecimal>> result = groups(groups, keys);
+        revenue.ids.forEach((pair, index) -> result.get(keys.decode((int) (pair >>> 32)))
+                .put(products.decode((int) pair), revenue.accumulators.get((int) index).total()));
+        return result;
+    }
+
+    /**
+     * Revenue accumulators of the (group, product) pairs that occur, indexed by their packed ids
+     */
+    private static final class PairRevenue {
+        private final LongLongHashMap ids = new LongLongHashMap();
+        private final List<RevenueAccumulator> accumulators = new ArrayList<>();
+
+        RevenueAccumulator accumulator(int groupId, int productNameId) {
+            long pair = pack(groupId, productNameId);
+            int index = (int) ids.getOrDefault(pair, -1);
+            if (index < 0) {
+                index = accumulators.size();
+                ids.put(pair, index);
+                accumulators.add(new RevenueAccumulator());
+            }
+            return accumulators.get(index);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.modernjava.store;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Minimal growable sequence of fixed-width records held outside the Java heap
+ * <p>
+ * Records live in direct byte buffers of {@link #CHUNK_RECORDS} records each, so the sequence grows
+ * without copying and a single buffer never approaches the 2 GB limit of a ByteBuffer. Fields are read
+ * and written with absolute, native byte order accesses at a byte offset within the record.
+ */
+final class DirectRecords {
+    static final int CHUNK_SHIFT = 16;
+    static final int CHUNK_RECORDS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_RECORDS - 1;
+
+    private final int recordSize;
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+    private int size;
+
+    DirectRecords(int recordSize) {
+        this.recordSize = recordSize;
+    }
+
+    /**
+     * Append a record with all fields zero
+     *
+     * @return the index of the record
+     */
+    int add() {
+        if (size == chunks.length * CHUNK_RECORDS) {
+            chunks = Arrays.copyOf(chunks, chunks.length + 1);
+            chunks[chunks.length - 1] = ByteBuffer.allocateDirect(CHUNK_RECORDS * recordSize)
+                    .order(ByteOrder.nativeOrder());
+        }
+        return size++;
+    }
+
+    int getInt(int index, int field) {
+        return chunks[index >>> CHUNK_SHIFT].getInt((index & CHUNK_MASK) * recordSize + field);
+    }
+
+    void putInt(int index, int field, int value) {
+        chunks[index >>> CHUNK_SHIFT].putInt((index & CHUNK_MASK) * recordSize + field, value);
+    }
+
+    long getLong(int index, int field) {
+        return chunks[index >>> CHUNK_SHIFT].getLong((index & CHUNK_MASK) * recordSize + field);
+    }
+
+    void putLong(int index, int field, long value) {
+        chunks[index >>> CHUNK_SHIFT].putLong((index & CHUNK_MASK) * recordSize + field, value);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return number of bytes allocated outside the heap
+     */
+    long capacityBytes() {
+        return (long) chunks.length * CHUNK_RECORDS * recordSize;
+    }
+}
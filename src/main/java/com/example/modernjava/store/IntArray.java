@@ -0,0 +1,38 @@
+package com.example.modernjava.store;
+
+import java.util.Arrays;
+
+/**
+ * Minimal growable int array used to build columns without boxing
+ */
+final class IntArray {
+    private int[] values;
+    private int size;
+
+    IntArray() {
+        this(16);
+    }
+
+    IntArray(int initialCapacity) {
+        values = new int[Math.max(initialCapacity, 1)];
+    }
+
+    void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[size++] = value;
+    }
+
+    int get(int index) {
+        return values[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
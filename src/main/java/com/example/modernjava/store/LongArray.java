@@ -0,0 +1,38 @@
+package com.example.modernjava.store;
+
+import java.util.Arrays;
+
+/**
+ * Minimal growable long array used to build columns without boxing
+ */
+final class LongArray {
+    private long[] values;
+    private int size;
+
+    LongArray() {
+        this(16);
+    }
+
+    LongArray(int initialCapacity) {
+        values = new long[Math.max(initialCapacity, 1)];
+    }
+
+    void add(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[size++] = value;
+    }
+
+    long get(int index) {
+        return values[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    long[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
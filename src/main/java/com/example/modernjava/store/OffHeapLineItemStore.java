@@ -0,0 +1,273 @@
+package com.example.modernjava.store;
+
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.OrderItem;
+import lombok.NonNull;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import static com.example.modernjava.store.Dictionary.NULL_ID;
+
+/**
+ * Order line items held in fixed-width records outside the Java heap
+ * <p>
+ * Each line item is a 32 byte record in direct byte buffers (see {@link DirectRecords}) holding its
+ * quantity, product id, the ids of its order's customer name and billing country, its price in cents
+ * and its discount in basis points, together with the discount id. Each order is a 12 byte record of its
+ * customer id, alternate shipping address id and the position following its last item. Only the
+ * dictionaries (see {@link OrderDictionaries}), which hold each distinct value once, stay on the heap,
+ * so however many items the store holds the garbage collector neither traces nor copies them, and scans
+ * read primitive fields without creating an object per item.
+ * <p>
+ * Prices with more than 2 decimal places, discounts with more than 4, and values too large for their
+ * field are not representable in fixed point; their records hold {@link #NOT_FIXED_POINT} as the price,
+ * and their revenue has to be computed from the dictionaries by product and discount id.
+ * <p>
+ * The items of order {@code i} are the item positions from {@link #itemStart(int)} (inclusive) to
+ * {@link #itemEnd(int)} (exclusive). Stores are immutable once built; their memory is released when
+ * the store is garbage collected.
+ */
+public final class OffHeapLineItemStore {
+    /**
+     * Number of decimal places of the fixed point price
+     */
+    public static final int PRICE_SCALE = 2;
+    /**
+     * Number of decimal places of the fixed point discount
+     */
+    public static final int DISCOUNT_SCALE = 4;
+    /**
+     * Price of a record whose price or discount is not representable in fixed point
+     */
+    public static final long NOT_FIXED_POINT = Long.MIN_VALUE;
+
+    static final int ITEM_RECORD_SIZE = 32;
+    private static final int QUANTITY = 0;
+    private static final int PRODUCT_ID = 4;
+    private static final int CUSTOMER_NAME_ID = 8;
+    private static final int COUNTRY_ID = 12;
+    private static final int PRICE = 16;
+    private static final int DISCOUNT = 24;
+    private static final int DISCOUNT_ID = 28;
+
+    static final int ORDER_RECORD_SIZE = 12;
+    private static final int CUSTOMER_ID = 0;
+    private static final int ALT_SHIPPING_ADDRESS_ID = 4;
+    private static final int ITEM_END = 8;
+
+    private final OrderDictionaries dictionaries;
+    private final DirectRecords orders;
+    private final DirectRecords items;
+
+    private OffHeapLineItemStore(Builder builder) {
+        this.dictionaries = builder.dictionaries;
+        this.orders = builder.orders;
+        this.items = builder.items;
+    }
+
+    /**
+     * Build an off-heap store holding the given orders
+     *
+     * @param orders the orders
+     * @return an off-heap store holding the orders
+     */
+    public static OffHeapLineItemStore of(@NonNull Iterable<Order> orders) {
+        return builder().addAll(orders).build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public OrderDictionaries dictionaries() {
+        return dictionaries;
+    }
+
+    /**
+     * @return number of orders in the store
+     */
+    public int orderCount() {
+        return orders.size();
+    }
+
+    /**
+     * @return number of line items in the store
+     */
+    public int itemCount() {
+        return items.size();
+    }
+
+    /**
+     * @return number of bytes allocated outside the heap for the order and item records
+     */
+    public long offHeapBytes() {
+        return orders.capacityBytes() + items.capacityBytes();
+    }
+
+    /**
+     * @param order the position of an order
+     * @return the customer id of the order
+     */
+    public int customerId(int order) {
+        return orders.getInt(order, CUSTOMER_ID);
+    }
+
+    /**
+     * @param order the position of an order
+     * @return the address id of the order's alternate shipping address, or {@link Dictionary#NULL_ID}
+     */
+    public int altShippingAddressId(int order) {
+        return orders.getInt(order, ALT_SHIPPING_ADDRESS_ID);
+    }
+
+    /**
+     * @param order the position of an order
+     * @return the position of the first item of the order
+     */
+    public int itemStart(int order) {
+        return order == 0 ? 0 : orders.getInt(order - 1, ITEM_END);
+    }
+
+    /**
+     * @param order the position of an order
+     * @return the position following the last item of the order
+     */
+    public int itemEnd(int order) {
+        return orders.getInt(order, ITEM_END);
+    }
+
+    /**
+     * @param item the position of a line item
+     * @return the quantity of the item
+     */
+    public int quantity(int item) {
+        return items.getInt(item, QUANTITY);
+    }
+
+    /**
+     * @param item the position of a line item
+     * @return the product id of the item
+     */
+    public int productId(int item) {
+        return items.getInt(item, PRODUCT_ID);
+    }
+
+    /**
+     * @param item the position of a line item
+     * @return the id of the name of the order's customer in {@link OrderDictionaries#customerNames()}
+     */
+    public int customerNameId(int item) {
+        return items.getInt(item, CUSTOMER_NAME_ID);
+    }
+
+    /**
+     * @param item the position of a line item
+     * @return the id of the postal country of the customer's billing address in
+     * {@link OrderDictionaries#countries()}, or {@link Dictionary#NULL_ID}
+     */
+    public int countryId(int item) {
+        return items.getInt(item, COUNTRY_ID);
+    }
+
+    /**
+     * @param item the position of a line item
+     * @return the unit price in units of 10^-{@value #PRICE_SCALE}, or {@link #NOT_FIXED_POINT}
+     */
+    public long price(int item) {
+        return items.getLong(item, PRICE);
+    }
+
+    /**
+     * @param item the position of a line item
+     * @return the discount in units of 10^-{@value #DISCOUNT_SCALE}, 0 for no discount; only meaningful
+     * when the price is not {@link #NOT_FIXED_POINT}
+     */
+    public int discount(int item) {
+        return items.getInt(item, DISCOUNT);
+    }
+
+    /**
+     * @param item the position of a line item
+     * @return the discount id of the item, or {@link Dictionary#NULL_ID}
+     */
+    public int discountId(int item) {
+        return items.getInt(item, DISCOUNT_ID);
+    }
+
+    /**
+     * Builder that encodes orders into off-heap records one at a time, so a store can be
+     * filled from any source of orders without first collecting them into a list
+     */
+    public static final class Builder {
+        private final OrderDictionaries dictionaries = new OrderDictionaries();
+        private final DirectRecords orders = new DirectRecords(ORDER_RECORD_SIZE);
+        private final DirectRecords items = new DirectRecords(ITEM_RECORD_SIZE);
+        private boolean built;
+
+        private Builder() {
+        }
+
+        /**
+         * @param order the order to add
+         * @return this builder
+         */
+        public Builder add(@NonNull Order order) {
+            if (built) {
+                throw new IllegalStateException("Orders cannot be added once the store is built");
+            }
+            int customerId = dictionaries.encodeCustomer(order.getCustomer());
+            int customerNameId = customerId == NULL_ID ? NULL_ID : dictionaries.customerNameId(customerId);
+            int countryId = customerId == NULL_ID ? NULL_ID : dictionaries.customerBillingCountryId(customerId);
+            if (order.getItems() != null) {
+                for (OrderItem item : order.getItems()) {
+                    int index = items.add();
+                    items.putInt(index, QUANTITY, item.getQuantity());
+                    items.putInt(index, PRODUCT_ID, dictionaries.encodeProduct(item.getProduct()));
+                    items.putInt(index, CUSTOMER_NAME_ID, customerNameId);
+                    items.putInt(index, COUNTRY_ID, countryId);
+                    items.putInt(index, DISCOUNT_ID, dictionaries.encodeDiscount(item.getDiscount()));
+                    long price = fixedPoint(item.getProduct().getPrice(), PRICE_SCALE, Long.MAX_VALUE);
+                    long discount = item.getDiscount() == null ? 0
+                            : fixedPoint(item.getDiscount(), DISCOUNT_SCALE, Integer.MAX_VALUE);
+                    items.putLong(index, PRICE, discount == NOT_FIXED_POINT ? NOT_FIXED_POINT : price);
+                    items.putInt(index, DISCOUNT, discount == NOT_FIXED_POINT ? 0 : (int) discount);
+                }
+            }
+            int index = orders.add();
+            orders.putInt(index, CUSTOMER_ID, customerId);
+            orders.putInt(index, ALT_SHIPPING_ADDRESS_ID, dictionaries.encodeAddress(order.getAltShippingAddress()));
+            orders.putInt(index, ITEM_END, items.size());
+            return this;
+        }
+
+        private static long fixedPoint(BigDecimal value, int scale, long max) {
+            try {
+                long unscaled = value.setScale(scale, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+                return unscaled > -max && unscaled <= max ? unscaled : NOT_FIXED_POINT;
+            } catch (ArithmeticException e) {
+                return NOT_FIXED_POINT;
+            }
+        }
+
+        /**
+         * @param orders the orders to add
+         * @return this builder
+         */
+        public Builder addAll(@NonNull Iterable<Order> orders) {
+            orders.forEach(this::add);
+            return this;
+        }
+
+        /**
+         * Build the store. The builder cannot be used to add orders afterwards, since the
+         * store shares its dictionaries and records.
+         *
+         * @return the off-heap store
+         */
+        public OffHeapLineItemStore build() {
+            built = true;
+            return new OffHeapLineItemStore(this);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.modernjava.store;
+
+import com.example.modernjava.analytics.Aggregate;
+import com.example.modernjava.analytics.AggregateResults;
+import com.example.modernjava.analytics.OrderAnalytics;
+import com.example.modernjava.analytics.RevenueAccumulator;
+import com.example.modernjava.domain.Product;
+import lombok.NonNull;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static com.example.modernjava.store.Dictionary.NULL_ID;
+import static com.example.modernjava.store.OffHeapLineItemStore.NOT_FIXED_POINT;
+
+/**
+ * Order analytics over an {@link OffHeapLineItemStore}
+ * <p>
+ * Queries scan the off-heap records, reading primitive fields and grouping by dictionary ids
+ * (see {@link DictionaryAggregator}), so no object is created per order or item. The revenue of a line
+ * is computed once, exactly, as quantity * cents * (10^4 - basis points), which is in units of
+ * 10^-{@value RevenueAccumulator#SCALE}; lines not representable in fixed point, or whose revenue
+ * overflows a long, are computed from the dictionaries instead. Results are identical to those of
+ * {@link com.example.modernjava.analytics.OrderAnalysisService} over the same orders.
+ * <p>
+ * Order level totals and the filtered queries only read the item records, which carry the ids of their
+ * order's customer name and country for that purpose.
+ */
+public class OffHeapOrderAnalysisService implements OrderAnalytics {
+    // One in units of 10^-DISCOUNT_SCALE, so quantity * cents * (ONE - discount) has SCALE decimal places
+    private static final long ONE = 10_000L;
+
+    private final OffHeapLineItemStore store;
+    private final BigDecimal[] prices;
+    private final BigDecimal[] discounts;
+
+    public OffHeapOrderAnalysisService(@NonNull OffHeapLineItemStore store) {
+        this.store = store;
+        this.prices = store.dictionaries().products().values().stream()
+                .map(Product::getPrice).toArray(BigDecimal[]::new);
+        this.discounts = store.dictionaries().discounts().values().toArray(BigDecimal[]::new);
+    }
+
+    @Override
+    public AggregateResults analyze(@NonNull Set<Aggregate> aggregates) {
+        var aggregator = new DictionaryAggregator(store.dictionaries(), aggregates);
+        boolean items = aggregator.needsItems();
+        for (int order = 0, orders = store.orderCount(); order < orders; order++) {
+            aggregator.order(store.customerId(order), store.altShippingAddressId(order));
+            if (items) {
+                for (int item = store.itemStart(order), end = store.itemEnd(order); item < end; item++) {
+                    long revenue = scaledRevenue(item);
+                    if (revenue == NOT_FIXED_POINT) {
+                        aggregator.item(store.productId(item), store.quantity(item), store.discountId(item));
+                    } else {
+                        aggregator.scaledItem(store.productId(item), store.quantity(item), revenue);
+                    }
+                }
+            }
+        }
+        return aggregator.results();
+    }
+
+    /**
+     * @return the revenue of the item in units of 10^-{@value RevenueAccumulator#SCALE}, or
+     * {@link OffHeapLineItemStore#NOT_FIXED_POINT} if it has to be computed from the dictionaries
+     */
+    private long scaledRevenue(int item) {
+        long price = store.price(item);
+        if (price == NOT_FIXED_POINT) {
+            return NOT_FIXED_POINT;
+        }
+        try {
+            long revenue = Math.multiplyExact(Math.multiplyExact((long) store.quantity(item), price),
+                    ONE - store.discount(item));
+            return revenue == NOT_FIXED_POINT ? NOT_FIXED_POINT : revenue;
+        } catch (ArithmeticException e) {
+            return NOT_FIXED_POINT;
+        }
+    }
+
+    private void addRevenue(RevenueAccumulator accumulator, int item) {
+        long revenue = scaledRevenue(item);
+        if (revenue == NOT_FIXED_POINT) {
+            int discountId = store.discountId(item);
+            accumulator.add(store.quantity(item), prices[store.productId(item)],
+                    discountId == NULL_ID ? null : discounts[discountId]);
+        } else {
+            accumulator.addScaled(revenue);
+        }
+    }
+
+    @Override
+    public long totalOrders() {
+        return store.orderCount();
+    }
+
+    @Override
+    public long totalUnitsSold() {
+        long units = 0;
+        for (int item = 0, items = store.itemCount(); item < items; item++) {
+            units += store.quantity(item);
+        }
+        return units;
+    }
+
+    @Override
+    public BigDecimal totalRevenue() {
+        var revenue = new RevenueAccumulator();
+        for (int item = 0, items = store.itemCount(); item < items; item++) {
+            addRevenue(revenue, item);
+        }
+        return revenue.total();
+    }
+
+    /**
+     * Get the total revenue of a customer, customer represented by name
+     *
+     * @param customerName the name of the customer
+     * @return total revenue of the customer, zero for an unknown customer
+     */
+    public BigDecimal totalRevenueForCustomer(String customerName) {
+        var revenue = new RevenueAccumulator();
+        int customerNameId = store.dictionaries().customerNames().idOf(customerName);
+        if (customerNameId != NULL_ID) {
+            for (int item = 0, items = store.itemCount(); item < items; item++) {
+                if (store.customerNameId(item) == customerNameId) {
+                    addRevenue(revenue, item);
+                }
+            }
+        }
+        return revenue.total();
+    }
+
+    /**
+     * Get the total number of units sold in a country, grouped by product, country being the postal
+     * country of the customer's billing address
+     *
+     * @param country the postal country
+     * @return total number of units sold in the country, grouped by product
+     */
+    public Map<String, Integer> totalUnitsSoldByProduct(String country) {
+        var dictionaries = store.dictionaries();
+        int countryId = dictionaries.countries().idOf(country);
+        int[] units = new int[dictionaries.productNames().size()];
+        boolean[] seen = new boolean[units.length];
+        if (countryId != NULL_ID || country == null) {
+            for (int item = 0, items = store.itemCount(); item < items; item++) {
+                if (store.countryId(item) == countryId) {
+                    int productNameId = dictionaries.productNameId(store.productId(item));
+                    units[productNameId] += store.quantity(item);
+                    seen[productNameId] = true;
+                }
+            }
+        }
+        Map<String, Integer> result = new HashMap<>();
+        for (int id = 0; id < units.length; id++) {
+            if (seen[id]) {
+                result.put(dictionaries.productNames().decode(id), units[id]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the total revenue in a country for each product, country being the postal country of the
+     * customer's billing address
+     *
+     * @param country the postal country
+     * @return total revenue in the country for each product
+     */
+    public Map<String, BigDecimal> totalRevenueByProduct(String country) {
+        var dictionaries = store.dictionaries();
+        int countryId = dictionaries.countries().idOf(country);
+        var revenue = new RevenueAccumulator[dictionaries.productNames().size()];
+        if (countryId != NULL_ID || country == null) {
+            for (int item = 0, items = store.itemCount(); item < items; item++) {
+                if (store.countryId(item) == countryId) {
+                    int productNameId = dictionaries.productNameId(store.productId(item));
+                    if (revenue[productNameId] == null) {
+                        revenue[productNameId] = new RevenueAccumulator();
+                    }
+                    addRevenue(revenue[productNameId], item);
+                }
+            }
+        }
+        Map<String, BigDecimal> result = new HashMap<>();
+        for (int id = 0; id < revenue.length; id++) {
+            if (revenue[id] != null) {
+                result.put(dictionaries.productNames().decode(id), revenue[id].total());
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.modernjava.store;
+
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.OrderItem;
+import lombok.NonNull;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Columnar, in-memory representation of a collection of orders
+ * <p>
+ * Instead of a graph of Order, Customer, Address, OrderItem and Product objects, the store holds
+ * one flat primitive array per attribute: the customer, alternate shipping address, first item and
+ * time of each order, and the product, quantity and discount of each order item. Customers, addresses, products
+ * and discounts are dictionary encoded (see {@link OrderDictionaries}), so each distinct value is
+ * held once no matter how many orders refer to it, and scans read sequential int arrays and group
+ * by dense ids rather than chasing pointers and hashing strings.
+ * <p>
+ * The items of order {@code i} are the item positions from {@link #itemStart(int)} (inclusive) to
+ * {@link #itemEnd(int)} (exclusive). Orders can be rebuilt from the columns, sharing a single
+ * instance per distinct customer, address, product and discount.
+ * <p>
+ * Stores are immutable once built.
+ */
+public final class OrderColumnStore {
+    private final OrderDictionaries dictionaries;
+    private final int[] customerIds;
+    private final int[] altShippingAddressIds;
+    private final int[] itemOffsets;
+    private final BitSet ordersWithoutItemList;
+    private final long[] orderedAtSeconds;
+    private final int[] orderedAtNanos;
+    private final int[] productIds;
+    private final int[] quantities;
+    private final int[] discountIds;
+
+    private OrderColumnStore(Builder builder) {
+        this.dictionaries = builder.dictionaries;
+        this.customerIds = builder.customerIds.toArray();
+        this.altShippingAddressIds = builder.altShippingAddressIds.toArray();
+        this.itemOffsets = builder.itemOffsets.toArray();
+        this.ordersWithoutItemList = (BitSet) builder.ordersWithoutItemList.clone();
+        this.orderedAtSeconds = builder.orderedAtSeconds.toArray();
+        this.orderedAtNanos = builder.orderedAtNanos.toArray();
+        this.productIds = builder.productIds.toArray();
+        this.quantities = builder.quantities.toArray();
+        this.discountIds = builder.discountIds.toArray();
+    }
+
+    /**
+     * Build a column store holding the given orders
+     *
+     * @param orders the orders
+     * @return a column store holding the orders
+     */
+    public static OrderColumnStore of(@NonNull Iterable<Order> orders) {
+        return builder().addAll(orders).build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public OrderDictionaries dictionaries() {
+        return dictionaries;
+    }
+
+    /**
+     * @return number of orders in the store
+     */
+    public int orderCount() {
+        return customerIds.length;
+    }
+
+    /**
+     * @return number of order items in the store
+     */
+    public int itemCount() {
+        return productIds.length;
+    }
+
+    /**
+     * @param order the position of an order
+     * @return the customer id of the order
+     */
+    public int customerId(int order) {
+        return customerIds[order];
+    }
+
+    /**
+     * @param order the position of an order
+     * @return the address id of the order's alternate shipping address, or {@link Dictionary#NULL_ID}
+     */
+    public int altShippingAddressId(int order) {
+        return altShippingAddressIds[order];
+    }
+
+    /**
+     * @param order the position of an order
+     * @return the time the order was placed, or null
+     */
+    public Instant orderedAt(int order) {
+        return orderedAtNanos[order] < 0 ? null : Instant.ofEpochSecond(orderedAtSeconds[order], orderedAtNanos[order]);
+    }
+
+    /**
+     * @param order the position of an order
+     * @return the position of the first item of the order
+     */
+    public int itemStart(int order) {
+        return itemOffsets[order];
+    }
+
+    /**
+     * @param order the position of an order
+     * @return the position following the last item of the order
+     */
+    public int itemEnd(int order) {
+        return itemOffsets[order + 1];
+    }
+
+    /**
+     * @param item the position of an order item
+     * @return the product id of the item
+     */
+    public int productId(int item) {
+        return productIds[item];
+    }
+
+    /**
+     * @param item the position of an order item
+     * @return the quantity of the item
+     */
+    public int quantity(int item) {
+        return quantities[item];
+    }
+
+    /**
+     * @param item the position of an order item
+     * @return the discount id of the item
+     */
+    public int discountId(int item) {
+        return discountIds[item];
+    }
+
+    /**
+     * Rebuild an order from the columns
+     *
+     * @param order the position of an order
+     * @return the order
+     */
+    public Order order(int order) {
+        List<OrderItem> items = null;
+        if (!ordersWithoutItemList.get(order)) {
+            items = new ArrayList<>(itemEnd(order) - itemStart(order));
+            for (int item = itemStart(order); item < itemEnd(order); item++) {
+                items.add(OrderItem.builder()
+                        .product(dictionaries.products().decode(productIds[item]))
+                        .quantity(quantities[item])
+                        .discount(dictionaries.discounts().decode(discountIds[item]))
+                        .build());
+            }
+        }
+        return Order.builder()
+                .customer(dictionaries.customers().decode(customerIds[order]))
+                .altShippingAddress(dictionaries.addresses().decode(altShippingAddressIds[order]))
+                .items(items)
+                .orderedAt(orderedAt(order))
+                .build();
+    }
+
+    /**
+     * @return a stream of the orders rebuilt from the columns, in their original order
+     */
+    public Stream<Order> stream() {
+        return IntStream.range(0, orderCount()).mapToObj(this::order);
+    }
+
+    /**
+     * Builder that encodes orders into columns one at a time, so a store can be
+     * filled from any source of orders without first collecting them into a list
+     */
+    public static final class Builder {
+        private final OrderDictionaries dictionaries = new OrderDictionaries();
+        private final IntArray customerIds = new IntArray();
+        private final IntArray altShippingAddressIds = new IntArray();
+        private final IntArray itemOffsets = new IntArray();
+        private final BitSet ordersWithoutItemList = new BitSet();
+        private final LongArray orderedAtSeconds = new LongArray();
+        private final IntArray orderedAtNanos = new IntArray();
+        private final IntArray productIds = new IntArray();
+        private final IntArray quantities = new IntArray();
+        private final IntArray discountIds = new IntArray();
+        private boolean built;
+
+        private Builder() {
+            itemOffsets.add(0);
+        }
+
+        /**
+         * @param order the order to add
+         * @return this builder
+         */
+        public Builder add(@NonNull Order order) {
+            if (built) {
+                throw new IllegalStateException("Orders cannot be added once the store is built");
+            }
+            if (order.getItems() == null) {
+                ordersWithoutItemList.set(customerIds.size());
+            } else {
+                for (OrderItem item : order.getItems()) {
+                    productIds.add(dictionaries.encodeProduct(item.getProduct()));
+                    quantities.add(item.getQuantity());
+                    discountIds.add(dictionaries.encodeDiscount(item.getDiscount()));
+                }
+            }
+            customerIds.add(dictionaries.encodeCustomer(order.getCustomer()));
+            altShippingAddressIds.add(dictionaries.encodeAddress(order.getAltShippingAddress()));
+            var orderedAt = order.getOrderedAt();
+            orderedAtSeconds.add(orderedAt == null ? 0 : orderedAt.getEpochSecond());
+            orderedAtNanos.add(orderedAt == null ? -1 : orderedAt.getNano());
+            itemOffsets.add(productIds.size());
+            return this;
+        }
+
+        /**
+         * @param orders the orders to add
+         * @return this builder
+         */
+        public Builder addAll(@NonNull Iterable<Order> orders) {
+            orders.forEach(this::add);
+            return this;
+        }
+
+        /**
+         * Build the store. The builder cannot be used to add orders afterwards, since the
+         * store shares its dictionaries.
+         *
+         * @return the column store
+         */
+        public OrderColumnStore build() {
+            built = true;
+            return new OrderColumnStore(this);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.modernjava.store;
+
+import com.example.modernjava.domain.Address;
+import com.example.modernjava.domain.Customer;
+import com.example.modernjava.domain.Product;
+
+import java.math.BigDecimal;
+
+import static com.example.modernjava.store.Dictionary.NULL_ID;
+
+/**
+ * The dictionaries shared by the columns of an order store
+ * <p>
+ * Customers, addresses, products and discounts are each encoded once, by value. The dimensions
+ * used for grouping (customer name, postal country, product name and SKU) are encoded in their
+ * own string dictionaries, and every customer, address and product records the ids of its
+ * dimensions, so that scans can group by dense int ids instead of hashing strings.
+ */
+public final class OrderDictionaries {
+    private final Dictionary<Customer> customers = new Dictionary<>();
+    private final Dictionary<Address> addresses = new Dictionary<>();
+    private final Dictionary<Product> products = new Dictionary<>();
+    private final Dictionary<BigDecimal> discounts = new Dictionary<>();
+    private final Dictionary<String> customerNames = new Dictionary<>();
+    private final Dictionary<String> countries = new Dictionary<>();
+    private final Dictionary<String> productNames = new Dictionary<>();
+    private final Dictionary<String> skus = new Dictionary<>();
+
+    private final IntArray customerNameIds = new IntArray();
+    private final IntArray customerBillingAddressIds = new IntArray();
+    private final IntArray customerShippingAddressIds = new IntArray();
+    private final IntArray addressCountryIds = new IntArray();
+    private final IntArray productNameIds = new IntArray();
+    private final IntArray productSkuIds = new IntArray();
+
+    /**
+     * @param customer the customer to encode, may be null
+     * @return the id of the customer
+     */
+    public int encodeCustomer(Customer customer) {
+        int size = customers.size();
+        int id = customers.encode(customer);
+        if (id == size) {
+            customerNameIds.add(customerNames.encode(customer.getName()));
+            customerBillingAddressIds.add(encodeAddress(customer.getBillingAddress()));
+            customerShippingAddressIds.add(encodeAddress(customer.getShippingAddress()));
+        }
+        return id;
+    }
+
+    /**
+     * @param address the address to encode, may be null
+     * @return the id of the address
+     */
+    public int encodeAddress(Address address) {
+        int size = addresses.size();
+        int id = addresses.encode(address);
+        if (id == size) {
+            addressCountryIds.add(countries.encode(address.getPostalCountry()));
+        }
+        return id;
+    }
+
+    /**
+     * @param product the product to encode, may be null
+     * @return the id of the product
+     */
+    public int encodeProduct(Product product) {
+        int size = products.size();
+        int id = products.encode(product);
+        if (id == size) {
+            productNameIds.add(productNames.encode(product.getName()));
+            productSkuIds.add(skus.encode(product.getSku()));
+        }
+        return id;
+    }
+
+    /**
+     * @param discount the discount to encode, may be null
+     * @return the id of the discount
+     */
+    public int encodeDiscount(BigDecimal discount) {
+        return discounts.encode(discount);
+    }
+
+    public Dictionary<Customer> customers() {
+        return customers;
+    }
+
+    public Dictionary<Address> addresses() {
+        return addresses;
+    }
+
+    public Dictionary<Product> products() {
+        return products;
+    }
+
+    public Dictionary<BigDecimal> discounts() {
+        return discounts;
+    }
+
+    public Dictionary<String> customerNames() {
+        return customerNames;
+    }
+
+    public Dictionary<String> countries() {
+        return countries;
+    }
+
+    public Dictionary<String> productNames() {
+        return productNames;
+    }
+
+    public Dictionary<String> skus() {
+        return skus;
+    }
+
+    /**
+     * @param customerId the id of a customer
+     * @return the id of the customer's name in {@link #customerNames()}
+     */
+    public int customerNameId(int customerId) {
+        return customerNameIds.get(customerId);
+    }
+
+    /**
+     * @param customerId the id of a customer
+     * @return the id of the customer's billing address, or {@link Dictionary#NULL_ID}
+     */
+    public int customerBillingAddressId(int customerId) {
+        return customerBillingAddressIds.get(customerId);
+    }
+
+    /**
+     * @param customerId the id of a customer
+     * @return the id of the customer's shipping address, or {@link Dictionary#NULL_ID}
+     */
+    public int customerShippingAddressId(int customerId) {
+        return customerShippingAddressIds.get(customerId);
+    }
+
+    /**
+     * @param addressId the id of an address
+     * @return the id of the address's postal country in {@link #countries()}, or {@link Dictionary#NULL_ID}
+     */
+    public int addressCountryId(int addressId) {
+        return addressCountryIds.get(addressId);
+    }
+
+    /**
+     * @param customerId the id of a customer
+     * @return the id of the postal country of the customer's billing address
+     */
+    public int customerBillingCountryId(int customerId) {
+        int addressId = customerBillingAddressId(customerId);
+        return addressId == NULL_ID ? NULL_ID : addressCountryId(addressId);
+    }
+
+    /**
+     * @param productId the id of a product
+     * @return the id of the product's name in {@link #productNames()}
+     */
+    public int productNameId(int productId) {
+        return productNameIds.get(productId);
+    }
+
+    /**
+     * @param productId the id of a product
+     * @return the id of the product's SKU in {@link #skus()}
+     */
+    public int productSkuId(int productId) {
+        return productSkuIds.get(productId);
+    }
+}
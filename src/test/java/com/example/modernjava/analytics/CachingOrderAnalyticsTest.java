@@ -0,0 +1,144 @@
+package com.example.modernjava.analytics;
+
+import com.example.modernjava.domain.TestDataGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CachingOrderAnalyticsTest {
+
+    /**
+     * Counts the aggregates computed by the underlying analytics
+     */
+    private static class CountingAnalytics implements OrderAnalytics {
+        final OrderAnalytics delegate;
+        final AtomicInteger computed = new AtomicInteger();
+
+        CountingAnalytics(OrderAnalytics delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public AggregateResults analyze(Set<Aggregate> aggregates) {
+            computed.addAndGet(aggregates.size());
+            return delegate.analyze(aggregates);
+        }
+    }
+
+    @Test
+    void repeatedQueriesAreServedFromCache() {
+        var service = new OrderAnalysisService(TestDataGenerator.generateTestOrders());
+        var counting = new CountingAnalytics(service);
+        var cache = new CachingOrderAnalytics(counting);
+
+        assertThat(cache.totalUnitsSoldByCountryByProduct()).isEqualTo(service.totalUnitsSoldByCountryByProduct());
+        assertThat(cache.totalUnitsSoldByCountryByProduct()).isEqualTo(service.totalUnitsSoldByCountryByProduct());
+        assertThat(cache.totalRevenue()).isEqualTo(service.totalRevenue());
+        assertThat(counting.computed.get()).isEqualTo(2);
+
+        // Only the aggregate that is not cached yet is computed
+        var all = EnumSet.allOf(Aggregate.class);
+        assertThat(cache.analyze(EnumSet.of(Aggregate.TOTAL_REVENUE, Aggregate.TOTAL_ORDERS)).totalOrders())
+                .isEqualTo(service.totalOrders());
+        assertThat(counting.computed.get()).isEqualTo(3);
+        assertThat(cache.analyze(all)).isEqualTo(service.analyze(all));
+
+        var stats = cache.stats();
+        assertThat(stats.hits()).isEqualTo(5);
+        assertThat(stats.misses()).isEqualTo(all.size());
+        assertThat(stats.size()).isEqualTo(all.size());
+    }
+
+    @Test
+    void versionChangeInvalidatesResults() {
+        var orders = TestDataGenerator.generateTestOrders();
+        var incremental = new IncrementalOrderAnalytics();
+        incremental.addOrders(orders);
+        var cache = new CachingOrderAnalytics(incremental, incremental::version, 16);
+
+        assertThat(cache.totalOrders()).isEqualTo(orders.size());
+        incremental.removeOrder(orders.get(0));
+        assertThat(cache.totalOrders()).isEqualTo(orders.size() - 1);
+        assertThat(cache.stats().invalidations()).isEqualTo(1);
+
+        cache.invalidate();
+        assertThat(cache.stats().size()).isZero();
+    }
+
+    @Test
+    void staleVersionsBypassTheCacheInsteadOfRollingItBack() {
+        var versions = new long[]{1, 2, 1, 2};
+        var reads = new AtomicInteger();
+        var cache = new CachingOrderAnalytics(new OrderAnalysisService(TestDataGenerator.generateTestOrders()),
+                () -> versions[reads.getAndIncrement()], 16);
+        var computed = new AtomicInteger();
+
+        for (int i = 0; i < versions.length; i++) {
+            cache.query("a", computed::incrementAndGet);
+        }
+
+        assertThat(reads.get()).isEqualTo(versions.length);
+        assertThat(computed.get()).isEqualTo(3);
+        var stats = cache.stats();
+        assertThat(stats.hits()).isEqualTo(1);
+        assertThat(stats.invalidations()).isEqualTo(1);
+        assertThat(stats.size()).isEqualTo(1);
+    }
+
+    @Test
+    void resultsComputedAcrossAnInvalidationAreNotCached() {
+        var service = new OrderAnalysisService(TestDataGenerator.generateTestOrders());
+        var cache = new CachingOrderAnalytics(service);
+        var computed = new AtomicInteger();
+
+        // The order source changes while the first miss is being computed
+        cache.query("a", () -> {
+            cache.invalidate();
+            return computed.incrementAndGet();
+        });
+        assertThat(cache.query("a", computed::incrementAndGet)).isEqualTo(2);
+        assertThat(cache.query("a", computed::incrementAndGet)).isEqualTo(2);
+
+        var holder = new AtomicReference<CachingOrderAnalytics>();
+        holder.set(new CachingOrderAnalytics(aggregates -> {
+            holder.get().invalidate();
+            return service.analyze(aggregates);
+        }));
+        assertThat(holder.get().totalOrders()).isEqualTo(service.totalOrders());
+        assertThat(holder.get().stats().size()).isZero();
+    }
+
+    @Test
+    void leastRecentlyUsedResultsAreEvicted() {
+        var cache = new CachingOrderAnalytics(new OrderAnalysisService(TestDataGenerator.generateTestOrders()),
+                () -> 0L, 2);
+        var computed = new AtomicInteger();
+
+        cache.query("a", computed::incrementAndGet);
+        cache.query("b", computed::incrementAndGet);
+        cache.query("a", computed::incrementAndGet);
+        cache.query("c", computed::incrementAndGet);
+        cache.query("a", computed::incrementAndGet);
+        cache.query("b", computed::incrementAndGet);
+
+        assertThat(computed.get()).isEqualTo(4);
+        assertThat(cache.stats().evictions()).isEqualTo(2);
+        assertThat(cache.stats().hitRate()).isEqualTo(2 / 6.0);
+    }
+
+    @Test
+    void cachedResultsCannotBeModified() {
+        var cache = new CachingOrderAnalytics(new OrderAnalysisService(TestDataGenerator.generateTestOrders()));
+        var unitsByCountry = cache.totalUnitsSoldByCountryByProduct();
+
+        assertThatThrownBy(() -> unitsByCountry.clear()).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> unitsByCountry.values().iterator().next().clear())
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+}
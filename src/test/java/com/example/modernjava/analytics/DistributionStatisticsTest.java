@@ -0,0 +1,62 @@
+package com.example.modernjava.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+import java.util.stream.DoubleStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class DistributionStatisticsTest {
+
+    @Test
+    void statisticsMatchTwoPassComputation() {
+        double[] values = new SplittableRandom(4).doubles(10_000, -50, 150).toArray();
+        var statistics = new DistributionStatistics();
+        DoubleStream.of(values).forEach(statistics);
+
+        var summary = DoubleStream.of(values).summaryStatistics();
+        double mean = summary.getAverage();
+        double squaredDeviations = DoubleStream.of(values).map(v -> (v - mean) * (v - mean)).sum();
+        assertThat(statistics.count()).isEqualTo(summary.getCount());
+        assertThat(statistics.min()).isEqualTo(summary.getMin());
+        assertThat(statistics.max()).isEqualTo(summary.getMax());
+        assertThat(statistics.sum()).isCloseTo(summary.getSum(), within(1e-6));
+        assertThat(statistics.mean()).isCloseTo(mean, within(1e-9));
+        assertThat(statistics.variance()).isCloseTo(squaredDeviations / values.length, within(1e-6));
+        assertThat(statistics.sampleVariance()).isCloseTo(squaredDeviations / (values.length - 1), within(1e-6));
+    }
+
+    @Test
+    void varianceIsAccurateForLargeOffsets() {
+        var statistics = new DistributionStatistics();
+        DoubleStream.of(1e9 + 4, 1e9 + 7, 1e9 + 13, 1e9 + 16).forEach(statistics);
+        assertThat(statistics.mean()).isEqualTo(1e9 + 10);
+        assertThat(statistics.sampleVariance()).isEqualTo(30.0);
+    }
+
+    @Test
+    void combinedStatisticsMatchSequentialStatistics() {
+        double[] values = new SplittableRandom(5).doubles(9_999, 0, 1_000).toArray();
+        var sequential = new DistributionStatistics();
+        DoubleStream.of(values).forEach(sequential);
+        var combined = DoubleStream.of(values).parallel()
+                .collect(DistributionStatistics::new, DistributionStatistics::accept, DistributionStatistics::combine);
+
+        assertThat(combined.count()).isEqualTo(sequential.count());
+        assertThat(combined.mean()).isCloseTo(sequential.mean(), within(1e-9));
+        assertThat(combined.variance()).isCloseTo(sequential.variance(), within(1e-6));
+        assertThat(combined.min()).isEqualTo(sequential.min());
+        assertThat(combined.quantile(0.5)).isEqualTo(sequential.quantile(0.5));
+        assertThat(new DistributionStatistics().combine(sequential).variance()).isEqualTo(sequential.variance());
+    }
+
+    @Test
+    void emptyStatistics() {
+        var statistics = new DistributionStatistics();
+        assertThat(statistics.count()).isZero();
+        assertThat(statistics.variance()).isZero();
+        assertThat(statistics.quantile(0.5)).isNaN();
+    }
+}
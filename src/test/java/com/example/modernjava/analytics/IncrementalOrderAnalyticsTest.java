@@ -0,0 +1,156 @@
+package com.example.modernjava.analytics;
+
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.TestDataGenerator;
+import com.example.modernjava.generator.SyntheticOrderGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IncrementalOrderAnalyticsTest {
+
+    private static final EnumSet<Aggregate> ALL = EnumSet.allOf(Aggregate.class);
+
+    @Test
+    void addedOrdersMatchFullRecomputation() {
+        var orders = TestDataGenerator.generateTestOrders();
+        var analytics = new IncrementalOrderAnalytics();
+        orders.forEach(analytics::addOrder);
+
+        assertThat(analytics.analyze(ALL)).isEqualTo(new OrderAnalysisService(orders).analyze(ALL));
+        assertThat(analytics.totalOrders()).isEqualTo(orders.size());
+    }
+
+    @Test
+    void removedOrdersMatchFullRecomputation() {
+        List<Order> orders = new ArrayList<>(TestDataGenerator.generateTestOrders());
+        var analytics = new IncrementalOrderAnalytics();
+        analytics.addOrders(orders);
+        analytics.addOrders(orders);
+
+        analytics.removeOrders(orders);
+        assertMatches(analytics, orders);
+
+        var removed = orders.remove(0);
+        analytics.removeOrder(removed);
+        assertMatches(analytics, orders);
+    }
+
+    /**
+     * Distinct values stay in order of first addition, so only their contents are compared
+     */
+    private static void assertMatches(IncrementalOrderAnalytics analytics, List<Order> orders) {
+        var expected = new OrderAnalysisService(orders);
+        var ordered = EnumSet.complementOf(EnumSet.of(Aggregate.DISTINCT_COUNTRIES, Aggregate.DISTINCT_CUSTOMERS));
+        assertThat(analytics.analyze(ordered)).isEqualTo(expected.analyze(ordered));
+        assertThat(analytics.distinctCountries()).containsExactlyInAnyOrderElementsOf(expected.distinctCountries());
+        assertThat(analytics.distinctCustomers()).containsExactlyInAnyOrderElementsOf(expected.distinctCustomers());
+    }
+
+    @Test
+    void removingEveryOrderLeavesEmptyAggregates() {
+        var orders = TestDataGenerator.generateTestOrders();
+        var analytics = new IncrementalOrderAnalytics();
+        analytics.addOrders(orders);
+        analytics.removeOrders(orders);
+
+        assertThat(analytics.analyze(ALL)).isEqualTo(new OrderAnalysisService(List.of()).analyze(ALL));
+        assertThat(analytics.totalUnitsSoldByProduct()).isEmpty();
+        assertThat(analytics.distinctCustomers()).isEmpty();
+    }
+
+    @Test
+    void snapshotsAreUnaffectedByLaterWrites() {
+        var orders = TestDataGenerator.generateTestOrders();
+        var analytics = new IncrementalOrderAnalytics();
+        analytics.addOrders(orders);
+        var snapshot = analytics.snapshot();
+        var version = analytics.version();
+
+        analytics.removeOrder(orders.get(0));
+
+        assertThat(snapshot.totalOrders()).isEqualTo(orders.size());
+        assertThat(analytics.totalOrders()).isEqualTo(orders.size() - 1);
+        assertThat(analytics.version()).isGreaterThan(version);
+    }
+
+    @Test
+    void interleavedReadsReuseTheEntriesOfUnchangedGroups() {
+        List<Order> orders = SyntheticOrderGenerator.builder().seed(7).orderCount(500).customers(50).countries(10)
+                .products(40).build().stream().toList();
+        var analytics = new IncrementalOrderAnalytics();
+        for (int i = 0; i < orders.size(); i++) {
+            analytics.addOrder(orders.get(i));
+            if (i % 50 == 49) {
+                assertMatches(analytics, orders.subList(0, i + 1));
+            }
+        }
+
+        var before = analytics.totalUnitsSoldByCustomerByProduct();
+        var order = orders.get(0);
+        analytics.removeOrder(order);
+        var after = analytics.totalUnitsSoldByCustomerByProduct();
+        assertThat(after).isNotSameAs(before);
+        before.forEach((customer, units) -> {
+            if (!customer.equals(order.getCustomer().getName())) {
+                assertThat(after.get(customer)).isSameAs(units);
+            }
+        });
+        assertMatches(analytics, orders.subList(1, orders.size()));
+        assertThatThrownBy(() -> after.clear()).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void ordersAreRemovedByIdentity() {
+        var order = TestDataGenerator.generateTestOrders().get(0);
+        var analytics = new IncrementalOrderAnalytics();
+        analytics.addOrder(order);
+        var copy = new Order(order.getCustomer(), order.getAltShippingAddress(), order.getItems(), order.getOrderedAt());
+
+        assertThatThrownBy(() -> analytics.removeOrder(copy)).isInstanceOf(IllegalArgumentException.class);
+        analytics.removeOrder(order);
+        assertThat(analytics.totalOrders()).isZero();
+    }
+
+    @Test
+    void removingAnUnknownOrderFails() {
+        var orders = TestDataGenerator.generateTestOrders();
+        var analytics = new IncrementalOrderAnalytics();
+
+        assertThatThrownBy(() -> analytics.removeOrder(orders.get(0)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void invalidBatchesLeaveTheAggregatesUnchanged() {
+        var orders = TestDataGenerator.generateTestOrders();
+        var analytics = new IncrementalOrderAnalytics();
+        analytics.addOrders(orders);
+        var before = analytics.snapshot();
+        var version = analytics.version();
+
+        var first = orders.get(0);
+        var unknown = new Order(first.getCustomer(), first.getAltShippingAddress(),
+                first.getItems().subList(0, 1), first.getOrderedAt());
+        assertThatThrownBy(() -> analytics.removeOrders(List.of(orders.get(1), unknown)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> analytics.removeOrders(List.of(first, first)))
+                .isInstanceOf(IllegalArgumentException.class);
+        var withoutItems = new Order(first.getCustomer(), null, null, null);
+        assertThatThrownBy(() -> analytics.addOrders(List.of(orders.get(1), withoutItems)))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(analytics.version()).isEqualTo(version);
+        assertThat(analytics.snapshot()).isSameAs(before);
+
+        analytics.addOrder(first);
+        analytics.removeOrders(List.of(first, first));
+        assertThat(analytics.totalOrders()).isEqualTo(orders.size() - 1);
+        assertThat(analytics.version()).isEqualTo(version + 2);
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.modernjava.analytics;
+
+import com.example.modernjava.domain.TestDataGenerator;
+import com.example.modernjava.metrics.AnalyticsMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InstrumentedOrderAnalyticsTest {
+
+    @Test
+    void queriesAreRecordedUnderTheirNames() {
+        var orders = TestDataGenerator.generateTestOrders();
+        long items = orders.stream().mapToLong(order -> order.getItems().size()).sum();
+        var service = new OrderAnalysisService(orders);
+        var metrics = new AnalyticsMetrics();
+        var analytics = new InstrumentedOrderAnalytics(service, metrics);
+
+        assertThat(analytics.totalRevenueByCountry()).isEqualTo(service.totalRevenueByCountry());
+        assertThat(analytics.totalRevenueByCountry()).isEqualTo(service.totalRevenueByCountry());
+        assertThat(analytics.distinctCountries()).isEqualTo(service.distinctCountries());
+        assertThat(analytics.analyze(EnumSet.of(Aggregate.TOTAL_ORDERS)).totalOrders()).isEqualTo(orders.size());
+
+        var revenue = metrics.stats("totalRevenueByCountry");
+        assertThat(revenue.count()).isEqualTo(2);
+        assertThat(revenue.totalNanos()).isGreaterThan(0);
+        assertThat(revenue.ordersScanned()).isEqualTo(2L * orders.size());
+        assertThat(revenue.itemsScanned()).isEqualTo(2 * items);
+        // Distinct countries only need the orders
+        assertThat(metrics.stats("distinctCountries").itemsScanned()).isZero();
+        assertThat(metrics.stats("analyze").count()).isEqualTo(1);
+        assertThat(metrics.snapshot()).hasSize(3);
+    }
+
+    @Test
+    void rowsAreThoseTheBackendVisited() {
+        var orders = TestDataGenerator.generateTestOrders();
+        var metrics = new AnalyticsMetrics();
+        var cached = new InstrumentedOrderAnalytics(new CachingOrderAnalytics(new OrderAnalysisService(orders)), metrics);
+        cached.totalRevenue();
+        cached.totalRevenue();
+        assertThat(metrics.stats("totalRevenue").count()).isEqualTo(2);
+        assertThat(metrics.stats("totalRevenue").ordersScanned()).isEqualTo(orders.size());
+
+        var incremental = new IncrementalOrderAnalytics();
+        incremental.addOrders(orders);
+        metrics.reset();
+        new InstrumentedOrderAnalytics(incremental, metrics).totalRevenueByProduct();
+        assertThat(metrics.stats("totalRevenueByProduct").count()).isEqualTo(1);
+        assertThat(metrics.stats("totalRevenueByProduct").ordersScanned()).isZero();
+        assertThat(metrics.stats("totalRevenueByProduct").itemsScanned()).isZero();
+    }
+
+    @Test
+    void failedCallsAreTimedWithoutRows() {
+        var metrics = new AnalyticsMetrics();
+        OrderAnalytics failing = aggregates -> {
+            throw new IllegalStateException("Backend unavailable");
+        };
+        var analytics = new InstrumentedOrderAnalytics(failing, metrics);
+
+        assertThatThrownBy(analytics::totalRevenue).isInstanceOf(IllegalStateException.class);
+        var stats = metrics.stats("totalRevenue");
+        assertThat(stats.count()).isEqualTo(1);
+        assertThat(stats.ordersScanned()).isZero();
+        assertThat(stats.itemsScanned()).isZero();
+    }
+
+    @Test
+    void defaultQueriesAreRecordedThroughTheQueriesTheyUse() {
+        var orders = TestDataGenerator.generateTestOrders();
+        var metrics = new AnalyticsMetrics();
+        var analytics = new InstrumentedOrderAnalytics(new OrderAnalysisService(orders), metrics);
+
+        analytics.topProductsByUnits(3);
+        assertThat(metrics.stats("totalUnitsSoldByProduct").count()).isEqualTo(1);
+    }
+}
@@ -1,17 +1,25 @@
 package com.example.modernjava.analytics;
 
+import com.example.modernjava.analytics.sketch.HyperLogLog;
 import com.example.modernjava.domain.Customer;
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.OrderItem;
+import com.example.modernjava.domain.Product;
 import com.example.modernjava.domain.TestDataGenerator;
 import com.example.modernjava.repositories.OrderTestRepository;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.InstanceOfAssertFactories.BIG_DECIMAL;
 
 class OrderAnalysisServiceTest {
@@ -23,8 +31,9 @@ class OrderAnalysisServiceTest {
         // Set up a test repository, which may seem unnecessary, but will be useful as
         // we migrate the test data into a database.
         var repository = new OrderTestRepository(TestDataGenerator.generateTestOrders());
-        analysisService = new OrderAnalysisService(StreamSupport.stream(repository.findAll().spliterator(), false)
-                .collect(Collectors.toList()));
+        try (var orders = repository.findAll()) {
+            analysisService = new OrderAnalysisService(orders.toList());
+        }
         System.out.println("--- Initialized analyzer with test order data ---");
         System.out.println("--- Total Orders: " + analysisService.totalOrders());
         System.out.println("--- Total Units Sold: " + analysisService.totalUnitsSold());
@@ -71,6 +80,37 @@ class OrderAnalysisServiceTest {
                 .keySet());
     }
 
+    @Test
+    void analyzeMatchesPerMethodResults() {
+        // Ensure that computing all aggregates in one pass gives the same results as the individual queries
+        var results = analysisService.analyze(EnumSet.allOf(Aggregate.class));
+        assertThat(results.totalOrders()).isEqualTo(analysisService.totalOrders());
+        assertThat(results.totalUnitsSold()).isEqualTo(analysisService.totalUnitsSold());
+        assertThat(results.totalUnitsSoldByProduct()).isEqualTo(analysisService.totalUnitsSoldByProduct());
+        assertThat(results.totalUnitsSoldByCustomerByProduct())
+                .isEqualTo(analysisService.totalUnitsSoldByCustomerByProduct());
+        assertThat(results.totalUnitsSoldByCountryByProduct())
+                .isEqualTo(analysisService.totalUnitsSoldByCountryByProduct());
+        assertThat(results.totalRevenue()).isEqualTo(analysisService.totalRevenue());
+        assertThat(results.totalRevenueByProduct()).isEqualTo(analysisService.totalRevenueByProduct());
+        assertThat(results.totalRevenueByCustomer()).isEqualTo(analysisService.totalRevenueByCustomer());
+        assertThat(results.totalRevenueByCustomerByProduct())
+                .isEqualTo(analysisService.totalRevenueByCustomerByProduct());
+        assertThat(results.totalRevenueByCountry()).isEqualTo(analysisService.totalRevenueByCountry());
+        assertThat(results.totalRevenueByCountryByProduct())
+                .isEqualTo(analysisService.totalRevenueByCountryByProduct());
+        assertThat(results.distinctCountries()).containsExactlyElementsOf(analysisService.distinctCountries());
+        assertThat(results.distinctCustomers()).containsExactlyElementsOf(analysisService.distinctCustomers());
+    }
+
+    @Test
+    void analyzeOnlyComputesRequestedAggregates() {
+        var results = analysisService.analyze(EnumSet.of(Aggregate.TOTAL_UNITS_SOLD, Aggregate.DISTINCT_COUNTRIES));
+        assertThat(results.aggregates()).containsExactlyInAnyOrder(Aggregate.TOTAL_UNITS_SOLD,
+                Aggregate.DISTINCT_COUNTRIES);
+        assertThatThrownBy(results::totalRevenue).isInstanceOf(IllegalStateException.class);
+    }
+
     // TODO: Implement the tests that should accompany the new functions added to the OrderAnalysisService
     @Test
     void totalRevenueNotZero() {
@@ -84,6 +124,184 @@ class OrderAnalysisServiceTest {
         assertThat(analysisService.totalRevenueByProduct().size()).isNotZero();
     }
 
-    // total final should equal the total revenue
+    @Test
+    void totalRevenueIsExact() {
+        // Ensure that the revenue matches a straightforward BigDecimal computation to the last decimal place
+        var expected = TestDataGenerator.generateTestOrders().stream()
+                .flatMap(order -> order.getItems().stream())
+                .map(item -> BigDecimal.valueOf(item.getQuantity()).multiply(item.getProduct().getPrice())
+                        .multiply(BigDecimal.ONE.subtract(item.getDiscount())))
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertThat(analysisService.totalRevenue()).isEqualByComparingTo(expected);
+    }
+
+    @Test
+    void totalRevenueByProduct() {
+        // Ensure that the sum of the revenue per product is equal to the total revenue
+        assertThat(sum(analysisService.totalRevenueByProduct().values()))
+                .isEqualByComparingTo(analysisService.totalRevenue());
+        assertThat(analysisService.totalRevenueByProduct().keySet())
+                .containsExactlyInAnyOrderElementsOf(analysisService.totalUnitsSoldByProduct().keySet());
+    }
+
+    @Test
+    void totalRevenueByCustomer() {
+        // Ensure that the sum of the revenue per customer is equal to the total revenue
+        assertThat(sum(analysisService.totalRevenueByCustomer().values()))
+                .isEqualByComparingTo(analysisService.totalRevenue());
+        assertThat(analysisService.distinctCustomers().stream().map(Customer::getName)
+                .toList()).containsExactlyInAnyOrderElementsOf(analysisService.totalRevenueByCustomer().keySet());
+    }
+
+    @Test
+    void totalRevenueByCustomerByProduct() {
+        // Ensure that the revenue per customer/product adds up to the revenue per customer
+        analysisService.totalRevenueByCustomerByProduct().forEach((customer, revenueByProduct) ->
+                assertThat(sum(revenueByProduct.values()))
+                        .isEqualByComparingTo(analysisService.totalRevenueByCustomer().get(customer)));
+    }
+
+    @Test
+    void totalRevenueByCountry() {
+        // Ensure that the sum of the revenue per country is equal to the total revenue
+        assertThat(sum(analysisService.totalRevenueByCountry().values()))
+                .isEqualByComparingTo(analysisService.totalRevenue());
+        assertThat(analysisService.distinctCountries())
+                .containsExactlyInAnyOrderElementsOf(analysisService.totalRevenueByCountry().keySet());
+    }
+
+    @Test
+    void totalRevenueByCountryByProduct() {
+        // Ensure that the revenue per country/product adds up to the revenue per country
+        analysisService.totalRevenueByCountryByProduct().forEach((country, revenueByProduct) ->
+                assertThat(sum(revenueByProduct.values()))
+                        .isEqualByComparingTo(analysisService.totalRevenueByCountry().get(country)));
+    }
+
+    @Test
+    void topProductsByUnits() {
+        // Ensure that the top products are the products with the most units, in descending order
+        var top = analysisService.topProductsByUnits(5);
+        var sorted = analysisService.totalUnitsSoldByProduct().values().stream()
+                .sorted(Comparator.reverseOrder()).limit(5).toList();
+        assertThat(top.stream().map(Map.Entry::getValue).toList()).isEqualTo(sorted);
+        top.forEach(entry -> assertThat(analysisService.totalUnitsSoldByProduct().get(entry.getKey()))
+                .isEqualTo(entry.getValue()));
+        assertThat(analysisService.topProductsByUnits(100)).hasSize(analysisService.totalUnitsSoldByProduct().size());
+        assertThat(analysisService.topProductsByUnits(0)).isEmpty();
+    }
+
+    @Test
+    void topProductsAndCustomersByRevenue() {
+        var topProduct = analysisService.topProductsByRevenue(1).get(0);
+        assertThat(topProduct.getValue()).isEqualTo(analysisService.totalRevenueByProduct().values().stream()
+                .max(Comparator.naturalOrder()).orElseThrow());
+        var topCustomers = analysisService.topCustomersByRevenue(2);
+        assertThat(topCustomers).hasSize(2);
+        assertThat(topCustomers.get(0).getValue()).isGreaterThanOrEqualTo(topCustomers.get(1).getValue());
+    }
+
+    @Test
+    void topProductsByCountry() {
+        var topByCountry = analysisService.topProductsByUnitsByCountry(3);
+        assertThat(topByCountry.keySet()).isEqualTo(analysisService.totalUnitsSoldByCountryByProduct().keySet());
+        topByCountry.values().forEach(top -> assertThat(top).hasSize(3));
+        analysisService.topProductsByRevenueByCountry(1).forEach((country, top) ->
+                assertThat(top.get(0).getValue()).isEqualTo(analysisService.totalRevenueByCountryByProduct()
+                        .get(country).values().stream().max(Comparator.naturalOrder()).orElseThrow()));
+    }
+
+    @Test
+    void approximateTopProductsMatchExactWithSufficientCapacity() {
+        // With capacity for every product, the sketch is exact
+        var exactUnits = analysisService.topProductsByUnits(5);
+        var approximateUnits = analysisService.approximateTopProductsByUnits(5, 100);
+        assertThat(approximateUnits.stream().map(Map.Entry::getValue).toList())
+                .isEqualTo(exactUnits.stream().map(entry -> entry.getValue().longValue()).toList());
+        assertThat(analysisService.approximateTopProductsByRevenue(3, 100).stream().map(Map.Entry::getValue).toList())
+                .isEqualTo(analysisService.topProductsByRevenue(3).stream().map(Map.Entry::getValue).toList());
+    }
+
+    @Test
+    void approximateTopProductsOverestimateWithinBound() {
+        var units = analysisService.totalUnitsSoldByProduct();
+        long bound = analysisService.totalUnitsSold() / 4;
+        analysisService.approximateTopProductsByUnits(3, 4).forEach(entry -> {
+            assertThat(entry.getValue()).isGreaterThanOrEqualTo(units.get(entry.getKey()).longValue());
+            assertThat(entry.getValue() - units.get(entry.getKey())).isLessThanOrEqualTo(bound);
+        });
+    }
+
+    @Test
+    void approximateTopCustomersAndCountriesMatchExactWithSufficientCapacity() {
+        assertThat(analysisService.approximateTopCustomersByRevenue(2, 100).stream().map(Map.Entry::getValue).toList())
+                .isEqualTo(analysisService.topCustomersByRevenue(2).stream().map(Map.Entry::getValue).toList());
+        var unitsByCountry = analysisService.approximateTopProductsByUnitsByCountry(3, 100);
+        assertThat(unitsByCountry.keySet()).isEqualTo(analysisService.topProductsByUnitsByCountry(3).keySet());
+        analysisService.topProductsByUnitsByCountry(3).forEach((country, top) ->
+                assertThat(unitsByCountry.get(country).stream().map(Map.Entry::getValue).toList())
+                        .isEqualTo(top.stream().map(entry -> entry.getValue().longValue()).toList()));
+        var revenueByCountry = analysisService.approximateTopProductsByRevenueByCountry(2, 100);
+        analysisService.topProductsByRevenueByCountry(2).forEach((country, top) ->
+                assertThat(revenueByCountry.get(country).stream().map(Map.Entry::getValue).toList())
+                        .isEqualTo(top.stream().map(Map.Entry::getValue).toList()));
+    }
+
+    @Test
+    void approximateRevenueIgnoresLinesWithoutPositiveRevenue() {
+        List<Order> orders = new ArrayList<>(TestDataGenerator.generateTestOrders());
+        var template = orders.get(0);
+        var product = template.getItems().get(0).getProduct();
+        var refund = new Product(product.getSku(), "Refund", product.getDescription(), new BigDecimal("-5.00"));
+        orders.add(new Order(template.getCustomer(), null, List.of(
+                OrderItem.builder().product(refund).quantity(1).build(),
+                OrderItem.builder().product(product).quantity(2).discount(new BigDecimal("1.5")).build()), null));
+        var service = new OrderAnalysisService(orders);
+        assertThat(service.approximateTopProductsByRevenue(3, 100)).extracting(Map.Entry::getKey)
+                .doesNotContain("Refund");
+        assertThat(service.approximateTopCustomersByRevenue(2, 100).stream().map(Map.Entry::getValue).toList())
+                .isEqualTo(analysisService.topCustomersByRevenue(2).stream().map(Map.Entry::getValue).toList());
+        assertThat(service.approximateTopProductsByRevenueByCountry(3, 100))
+                .isEqualTo(analysisService.approximateTopProductsByRevenueByCountry(3, 100));
+    }
+
+    @Test
+    void estimatedDistinctCountsMatchExactCounts() {
+        assertThat(analysisService.estimateDistinctCountries(HyperLogLog.DEFAULT_PRECISION).estimate())
+                .isEqualTo(analysisService.distinctCountries().size());
+        assertThat(analysisService.estimateDistinctCustomers(HyperLogLog.DEFAULT_PRECISION).estimate())
+                .isEqualTo(analysisService.distinctCustomers().size());
+    }
+
+    @Test
+    void filteredQueriesMatchFullScans() {
+        var unitsByCountryByProduct = analysisService.totalUnitsSoldByCountryByProduct();
+        var revenueByCountryByProduct = analysisService.totalRevenueByCountryByProduct();
+        unitsByCountryByProduct.forEach((country, unitsByProduct) -> {
+            assertThat(analysisService.totalUnitsSoldByProduct(country)).isEqualTo(unitsByProduct);
+            assertThat(analysisService.totalRevenueByProduct(country)).isEqualTo(revenueByCountryByProduct.get(country));
+            unitsByProduct.forEach((product, units) ->
+                    assertThat(analysisService.totalUnitsSoldForProductInCountry(product, country)).isEqualTo(units.longValue()));
+        });
+        analysisService.totalRevenueByCustomer().forEach((customer, revenue) ->
+                assertThat(analysisService.totalRevenueForCustomer(customer)).isEqualByComparingTo(revenue));
+        var revenueByProduct = analysisService.totalRevenueByProduct();
+        analysisService.totalUnitsSoldByProduct().forEach((product, units) -> {
+            assertThat(analysisService.totalUnitsSoldForProduct(product)).isEqualTo(units.longValue());
+            assertThat(analysisService.totalRevenueForProduct(product)).isEqualByComparingTo(revenueByProduct.get(product));
+        });
+    }
+
+    @Test
+    void filteredQueriesOnUnknownValuesAreEmpty() {
+        assertThat(analysisService.totalUnitsSoldByProduct("XX")).isEmpty();
+        assertThat(analysisService.totalRevenueForCustomer("Nobody")).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(analysisService.totalUnitsSoldForSku("none")).isZero();
+        assertThat(analysisService.index()).isSameAs(analysisService.index());
+    }
+
+    private static BigDecimal sum(Collection<BigDecimal> values) {
+        return values.stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
 
 }
\ No newline at end of file
@@ -0,0 +1,68 @@
+package com.example.modernjava.analytics;
+
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.OrderItem;
+import com.example.modernjava.generator.SyntheticOrderGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Objects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OrderIndexTest {
+    private static final SyntheticOrderGenerator GENERATOR = SyntheticOrderGenerator.builder().seed(11)
+            .orderCount(3_000).customers(150).countries(12).products(60).build();
+    private static final List<Order> ORDERS = GENERATOR.stream().toList();
+    private static final OrderIndex INDEX = OrderIndex.of(ORDERS);
+
+    private static String country(Order order) {
+        return order.getCustomer().getBillingAddress().getPostalCountry();
+    }
+
+    @Test
+    void orderPostingsMatchFilters() {
+        assertThat(INDEX.countries()).hasSize(12);
+        for (String country : INDEX.countries()) {
+            assertThat(INDEX.ordersOfCountry(country).toList())
+                    .containsExactlyElementsOf(ORDERS.stream().filter(order -> country.equals(country(order))).toList());
+        }
+        for (String customer : INDEX.customers()) {
+            assertThat(INDEX.ordersOfCustomer(customer).toList()).containsExactlyElementsOf(ORDERS.stream()
+                    .filter(order -> customer.equals(order.getCustomer().getName())).toList());
+        }
+    }
+
+    @Test
+    void itemPostingsMatchFilters() {
+        for (var product : GENERATOR.products().subList(0, 10)) {
+            var expected = ORDERS.stream().flatMap(order -> order.getItems().stream())
+                    .filter(item -> item.getProduct().equals(product)).toList();
+            assertThat(INDEX.itemsOfSku(product.getSku()).toList()).containsExactlyElementsOf(expected);
+            assertThat(INDEX.itemsOfProduct(product.getName()).toList()).containsExactlyElementsOf(expected);
+        }
+    }
+
+    @Test
+    void combinedFiltersIntersectPostings() {
+        var customer = ORDERS.get(0).getCustomer();
+        var country = country(ORDERS.get(0));
+        assertThat(INDEX.ordersOfCustomerInCountry(customer.getName(), country).toList())
+                .containsExactlyElementsOf(INDEX.ordersOfCustomer(customer.getName()).toList());
+        assertThat(INDEX.ordersOfCustomerInCountry(customer.getName(), "XX").toList()).isEmpty();
+
+        var product = GENERATOR.products().get(0).getName();
+        List<OrderItem> expected = ORDERS.stream().filter(order -> country.equals(country(order)))
+                .flatMap(order -> order.getItems().stream())
+                .filter(item -> Objects.equals(item.getProduct().getName(), product)).toList();
+        assertThat(INDEX.itemsOfProductInCountry(product, country).toList()).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void sortedPostingListsAreIntersectedByMerging() {
+        assertThat(OrderIndex.intersect(new int[]{1, 3, 5, 7, 9}, new int[]{0, 3, 4, 9, 10})).containsExactly(3, 9);
+        assertThat(OrderIndex.intersect(new int[]{}, new int[]{1})).isEmpty();
+        long[] items = {1L << 32, 1L << 32 | 1, 2L << 32, 4L << 32 | 3};
+        assertThat(OrderIndex.intersect(items, new int[]{1, 4})).containsExactly(1L << 32, 1L << 32 | 1, 4L << 32 | 3);
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.modernjava.analytics;
+
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.TestDataGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OrderQueryServiceTest {
+    private static final EnumSet<Aggregate> ALL = EnumSet.allOf(Aggregate.class);
+
+    @Test
+    void queriesMatchOrderAnalysisService() throws Exception {
+        var orders = TestDataGenerator.generateTestOrders();
+        try (var service = new OrderQueryService(orders)) {
+            assertThat(service.analyze(ALL).get()).isEqualTo(new OrderAnalysisService(orders).analyze(ALL));
+            assertThat(service.query("revenue", OrderAnalytics::totalRevenue).get())
+                    .isEqualTo(new OrderAnalysisService(orders).totalRevenue());
+            assertThat(service.snapshot().version()).isZero();
+        }
+    }
+
+    @Test
+    void identicalQueriesInFlightAreCoalesced() throws Exception {
+        var executor = Executors.newFixedThreadPool(4);
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var computations = new AtomicInteger();
+        try (var service = new OrderQueryService(TestDataGenerator.generateTestOrders(), OrderAnalysisService::new,
+                executor)) {
+            List<CompletableFuture<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                futures.add(service.query("slow", analytics -> {
+                    computations.incrementAndGet();
+                    started.countDown();
+                    await(release);
+                    return analytics.totalUnitsSold();
+                }));
+                if (i == 0) {
+                    await(started);
+                }
+            }
+            var other = service.query("other", OrderAnalytics::totalOrders);
+            release.countDown();
+            for (var future : futures) {
+                assertThat(future.get()).isEqualTo(futures.get(0).get());
+            }
+            assertThat(other.get()).isEqualTo(TestDataGenerator.generateTestOrders().size());
+            assertThat(computations.get()).isEqualTo(1);
+            assertThat(service.stats()).isEqualTo(new OrderQueryService.Stats(2, 9));
+
+            // Completed queries are no longer in flight, so they are computed again
+            service.query("slow", OrderAnalytics::totalUnitsSold).get();
+            assertThat(service.stats().executed()).isEqualTo(3);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void loadingSwapsSnapshotsWithoutAffectingRunningQueries() throws Exception {
+        var executor = Executors.newFixedThreadPool(2);
+        var orders = TestDataGenerator.generateTestOrders();
+        var release = new CountDownLatch(1);
+        try (var service = new OrderQueryService(orders, OrderAnalysisService::new, executor)) {
+            var running = service.query("orders", analytics -> {
+                await(release);
+                return analytics.totalOrders();
+            });
+            List<Order> doubled = new ArrayList<>(orders);
+            doubled.addAll(orders);
+            var snapshot = service.load(doubled);
+            assertThat(snapshot.version()).isEqualTo(1);
+            assertThat(snapshot.orders()).isEqualTo(doubled);
+
+            // Same key, new snapshot: not coalesced with the query running on the previous snapshot
+            var current = service.query("orders", OrderAnalytics::totalOrders);
+            assertThat(current.get()).isEqualTo(doubled.size());
+            release.countDown();
+            assertThat(running.get()).isEqualTo(orders.size());
+            assertThatThrownBy(() -> snapshot.orders().clear()).isInstanceOf(UnsupportedOperationException.class);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void failuresAndRejectionsCompleteExceptionally() throws Exception {
+        var release = new CountDownLatch(1);
+        var executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1));
+        try (var service = new OrderQueryService(TestDataGenerator.generateTestOrders(), OrderAnalysisService::new,
+                executor)) {
+            var blocked = service.query("blocked", analytics -> {
+                await(release);
+                return 1;
+            });
+            var queued = service.query("queued", analytics -> 2);
+            var rejected = service.query("rejected", analytics -> 3);
+            assertThatThrownBy(rejected::get).isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(RejectedExecutionException.class);
+            release.countDown();
+            assertThat(blocked.get()).isEqualTo(1);
+            assertThat(queued.get()).isEqualTo(2);
+
+            var failed = service.query("failed", analytics -> {
+                throw new IllegalStateException("boom");
+            });
+            assertThatThrownBy(failed::get).isInstanceOf(ExecutionException.class);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void defaultExecutorRunsQueries() throws Exception {
+        var executor = OrderQueryService.defaultExecutor();
+        try {
+            assertThat(executor.submit(() -> 42).get()).isEqualTo(42);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(10, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Timed out");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.modernjava.analytics;
+
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.OrderItem;
+import com.example.modernjava.generator.SyntheticOrderGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class OrderStatisticsTest {
+    private static final List<Order> ORDERS = SyntheticOrderGenerator.builder().seed(9).orderCount(20_000)
+            .customers(500).products(100).build().stream().toList();
+
+    @Test
+    void statisticsMatchSeparateScans() {
+        var statistics = new OrderAnalysisService(ORDERS).statistics();
+        var units = ORDERS.stream().flatMap(order -> order.getItems().stream())
+                .mapToInt(OrderItem::getQuantity).summaryStatistics();
+        assertThat(statistics.unitsPerLine().count()).isEqualTo(units.getCount());
+        assertThat(statistics.unitsPerLine().sum()).isEqualTo((double) units.getSum());
+        assertThat(statistics.unitsPerLine().min()).isEqualTo((double) units.getMin());
+        assertThat(statistics.unitsPerLine().max()).isEqualTo((double) units.getMax());
+        assertThat(statistics.revenuePerOrder().count()).isEqualTo(ORDERS.size());
+        assertThat(statistics.revenuePerOrder().sum())
+                .isCloseTo(new OrderAnalysisService(ORDERS).totalRevenue().doubleValue(), within(0.01));
+        assertThat(statistics.revenuePerLine().sum()).isCloseTo(statistics.revenuePerOrder().sum(), within(0.01));
+
+        var unitsByProduct = new OrderAnalysisService(ORDERS).totalUnitsSoldByProduct();
+        assertThat(statistics.unitsPerLineByProduct().keySet()).isEqualTo(unitsByProduct.keySet());
+        unitsByProduct.forEach((product, total) ->
+                assertThat(statistics.unitsPerLineByProduct().get(product).sum()).isEqualTo((double) total));
+    }
+
+    @Test
+    void percentilesAreWithinTheSketchAccuracy() {
+        var statistics = new OrderAnalysisService(ORDERS).statistics();
+        double[] sorted = ORDERS.stream().flatMap(order -> order.getItems().stream())
+                .mapToDouble(OrderItem::getQuantity).sorted().toArray();
+        for (double quantile : new double[]{0.1, 0.5, 0.9, 0.99}) {
+            double expected = sorted[(int) (quantile * (sorted.length - 1))];
+            assertThat(statistics.unitsPerLine().quantile(quantile)).isCloseTo(expected, within(expected * 0.01));
+        }
+    }
+
+    @Test
+    void parallelStatisticsMatchSequentialStatistics() {
+        var sequential = new OrderAnalysisService(ORDERS).statistics();
+        try (var service = new ParallelOrderAnalysisService(ORDERS, 4, 1_000)) {
+            var parallel = service.statistics();
+            assertThat(parallel.revenuePerOrder().count()).isEqualTo(sequential.revenuePerOrder().count());
+            assertThat(parallel.revenuePerOrder().mean()).isCloseTo(sequential.revenuePerOrder().mean(), within(1e-6));
+            assertThat(parallel.revenuePerLine().variance())
+                    .isCloseTo(sequential.revenuePerLine().variance(), within(1e-3));
+            assertThat(parallel.revenuePerLine().quantile(0.99)).isEqualTo(sequential.revenuePerLine().quantile(0.99));
+            assertThat(parallel.revenuePerLineByProduct().keySet()).isEqualTo(sequential.revenuePerLineByProduct().keySet());
+        }
+    }
+}
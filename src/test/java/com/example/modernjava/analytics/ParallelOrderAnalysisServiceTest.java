@@ -0,0 +1,85 @@
+package com.example.modernjava.analytics;
+
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.TestDataGenerator;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParallelOrderAnalysisServiceTest {
+
+    private static OrderAnalysisService sequentialService;
+    private static ParallelOrderAnalysisService parallelService;
+
+    @BeforeAll
+    static void beforeAll() {
+        // Repeat the test orders so that the parallel streams have something to split
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 2_500; i++) {
+            orders.addAll(TestDataGenerator.generateTestOrders());
+        }
+        sequentialService = new OrderAnalysisService(orders);
+        parallelService = new ParallelOrderAnalysisService(orders, 4, 0);
+    }
+
+    @AfterAll
+    static void afterAll() {
+        parallelService.close();
+    }
+
+    @Test
+    void parallelQueriesMatchSequentialQueries() {
+        assertThat(parallelService.totalOrders()).isEqualTo(sequentialService.totalOrders());
+        assertThat(parallelService.totalUnitsSold()).isEqualTo(sequentialService.totalUnitsSold());
+        assertThat(parallelService.totalUnitsSoldByProduct()).isEqualTo(sequentialService.totalUnitsSoldByProduct());
+        assertThat(parallelService.totalUnitsSoldByCustomerByProduct())
+                .isEqualTo(sequentialService.totalUnitsSoldByCustomerByProduct());
+        assertThat(parallelService.totalUnitsSoldByCountryByProduct())
+                .isEqualTo(sequentialService.totalUnitsSoldByCountryByProduct());
+        assertThat(parallelService.totalRevenue()).isEqualTo(sequentialService.totalRevenue());
+        assertThat(parallelService.totalRevenueByProduct()).isEqualTo(sequentialService.totalRevenueByProduct());
+        assertThat(parallelService.totalRevenueByCustomer()).isEqualTo(sequentialService.totalRevenueByCustomer());
+        assertThat(parallelService.totalRevenueByCustomerByProduct())
+                .isEqualTo(sequentialService.totalRevenueByCustomerByProduct());
+        assertThat(parallelService.totalRevenueByCountry()).isEqualTo(sequentialService.totalRevenueByCountry());
+        assertThat(parallelService.totalRevenueByCountryByProduct())
+                .isEqualTo(sequentialService.totalRevenueByCountryByProduct());
+        assertThat(parallelService.distinctCountries()).containsExactlyElementsOf(sequentialService.distinctCountries());
+        assertThat(parallelService.distinctCustomers()).containsExactlyElementsOf(sequentialService.distinctCustomers());
+    }
+
+    @Test
+    void parallelAnalyzeMatchesSequentialAnalyze() {
+        var aggregates = EnumSet.allOf(Aggregate.class);
+        assertThat(parallelService.analyze(aggregates)).isEqualTo(sequentialService.analyze(aggregates));
+    }
+
+    @Test
+    void parallelEstimatesMatchSequentialEstimates() {
+        assertThat(parallelService.estimateDistinctCountries(12))
+                .isEqualTo(sequentialService.estimateDistinctCountries(12));
+        assertThat(parallelService.estimateDistinctCustomers(12))
+                .isEqualTo(sequentialService.estimateDistinctCustomers(12));
+    }
+
+    @Test
+    void smallOrderCollectionsStaySequential() {
+        var pool = new ForkJoinPool(2);
+        var orders = TestDataGenerator.generateTestOrders();
+        try (var service = new ParallelOrderAnalysisService(orders, pool,
+                ParallelOrderAnalysisService.DEFAULT_SEQUENTIAL_THRESHOLD)) {
+            assertThat(service.totalRevenue()).isEqualTo(new OrderAnalysisService(orders).totalRevenue());
+            assertThat(pool.getStealCount()).isZero();
+        }
+        // The pool was supplied by the caller, so it is still usable
+        assertThat(pool.isShutdown()).isFalse();
+        pool.shutdown();
+    }
+}
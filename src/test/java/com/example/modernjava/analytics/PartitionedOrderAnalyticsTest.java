@@ -0,0 +1,113 @@
+package com.example.modernjava.analytics;
+
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.generator.SyntheticOrderGenerator;
+import com.example.modernjava.io.OrderObjectMappers;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PartitionedOrderAnalyticsTest {
+    private static final EnumSet<Aggregate> ALL = EnumSet.allOf(Aggregate.class);
+    private static final List<Order> ORDERS = SyntheticOrderGenerator.builder().seed(5).orderCount(4_000)
+            .customers(300).countries(25).products(80).altShippingAddressProbability(0.1).build().stream().toList();
+
+    @TempDir
+    Path tempDir;
+
+    private static List<List<Order>> partitions(int count) {
+        List<List<Order>> partitions = new ArrayList<>();
+        int size = (ORDERS.size() + count - 1) / count;
+        for (int start = 0; start < ORDERS.size(); start += size) {
+            partitions.add(ORDERS.subList(start, Math.min(start + size, ORDERS.size())));
+        }
+        return partitions;
+    }
+
+    @Test
+    void mergedPartitionsMatchSinglePassAnalysis() {
+        var expected = new OrderAnalysisService(ORDERS).analyze(ALL);
+        for (int count : new int[]{1, 2, 7, 16}) {
+            var analytics = PartitionedOrderAnalytics.ofPartitions(partitions(count));
+            assertThat(analytics.partitionCount()).isEqualTo(count);
+            assertThat(analytics.analyze(ALL)).isEqualTo(expected);
+            assertThat(analytics.totalRevenueByCountryByProduct()).isEqualTo(expected.totalRevenueByCountryByProduct());
+        }
+    }
+
+    @Test
+    void partialsMergeSketchesAndStatistics() {
+        var analytics = PartitionedOrderAnalytics.ofPartitions(partitions(5));
+        var service = new OrderAnalysisService(ORDERS);
+        assertThat(analytics.estimateDistinctCountries()).isEqualTo(service.estimateDistinctCountries(14));
+        assertThat(analytics.estimateDistinctCustomers()).isEqualTo(service.estimateDistinctCustomers(14));
+
+        var statistics = analytics.merged().quantityStatistics();
+        var expected = ORDERS.stream().flatMap(order -> order.getItems().stream())
+                .mapToInt(item -> item.getQuantity()).summaryStatistics();
+        assertThat(statistics.getCount()).isEqualTo(expected.getCount());
+        assertThat(statistics.getSum()).isEqualTo(expected.getSum());
+        assertThat(statistics.getMin()).isEqualTo(expected.getMin());
+        assertThat(statistics.getMax()).isEqualTo(expected.getMax());
+    }
+
+    @Test
+    void partialsWrittenToFilesMergeLikeInMemoryPartials() throws IOException {
+        var objectMapper = OrderObjectMappers.create();
+        List<Path> files = new ArrayList<>();
+        for (var partition : partitions(4)) {
+            var file = tempDir.resolve("partial-" + files.size() + ".json");
+            PartitionedOrderAnalytics.writePartial(objectMapper, file, partition);
+            files.add(file);
+        }
+        var analytics = PartitionedOrderAnalytics.ofFiles(objectMapper, files);
+        assertThat(analytics.analyze(ALL)).isEqualTo(new OrderAnalysisService(ORDERS).analyze(ALL));
+        assertThat(analytics.estimateDistinctCustomers())
+                .isEqualTo(PartitionedOrderAnalytics.ofPartitions(partitions(4)).estimateDistinctCustomers());
+
+        assertThatThrownBy(() -> PartitionedOrderAnalytics.ofFiles(objectMapper, List.of(tempDir.resolve("missing"))))
+                .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void mergingDoesNotModifyThePartials() {
+        var first = PartialAggregate.of(partitions(2).get(0));
+        var second = PartialAggregate.of(partitions(2).get(1));
+        var firstResults = first.toResults();
+        var analytics = new PartitionedOrderAnalytics(List.of(first, second));
+        assertThat(first.toResults()).isEqualTo(firstResults);
+        assertThat(analytics.totalOrders()).isEqualTo(ORDERS.size());
+        assertThat(new PartitionedOrderAnalytics(List.of()).totalOrders()).isZero();
+    }
+
+    @Test
+    void partialsRoundTripThroughTheirBinaryForm() throws IOException {
+        var partial = PartialAggregate.of(partitions(3).get(1));
+        var bytes = new ByteArrayOutputStream();
+        partial.write(new DataOutputStream(bytes));
+        var read = PartialAggregate.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertThat(read.toResults()).isEqualTo(partial.toResults());
+        assertThat(read.countrySketch().estimate()).isEqualTo(partial.countrySketch().estimate());
+        assertThat(read.quantityStatistics().toString()).isEqualTo(partial.quantityStatistics().toString());
+        var merged = read.merge(PartialAggregate.of(partitions(3).get(2)));
+        assertThat(merged.totalOrders()).isEqualTo(partitions(3).get(1).size() + partitions(3).get(2).size());
+
+        var empty = new ByteArrayOutputStream();
+        new PartialAggregate().write(new DataOutputStream(empty));
+        assertThat(PartialAggregate.read(new DataInputStream(new ByteArrayInputStream(empty.toByteArray())))
+                .toResults()).isEqualTo(new PartialAggregate().toResults());
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.modernjava.analytics;
+
+import com.example.modernjava.domain.Customer;
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.TestDataGenerator;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PrimitiveOrderAnalysisServiceTest {
+
+    private static OrderAnalysisService analysisService;
+    private static PrimitiveOrderAnalysisService primitiveAnalysisService;
+
+    @BeforeAll
+    static void beforeAll() {
+        var orders = TestDataGenerator.generateTestOrders();
+        analysisService = new OrderAnalysisService(orders);
+        primitiveAnalysisService = new PrimitiveOrderAnalysisService(orders);
+    }
+
+    @Test
+    void unitsQueriesMatchOrderAnalysisService() {
+        assertThat(primitiveAnalysisService.totalUnitsSoldByProduct())
+                .isEqualTo(analysisService.totalUnitsSoldByProduct());
+        assertThat(primitiveAnalysisService.totalUnitsSoldByCustomerByProduct())
+                .isEqualTo(analysisService.totalUnitsSoldByCustomerByProduct());
+        assertThat(primitiveAnalysisService.totalUnitsSoldByCountryByProduct())
+                .isEqualTo(analysisService.totalUnitsSoldByCountryByProduct());
+    }
+
+    @Test
+    void analyzeMatchesOrderAnalysisService() {
+        var aggregates = EnumSet.allOf(Aggregate.class);
+        assertThat(primitiveAnalysisService.analyze(aggregates)).isEqualTo(analysisService.analyze(aggregates));
+        var units = EnumSet.of(Aggregate.TOTAL_ORDERS, Aggregate.UNITS_SOLD_BY_COUNTRY_BY_PRODUCT);
+        assertThat(primitiveAnalysisService.analyze(units)).isEqualTo(analysisService.analyze(units));
+    }
+
+    @Test
+    void primitiveViewsHoldTheSameUnits() {
+        Map<String, Integer> byProduct = new HashMap<>();
+        primitiveAnalysisService.unitsSoldByProduct().forEach((product, units) -> byProduct.put(product, (int) units));
+        assertThat(byProduct).isEqualTo(analysisService.totalUnitsSoldByProduct());
+
+        var byCustomerByProduct = primitiveAnalysisService.unitsSoldByCustomerByProduct();
+        analysisService.totalUnitsSoldByCustomerByProduct().forEach((customer, units) -> units.forEach(
+                (product, quantity) -> assertThat(byCustomerByProduct.get(customer, product)).isEqualTo(quantity.longValue())));
+        assertThat(byCustomerByProduct.firstKeys())
+                .containsExactlyInAnyOrderElementsOf(analysisService.totalUnitsSoldByCustomerByProduct().keySet());
+
+        var byCountryByProduct = primitiveAnalysisService.unitsSoldByCountryByProduct();
+        analysisService.totalUnitsSoldByCountryByProduct().forEach((country, units) -> units.forEach(
+                (product, quantity) -> assertThat(byCountryByProduct.get(country, product)).isEqualTo(quantity.longValue())));
+    }
+
+    @Test
+    void ordersWithoutItemsStillCreateGroups() {
+        List<Order> orders = new ArrayList<>(TestDataGenerator.generateTestOrders());
+        var template = orders.get(0).getCustomer();
+        var customer = new Customer("No Items", template.getBillingAddress(), template.getShippingAddress());
+        orders.add(new Order(customer, null, List.of(), null));
+        var expected = new OrderAnalysisService(orders);
+        var primitive = new PrimitiveOrderAnalysisService(orders);
+        assertThat(primitive.totalUnitsSoldByCustomerByProduct())
+                .isEqualTo(expected.totalUnitsSoldByCustomerByProduct())
+                .containsEntry("No Items", Map.of());
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.modernjava.analytics;
+
+import com.example.modernjava.domain.OrderItem;
+import com.example.modernjava.domain.Product;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RevenueAccumulatorTest {
+
+    private static OrderItem item(int quantity, String price, String discount) {
+        return OrderItem.builder().product(Product.builder().name("Test").price(new BigDecimal(price)).build())
+                .quantity(quantity).discount(discount == null ? null : new BigDecimal(discount)).build();
+    }
+
+    private static BigDecimal expected(OrderItem item) {
+        var discount = item.getDiscount() == null ? BigDecimal.ZERO : item.getDiscount();
+        return BigDecimal.valueOf(item.getQuantity()).multiply(item.getProduct().getPrice())
+                .multiply(BigDecimal.ONE.subtract(discount));
+    }
+
+    @Test
+    void lineRevenueIsExact() {
+        var accumulator = new RevenueAccumulator();
+        accumulator.add(item(44, "11.61", "0.10"));
+        assertThat(accumulator.total()).isEqualByComparingTo("459.756");
+        assertThat(accumulator.total().scale()).isEqualTo(RevenueAccumulator.SCALE);
+    }
+
+    @Test
+    void manySmallLinesDoNotLoseCents() {
+        // 0.1 cannot be represented exactly as a double, so summing doubles drifts
+        var accumulator = new RevenueAccumulator();
+        double doubleSum = 0;
+        for (int i = 0; i < 1_000_000; i++) {
+            accumulator.add(item(1, "0.10", "0.00"));
+            doubleSum += 0.1;
+        }
+        assertThat(accumulator.total()).isEqualByComparingTo("100000");
+        assertThat(BigDecimal.valueOf(doubleSum)).isNotEqualTo(new BigDecimal("100000.0"));
+    }
+
+    @Test
+    void valuesOutsideTheFastPathFallBackToBigDecimal() {
+        var items = Stream.of(item(3, "1.23456789", "0.125"), item(7, "12345678901234567890.12", "0.05"),
+                item(2, "4.99", null), item(Integer.MAX_VALUE, "999999999.99", "0.01")).toList();
+        var accumulator = new RevenueAccumulator();
+        items.forEach(accumulator::add);
+        assertThat(accumulator.total()).isEqualByComparingTo(items.stream().map(RevenueAccumulatorTest::expected)
+                .reduce(BigDecimal.ZERO, BigDecimal::add));
+    }
+
+    @Test
+    void longOverflowSpillsIntoBigDecimal() {
+        var accumulator = new RevenueAccumulator();
+        var expected = BigDecimal.ZERO;
+        for (int i = 0; i < 10_000; i++) {
+            var item = item(Integer.MAX_VALUE, "99999.99", "0.00");
+            accumulator.add(item);
+            expected = expected.add(expected(item));
+        }
+        assertThat(accumulator.total()).isEqualByComparingTo(expected);
+    }
+
+    @Test
+    void scaledRevenueRoundsAndClampsOutsideTheFastPath() {
+        assertThat(RevenueAccumulator.scaledRevenue(item(44, "11.61", "0.10"))).isEqualTo(459_756_000L);
+        assertThat(RevenueAccumulator.scaledRevenue(item(2, "4.99", null))).isEqualTo(9_980_000L);
+        assertThat(RevenueAccumulator.scaledRevenue(item(3, "1.23456789", "0.125"))).isEqualTo(3_240_741L);
+        assertThat(RevenueAccumulator.scaledRevenue(item(7, "12345678901234567890.12", "0.05"))).isEqualTo(Long.MAX_VALUE);
+        assertThat(RevenueAccumulator.scaledRevenue(item(-7, "12345678901234567890.12", "0.05"))).isEqualTo(Long.MIN_VALUE);
+    }
+
+    @Test
+    void subtractAndCombine() {
+        var first = new RevenueAccumulator();
+        var second = new RevenueAccumulator();
+        first.add(item(10, "2.50", "0.10"));
+        second.add(item(4, "1.99", "0.05"));
+        second.add(item(3, "1.23456789", "0.125"));
+        first.combine(second);
+        first.subtract(item(10, "2.50", "0.10"));
+        assertThat(first.total()).isEqualByComparingTo(second.total());
+    }
+}
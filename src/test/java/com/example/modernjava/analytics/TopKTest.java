@@ -0,0 +1,47 @@
+package com.example.modernjava.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TopKTest {
+
+    @Test
+    void collectorKeepsLargestElementsInDescendingOrder() {
+        var random = new SplittableRandom(1);
+        var values = IntStream.range(0, 10_000).map(i -> random.nextInt()).boxed().toList();
+        var expected = values.stream().sorted(Comparator.reverseOrder()).limit(10).toList();
+
+        assertThat(values.stream().collect(TopK.toTopK(10, Comparator.<Integer>naturalOrder()))).isEqualTo(expected);
+        assertThat(values.parallelStream().collect(TopK.toTopK(10, Comparator.<Integer>naturalOrder())))
+                .isEqualTo(expected);
+    }
+
+    @Test
+    void topBreaksTiesByKey() {
+        Map<String, Integer> values = new HashMap<>();
+        values.put("b", 2);
+        values.put("a", 2);
+        values.put(null, 2);
+        values.put("c", 1);
+        values.put("d", 3);
+
+        assertThat(TopK.top(values, 3)).isEqualTo(List.of(Map.entry("d", 3), Map.entry("a", 2), Map.entry("b", 2)));
+        assertThat(TopK.top(values, 10)).hasSize(5);
+        assertThat(TopK.top(values, 0)).isEmpty();
+    }
+
+    @Test
+    void negativeKIsRejected() {
+        assertThatThrownBy(() -> TopK.toTopK(-1, Comparator.<Integer>naturalOrder()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
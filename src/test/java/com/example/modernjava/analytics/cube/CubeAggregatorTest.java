@@ -0,0 +1,113 @@
+package com.example.modernjava.analytics.cube;
+
+import com.example.modernjava.analytics.OrderAnalysisService;
+import com.example.modernjava.analytics.ParallelOrderAnalysisService;
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.TestDataGenerator;
+import com.example.modernjava.generator.SyntheticOrderGenerator;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static com.example.modernjava.analytics.cube.Dimension.BILLING_COUNTRY;
+import static com.example.modernjava.analytics.cube.Dimension.CUSTOMER;
+import static com.example.modernjava.analytics.cube.Dimension.PRODUCT;
+import static com.example.modernjava.analytics.cube.Dimension.SHIPPING_COUNTRY;
+import static com.example.modernjava.analytics.cube.Dimension.SKU;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CubeAggregatorTest {
+
+    private static final EnumSet<Measure> ALL = EnumSet.allOf(Measure.class);
+
+    private static List<Order> orders;
+    private static OrderAnalysisService analysisService;
+
+    @BeforeAll
+    static void beforeAll() {
+        orders = TestDataGenerator.generateTestOrders();
+        analysisService = new OrderAnalysisService(orders);
+    }
+
+    @Test
+    void groupByMatchesHandWrittenGroupings() {
+        var cube = analysisService.cube(CubeQuery.groupBy(ALL, CUSTOMER, PRODUCT));
+        Map<String, Map<String, Integer>> units = new HashMap<>();
+        Map<String, Map<String, BigDecimal>> revenue = new HashMap<>();
+        for (Cube.Row row : cube.rows()) {
+            units.computeIfAbsent(row.value(CUSTOMER), k -> new HashMap<>()).put(row.value(PRODUCT), (int) row.units());
+            revenue.computeIfAbsent(row.value(CUSTOMER), k -> new HashMap<>()).put(row.value(PRODUCT), row.revenue());
+        }
+        assertThat(units).isEqualTo(analysisService.totalUnitsSoldByCustomerByProduct());
+        assertThat(revenue).isEqualTo(analysisService.totalRevenueByCustomerByProduct());
+    }
+
+    @Test
+    void rollupComputesSubtotalsAndGrandTotalInOnePass() {
+        var cube = analysisService.cube(CubeQuery.rollup(ALL, BILLING_COUNTRY, PRODUCT));
+        Map<String, Map<String, BigDecimal>> byCountryByProduct = new HashMap<>();
+        cube.rows(List.of(BILLING_COUNTRY, PRODUCT)).forEach(row -> byCountryByProduct
+                .computeIfAbsent(row.value(BILLING_COUNTRY), k -> new HashMap<>()).put(row.value(PRODUCT), row.revenue()));
+        assertThat(byCountryByProduct).isEqualTo(analysisService.totalRevenueByCountryByProduct());
+        assertThat(cube.rows(List.of(BILLING_COUNTRY)).stream()
+                .collect(Collectors.toMap(row -> row.value(BILLING_COUNTRY), Cube.Row::revenue)))
+                .isEqualTo(analysisService.totalRevenueByCountry());
+
+        var total = cube.grandTotal().orElseThrow();
+        assertThat(total.revenue()).isEqualTo(analysisService.totalRevenue());
+        assertThat(total.units()).isEqualTo(analysisService.totalUnitsSold());
+        assertThat(total.orders()).isEqualTo(analysisService.totalOrders());
+        assertThat(cube.rows()).hasSize(byCountryByProduct.values().stream().mapToInt(Map::size).sum()
+                + byCountryByProduct.size() + 1);
+    }
+
+    @Test
+    void cubeSubtotalsAddUpToTheGrandTotal() {
+        var cube = analysisService.cube(CubeQuery.cube(EnumSet.of(Measure.UNITS), CUSTOMER, SKU));
+        long total = cube.grandTotal().orElseThrow().units();
+        assertThat(cube.rows(List.of(CUSTOMER)).stream().mapToLong(Cube.Row::units).sum()).isEqualTo(total);
+        assertThat(cube.rows(List.of(SKU)).stream().mapToLong(Cube.Row::units).sum()).isEqualTo(total);
+        assertThat(cube.rows(List.of(CUSTOMER, SKU)).stream().mapToLong(Cube.Row::units).sum()).isEqualTo(total);
+    }
+
+    @Test
+    void ordersAreCountedOncePerGroup() {
+        var cube = analysisService.cube(CubeQuery.groupBy(EnumSet.of(Measure.ORDER_COUNT), PRODUCT));
+        for (Cube.Row row : cube.rows()) {
+            long expected = orders.stream().filter(order -> order.getItems().stream()
+                    .anyMatch(item -> item.getProduct().getName().equals(row.value(PRODUCT)))).count();
+            assertThat(row.orders()).isEqualTo(expected);
+            assertThat(row.units()).isZero();
+            assertThat(row.revenue()).isEqualTo(BigDecimal.ZERO);
+        }
+    }
+
+    @Test
+    void rowsCanBeLookedUpByTheirValues() {
+        var cube = analysisService.cube(CubeQuery.rollup(ALL, SHIPPING_COUNTRY, CUSTOMER));
+        var row = cube.rows(List.of(SHIPPING_COUNTRY, CUSTOMER)).get(0);
+        assertThat(cube.row(List.of(SHIPPING_COUNTRY, CUSTOMER), row.value(SHIPPING_COUNTRY), row.value(CUSTOMER)))
+                .isEqualTo(Optional.of(row));
+        assertThat(cube.row(List.of(SHIPPING_COUNTRY), "nowhere")).isEqualTo(Optional.empty());
+        assertThatThrownBy(() -> cube.grandTotal().orElseThrow().value(CUSTOMER))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void parallelCubeEqualsSequentialCube() {
+        var syntheticOrders = SyntheticOrderGenerator.builder().seed(3).orderCount(20_000).build().stream().toList();
+        var query = CubeQuery.cube(ALL, BILLING_COUNTRY, CUSTOMER, PRODUCT);
+        var sequential = new OrderAnalysisService(syntheticOrders).cube(query);
+        try (var parallel = new ParallelOrderAnalysisService(syntheticOrders, 4, 1_000)) {
+            assertThat(parallel.cube(query)).isEqualTo(sequential);
+        }
+    }
+}
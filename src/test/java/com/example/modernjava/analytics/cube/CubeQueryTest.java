@@ -0,0 +1,55 @@
+package com.example.modernjava.analytics.cube;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.List;
+
+import static com.example.modernjava.analytics.cube.Dimension.BILLING_COUNTRY;
+import static com.example.modernjava.analytics.cube.Dimension.CUSTOMER;
+import static com.example.modernjava.analytics.cube.Dimension.PRODUCT;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CubeQueryTest {
+
+    private static final EnumSet<Measure> UNITS = EnumSet.of(Measure.UNITS);
+
+    @Test
+    void groupByHasOneGroupingSet() {
+        assertThat(CubeQuery.groupBy(UNITS, CUSTOMER, PRODUCT).groupingSets())
+                .containsExactly(List.of(CUSTOMER, PRODUCT));
+        assertThat(CubeQuery.groupBy(UNITS).groupingSets()).containsExactly(List.of());
+    }
+
+    @Test
+    void rollupHasEveryPrefix() {
+        assertThat(CubeQuery.rollup(UNITS, BILLING_COUNTRY, CUSTOMER, PRODUCT).groupingSets()).containsExactly(
+                List.of(BILLING_COUNTRY, CUSTOMER, PRODUCT),
+                List.of(BILLING_COUNTRY, CUSTOMER),
+                List.of(BILLING_COUNTRY),
+                List.of());
+    }
+
+    @Test
+    void cubeHasEverySubset() {
+        assertThat(CubeQuery.cube(UNITS, BILLING_COUNTRY, CUSTOMER, PRODUCT).groupingSets()).containsExactly(
+                List.of(BILLING_COUNTRY, CUSTOMER, PRODUCT),
+                List.of(BILLING_COUNTRY, CUSTOMER),
+                List.of(BILLING_COUNTRY, PRODUCT),
+                List.of(CUSTOMER, PRODUCT),
+                List.of(BILLING_COUNTRY),
+                List.of(CUSTOMER),
+                List.of(PRODUCT),
+                List.of());
+    }
+
+    @Test
+    void invalidGroupingSetsAreRejected() {
+        assertThatThrownBy(() -> new CubeQuery(List.of(), UNITS)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> CubeQuery.groupBy(UNITS, PRODUCT, PRODUCT))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new CubeQuery(List.of(List.of(CUSTOMER, PRODUCT), List.of(PRODUCT, CUSTOMER)), UNITS))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.modernjava.analytics.primitive;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompositeKeyLongMapTest {
+
+    @Test
+    void valuesAreSummedPerPairOfKeys() {
+        var map = new CompositeKeyLongMap<String, String>();
+        map.addTo("alice", "apple", 2);
+        map.addTo("alice", "pear", 1);
+        map.addTo("bob", "apple", 5);
+        map.addTo("alice", "apple", 3);
+        assertThat(map.get("alice", "apple")).isEqualTo(5);
+        assertThat(map.get("alice", "pear")).isEqualTo(1);
+        assertThat(map.get("bob", "pear")).isZero();
+        assertThat(map.containsKey("bob", "apple")).isTrue();
+        assertThat(map.containsKey("bob", "pear")).isFalse();
+        assertThat(map.containsKey("carol", "apple")).isFalse();
+        assertThat(map.size()).isEqualTo(3);
+        assertThat(map.firstKeys()).containsExactly("alice", "bob");
+
+        Map<String, Long> alice = new HashMap<>();
+        map.forEach("alice", alice::put);
+        assertThat(alice).isEqualTo(Map.of("apple", 5L, "pear", 1L));
+        Map<String, Map<String, Long>> all = new HashMap<>();
+        map.forEach((first, second, value) -> all.computeIfAbsent(first, k -> new HashMap<>()).put(second, value));
+        assertThat(all).isEqualTo(Map.of("alice", Map.of("apple", 5L, "pear", 1L), "bob", Map.of("apple", 5L)));
+    }
+
+    @Test
+    void firstKeysCanBeRegisteredWithoutValues() {
+        var map = new CompositeKeyLongMap<String, String>();
+        int id = map.firstKeyId("empty");
+        assertThat(map.firstKeyId("empty")).isEqualTo(id);
+        assertThat(map.containsFirstKey("empty")).isTrue();
+        assertThat(map.firstKeys()).containsExactly("empty");
+        assertThat(map.isEmpty()).isTrue();
+    }
+
+    @Test
+    void valuesCanBeAddedByIdAndKeysMayBeNull() {
+        var map = new CompositeKeyLongMap<String, String>();
+        int first = map.firstKeyId(null);
+        int second = map.secondKeyId("apple");
+        map.addTo(first, second, 4);
+        map.addTo(first, second, 4);
+        assertThat(map.get(null, "apple")).isEqualTo(8);
+        assertThatThrownBy(() -> map.addTo(first + 1, second, 1)).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+}
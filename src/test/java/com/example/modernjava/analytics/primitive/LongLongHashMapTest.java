@@ -0,0 +1,51 @@
+package com.example.modernjava.analytics.primitive;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LongLongHashMapTest {
+
+    @Test
+    void addToSumsValuesPerKey() {
+        var map = new LongLongHashMap();
+        map.addTo(7, 1);
+        map.addTo(7, 2);
+        map.addTo(-3, 4);
+        assertThat(map.get(7)).isEqualTo(3);
+        assertThat(map.get(-3)).isEqualTo(4);
+        assertThat(map.get(8)).isZero();
+        assertThat(map.getOrDefault(8, -1)).isEqualTo(-1);
+        assertThat(map.size()).isEqualTo(2);
+    }
+
+    @Test
+    void zeroKeyIsDistinctFromAbsentKeys() {
+        var map = new LongLongHashMap();
+        assertThat(map.containsKey(0)).isFalse();
+        map.put(0, 11);
+        assertThat(map.containsKey(0)).isTrue();
+        assertThat(map.get(0)).isEqualTo(11);
+        assertThat(map.size()).isEqualTo(1);
+    }
+
+    @Test
+    void matchesHashMapWhileGrowing() {
+        var random = new Random(7);
+        var map = new LongLongHashMap();
+        Map<Long, Long> expected = new HashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            long key = (long) random.nextInt(100) << 32 | random.nextInt(200);
+            map.addTo(key, 1);
+            expected.merge(key, 1L, Long::sum);
+        }
+        Map<Long, Long> actual = new HashMap<>();
+        map.forEach(actual::put);
+        assertThat(actual).isEqualTo(expected);
+        assertThat(map.size()).isEqualTo(expected.size());
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.modernjava.analytics.primitive;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ObjectLongHashMapTest {
+
+    @Test
+    void addToSumsValuesPerKey() {
+        var map = new ObjectLongHashMap<String>();
+        assertThat(map.addTo("a", 2)).isEqualTo(2);
+        assertThat(map.addTo("b", 5)).isEqualTo(5);
+        assertThat(map.addTo("a", 3)).isEqualTo(5);
+        assertThat(map.get("a")).isEqualTo(5);
+        assertThat(map.get("b")).isEqualTo(5);
+        assertThat(map.get("c")).isZero();
+        assertThat(map.getOrDefault("c", -1)).isEqualTo(-1);
+        assertThat(map.containsKey("a")).isTrue();
+        assertThat(map.containsKey("c")).isFalse();
+        assertThat(map.size()).isEqualTo(2);
+    }
+
+    @Test
+    void nullKeyIsSupported() {
+        var map = new ObjectLongHashMap<String>();
+        assertThat(map.containsKey(null)).isFalse();
+        map.addTo(null, 4);
+        map.addTo(null, 1);
+        assertThat(map.get(null)).isEqualTo(5);
+        assertThat(map.size()).isEqualTo(1);
+        Map<String, Long> entries = new HashMap<>();
+        map.forEach(entries::put);
+        assertThat(entries).containsEntry(null, 5L);
+    }
+
+    @Test
+    void getOrPutInternsKeysAsDenseIds() {
+        var ids = new ObjectLongHashMap<String>();
+        assertThat(ids.getOrPut("x", ids.size())).isZero();
+        assertThat(ids.getOrPut("y", ids.size())).isEqualTo(1);
+        assertThat(ids.getOrPut("x", ids.size())).isZero();
+        assertThat(ids.size()).isEqualTo(2);
+    }
+
+    @Test
+    void matchesHashMapWhileGrowing() {
+        var random = new Random(42);
+        var map = new ObjectLongHashMap<String>();
+        Map<String, Long> expected = new HashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            String key = "key" + random.nextInt(20_000);
+            long delta = random.nextInt(100) - 50;
+            map.addTo(key, delta);
+            expected.merge(key, delta, Long::sum);
+        }
+        map.put("replaced", 7);
+        map.put("replaced", 9);
+        expected.put("replaced", 9L);
+        Map<String, Long> actual = new HashMap<>();
+        map.forEach(actual::put);
+        assertThat(actual).isEqualTo(expected);
+        assertThat(map.size()).isEqualTo(expected.size());
+    }
+}
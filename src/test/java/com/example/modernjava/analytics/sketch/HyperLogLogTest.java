@@ -0,0 +1,68 @@
+package com.example.modernjava.analytics.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HyperLogLogTest {
+
+    @Test
+    void smallCardinalitiesAreNearlyExact() {
+        var sketch = new HyperLogLog();
+        IntStream.range(0, 100).forEach(i -> sketch.add("customer-" + i));
+        IntStream.range(0, 100).forEach(i -> sketch.add("customer-" + i));
+        sketch.add(null);
+
+        assertThat(sketch.estimate()).isBetween(99L, 103L);
+        assertThat(new HyperLogLog().estimate()).isZero();
+    }
+
+    @Test
+    void largeCardinalitiesAreWithinErrorBound() {
+        for (int precision : new int[]{10, 14}) {
+            var sketch = IntStream.range(0, 1_000_000).mapToObj(i -> "customer-" + i)
+                    .collect(HyperLogLog.toHyperLogLog(precision, value -> value));
+            double error = Math.abs(sketch.estimate() - 1_000_000) / 1_000_000.0;
+            // Four standard errors
+            assertThat(error).isLessThan(4 * sketch.relativeStandardError());
+        }
+    }
+
+    @Test
+    void mergeEqualsSingleSketch() {
+        var all = new HyperLogLog(12);
+        var left = new HyperLogLog(12);
+        var right = new HyperLogLog(12);
+        IntStream.range(0, 50_000).forEach(i -> {
+            all.add("v" + i);
+            (i % 3 == 0 ? left : right).add("v" + i);
+        });
+
+        assertThat(left.merge(right)).isEqualTo(all);
+        assertThat(IntStream.range(0, 50_000).parallel().mapToObj(i -> "v" + i)
+                .collect(HyperLogLog.toHyperLogLog(12, value -> value))).isEqualTo(all);
+    }
+
+    @Test
+    void sketchesRoundTripThroughBytes() {
+        var sketch = new HyperLogLog(8);
+        IntStream.range(0, 1_000).forEach(i -> sketch.add(String.valueOf(i)));
+
+        var copy = HyperLogLog.fromByteArray(sketch.toByteArray());
+        assertThat(copy).isEqualTo(sketch);
+        assertThat(copy.estimate()).isEqualTo(sketch.estimate());
+    }
+
+    @Test
+    void invalidArgumentsAreRejected() {
+        assertThatThrownBy(() -> new HyperLogLog(3)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new HyperLogLog(19)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new HyperLogLog(10).merge(new HyperLogLog(11)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> HyperLogLog.fromByteArray(new byte[]{4, 0}))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.modernjava.analytics.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class QuantileSketchTest {
+    private static final double[] QUANTILES = {0, 0.01, 0.25, 0.5, 0.75, 0.9, 0.99, 0.999, 1};
+
+    private static void assertWithinRelativeAccuracy(QuantileSketch sketch, double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (double quantile : QUANTILES) {
+            double expected = sorted[(int) (quantile * (sorted.length - 1))];
+            assertThat(sketch.quantile(quantile))
+                    .isCloseTo(expected, within(Math.abs(expected) * sketch.relativeAccuracy() + 1e-9));
+        }
+    }
+
+    @Test
+    void quantilesOfSkewedValuesAreWithinRelativeAccuracy() {
+        var random = new SplittableRandom(1);
+        double[] values = random.doubles(100_000).map(u -> Math.exp(10 * u)).toArray();
+        var sketch = new QuantileSketch();
+        Arrays.stream(values).forEach(sketch::add);
+        assertThat(sketch.count()).isEqualTo(values.length);
+        assertWithinRelativeAccuracy(sketch, values);
+    }
+
+    @Test
+    void negativeAndZeroValuesAreSupported() {
+        var random = new SplittableRandom(2);
+        double[] values = random.doubles(20_000, -1_000, 1_000).map(v -> Math.abs(v) < 100 ? 0 : v).toArray();
+        var sketch = new QuantileSketch(0.02);
+        Arrays.stream(values).forEach(sketch::add);
+        assertWithinRelativeAccuracy(sketch, values);
+    }
+
+    @Test
+    void mergedSketchesMatchASingleSketch() {
+        var random = new SplittableRandom(3);
+        double[] values = random.doubles(30_000, 0.01, 1e6).toArray();
+        var single = new QuantileSketch();
+        var first = new QuantileSketch();
+        var second = new QuantileSketch();
+        for (int i = 0; i < values.length; i++) {
+            single.add(values[i]);
+            (i % 3 == 0 ? first : second).add(values[i]);
+        }
+        var merged = second.merge(first);
+        for (double quantile : QUANTILES) {
+            assertThat(merged.quantile(quantile)).isEqualTo(single.quantile(quantile));
+        }
+        assertThat(merged.count()).isEqualTo(single.count());
+    }
+
+    @Test
+    void invalidArgumentsAreRejected() {
+        assertThat(new QuantileSketch().quantile(0.5)).isNaN();
+        assertThatThrownBy(() -> new QuantileSketch(0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new QuantileSketch().add(Double.NaN)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new QuantileSketch().quantile(1.5)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new QuantileSketch(0.01).merge(new QuantileSketch(0.02)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.modernjava.analytics.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SpaceSavingTest {
+
+    @Test
+    void exactWhileWithinCapacity() {
+        var sketch = new SpaceSaving<String>(10);
+        sketch.add("a", 5);
+        sketch.add("b", 3);
+        sketch.add("a");
+
+        assertThat(sketch.top(10)).containsExactly(new SpaceSaving.Estimate<>("a", 6, 0),
+                new SpaceSaving.Estimate<>("b", 3, 0));
+        assertThat(sketch.totalWeight()).isEqualTo(9);
+    }
+
+    @Test
+    void heavyHittersAreFoundInSkewedStream() {
+        var random = new SplittableRandom(3);
+        var sketch = new SpaceSaving<Integer>(50);
+        Map<Integer, Long> exact = new HashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            // Keys 0..4 are heavy, the rest are spread over 10,000 keys
+            int key = random.nextInt(4) == 0 ? random.nextInt(5) : 5 + random.nextInt(10_000);
+            sketch.add(key);
+            exact.merge(key, 1L, Long::sum);
+        }
+
+        var top = sketch.top(5);
+        assertThat(top.stream().map(SpaceSaving.Estimate::key).toList()).containsExactlyInAnyOrder(0, 1, 2, 3, 4);
+        long bound = sketch.totalWeight() / sketch.capacity();
+        top.forEach(estimate -> {
+            long actual = exact.get(estimate.key());
+            assertThat(estimate.count()).isGreaterThanOrEqualTo(actual);
+            assertThat(estimate.guaranteedCount()).isLessThanOrEqualTo(actual);
+            assertThat(estimate.error()).isLessThanOrEqualTo(bound);
+        });
+    }
+
+    @Test
+    void mergedSketchesFindHeavyHittersOfBothStreams() {
+        var left = new SpaceSaving<String>(3);
+        var right = new SpaceSaving<String>(3);
+        for (int i = 0; i < 100; i++) {
+            left.add("x");
+            right.add("y");
+            left.add("noise" + i);
+            right.add("noise" + (1_000 + i));
+        }
+        right.add("x", 50);
+
+        var merged = left.merge(right);
+        assertThat(merged.totalWeight()).isEqualTo(450);
+        assertThat(merged.top(2).stream().map(SpaceSaving.Estimate::key).toList()).containsExactly("x", "y");
+        assertThat(merged.top(1).get(0).guaranteedCount()).isLessThanOrEqualTo(150);
+    }
+
+    @Test
+    void invalidArgumentsAreRejected() {
+        assertThatThrownBy(() -> new SpaceSaving<String>(0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new SpaceSaving<String>(1).add("a", -1)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
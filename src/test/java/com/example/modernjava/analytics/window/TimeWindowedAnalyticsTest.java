@@ -0,0 +1,120 @@
+package com.example.modernjava.analytics.window;
+
+import com.example.modernjava.analytics.OrderAnalysisService;
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.TestDataGenerator;
+import com.example.modernjava.generator.SyntheticOrderGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TimeWindowedAnalyticsTest {
+    private static final Instant START = Instant.parse("2022-11-01T00:00:00Z");
+
+    private static final List<Order> ORDERS = SyntheticOrderGenerator.builder().seed(3).orderCount(2_000)
+            .customers(100).countries(10).products(40).orderedAt(START.plusSeconds(17), Duration.ofSeconds(45))
+            .build().stream().toList();
+
+    private static TimeWindowedAnalytics analytics() {
+        var analytics = new TimeWindowedAnalytics(Duration.ofMinutes(5), Duration.ofDays(7));
+        analytics.addOrders(ORDERS);
+        return analytics;
+    }
+
+    private static List<Order> placedBetween(Instant from, Instant to) {
+        return ORDERS.stream().filter(order -> !order.getOrderedAt().isBefore(from)
+                && order.getOrderedAt().isBefore(to)).toList();
+    }
+
+    private static void assertMatches(TimeWindowedAnalytics.Window window, List<Order> orders) {
+        var service = new OrderAnalysisService(orders);
+        assertThat(window.orders()).isEqualTo(orders.size());
+        assertThat(window.unitsSold()).isEqualTo(service.totalUnitsSold());
+        assertThat(window.revenue()).isEqualByComparingTo(service.totalRevenue());
+        assertThat(window.byProduct().keySet()).isEqualTo(service.totalUnitsSoldByProduct().keySet());
+        service.totalUnitsSoldByProduct().forEach((product, units) ->
+                assertThat(window.byProduct().get(product).units()).isEqualTo(units.longValue()));
+        assertRevenue(window.byProduct(), service.totalRevenueByProduct());
+        assertRevenue(window.byCustomer(), service.totalRevenueByCustomer());
+        assertRevenue(window.byCountry(), service.totalRevenueByCountry());
+    }
+
+    private static void assertRevenue(Map<String, TimeWindowedAnalytics.Totals> actual, Map<String, BigDecimal> expected) {
+        assertThat(actual.keySet()).isEqualTo(expected.keySet());
+        expected.forEach((key, revenue) -> assertThat(actual.get(key).revenue()).isEqualByComparingTo(revenue));
+    }
+
+    @Test
+    void windowCoveringAllOrdersMatchesFullAnalysis() {
+        var window = analytics().window(START, START.plus(Duration.ofDays(2)));
+        assertThat(window.from()).isEqualTo(START);
+        assertMatches(window, ORDERS);
+    }
+
+    @Test
+    void windowsAreWidenedToBucketBoundaries() {
+        var from = START.plus(Duration.ofMinutes(62));
+        var to = START.plus(Duration.ofMinutes(121));
+        var window = analytics().window(from, to);
+        assertThat(window.from()).isEqualTo(START.plus(Duration.ofMinutes(60)));
+        assertThat(window.to()).isEqualTo(START.plus(Duration.ofMinutes(125)));
+        assertMatches(window, placedBetween(window.from(), window.to()));
+    }
+
+    @Test
+    void slidingWindowCoversTheLastPeriod() {
+        var now = START.plus(Duration.ofHours(10));
+        var window = analytics().last(Duration.ofHours(1), now);
+        assertThat(window.from()).isEqualTo(START.plus(Duration.ofHours(9)));
+        assertThat(window.to()).isEqualTo(now);
+        assertMatches(window, placedBetween(window.from(), now));
+        assertThat(window.orders()).isEqualTo(80);
+    }
+
+    @Test
+    void tumblingWindowsPartitionTheOrders() {
+        var windows = analytics().tumbling(Duration.ofHours(1), START, START.plus(Duration.ofHours(26)));
+        assertThat(windows).hasSize(26);
+        for (var window : windows) {
+            assertThat(Duration.between(window.from(), window.to())).isEqualTo(Duration.ofHours(1));
+            assertMatches(window, placedBetween(window.from(), window.to()));
+        }
+        assertThat(windows.stream().mapToLong(TimeWindowedAnalytics.Window::orders).sum()).isEqualTo(ORDERS.size());
+        assertThat(windows.get(25).orders()).isZero();
+    }
+
+    @Test
+    void oldBucketsAreEvictedAndLateOrdersDropped() {
+        var analytics = new TimeWindowedAnalytics(Duration.ofMinutes(5), Duration.ofHours(1));
+        analytics.addOrders(ORDERS);
+        assertThat(analytics.bucketCount()).isLessThanOrEqualTo(12);
+        assertThat(analytics.lateOrders()).isZero();
+
+        assertThat(analytics.addOrder(ORDERS.get(0))).isFalse();
+        assertThat(analytics.lateOrders()).isEqualTo(1);
+        var window = analytics.last(Duration.ofMinutes(30), ORDERS.get(ORDERS.size() - 1).getOrderedAt());
+        assertMatches(window, placedBetween(window.from(), window.to()));
+    }
+
+    @Test
+    void invalidArgumentsAreRejected() {
+        assertThatThrownBy(() -> new TimeWindowedAnalytics(Duration.ZERO, Duration.ofHours(1)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new TimeWindowedAnalytics(Duration.ofHours(2), Duration.ofHours(1)))
+                .isInstanceOf(IllegalArgumentException.class);
+        var analytics = analytics();
+        assertThatThrownBy(() -> analytics.addOrder(TestDataGenerator.generateTestOrders().get(0)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> analytics.tumbling(Duration.ofMinutes(7), START, START.plusSeconds(3_600)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> analytics.window(START.plusSeconds(1), START))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
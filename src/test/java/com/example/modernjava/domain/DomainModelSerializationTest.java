@@ -2,6 +2,7 @@ package com.example.modernjava.domain;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.example.modernjava.io.OrderObjectMappers;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -9,6 +10,7 @@ import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Instant;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -21,7 +23,7 @@ public class DomainModelSerializationTest {
 
     @BeforeAll
     static void beforeAll() {
-        objectMapper = new ObjectMapper();
+        objectMapper = OrderObjectMappers.create();
     }
 
     @Test
@@ -53,4 +55,13 @@ public class DomainModelSerializationTest {
         });
         assertThat(deserializedOrders).containsExactlyInAnyOrderElementsOf(orders);
     }
+
+    @Test
+    void orderTimeSerialization() throws JsonProcessingException {
+        var testOrder = TestDataGenerator.generateTestOrders().get(0);
+        var order = new Order(testOrder.getCustomer(), null, testOrder.getItems(), Instant.parse("2022-11-01T09:30:00.5Z"));
+        String orderJson = objectMapper.writeValueAsString(order);
+        assertThat(orderJson).contains("\"orderedAt\":\"2022-11-01T09:30:00.500Z\"");
+        assertThat(objectMapper.readValue(orderJson, Order.class)).isEqualTo(order);
+    }
 }
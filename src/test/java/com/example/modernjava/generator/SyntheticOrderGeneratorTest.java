@@ -0,0 +1,95 @@
+package com.example.modernjava.generator;
+
+import com.example.modernjava.analytics.OrderAnalysisService;
+import com.example.modernjava.domain.Order;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SyntheticOrderGeneratorTest {
+
+    private static SyntheticOrderGenerator.Builder builder() {
+        return SyntheticOrderGenerator.builder().seed(7).orderCount(5_000).customers(200).countries(20).products(50);
+    }
+
+    @Test
+    void sameSeedGeneratesSameOrders() {
+        var orders = builder().build().stream().toList();
+        assertThat(builder().build().stream().toList()).isEqualTo(orders);
+        assertThat(builder().build().stream().parallel().toList()).isEqualTo(orders);
+        assertThat(builder().seed(8).build().stream().toList()).isNotEqualTo(orders);
+    }
+
+    @Test
+    void ordersCanBeGeneratedIndividually() {
+        var generator = builder().build();
+        var orders = generator.stream().toList();
+        assertThat(generator.order(4_999)).isEqualTo(orders.get(4_999));
+        assertThat(generator.order(0)).isEqualTo(orders.get(0));
+        assertThatThrownBy(() -> generator.order(5_000)).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    void generatedOrdersFollowTheConfiguration() {
+        var generator = builder().itemsPerOrder(2, 4).maxQuantity(3).build();
+        var service = new OrderAnalysisService(generator.stream().toList());
+
+        assertThat(service.totalOrders()).isEqualTo(5_000);
+        assertThat(service.distinctCountries()).hasSize(20);
+        assertThat(service.totalRevenueByCustomer()).hasSize(200);
+        assertThat(service.totalUnitsSoldByProduct().size()).isLessThanOrEqualTo(50);
+        assertThat(generator.stream()).allSatisfy(order -> {
+            assertThat(order.getItems().size()).isBetween(2, 4);
+            assertThat(order.getItems()).allSatisfy(item -> assertThat(item.getQuantity()).isBetween(1, 3));
+            assertThat(order.getAltShippingAddress()).isNull();
+        });
+    }
+
+    @Test
+    void productPopularityIsSkewed() {
+        var generator = builder().zipfExponent(1.2).build();
+        Map<String, Long> itemsByProduct = generator.stream().flatMap(order -> order.getItems().stream())
+                .collect(Collectors.groupingBy(item -> item.getProduct().getName(),
+                        Collectors.counting()));
+        var mostPopular = itemsByProduct.entrySet().stream().max(Map.Entry.comparingByValue()).orElseThrow();
+        var leastPopular = itemsByProduct.entrySet().stream().min(Map.Entry.comparingByValue()).orElseThrow();
+
+        assertThat(mostPopular.getKey()).isEqualTo(generator.products().get(0).getName());
+        assertThat(mostPopular.getValue()).isGreaterThan(10 * leastPopular.getValue());
+    }
+
+    @Test
+    void altShippingAddressesFollowTheProbability() {
+        long withAltAddress = builder().altShippingAddressProbability(0.25).build().stream()
+                .map(Order::getAltShippingAddress).filter(Objects::nonNull).count();
+        assertThat(withAltAddress).isBetween(1_000L, 1_500L);
+        assertThat(builder().altShippingAddressProbability(1).build().stream())
+                .allSatisfy(order -> assertThat(order.getAltShippingAddress()).isNotNull());
+    }
+
+    @Test
+    void ordersArePlacedAtTheConfiguredInterval() {
+        var start = Instant.parse("2022-11-01T00:00:00Z");
+        var generator = builder().orderedAt(start, Duration.ofSeconds(2)).build();
+        assertThat(generator.order(0).getOrderedAt()).isEqualTo(start);
+        assertThat(generator.order(4_999).getOrderedAt()).isEqualTo(start.plusSeconds(9_998));
+        assertThat(builder().build().order(0).getOrderedAt()).isNull();
+    }
+
+    @Test
+    void invalidConfigurationIsRejected() {
+        assertThatThrownBy(() -> builder().itemsPerOrder(3, 2).build()).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> builder().customers(0).build()).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> builder().altShippingAddressProbability(1.5).build())
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> builder().orderedAt(Instant.EPOCH, Duration.ofSeconds(-1)).build())
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
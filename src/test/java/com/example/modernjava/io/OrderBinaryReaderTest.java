@@ -0,0 +1,252 @@
+package com.example.modernjava.io;
+
+import com.example.modernjava.analytics.Aggregate;
+import com.example.modernjava.analytics.OrderAggregator;
+import com.example.modernjava.analytics.OrderAnalysisService;
+import com.example.modernjava.domain.Address;
+import com.example.modernjava.domain.Customer;
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.OrderItem;
+import com.example.modernjava.domain.Product;
+import com.example.modernjava.domain.TestDataGenerator;
+import com.example.modernjava.generator.SyntheticOrderGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Spliterator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OrderBinaryReaderTest {
+    static String TEST_ORDERS_JSON_FILE_NAME = "test_orders.json";
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void roundTripMatchesJacksonRepresentation() throws IOException {
+        var jsonOrders = OrderObjectMappers.create().readValue(getClass().getClassLoader()
+                .getResource(TEST_ORDERS_JSON_FILE_NAME), new TypeReference<List<Order>>() {
+        });
+        var file = tempDir.resolve("orders.bin");
+        OrderBinaryWriter.write(file, jsonOrders);
+        try (var reader = OrderBinaryReader.open(file)) {
+            assertThat(reader.orderCount()).isEqualTo(jsonOrders.size());
+            assertThat(reader.stream().toList()).containsExactlyElementsOf(jsonOrders);
+            assertThat(reader.stream().toList()).containsExactlyInAnyOrderElementsOf(TestDataGenerator.generateTestOrders());
+        }
+    }
+
+    @Test
+    void nullsAndMultipleBlocksRoundTrip() throws IOException {
+        var address = Address.builder().postalCountry("DE").locality("Berlin").build();
+        var customer = Customer.builder().name("Zeiss").billingAddress(address).build();
+        List<Order> orders = new ArrayList<>();
+        orders.add(Order.builder().customer(customer).altShippingAddress(Address.builder().build()).build());
+        var product = Product.builder().name("\u00dcn\u00efcode \u2713")
+                .price(new BigDecimal("12345678901234567890.123456789")).build();
+        orders.add(Order.builder().customer(customer).items(List.of(OrderItem.builder().product(product)
+                .quantity(-3).build())).build());
+        for (int i = 0; i < 100; i++) {
+            orders.addAll(TestDataGenerator.generateTestOrders());
+        }
+        var file = tempDir.resolve("orders.bin");
+        try (var writer = new OrderBinaryWriter(file, 7)) {
+            writer.writeAll(orders);
+        }
+        try (var reader = OrderBinaryReader.open(file)) {
+            assertThat(reader.blockCount()).isEqualTo((orders.size() + 6) / 7);
+            assertThat(reader.stream().toList()).containsExactlyElementsOf(orders);
+        }
+    }
+
+    @Test
+    void orderTimesRoundTrip() throws IOException {
+        List<Order> orders = new ArrayList<>();
+        var time = Instant.parse("2022-11-01T09:30:00.123456789Z");
+        for (Order order : TestDataGenerator.generateTestOrders()) {
+            orders.add(new Order(order.getCustomer(), order.getAltShippingAddress(), order.getItems(), time));
+            time = time.plusSeconds(3_600);
+        }
+        orders.add(Order.builder().customer(orders.get(0).getCustomer()).orderedAt(Instant.EPOCH).build());
+        orders.add(Order.builder().customer(orders.get(0).getCustomer()).orderedAt(Instant.MIN).build());
+        var file = tempDir.resolve("orders.bin");
+        OrderBinaryWriter.write(file, orders);
+        try (var reader = OrderBinaryReader.open(file)) {
+            assertThat(reader.stream().toList()).containsExactlyElementsOf(orders);
+        }
+    }
+
+    @Test
+    void version1FilesCanStillBeRead() throws IOException {
+        var orders = TestDataGenerator.generateTestOrders();
+        var file = tempDir.resolve("orders.bin");
+        try (var writer = new OrderBinaryWriter(file, 2)) {
+            writer.writeAll(orders);
+        }
+        var version1 = tempDir.resolve("orders-v1.bin");
+        Files.write(version1, toVersion1(Files.readAllBytes(file)));
+        try (var reader = OrderBinaryReader.open(version1)) {
+            assertThat(reader.stream().toList()).containsExactlyElementsOf(orders);
+            assertThat(new MappedOrderAnalysisService(reader).totalUnitsSold())
+                    .isEqualTo(new OrderAnalysisService(orders).totalUnitsSold());
+        }
+    }
+
+    @Test
+    void mappedAnalysisMatchesOrderAnalysisService() throws IOException {
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            orders.addAll(TestDataGenerator.generateTestOrders());
+        }
+        var file = tempDir.resolve("orders.bin");
+        try (var writer = new OrderBinaryWriter(file, 64)) {
+            writer.writeAll(orders);
+        }
+        var aggregates = EnumSet.allOf(Aggregate.class);
+        try (var reader = OrderBinaryReader.open(file)) {
+            var mappedService = new MappedOrderAnalysisService(reader);
+            var analysisService = new OrderAnalysisService(orders);
+            assertThat(mappedService.analyze(aggregates)).isEqualTo(analysisService.analyze(aggregates));
+            assertThat(mappedService.totalOrders()).isEqualTo(analysisService.totalOrders());
+            assertThat(mappedService.distinctCountries()).containsExactlyElementsOf(analysisService.distinctCountries());
+        }
+    }
+
+    @Test
+    void emptyFileRoundTrips() throws IOException {
+        var file = tempDir.resolve("empty.bin");
+        OrderBinaryWriter.write(file, List.of());
+        try (var reader = OrderBinaryReader.open(file)) {
+            assertThat(reader.stream().count()).isZero();
+            assertThat(new MappedOrderAnalysisService(reader).totalUnitsSold()).isZero();
+        }
+    }
+
+    @Test
+    void incompleteOrForeignFilesAreRejected() throws IOException {
+        var file = tempDir.resolve("orders.bin");
+        OrderBinaryWriter.write(file, TestDataGenerator.generateTestOrders());
+        var truncated = tempDir.resolve("truncated.bin");
+        Files.write(truncated, Arrays.copyOf(Files.readAllBytes(file), (int) Files.size(file) - 4));
+        assertThatThrownBy(() -> OrderBinaryReader.open(truncated)).isInstanceOf(IOException.class);
+
+        var json = tempDir.resolve(TEST_ORDERS_JSON_FILE_NAME);
+        OrderObjectMappers.create().writeValue(json.toFile(), TestDataGenerator.generateTestOrders());
+        assertThatThrownBy(() -> OrderBinaryReader.open(json)).isInstanceOf(IOException.class);
+
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, OrderBinaryFormat.VERSION + 1), Integer.BYTES);
+        }
+        assertThatThrownBy(() -> OrderBinaryReader.open(file)).isInstanceOf(IOException.class)
+                .hasMessageContaining("version");
+    }
+
+    @Test
+    void footerOffsetPastTheTrailerIsRejected() throws IOException {
+        var file = tempDir.resolve("orders.bin");
+        OrderBinaryWriter.write(file, TestDataGenerator.generateTestOrders());
+        long size = Files.size(file);
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, size), size - Long.BYTES - Integer.BYTES);
+        }
+        assertThatThrownBy(() -> OrderBinaryReader.open(file)).isInstanceOf(IOException.class)
+                .hasMessageContaining("footer");
+    }
+
+    /**
+     * Rewrite a file of the current version without order times, the way version 1 files were written
+     */
+    private static byte[] toVersion1(byte[] file) {
+        var in = ByteBuffer.wrap(file);
+        var out = ByteBuffer.allocate(file.length);
+        out.putInt(in.getInt(0)).putInt(1);
+        int footer = (int) in.getLong(file.length - OrderBinaryFormat.TRAILER_BYTES);
+        int blockCount = in.getInt(footer + 2 * Long.BYTES);
+        long[] blocks = new long[blockCount];
+        for (int block = 0; block < blockCount; block++) {
+            int index = footer + 2 * Long.BYTES + Integer.BYTES + block * (2 * Long.BYTES + Integer.BYTES);
+            int position = (int) in.getLong(index);
+            int end = position + (int) in.getLong(index + Long.BYTES);
+            int start = out.position();
+            while (position < end) {
+                int itemCount = Math.max(in.getInt(position + 2 * Integer.BYTES), 0);
+                out.put(file, position, OrderBinaryFormat.ORDER_RECORD_BYTES_V1);
+                position += OrderBinaryFormat.ORDER_RECORD_BYTES;
+                out.put(file, position, itemCount * OrderBinaryFormat.ITEM_RECORD_BYTES);
+                position += itemCount * OrderBinaryFormat.ITEM_RECORD_BYTES;
+            }
+            blocks[block] = ((long) start << 32) | (out.position() - start);
+        }
+        int newFooter = out.position();
+        int tables = footer + 2 * Long.BYTES + Integer.BYTES + blockCount * (2 * Long.BYTES + Integer.BYTES);
+        out.putLong(in.getLong(footer)).putLong(in.getLong(footer + Long.BYTES)).putInt(blockCount);
+        for (int block = 0; block < blockCount; block++) {
+            int index = footer + 2 * Long.BYTES + Integer.BYTES + block * (2 * Long.BYTES + Integer.BYTES);
+            out.putLong(blocks[block] >>> 32).putLong(blocks[block] & 0xFFFF_FFFFL).putInt(in.getInt(index + 2 * Long.BYTES));
+        }
+        out.put(file, tables, file.length - OrderBinaryFormat.TRAILER_BYTES - tables);
+        out.putLong(newFooter).putInt(in.getInt(file.length - Integer.BYTES));
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    @Test
+    void spliteratorSplitsAtBlockBoundariesWithExactSizes() throws IOException {
+        var orders = SyntheticOrderGenerator.builder().seed(3).orderCount(1_000).customers(100).products(30)
+                .build().stream().toList();
+        var file = tempDir.resolve("orders.bin");
+        try (var writer = new OrderBinaryWriter(file, 64)) {
+            writer.writeAll(orders);
+        }
+        try (var reader = OrderBinaryReader.open(file)) {
+            var spliterator = reader.spliterator();
+            assertThat(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED)).isTrue();
+            assertThat(spliterator.estimateSize()).isEqualTo(1_000);
+            spliterator.tryAdvance(order -> assertThat(order).isEqualTo(orders.get(0)));
+            var prefix = spliterator.trySplit();
+            assertThat(prefix.estimateSize() + spliterator.estimateSize()).isEqualTo(999);
+            assertThat(prefix.estimateSize() % 64).isEqualTo(63);
+            List<Order> rest = new ArrayList<>();
+            prefix.forEachRemaining(rest::add);
+            spliterator.forEachRemaining(rest::add);
+            assertThat(rest).containsExactlyElementsOf(orders.subList(1, 1_000));
+
+            var aggregates = EnumSet.allOf(Aggregate.class);
+            assertThat(reader.stream().parallel().collect(OrderAggregator.toAggregates(aggregates)))
+                    .isEqualTo(new OrderAnalysisService(orders).analyze(aggregates));
+        }
+    }
+
+    @Test
+    void streamRangesSkipToTheirFirstOrder() throws IOException {
+        var orders = SyntheticOrderGenerator.builder().seed(4).orderCount(300).build().stream().toList();
+        var file = tempDir.resolve("orders.bin");
+        try (var writer = new OrderBinaryWriter(file, 50)) {
+            writer.writeAll(orders);
+        }
+        try (var reader = OrderBinaryReader.open(file)) {
+            assertThat(reader.stream(0, 10).toList()).containsExactlyElementsOf(orders.subList(0, 10));
+            assertThat(reader.stream(50, 50).toList()).containsExactlyElementsOf(orders.subList(50, 100));
+            assertThat(reader.stream(123, 100).toList()).containsExactlyElementsOf(orders.subList(123, 223));
+            assertThat(reader.stream(290, 100).toList()).containsExactlyElementsOf(orders.subList(290, 300));
+            assertThat(reader.stream(123, 150).parallel().toList()).containsExactlyElementsOf(orders.subList(123, 273));
+            assertThat(reader.stream(300, 10).count()).isZero();
+            assertThat(reader.stream(1_000, 10).count()).isZero();
+            assertThat(reader.stream(10, 0).count()).isZero();
+            assertThatThrownBy(() -> reader.stream(-1, 10)).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.modernjava.io;
+
+import com.example.modernjava.analytics.Aggregate;
+import com.example.modernjava.analytics.OrderAnalysisService;
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.TestDataGenerator;
+import com.example.modernjava.generator.SyntheticOrderGenerator;
+import com.example.modernjava.io.OrderIngestionPipeline.Stage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OrderIngestionPipelineTest {
+    private static final EnumSet<Aggregate> ALL = EnumSet.allOf(Aggregate.class);
+    private static final List<Order> ORDERS = SyntheticOrderGenerator.builder().seed(31).orderCount(2_000)
+            .customers(150).countries(15).products(40).altShippingAddressProbability(0.1).build().stream().toList();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void runMatchesInMemoryAnalysis() throws Exception {
+        var file = tempDir.resolve("orders.json");
+        OrderObjectMappers.create().writeValue(file.toFile(), ORDERS);
+
+        var result = OrderIngestionPipeline.builder().batchSize(100).build().run(file, ALL);
+        assertThat(result.results()).isEqualTo(new OrderAnalysisService(ORDERS).analyze(ALL));
+        assertThat(result.orders()).isEqualTo(ORDERS.size());
+        assertThat(result.stages().stream().map(OrderIngestionPipeline.StageStats::stage)).containsExactly(Stage.values());
+        for (Stage stage : Stage.values()) {
+            assertThat(result.stage(stage).items()).isEqualTo(ORDERS.size());
+            assertThat(result.stage(stage).batches()).isEqualTo(20);
+            assertThat(result.stage(stage).maxQueueDepth()).isLessThanOrEqualTo(OrderIngestionPipeline.DEFAULT_QUEUE_CAPACITY);
+        }
+        assertThat(result.stage(Stage.READ).meanQueueDepth()).isZero();
+        assertThat(result.internerStats().distinctProducts()).isEqualTo(40);
+        assertThat(result.ordersPerSecond()).isPositive();
+    }
+
+    @Test
+    void runJsonLinesWithSmallBatchesAndQueues() throws Exception {
+        var objectMapper = OrderObjectMappers.create();
+        var orders = TestDataGenerator.generateTestOrders();
+        List<String> lines = new ArrayList<>();
+        for (Order order : orders) {
+            lines.add(objectMapper.writeValueAsString(order));
+            lines.add("null");
+        }
+        var file = Files.write(tempDir.resolve("orders.jsonl"), lines);
+
+        var pipeline = OrderIngestionPipeline.builder().objectMapper(objectMapper).batchSize(1).queueCapacity(1).build();
+        var result = pipeline.run(file, ALL);
+        assertThat(result.results()).isEqualTo(new OrderAnalysisService(orders).analyze(ALL));
+        assertThat(result.stage(Stage.AGGREGATE).batches()).isEqualTo(orders.size());
+        assertThat(result.stage(Stage.PARSE).maxQueueDepth()).isLessThanOrEqualTo(1);
+    }
+
+    @Test
+    void runResourceFileAndEmptyFile() throws Exception {
+        var pipeline = OrderIngestionPipeline.builder().build();
+        List<Order> expected;
+        try (var orders = new OrderJsonReader().stream(getClass().getClassLoader().getResourceAsStream("test_orders.json"))) {
+            expected = orders.toList();
+        }
+        var result = pipeline.run(getClass().getClassLoader().getResourceAsStream("test_orders.json"), ALL);
+        assertThat(result.results()).isEqualTo(new OrderAnalysisService(expected).analyze(ALL));
+
+        var empty = pipeline.run(Files.writeString(tempDir.resolve("empty.json"), "[ ]"), ALL);
+        assertThat(empty.orders()).isZero();
+        assertThat(empty.results().totalOrders()).isZero();
+    }
+
+    @Test
+    void failuresOfAnyStageAreThrown() throws IOException {
+        var pipeline = OrderIngestionPipeline.builder().batchSize(10).queueCapacity(1).build();
+        var file = tempDir.resolve("orders.json");
+        OrderObjectMappers.create().writeValue(file.toFile(), ORDERS);
+        var json = Files.readString(file);
+
+        var truncated = Files.writeString(tempDir.resolve("truncated.json"), json.substring(0, json.length() / 2));
+        assertThatThrownBy(() -> pipeline.run(truncated, ALL)).isInstanceOf(IOException.class);
+
+        var unbindable = Files.writeString(tempDir.resolve("unbindable.json"),
+                json.replaceFirst("\"quantity\":\\d+", "\"quantity\":\"many\""));
+        assertThatThrownBy(() -> pipeline.run(unbindable, ALL)).isInstanceOf(IOException.class);
+
+        var scalar = Files.writeString(tempDir.resolve("scalar.json"), "42");
+        assertThatThrownBy(() -> pipeline.run(scalar, ALL)).isInstanceOf(IOException.class)
+                .hasMessageContaining("Expected an array of orders");
+
+        assertThatThrownBy(() -> pipeline.run(tempDir.resolve("missing.json"), ALL)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void builderRejectsInvalidConfiguration() {
+        assertThatThrownBy(() -> OrderIngestionPipeline.builder().batchSize(0).build())
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> OrderIngestionPipeline.builder().queueCapacity(0).build())
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.modernjava.io;
+
+import com.example.modernjava.analytics.Aggregate;
+import com.example.modernjava.analytics.OrderAnalysisService;
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.OrderItem;
+import com.example.modernjava.domain.Product;
+import com.example.modernjava.domain.TestDataGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OrderInternerTest {
+    static String TEST_ORDERS_JSON_FILE_NAME = "test_orders.json";
+    @TempDir
+    Path tempDir;
+
+    private List<Order> readTestOrders(ObjectMapper objectMapper) throws IOException {
+        return objectMapper.readValue(getClass().getClassLoader().getResource(TEST_ORDERS_JSON_FILE_NAME),
+                new TypeReference<List<Order>>() {
+                });
+    }
+
+    @Test
+    void moduleInternsWhileDeserializing() throws IOException {
+        var interner = new OrderInterner();
+        var orders = readTestOrders(OrderObjectMappers.create().registerModule(new InterningModule(interner)));
+
+        assertThat(orders).containsExactlyInAnyOrderElementsOf(TestDataGenerator.generateTestOrders());
+        // Products with the same SKU are the same instance
+        var products = orders.stream().flatMap(order -> order.getItems().stream()).map(OrderItem::getProduct).toList();
+        products.forEach(product -> assertThat(products.stream().filter(p -> p.getSku().equals(product.getSku()))
+                .allMatch(p -> p == product)).isTrue());
+        // Each customer's billing and shipping addresses are equal, so they are the same instance
+        orders.forEach(order -> assertThat(order.getCustomer().getBillingAddress())
+                .isSameAs(order.getCustomer().getShippingAddress()));
+
+        var stats = interner.stats();
+        assertThat(stats.distinctProducts()).isEqualTo(18);
+        assertThat(stats.productReferences()).isEqualTo(products.size());
+        assertThat(stats.distinctCustomers()).isEqualTo(4);
+        assertThat(stats.dedupeRatio()).isGreaterThan(1);
+    }
+
+    @Test
+    void canonicalizingAfterLoadGivesSameResults() throws IOException {
+        var orders = readTestOrders(OrderObjectMappers.create());
+        var expected = new OrderAnalysisService(orders).analyze(EnumSet.allOf(Aggregate.class));
+
+        var interner = new OrderInterner();
+        orders.forEach(interner::intern);
+
+        assertThat(new OrderAnalysisService(orders).analyze(EnumSet.allOf(Aggregate.class))).isEqualTo(expected);
+        assertThat(interner.stats().distinctProducts()).isEqualTo(18);
+        assertThat(interner.stats().distinctAddresses()).isEqualTo(4);
+    }
+
+    @Test
+    void productsWithSameSkuButDifferentFieldsAreKept() {
+        var interner = new OrderInterner();
+        var product = Product.builder().sku("SKU1").name("Widget").price(new BigDecimal("1.00")).build();
+        var repriced = Product.builder().sku("SKU1").name("Widget").price(new BigDecimal("2.00")).build();
+
+        assertThat(interner.intern(product)).isSameAs(product);
+        assertThat(interner.intern(Product.builder().sku("SKU1").name("Widget").price(new BigDecimal("1.00"))
+                .build())).isSameAs(product);
+        assertThat(interner.intern(repriced)).isSameAs(repriced);
+        assertThat(interner.intern(Product.builder().sku("SKU1").name("Widget").price(new BigDecimal("2.00"))
+                .build())).isSameAs(repriced);
+        assertThat(interner.stats().distinctProducts()).isEqualTo(2);
+    }
+
+    @Test
+    void streamingReaderCanIntern() throws IOException {
+        var file = tempDir.resolve("orders.json");
+        OrderJsonWriter.write(file, TestDataGenerator.generateTestOrders());
+        var interner = new OrderInterner();
+        var reader = new OrderJsonReader(OrderObjectMappers.create().registerModule(new InterningModule(interner)));
+
+        try (var orders = reader.stream(file)) {
+            assertThat(orders.toList()).isEqualTo(TestDataGenerator.generateTestOrders());
+        }
+        assertThat(interner.stats().distinctCustomers()).isEqualTo(4);
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.modernjava.io;
+
+import com.example.modernjava.analytics.Aggregate;
+import com.example.modernjava.analytics.OrderAnalysisService;
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.TestDataGenerator;
+import com.example.modernjava.store.ColumnarOrderAnalysisService;
+import com.example.modernjava.store.OrderColumnStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OrderJsonReaderTest {
+    static String TEST_ORDERS_JSON_FILE_NAME = "test_orders.json";
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void streamResourceFile() throws IOException {
+        var reader = new OrderJsonReader();
+        try (var orders = reader.stream(getClass().getClassLoader().getResourceAsStream(TEST_ORDERS_JSON_FILE_NAME))) {
+            assertThat(orders.toList()).containsExactlyInAnyOrderElementsOf(TestDataGenerator.generateTestOrders());
+        }
+    }
+
+    @Test
+    void streamJsonLines() throws IOException {
+        var objectMapper = OrderObjectMappers.create();
+        var orders = TestDataGenerator.generateTestOrders();
+        var file = tempDir.resolve("orders.jsonl");
+        List<String> lines = new ArrayList<>();
+        for (Order order : orders) {
+            lines.add(objectMapper.writeValueAsString(order));
+        }
+        Files.write(file, lines);
+        try (var streamed = new OrderJsonReader(objectMapper).stream(file)) {
+            assertThat(streamed.toList()).containsExactlyElementsOf(orders);
+        }
+    }
+
+    @Test
+    void streamSkipsOrdersWithoutBindingThem() throws IOException {
+        var objectMapper = OrderObjectMappers.create();
+        var orders = TestDataGenerator.generateTestOrders();
+        var array = tempDir.resolve(TEST_ORDERS_JSON_FILE_NAME);
+        objectMapper.writeValue(array.toFile(), orders);
+        List<String> lines = new ArrayList<>();
+        for (Order order : orders) {
+            lines.add(objectMapper.writeValueAsString(order));
+            lines.add("null");
+        }
+        var jsonLines = Files.write(tempDir.resolve("orders.jsonl"), lines);
+
+        var reader = new OrderJsonReader(objectMapper);
+        for (Path file : List.of(array, jsonLines)) {
+            try (var streamed = reader.stream(file, 2)) {
+                assertThat(streamed.toList()).containsExactlyElementsOf(orders.subList(2, orders.size()));
+            }
+            try (var streamed = reader.stream(file, orders.size() + 1)) {
+                assertThat(streamed.count()).isZero();
+            }
+        }
+    }
+
+    @Test
+    void streamEmptyArray() throws IOException {
+        var file = Files.writeString(tempDir.resolve("empty.json"), "[ ]");
+        try (var orders = new OrderJsonReader().stream(file)) {
+            assertThat(orders.count()).isZero();
+        }
+    }
+
+    @Test
+    void analyzeMatchesInMemoryAnalysis() throws IOException {
+        // Write a file with many copies of the test orders and analyze it without loading it
+        var objectMapper = OrderObjectMappers.create();
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            orders.addAll(TestDataGenerator.generateTestOrders());
+        }
+        var file = tempDir.resolve(TEST_ORDERS_JSON_FILE_NAME);
+        objectMapper.writeValue(file.toFile(), orders);
+        var aggregates = EnumSet.allOf(Aggregate.class);
+        assertThat(new OrderJsonReader(objectMapper).analyze(file, aggregates))
+                .isEqualTo(new OrderAnalysisService(orders).analyze(aggregates));
+    }
+
+    @Test
+    void streamIntoColumnStore() throws IOException {
+        var builder = OrderColumnStore.builder();
+        try (var orders = new OrderJsonReader().stream(getClass().getClassLoader()
+                .getResourceAsStream(TEST_ORDERS_JSON_FILE_NAME))) {
+            orders.forEach(builder::add);
+        }
+        var orders = TestDataGenerator.generateTestOrders();
+        assertThat(new ColumnarOrderAnalysisService(builder.build()).totalRevenue())
+                .isEqualByComparingTo(new OrderAnalysisService(orders).totalRevenue());
+    }
+
+    @Test
+    void malformedInputFails() throws IOException {
+        var file = Files.writeString(tempDir.resolve("bad.json"), "[{\"customer\": {\"name\": \"VMware\"}, ");
+        try (var orders = new OrderJsonReader().stream(file)) {
+            assertThatThrownBy(orders::toList).isInstanceOf(UncheckedIOException.class);
+        }
+        var notOrders = Files.writeString(tempDir.resolve("number.json"), "42");
+        assertThatThrownBy(() -> new OrderJsonReader().stream(notOrders)).isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.modernjava.io;
+
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.TestDataGenerator;
+import com.example.modernjava.generator.SyntheticOrderGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OrderJsonWriterTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void writtenFileMatchesJacksonRepresentation() throws IOException {
+        var orders = TestDataGenerator.generateTestOrders();
+        var file = tempDir.resolve("orders.json");
+        OrderJsonWriter.write(file, orders);
+
+        assertThat(OrderObjectMappers.create().readValue(file.toFile(), new TypeReference<List<Order>>() {
+        })).isEqualTo(orders);
+    }
+
+    @Test
+    void generatedOrdersStreamToAndFromFile() throws IOException {
+        var generator = SyntheticOrderGenerator.builder().seed(3).orderCount(2_000)
+                .altShippingAddressProbability(0.1).build();
+        var file = tempDir.resolve("generated.json");
+        OrderJsonWriter.write(file, generator);
+
+        try (var orders = new OrderJsonReader().stream(file)) {
+            assertThat(orders.toList()).isEqualTo(generator.stream().toList());
+        }
+    }
+
+    @Test
+    void emptyFileIsAnEmptyArray() throws IOException {
+        var file = tempDir.resolve("empty.json");
+        new OrderJsonWriter(file).close();
+
+        try (var orders = new OrderJsonReader().stream(file)) {
+            assertThat(orders).isEmpty();
+        }
+    }
+
+    @Test
+    void writingAfterCloseFails() throws IOException {
+        var writer = new OrderJsonWriter(tempDir.resolve("closed.json"));
+        writer.close();
+
+        assertThatThrownBy(() -> writer.write(TestDataGenerator.generateTestOrders().get(0)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.modernjava.io;
+
+import com.example.modernjava.analytics.Aggregate;
+import com.example.modernjava.analytics.OrderAnalysisService;
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.generator.SyntheticOrderGenerator;
+import com.example.modernjava.io.PersistentOrderAnalytics.Outcome;
+import com.example.modernjava.io.PersistentOrderAnalytics.Recovery;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PersistentOrderAnalyticsTest {
+    private static final EnumSet<Aggregate> ALL = EnumSet.allOf(Aggregate.class);
+    private static final ObjectMapper MAPPER = OrderObjectMappers.create();
+    private static final List<Order> ORDERS = SyntheticOrderGenerator.builder().seed(23).orderCount(3_000)
+            .customers(200).countries(20).products(60).altShippingAddressProbability(0.1).build().stream().toList();
+
+    @TempDir
+    Path tempDir;
+
+    private Path snapshotFile() {
+        return tempDir.resolve("aggregates.snapshot");
+    }
+
+    private Path orderFile() {
+        return tempDir.resolve("orders.jsonl");
+    }
+
+    private static String lines(List<Order> orders) throws IOException {
+        var lines = new StringBuilder();
+        for (var order : orders) {
+            lines.append(MAPPER.writeValueAsString(order)).append('\n');
+        }
+        return lines.toString();
+    }
+
+    private void write(List<Order> orders) throws IOException {
+        Files.writeString(orderFile(), lines(orders));
+    }
+
+    private void append(String text) throws IOException {
+        Files.writeString(orderFile(), text, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    }
+
+    @Test
+    void rebuildsWithoutSnapshotAndRestoresFromSavedSnapshot() throws IOException {
+        write(ORDERS);
+        var expected = new OrderAnalysisService(ORDERS).analyze(ALL);
+        var built = PersistentOrderAnalytics.open(snapshotFile(), orderFile());
+        assertThat(built.recovery()).isEqualTo(new Recovery(Outcome.REBUILT_NO_SNAPSHOT, 0, ORDERS.size()));
+        assertThat(built.analyze(ALL)).isEqualTo(expected);
+
+        built.save();
+        var restored = PersistentOrderAnalytics.open(snapshotFile(), orderFile());
+        assertThat(restored.recovery()).isEqualTo(new Recovery(Outcome.RESTORED, ORDERS.size(), 0));
+        assertThat(restored.analyze(ALL)).isEqualTo(expected);
+        assertThat(restored.totalRevenueByCountryByProduct()).isEqualTo(expected.totalRevenueByCountryByProduct());
+        assertThat(restored.estimateDistinctCustomers()).isEqualTo(built.estimateDistinctCustomers());
+        assertThat(Files.list(tempDir).toList()).containsExactlyInAnyOrder(snapshotFile(), orderFile());
+    }
+
+    @Test
+    void parsesOnlyOrdersAppendedSinceTheSnapshot() throws IOException {
+        write(ORDERS.subList(0, 2_000));
+        PersistentOrderAnalytics.open(snapshotFile(), orderFile()).save();
+        append(lines(ORDERS.subList(2_000, ORDERS.size())));
+
+        var restored = PersistentOrderAnalytics.open(snapshotFile(), orderFile());
+        assertThat(restored.recovery()).isEqualTo(new Recovery(Outcome.RESTORED, 2_000, 1_000));
+        assertThat(restored.analyze(ALL)).isEqualTo(new OrderAnalysisService(ORDERS).analyze(ALL));
+    }
+
+    @Test
+    void refreshAppliesCompleteAppendedLinesAndSavesThem() throws IOException {
+        write(ORDERS.subList(0, 1_000));
+        var analytics = PersistentOrderAnalytics.open(snapshotFile(), orderFile());
+        assertThat(analytics.totalOrders()).isEqualTo(1_000);
+
+        String next = lines(ORDERS.subList(1_000, 2_500));
+        int cut = next.length() - 10;
+        append(next.substring(0, cut));
+        assertThat(analytics.refresh()).isEqualTo(1_499);
+        assertThat(analytics.totalOrders()).isEqualTo(2_499);
+        append(next.substring(cut));
+        assertThat(analytics.refresh()).isEqualTo(1);
+        assertThat(analytics.refresh()).isZero();
+        assertThat(analytics.analyze(ALL)).isEqualTo(new OrderAnalysisService(ORDERS.subList(0, 2_500)).analyze(ALL));
+        analytics.save();
+
+        append(lines(ORDERS.subList(2_500, ORDERS.size())));
+        var restored = PersistentOrderAnalytics.open(snapshotFile(), orderFile());
+        assertThat(restored.recovery()).isEqualTo(new Recovery(Outcome.RESTORED, 2_500, 500));
+        assertThat(restored.analyze(ALL)).isEqualTo(new OrderAnalysisService(ORDERS).analyze(ALL));
+    }
+
+    @Test
+    void rebuildsWhenTheSourceNoLongerMatches() throws IOException {
+        write(ORDERS);
+        PersistentOrderAnalytics.open(snapshotFile(), orderFile()).save();
+
+        var fewer = ORDERS.subList(0, 1_000);
+        write(fewer);
+        assertThat(PersistentOrderAnalytics.open(snapshotFile(), orderFile()).recovery())
+                .isEqualTo(new Recovery(Outcome.REBUILT_MISMATCH, 0, fewer.size()));
+
+        write(ORDERS);
+        PersistentOrderAnalytics.open(snapshotFile(), orderFile()).save();
+        List<Order> changed = new ArrayList<>(ORDERS);
+        changed.remove(10);
+        changed.add(ORDERS.get(10));
+        write(changed);
+        var rebuilt = PersistentOrderAnalytics.open(snapshotFile(), orderFile());
+        assertThat(rebuilt.recovery()).isEqualTo(new Recovery(Outcome.REBUILT_MISMATCH, 0, changed.size()));
+        assertThat(rebuilt.analyze(ALL)).isEqualTo(new OrderAnalysisService(changed).analyze(ALL));
+    }
+
+    @Test
+    void rebuildsWhenAnyHeaderOrPayloadByteIsCorrupt() throws IOException {
+        write(ORDERS);
+        var expected = new OrderAnalysisService(ORDERS).analyze(ALL);
+        PersistentOrderAnalytics.open(snapshotFile(), orderFile()).save();
+        byte[] saved = Files.readAllBytes(snapshotFile());
+
+        for (int position : new int[]{0, 4, 8, 15, 16, 23, 24, 31, 32, 36, saved.length / 2, saved.length - 1}) {
+            byte[] bytes = saved.clone();
+            bytes[position] ^= 1;
+            Files.write(snapshotFile(), bytes);
+            var rebuilt = PersistentOrderAnalytics.open(snapshotFile(), orderFile());
+            assertThat(rebuilt.recovery()).isEqualTo(new Recovery(Outcome.REBUILT_UNREADABLE, 0, ORDERS.size()));
+            assertThat(rebuilt.analyze(ALL)).isEqualTo(expected);
+        }
+
+        Files.write(snapshotFile(), new byte[]{1, 2, 3});
+        assertThat(PersistentOrderAnalytics.open(snapshotFile(), orderFile()).recovery().outcome())
+                .isEqualTo(Outcome.REBUILT_UNREADABLE);
+    }
+}
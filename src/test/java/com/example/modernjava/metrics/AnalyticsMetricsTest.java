@@ -0,0 +1,45 @@
+package com.example.modernjava.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AnalyticsMetricsTest {
+
+    @Test
+    void bucketsCoverValuesWithBoundedRelativeError() {
+        LongStream.of(0, 1, 3, 4, 5, 7, 8, 9, 1_000, 123_456_789, Long.MAX_VALUE).forEach(value -> {
+            long upperBound = AnalyticsMetrics.upperBound(AnalyticsMetrics.bucket(value));
+            assertThat(upperBound).isGreaterThanOrEqualTo(value);
+            assertThat(upperBound - value).isLessThanOrEqualTo(value / 4);
+        });
+    }
+
+    @Test
+    void statsSummarizeRecordedCalls() {
+        var metrics = new AnalyticsMetrics();
+        for (int i = 1; i <= 100; i++) {
+            metrics.record("totalRevenue", i * 1_000L, 10, 50, 64);
+        }
+        metrics.record("totalOrders", 5, 10, 0, -1);
+
+        var stats = metrics.stats("totalRevenue");
+        assertThat(stats.count()).isEqualTo(100);
+        assertThat(stats.maxNanos()).isEqualTo(100_000);
+        assertThat(stats.meanNanos()).isEqualTo(50_500);
+        assertThat(stats.p50Nanos()).isBetween(50_000L, 62_500L);
+        assertThat(stats.p99Nanos()).isBetween(99_000L, 100_000L);
+        assertThat(stats.ordersScanned()).isEqualTo(1_000);
+        assertThat(stats.itemsScanned()).isEqualTo(5_000);
+        assertThat(stats.allocatedBytes()).isEqualTo(6_400);
+
+        assertThat(metrics.snapshot().keySet()).containsExactly("totalOrders", "totalRevenue");
+        assertThat(metrics.stats("totalOrders").allocatedBytes()).isZero();
+        assertThat(metrics.stats("unknown").count()).isZero();
+
+        metrics.reset();
+        assertThat(metrics.snapshot()).isEmpty();
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.modernjava.repositories;
+
+import com.example.modernjava.analytics.Aggregate;
+import com.example.modernjava.analytics.OrderAggregator;
+import com.example.modernjava.analytics.OrderAnalysisService;
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.generator.SyntheticOrderGenerator;
+import com.example.modernjava.io.OrderBinaryWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BinaryFileOrderRepositoryTest {
+    private static final List<Order> ORDERS = SyntheticOrderGenerator.builder().seed(10).orderCount(2_000)
+            .customers(200).products(50).build().stream().toList();
+
+    @TempDir
+    Path tempDir;
+
+    private Path write() throws IOException {
+        var file = tempDir.resolve("orders.bin");
+        try (var writer = new OrderBinaryWriter(file, 128)) {
+            writer.writeAll(ORDERS);
+        }
+        return file;
+    }
+
+    @Test
+    void findAllSplitsForParallelAnalysis() throws IOException {
+        try (var repository = BinaryFileOrderRepository.open(write())) {
+            var aggregates = EnumSet.allOf(Aggregate.class);
+            assertThat(repository.count()).isEqualTo(ORDERS.size());
+            assertThat(repository.findAll().toList()).containsExactlyElementsOf(ORDERS);
+            assertThat(repository.findAll().parallel().collect(OrderAggregator.toAggregates(aggregates)))
+                    .isEqualTo(new OrderAnalysisService(ORDERS).analyze(aggregates));
+        }
+    }
+
+    @Test
+    void findRangeAndPage() throws IOException {
+        try (var repository = BinaryFileOrderRepository.open(write())) {
+            assertThat(repository.findRange(1_000, 300).toList()).containsExactlyElementsOf(ORDERS.subList(1_000, 1_300));
+            var page = repository.findPage(3, 600);
+            assertThat(page.content()).containsExactlyElementsOf(ORDERS.subList(1_800, 2_000));
+            assertThat(page.totalPages()).isEqualTo(4);
+            assertThat(page.hasNext()).isFalse();
+        }
+    }
+
+    @Test
+    void openFailsForInvalidFiles() {
+        assertThatThrownBy(() -> BinaryFileOrderRepository.open(tempDir.resolve("missing.bin")))
+                .isInstanceOf(IOException.class);
+    }
+}
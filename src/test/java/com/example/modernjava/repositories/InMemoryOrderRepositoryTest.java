@@ -0,0 +1,56 @@
+package com.example.modernjava.repositories;
+
+import com.example.modernjava.analytics.Aggregate;
+import com.example.modernjava.analytics.OrderAggregator;
+import com.example.modernjava.analytics.OrderAnalysisService;
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.generator.SyntheticOrderGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InMemoryOrderRepositoryTest {
+    private static final List<Order> ORDERS = SyntheticOrderGenerator.builder().seed(8).orderCount(250).build()
+            .stream().toList();
+
+    @Test
+    void findAllStreamsTheOrdersInParallel() {
+        var repository = new InMemoryOrderRepository(ORDERS);
+        var aggregates = EnumSet.allOf(Aggregate.class);
+        assertThat(repository.findAll().toList()).containsExactlyElementsOf(ORDERS);
+        assertThat(repository.findAll().parallel().collect(OrderAggregator.toAggregates(aggregates)))
+                .isEqualTo(new OrderAnalysisService(ORDERS).analyze(aggregates));
+        assertThat(repository.count()).isEqualTo(250);
+    }
+
+    @Test
+    void ordersAreCopiedOnce() {
+        List<Order> orders = new ArrayList<>(ORDERS);
+        var repository = new InMemoryOrderRepository(orders);
+        orders.clear();
+        assertThat(repository.count()).isEqualTo(250);
+    }
+
+    @Test
+    void findRangeAndPage() {
+        var repository = new InMemoryOrderRepository(ORDERS);
+        assertThat(repository.findRange(20, 30).toList()).containsExactlyElementsOf(ORDERS.subList(20, 50));
+        assertThat(repository.findRange(240, Long.MAX_VALUE).toList()).containsExactlyElementsOf(ORDERS.subList(240, 250));
+        assertThat(repository.findRange(300, 10).count()).isZero();
+        assertThatThrownBy(() -> repository.findRange(0, -1)).isInstanceOf(IllegalArgumentException.class);
+
+        var page = repository.findPage(2, 100);
+        assertThat(page.content()).containsExactlyElementsOf(ORDERS.subList(200, 250));
+        assertThat(page.totalElements()).isEqualTo(250);
+        assertThat(page.totalPages()).isEqualTo(3);
+        assertThat(page.hasNext()).isFalse();
+        assertThat(repository.findPage(1, 100).hasNext()).isTrue();
+        assertThat(repository.findPage(5, 100).content()).isEmpty();
+        assertThatThrownBy(() -> repository.findPage(0, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.modernjava.repositories;
+
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.generator.SyntheticOrderGenerator;
+import com.example.modernjava.io.OrderObjectMappers;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JsonFileOrderRepositoryTest {
+    private static final List<Order> ORDERS = SyntheticOrderGenerator.builder().seed(9).orderCount(120).build()
+            .stream().toList();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void readsArraysAndJsonLinesLazily() throws IOException {
+        var objectMapper = OrderObjectMappers.create();
+        var array = tempDir.resolve("orders.json");
+        objectMapper.writeValue(array.toFile(), ORDERS);
+        List<String> lines = new ArrayList<>();
+        for (Order order : ORDERS) {
+            lines.add(objectMapper.writeValueAsString(order));
+            lines.add("null");
+        }
+        var jsonLines = Files.write(tempDir.resolve("orders.jsonl"), lines);
+
+        for (Path file : List.of(array, jsonLines)) {
+            var repository = new JsonFileOrderRepository(file, objectMapper);
+            try (var orders = repository.findAll()) {
+                assertThat(orders.toList()).containsExactlyElementsOf(ORDERS);
+            }
+            assertThat(repository.count()).isEqualTo(ORDERS.size());
+            try (var orders = repository.findRange(100, 50)) {
+                assertThat(orders.toList()).containsExactlyElementsOf(ORDERS.subList(100, 120));
+            }
+            var page = repository.findPage(1, 50);
+            assertThat(page.content()).containsExactlyElementsOf(ORDERS.subList(50, 100));
+            assertThat(page.hasNext()).isTrue();
+        }
+    }
+
+    @Test
+    void countIsRecomputedWhenTheFileChanges() throws IOException {
+        var objectMapper = OrderObjectMappers.create();
+        var file = tempDir.resolve("orders.json");
+        objectMapper.writeValue(file.toFile(), ORDERS);
+        var repository = new JsonFileOrderRepository(file, objectMapper);
+        assertThat(repository.findPage(0, 50).totalElements()).isEqualTo(ORDERS.size());
+        assertThat(repository.count()).isEqualTo(ORDERS.size());
+
+        objectMapper.writeValue(file.toFile(), ORDERS.subList(0, 30));
+        assertThat(repository.count()).isEqualTo(30);
+        try (var orders = repository.findRange(25, 10)) {
+            assertThat(orders.toList()).containsExactlyElementsOf(ORDERS.subList(25, 30));
+        }
+        try (var orders = repository.findRange(40, 10)) {
+            assertThat(orders.toList()).isEmpty();
+        }
+    }
+
+    @Test
+    void readErrorsAreUnchecked() throws IOException {
+        var missing = new JsonFileOrderRepository(tempDir.resolve("missing.json"));
+        assertThatThrownBy(missing::findAll).isInstanceOf(UncheckedIOException.class);
+        assertThatThrownBy(missing::count).isInstanceOf(UncheckedIOException.class);
+
+        var scalar = new JsonFileOrderRepository(Files.writeString(tempDir.resolve("scalar.json"), "42"));
+        assertThatThrownBy(scalar::count).isInstanceOf(UncheckedIOException.class);
+        assertThat(new JsonFileOrderRepository(Files.writeString(tempDir.resolve("empty.json"), "[]")).count()).isZero();
+    }
+}
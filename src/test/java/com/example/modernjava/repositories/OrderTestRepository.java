@@ -5,14 +5,9 @@ import org.springframework.lang.NonNull;
 
 import java.util.List;
 
-public class OrderTestRepository {
-    private final List<Order> orders;
+public class OrderTestRepository extends InMemoryOrderRepository {
 
     public OrderTestRepository(@NonNull List<Order> orders) {
-        this.orders = List.copyOf(orders);
-    }
-
-    public Iterable<Order> findAll() {
-        return orders;
+        super(orders);
     }
 }
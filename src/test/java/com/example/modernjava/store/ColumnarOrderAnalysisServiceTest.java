@@ -0,0 +1,76 @@
+package com.example.modernjava.store;
+
+import com.example.modernjava.analytics.Aggregate;
+import com.example.modernjava.analytics.OrderAnalysisService;
+import com.example.modernjava.domain.TestDataGenerator;
+import com.example.modernjava.generator.SyntheticOrderGenerator;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ColumnarOrderAnalysisServiceTest {
+
+    private static OrderAnalysisService analysisService;
+    private static ColumnarOrderAnalysisService columnarAnalysisService;
+
+    @BeforeAll
+    static void beforeAll() {
+        var orders = TestDataGenerator.generateTestOrders();
+        analysisService = new OrderAnalysisService(orders);
+        columnarAnalysisService = new ColumnarOrderAnalysisService(OrderColumnStore.of(orders));
+    }
+
+    @Test
+    void perMethodQueriesMatchOrderAnalysisService() {
+        assertThat(columnarAnalysisService.totalOrders()).isEqualTo(analysisService.totalOrders());
+        assertThat(columnarAnalysisService.totalUnitsSold()).isEqualTo(analysisService.totalUnitsSold());
+        assertThat(columnarAnalysisService.totalUnitsSoldByProduct())
+                .isEqualTo(analysisService.totalUnitsSoldByProduct());
+        assertThat(columnarAnalysisService.totalUnitsSoldByCustomerByProduct())
+                .isEqualTo(analysisService.totalUnitsSoldByCustomerByProduct());
+        assertThat(columnarAnalysisService.totalUnitsSoldByCountryByProduct())
+                .isEqualTo(analysisService.totalUnitsSoldByCountryByProduct());
+        assertThat(columnarAnalysisService.totalRevenue()).isEqualTo(analysisService.totalRevenue());
+        assertThat(columnarAnalysisService.totalRevenueByProduct()).isEqualTo(analysisService.totalRevenueByProduct());
+        assertThat(columnarAnalysisService.totalRevenueByCustomer()).isEqualTo(analysisService.totalRevenueByCustomer());
+        assertThat(columnarAnalysisService.totalRevenueByCustomerByProduct())
+                .isEqualTo(analysisService.totalRevenueByCustomerByProduct());
+        assertThat(columnarAnalysisService.totalRevenueByCountry()).isEqualTo(analysisService.totalRevenueByCountry());
+        assertThat(columnarAnalysisService.totalRevenueByCountryByProduct())
+                .isEqualTo(analysisService.totalRevenueByCountryByProduct());
+        assertThat(columnarAnalysisService.distinctCountries())
+                .containsExactlyElementsOf(analysisService.distinctCountries());
+        assertThat(columnarAnalysisService.distinctCustomers())
+                .containsExactlyElementsOf(analysisService.distinctCustomers());
+    }
+
+    @Test
+    void analyzeMatchesOrderAnalysisService() {
+        var aggregates = EnumSet.allOf(Aggregate.class);
+        assertThat(columnarAnalysisService.analyze(aggregates)).isEqualTo(analysisService.analyze(aggregates));
+    }
+
+    @Test
+    void scansReportTheRowsVisited() {
+        var orders = TestDataGenerator.generateTestOrders();
+        long items = orders.stream().mapToLong(order -> order.getItems().size()).sum();
+        var withItems = columnarAnalysisService.analyze(EnumSet.of(Aggregate.REVENUE_BY_COUNTRY));
+        assertThat(withItems.ordersScanned()).isEqualTo(orders.size());
+        assertThat(withItems.itemsScanned()).isEqualTo(items);
+        assertThat(columnarAnalysisService.analyze(EnumSet.of(Aggregate.DISTINCT_COUNTRIES)).itemsScanned()).isZero();
+        assertThat(analysisService.analyze(EnumSet.of(Aggregate.REVENUE_BY_COUNTRY)).itemsScanned()).isEqualTo(items);
+    }
+
+    @Test
+    void sparseNestedGroupsMatchOrderAnalysisService() {
+        // Thousands of customers and products but few pairs of them, which dense per-customer rows would not fit
+        var orders = SyntheticOrderGenerator.builder().seed(12).orderCount(20_000).customers(20_000)
+                .products(20_000).zipfExponent(0).itemsPerOrder(0, 3).build().stream().toList();
+        var aggregates = EnumSet.allOf(Aggregate.class);
+        assertThat(new ColumnarOrderAnalysisService(OrderColumnStore.of(orders)).analyze(aggregates))
+                .isEqualTo(new OrderAnalysisService(orders).analyze(aggregates));
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.modernjava.store;
+
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.OrderItem;
+import com.example.modernjava.domain.Product;
+import com.example.modernjava.domain.TestDataGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static com.example.modernjava.store.Dictionary.NULL_ID;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OffHeapLineItemStoreTest {
+
+    @Test
+    void itemsAreStoredInFixedWidthRecords() {
+        var orders = TestDataGenerator.generateTestOrders();
+        var store = OffHeapLineItemStore.of(orders);
+        var dictionaries = store.dictionaries();
+        assertThat(store.orderCount()).isEqualTo(orders.size());
+        assertThat(store.itemCount()).isEqualTo(orders.stream().mapToInt(order -> order.getItems().size()).sum());
+        assertThat(store.offHeapBytes()).isGreaterThanOrEqualTo((long) store.itemCount()
+                * OffHeapLineItemStore.ITEM_RECORD_SIZE);
+        for (int order = 0; order < orders.size(); order++) {
+            var expected = orders.get(order);
+            assertThat(dictionaries.customers().decode(store.customerId(order))).isEqualTo(expected.getCustomer());
+            assertThat(store.itemEnd(order) - store.itemStart(order)).isEqualTo(expected.getItems().size());
+            for (int item = store.itemStart(order); item < store.itemEnd(order); item++) {
+                OrderItem expectedItem = expected.getItems().get(item - store.itemStart(order));
+                assertThat(store.quantity(item)).isEqualTo(expectedItem.getQuantity());
+                assertThat(dictionaries.products().decode(store.productId(item))).isEqualTo(expectedItem.getProduct());
+                assertThat(dictionaries.customerNames().decode(store.customerNameId(item)))
+                        .isEqualTo(expected.getCustomer().getName());
+                assertThat(dictionaries.countries().decode(store.countryId(item)))
+                        .isEqualTo(expected.getCustomer().getBillingAddress().getPostalCountry());
+                assertThat(BigDecimal.valueOf(store.price(item), OffHeapLineItemStore.PRICE_SCALE))
+                        .isEqualByComparingTo(expectedItem.getProduct().getPrice());
+                assertThat(BigDecimal.valueOf(store.discount(item), OffHeapLineItemStore.DISCOUNT_SCALE))
+                        .isEqualByComparingTo(expectedItem.getDiscount());
+                assertThat(dictionaries.discounts().decode(store.discountId(item))).isEqualTo(expectedItem.getDiscount());
+            }
+        }
+    }
+
+    @Test
+    void valuesWithTooManyDecimalPlacesAreNotFixedPoint() {
+        var template = TestDataGenerator.generateTestOrders().get(0);
+        var product = template.getItems().get(0).getProduct();
+        var items = List.of(
+                OrderItem.builder().product(product).quantity(1).build(),
+                OrderItem.builder().product(new Product(product.getSku(), product.getName(), product.getDescription(),
+                        new BigDecimal("1.005"))).quantity(2).build(),
+                OrderItem.builder().product(product).quantity(3).discount(new BigDecimal("0.12345")).build());
+        var store = OffHeapLineItemStore.of(List.of(new Order(template.getCustomer(), null, items, null)));
+        assertThat(store.price(0)).isNotEqualTo(OffHeapLineItemStore.NOT_FIXED_POINT);
+        assertThat(store.discount(0)).isZero();
+        assertThat(store.discountId(0)).isEqualTo(NULL_ID);
+        assertThat(store.price(1)).isEqualTo(OffHeapLineItemStore.NOT_FIXED_POINT);
+        assertThat(store.price(2)).isEqualTo(OffHeapLineItemStore.NOT_FIXED_POINT);
+        assertThat(store.dictionaries().discounts().decode(store.discountId(2))).isEqualTo(new BigDecimal("0.12345"));
+    }
+
+    @Test
+    void ordersWithoutItemsHaveEmptyItemRanges() {
+        var customer = TestDataGenerator.generateTestOrders().get(0).getCustomer();
+        var store = OffHeapLineItemStore.of(List.of(Order.builder().customer(customer).build()));
+        assertThat(store.orderCount()).isEqualTo(1);
+        assertThat(store.itemStart(0)).isEqualTo(store.itemEnd(0));
+    }
+
+    @Test
+    void builderCannotBeReusedAfterBuild() {
+        var builder = OffHeapLineItemStore.builder();
+        builder.build();
+        assertThatThrownBy(() -> builder.add(TestDataGenerator.generateTestOrders().get(0)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
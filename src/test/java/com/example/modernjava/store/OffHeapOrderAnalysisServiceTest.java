@@ -0,0 +1,98 @@
+package com.example.modernjava.store;
+
+import com.example.modernjava.analytics.Aggregate;
+import com.example.modernjava.analytics.OrderAnalysisService;
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.OrderItem;
+import com.example.modernjava.domain.Product;
+import com.example.modernjava.domain.TestDataGenerator;
+import com.example.modernjava.generator.SyntheticOrderGenerator;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OffHeapOrderAnalysisServiceTest {
+
+    private static OrderAnalysisService analysisService;
+    private static OffHeapOrderAnalysisService offHeapAnalysisService;
+
+    @BeforeAll
+    static void beforeAll() {
+        var orders = TestDataGenerator.generateTestOrders();
+        analysisService = new OrderAnalysisService(orders);
+        offHeapAnalysisService = new OffHeapOrderAnalysisService(OffHeapLineItemStore.of(orders));
+    }
+
+    @Test
+    void perMethodQueriesMatchOrderAnalysisService() {
+        assertThat(offHeapAnalysisService.totalOrders()).isEqualTo(analysisService.totalOrders());
+        assertThat(offHeapAnalysisService.totalUnitsSold()).isEqualTo(analysisService.totalUnitsSold());
+        assertThat(offHeapAnalysisService.totalUnitsSoldByProduct())
+                .isEqualTo(analysisService.totalUnitsSoldByProduct());
+        assertThat(offHeapAnalysisService.totalRevenue()).isEqualTo(analysisService.totalRevenue());
+        assertThat(offHeapAnalysisService.totalRevenueByCustomerByProduct())
+                .isEqualTo(analysisService.totalRevenueByCustomerByProduct());
+        assertThat(offHeapAnalysisService.totalRevenueByCountry()).isEqualTo(analysisService.totalRevenueByCountry());
+        assertThat(offHeapAnalysisService.distinctCountries())
+                .containsExactlyElementsOf(analysisService.distinctCountries());
+        assertThat(offHeapAnalysisService.distinctCustomers())
+                .containsExactlyElementsOf(analysisService.distinctCustomers());
+    }
+
+    @Test
+    void analyzeMatchesOrderAnalysisService() {
+        var aggregates = EnumSet.allOf(Aggregate.class);
+        assertThat(offHeapAnalysisService.analyze(aggregates)).isEqualTo(analysisService.analyze(aggregates));
+    }
+
+    @Test
+    void filteredQueriesMatchOrderAnalysisService() {
+        for (String country : List.of("US", "IN", "CN", "XX")) {
+            assertThat(offHeapAnalysisService.totalUnitsSoldByProduct(country))
+                    .isEqualTo(analysisService.totalUnitsSoldByProduct(country));
+            assertThat(offHeapAnalysisService.totalRevenueByProduct(country))
+                    .isEqualTo(analysisService.totalRevenueByProduct(country));
+        }
+        for (String customer : analysisService.totalRevenueByCustomer().keySet()) {
+            assertThat(offHeapAnalysisService.totalRevenueForCustomer(customer))
+                    .isEqualTo(analysisService.totalRevenueForCustomer(customer));
+        }
+        assertThat(offHeapAnalysisService.totalRevenueForCustomer("Nobody"))
+                .isEqualTo(analysisService.totalRevenueForCustomer("Nobody"));
+    }
+
+    @Test
+    void linesNotInFixedPointAreComputedExactly() {
+        List<Order> orders = new ArrayList<>(TestDataGenerator.generateTestOrders());
+        var template = orders.get(0);
+        var product = template.getItems().get(0).getProduct();
+        var oddProduct = new Product(product.getSku(), product.getName(), product.getDescription(),
+                new BigDecimal("19.9999"));
+        orders.add(new Order(template.getCustomer(), null, List.of(
+                OrderItem.builder().product(oddProduct).quantity(7).discount(new BigDecimal("0.0725")).build(),
+                OrderItem.builder().product(product).quantity(3).discount(new BigDecimal("0.123456")).build(),
+                OrderItem.builder().product(product).quantity(Integer.MAX_VALUE).build()), null));
+        var expected = new OrderAnalysisService(orders);
+        var offHeap = new OffHeapOrderAnalysisService(OffHeapLineItemStore.of(orders));
+        var aggregates = EnumSet.allOf(Aggregate.class);
+        assertThat(offHeap.analyze(aggregates)).isEqualTo(expected.analyze(aggregates));
+        assertThat(offHeap.totalRevenue()).isEqualTo(expected.totalRevenue());
+    }
+
+    @Test
+    void scansSpanSeveralBuffers() {
+        var orders = SyntheticOrderGenerator.builder().seed(7).orderCount(30_000).itemsPerOrder(2, 5).build()
+                .stream().toList();
+        var store = OffHeapLineItemStore.of(orders);
+        assertThat(store.itemCount()).isGreaterThan(DirectRecords.CHUNK_RECORDS);
+        var aggregates = EnumSet.allOf(Aggregate.class);
+        assertThat(new OffHeapOrderAnalysisService(store).analyze(aggregates))
+                .isEqualTo(new OrderAnalysisService(orders).analyze(aggregates));
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.modernjava.store;
+
+import com.example.modernjava.domain.Order;
+import com.example.modernjava.domain.TestDataGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OrderColumnStoreTest {
+
+    @Test
+    void ordersRoundTripThroughColumns() {
+        var orders = TestDataGenerator.generateTestOrders();
+        var store = OrderColumnStore.of(orders);
+        assertThat(store.orderCount()).isEqualTo(orders.size());
+        assertThat(store.itemCount()).isEqualTo(orders.stream().mapToInt(order -> order.getItems().size()).sum());
+        assertThat(store.stream().toList()).containsExactlyElementsOf(orders);
+    }
+
+    @Test
+    void repeatedValuesAreStoredOnce() {
+        // Duplicate the test orders so every customer, address, product and discount appears several times
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            orders.addAll(TestDataGenerator.generateTestOrders(false));
+        }
+        var dictionaries = OrderColumnStore.of(orders).dictionaries();
+        var distinctOrders = TestDataGenerator.generateTestOrders();
+        assertThat(dictionaries.customers().size()).isEqualTo(distinctOrders.stream().map(Order::getCustomer)
+                .distinct().count());
+        assertThat(dictionaries.products().size()).isEqualTo(distinctOrders.stream()
+                .flatMap(order -> order.getItems().stream()).map(item -> item.getProduct().getSku()).distinct().count());
+        assertThat(dictionaries.countries().values()).containsExactlyInAnyOrder("US", "IN", "CN");
+    }
+
+    @Test
+    void rebuiltOrdersShareDistinctInstances() {
+        var store = OrderColumnStore.of(TestDataGenerator.generateTestOrders());
+        var first = store.order(0);
+        assertThat(store.order(0).getCustomer()).isSameAs(first.getCustomer());
+        assertThat(store.order(0).getItems().get(0).getProduct()).isSameAs(first.getItems().get(0).getProduct());
+    }
+
+    @Test
+    void ordersWithoutItemListRoundTrip() {
+        var order = Order.builder().customer(TestDataGenerator.generateTestOrders().get(0).getCustomer()).build();
+        var store = OrderColumnStore.of(List.of(order));
+        assertThat(store.order(0)).isEqualTo(order);
+        assertThat(store.order(0).getItems()).isNull();
+    }
+
+    @Test
+    void orderTimesAreStoredInColumns() {
+        List<Order> orders = new ArrayList<>(TestDataGenerator.generateTestOrders());
+        var time = Instant.parse("2022-11-01T09:30:00.123Z");
+        orders.set(0, new Order(orders.get(0).getCustomer(), null, orders.get(0).getItems(), time));
+        var store = OrderColumnStore.of(orders);
+        assertThat(store.orderedAt(0)).isEqualTo(time);
+        assertThat(store.orderedAt(1)).isNull();
+        assertThat(store.order(0)).isEqualTo(orders.get(0));
+    }
+
+    @Test
+    void builderCannotBeReusedAfterBuild() {
+        var builder = OrderColumnStore.builder().addAll(TestDataGenerator.generateTestOrders());
+        builder.build();
+        assertThatThrownBy(() -> builder.add(TestDataGenerator.generateTestOrders().get(0)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}